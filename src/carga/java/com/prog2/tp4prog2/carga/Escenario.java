@@ -0,0 +1,194 @@
+package com.prog2.tp4prog2.carga;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Datos de la prueba y pedidos HTTP de cada {@link Operacion}. Los ISBN y emails
+ * llevan un prefijo propio de la corrida, así que se puede repetir la prueba contra
+ * la misma aplicación sin chocar con datos anteriores.
+ */
+final class Escenario {
+    private static final int LOTE = 1000;
+    private static final String JSON = "application/json";
+    private static final String[] PALABRAS = {
+        "sombra", "viento", "ciudad", "noche", "mar", "tiempo", "jardín", "río",
+        "silencio", "memoria", "fuego", "camino", "historia", "luz", "invierno", "casa"
+    };
+    private static final String[] NOMBRES = {
+        "Ana", "Juan", "Lucía", "Pedro", "Sofía", "Diego", "Valentina", "Mateo", "Camila", "Martín"
+    };
+
+    private final HttpClient cliente;
+    private final URI base;
+    private final Duration timeout;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final int corrida = ThreadLocalRandom.current().nextInt(10_000, 100_000);
+    private final AtomicLong nuevos = new AtomicLong();
+    private long[] libros;
+    private long[] usuarios;
+    private long[] prestamos;
+
+    Escenario(HttpClient cliente, URI base, Duration timeout) {
+        this.cliente = cliente;
+        this.base = base;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Crea los datos con las escrituras en lote de la API, antes de empezar a medir.
+     */
+    void sembrar(int cantidadLibros, int cantidadUsuarios, int cantidadPrestamos)
+            throws IOException, InterruptedException {
+        libros = crear("/api/libros/bulk", cantidadLibros, this::libro);
+        usuarios = crear("/api/usuarios/bulk", cantidadUsuarios, this::usuario);
+        prestamos = crear("/api/prestamos/bulk", cantidadPrestamos, i -> prestamo(i, alAzar(libros), alAzar(usuarios)));
+        nuevos.set(cantidadLibros);
+    }
+
+    /**
+     * @return el código de estado HTTP de la respuesta (de la última, si son varias)
+     */
+    CompletableFuture<Integer> ejecutar(Operacion operacion) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return switch (operacion) {
+            case LEER_LIBRO -> estado(get("/api/libros/" + alAzar(libros)));
+            case LEER_USUARIO -> estado(get("/api/usuarios/" + alAzar(usuarios)));
+            case LEER_PRESTAMO -> estado(get("/api/prestamos/" + alAzar(prestamos)));
+            case LISTAR_LIBROS -> estado(get("/api/libros?limit=100&after=" + alAzar(libros)));
+            case BUSCAR_LIBROS -> estado(get("/api/libros/search?q="
+                + codificar(PALABRAS[random.nextInt(PALABRAS.length)] + " " + PALABRAS[random.nextInt(PALABRAS.length)])));
+            case BUSCAR_USUARIOS -> estado(get("/api/usuarios/search?q="
+                + codificar(NOMBRES[random.nextInt(NOMBRES.length)])));
+            case BUSCAR_VENCIMIENTOS -> {
+                LocalDate desde = LocalDate.now().minusDays(random.nextInt(60));
+                yield estado(get("/api/prestamos/vencimiento?desde=" + desde + "&hasta=" + desde.plusDays(7)));
+            }
+            case CREAR_LIBRO -> estado(post("/api/libros", libro(nuevos.incrementAndGet())));
+            case ACTUALIZAR_USUARIO -> {
+                ObjectNode cambios = mapper.createObjectNode().put("nombre", NOMBRES[random.nextInt(NOMBRES.length)]
+                    + " Actualizado " + random.nextInt(1000));
+                yield estado(enviar(HttpRequest.newBuilder(uri("/api/usuarios/" + alAzar(usuarios)))
+                    .PUT(HttpRequest.BodyPublishers.ofString(cambios.toString()))
+                    .header("Content-Type", JSON), HttpResponse.BodyHandlers.discarding()));
+            }
+            case PRESTAR_Y_DEVOLVER -> enviar(HttpRequest.newBuilder(uri("/api/prestamos/prestar?libroId=" + alAzar(libros)
+                    + "&usuarioId=" + alAzar(usuarios) + "&fechaDevolucion=" + LocalDate.now().plusDays(14)))
+                    .POST(HttpRequest.BodyPublishers.noBody()), HttpResponse.BodyHandlers.ofString())
+                .thenCompose(prestado -> prestado.statusCode() != 201
+                    ? CompletableFuture.completedFuture(prestado.statusCode())
+                    : estado(enviar(HttpRequest.newBuilder(uri("/api/prestamos/" + id(prestado.body()) + "/devolver"))
+                        .POST(HttpRequest.BodyPublishers.noBody()), HttpResponse.BodyHandlers.discarding())));
+        };
+    }
+
+    private long[] crear(String ruta, int cantidad, LongFunction<ObjectNode> elemento)
+            throws IOException, InterruptedException {
+        long[] ids = new long[cantidad];
+        int creados = 0;
+        for (int desde = 0; desde < cantidad; desde += LOTE) {
+            ArrayNode lote = mapper.createArrayNode();
+            for (int i = desde; i < Math.min(desde + LOTE, cantidad); i++) {
+                lote.add(elemento.apply(i + 1));
+            }
+            HttpResponse<String> respuesta = cliente.send(HttpRequest.newBuilder(uri(ruta))
+                .timeout(Duration.ofMinutes(1))
+                .POST(HttpRequest.BodyPublishers.ofString(lote.toString()))
+                .header("Content-Type", JSON)
+                .build(), HttpResponse.BodyHandlers.ofString());
+            if (respuesta.statusCode() != 200) {
+                throw new IOException("POST " + ruta + " respondió " + respuesta.statusCode() + ": " + respuesta.body());
+            }
+            for (JsonNode resultado : mapper.readTree(respuesta.body())) {
+                if (resultado.path("estado").asInt() != 201) {
+                    throw new IOException("POST " + ruta + " rechazó un elemento: " + resultado);
+                }
+                ids[creados++] = resultado.path("id").asLong();
+            }
+        }
+        return ids;
+    }
+
+    private ObjectNode libro(long i) {
+        return mapper.createObjectNode()
+            .put("isbn", String.format("%05d%08d", corrida, i))
+            .put("titulo", PALABRAS[(int) (i % PALABRAS.length)] + " de " + PALABRAS[(int) (i / PALABRAS.length % PALABRAS.length)])
+            .put("autor", NOMBRES[(int) (i % NOMBRES.length)] + " Autor")
+            .put("estado", "Disponible");
+    }
+
+    private ObjectNode usuario(long i) {
+        return mapper.createObjectNode()
+            .put("nombre", NOMBRES[(int) (i % NOMBRES.length)] + " Usuario " + i)
+            .put("email", "carga" + corrida + "-" + i + "@example.com")
+            .put("estado", "Activo");
+    }
+
+    /**
+     * Préstamos de 14 días repartidos en los últimos dos meses, ya devueltos: un
+     * préstamo abierto ocuparía el libro y dos del mismo libro se rechazarían.
+     */
+    private ObjectNode prestamo(long i, long libroId, long usuarioId) {
+        LocalDate inicio = LocalDate.now().minusDays(i % 60);
+        return mapper.createObjectNode()
+            .put("libroId", libroId)
+            .put("usuarioId", usuarioId)
+            .put("fechaPrestamo", inicio.toString())
+            .put("fechaDevolucion", inicio.plusDays(14).toString())
+            .put("fechaEntrega", inicio.plusDays(i % 14).toString());
+    }
+
+    private long id(String cuerpo) {
+        try {
+            return mapper.readTree(cuerpo).path("id").asLong();
+        } catch (IOException e) {
+            throw new IllegalStateException("Respuesta inesperada: " + cuerpo, e);
+        }
+    }
+
+    private static long alAzar(long[] ids) {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    private static String codificar(String texto) {
+        return URLEncoder.encode(texto, StandardCharsets.UTF_8);
+    }
+
+    private URI uri(String ruta) {
+        return base.resolve(ruta);
+    }
+
+    private CompletableFuture<HttpResponse<Void>> get(String ruta) {
+        return enviar(HttpRequest.newBuilder(uri(ruta)).GET(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private CompletableFuture<HttpResponse<Void>> post(String ruta, ObjectNode cuerpo) {
+        return enviar(HttpRequest.newBuilder(uri(ruta))
+            .POST(HttpRequest.BodyPublishers.ofString(cuerpo.toString()))
+            .header("Content-Type", JSON), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> enviar(HttpRequest.Builder pedido, HttpResponse.BodyHandler<T> cuerpo) {
+        return cliente.sendAsync(pedido.timeout(timeout).build(), cuerpo);
+    }
+
+    private static <T> CompletableFuture<Integer> estado(CompletableFuture<HttpResponse<T>> respuesta) {
+        return respuesta.thenApply(HttpResponse::statusCode);
+    }
+}
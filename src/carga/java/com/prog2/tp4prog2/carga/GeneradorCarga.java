@@ -0,0 +1,198 @@
+package com.prog2.tp4prog2.carga;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generador de carga HTTP de lazo abierto para la API. Los pedidos se inician a una
+ * tasa fija, sin esperar a que respondan los anteriores, y la latencia se mide desde
+ * el instante en que cada pedido debía iniciarse: si la aplicación se demora, la
+ * espera de los pedidos atrasados también cuenta (sin omisión coordinada). Con
+ * {@code --conexiones} pasa a lazo cerrado, para medir el throughput con una cantidad
+ * fija de conexiones abiertas.
+ *
+ * <p>Se ejecuta contra una aplicación ya iniciada con
+ * {@code mvn -Pcarga test-compile exec:exec -Dcarga.args="--tasa=1000 --duracion=60"}.
+ */
+public final class GeneradorCarga {
+
+    private GeneradorCarga() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Opciones opciones;
+        try {
+            opciones = Opciones.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(Opciones.USO);
+            System.exit(2);
+            return;
+        }
+        HttpClient cliente = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(opciones.timeout())
+            .build();
+        Escenario escenario = new Escenario(cliente, opciones.url(), opciones.timeout());
+
+        System.out.printf("Creando %d libros, %d usuarios y %d préstamos en %s...%n",
+            opciones.libros(), opciones.usuarios(), opciones.prestamos(), opciones.url());
+        escenario.sembrar(opciones.libros(), opciones.usuarios(), opciones.prestamos());
+
+        boolean cerrado = opciones.conexiones() > 0;
+        System.out.printf("%s durante %d s (más %d s de calentamiento), mezcla %s%n",
+            cerrado ? opciones.conexiones() + " conexiones" : opciones.tasa() + " pedidos/s",
+            opciones.duracion().toSeconds(), opciones.calentamiento().toSeconds(), opciones.mezcla());
+        Resultados resultados = new Resultados();
+        long medidos = cerrado
+            ? ejecutarCerrado(opciones, escenario, resultados)
+            : ejecutar(opciones, escenario, resultados);
+
+        System.out.println();
+        resultados.imprimir(System.out, opciones.duracion().toNanos() / 1e9, opciones.hgrm());
+        if (cerrado) {
+            System.out.printf(Locale.ROOT, "Enviados: %d pedidos en el período medido con %d conexiones%n",
+                medidos, opciones.conexiones());
+        } else {
+            System.out.printf(Locale.ROOT, "Programados: %d pedidos en el período medido (objetivo %d)%n",
+                medidos, opciones.tasa() * opciones.duracion().toSeconds());
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Lazo abierto: el pedido {@code k} se inicia en {@code inicio + k / tasa} aunque
+     * los anteriores sigan pendientes. Si hay {@code maxEnVuelo} pedidos sin responder
+     * el nuevo se descarta y se cuenta como tal, para no agotar la memoria del generador.
+     *
+     * @return cantidad de pedidos programados dentro del período medido, descartados incluidos
+     */
+    private static long ejecutar(Opciones opciones, Escenario escenario, Resultados resultados)
+            throws InterruptedException {
+        Mezcla mezcla = new Mezcla(opciones.mezcla());
+        Semaphore enVuelo = new Semaphore(opciones.maxEnVuelo());
+        long tasa = opciones.tasa();
+        long inicio = System.nanoTime();
+        long inicioMedicion = inicio + opciones.calentamiento().toNanos();
+        long fin = inicioMedicion + opciones.duracion().toNanos();
+        long medidos = 0;
+        for (long k = 0; ; k++) {
+            long previsto = inicio + k * 1_000_000_000L / tasa;
+            if (previsto >= fin) {
+                break;
+            }
+            long espera = previsto - System.nanoTime();
+            if (espera > 0) {
+                LockSupport.parkNanos(espera);
+            }
+            Operacion operacion = mezcla.elegir(ThreadLocalRandom.current());
+            boolean medido = previsto >= inicioMedicion;
+            if (medido) {
+                medidos++;
+            }
+            if (!enVuelo.tryAcquire()) {
+                if (medido) {
+                    resultados.descartar(operacion);
+                }
+                continue;
+            }
+            CompletableFuture<Integer> respuesta;
+            try {
+                respuesta = escenario.ejecutar(operacion);
+            } catch (RuntimeException e) {
+                respuesta = CompletableFuture.failedFuture(e);
+            }
+            respuesta.whenComplete((estado, error) -> {
+                if (medido) {
+                    resultados.registrar(operacion, System.nanoTime() - previsto, error == null ? estado : -1, error);
+                }
+                enVuelo.release();
+            });
+        }
+        // Los pedidos pendientes terminan por respuesta o por timeout
+        if (!enVuelo.tryAcquire(opciones.maxEnVuelo(), opciones.timeout().toSeconds() + 5, TimeUnit.SECONDS)) {
+            System.err.println("Quedaron pedidos sin terminar: " + (opciones.maxEnVuelo() - enVuelo.availablePermits()));
+        }
+        return medidos;
+    }
+
+    /**
+     * Lazo cerrado: cada uno de los {@code conexiones} clientes, en su propio hilo
+     * virtual, envía un pedido, espera la respuesta y envía el siguiente. La latencia
+     * se mide desde el envío, así que sus percentiles no son comparables con los del
+     * lazo abierto; lo que interesa acá son los pedidos por segundo.
+     *
+     * @return cantidad de pedidos enviados dentro del período medido
+     */
+    private static long ejecutarCerrado(Opciones opciones, Escenario escenario, Resultados resultados) {
+        Mezcla mezcla = new Mezcla(opciones.mezcla());
+        long inicioMedicion = System.nanoTime() + opciones.calentamiento().toNanos();
+        long fin = inicioMedicion + opciones.duracion().toNanos();
+        LongAdder medidos = new LongAdder();
+        try (ExecutorService clientes = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < opciones.conexiones(); i++) {
+                clientes.submit(() -> {
+                    for (long enviado = System.nanoTime(); enviado < fin; enviado = System.nanoTime()) {
+                        Operacion operacion = mezcla.elegir(ThreadLocalRandom.current());
+                        int estado;
+                        Throwable error = null;
+                        try {
+                            estado = escenario.ejecutar(operacion).join();
+                        } catch (RuntimeException e) {
+                            estado = -1;
+                            error = e;
+                        }
+                        if (enviado >= inicioMedicion) {
+                            medidos.increment();
+                            resultados.registrar(operacion, System.nanoTime() - enviado, estado, error);
+                        }
+                    }
+                });
+            }
+        }
+        return medidos.sum();
+    }
+
+    /**
+     * Elige primero el tipo según su peso y después una operación de ese tipo al azar.
+     */
+    private static final class Mezcla {
+        private final List<Operacion.Tipo> tipos = new ArrayList<>();
+        private final List<Integer> acumulados = new ArrayList<>();
+        private final Map<Operacion.Tipo, List<Operacion>> operaciones = new EnumMap<>(Operacion.Tipo.class);
+        private int suma;
+
+        Mezcla(Map<Operacion.Tipo, Integer> pesos) {
+            for (Map.Entry<Operacion.Tipo, Integer> peso : pesos.entrySet()) {
+                if (peso.getValue() > 0) {
+                    suma += peso.getValue();
+                    tipos.add(peso.getKey());
+                    acumulados.add(suma);
+                    operaciones.put(peso.getKey(), Operacion.delTipo(peso.getKey()));
+                }
+            }
+        }
+
+        Operacion elegir(ThreadLocalRandom random) {
+            int valor = random.nextInt(suma);
+            int i = 0;
+            while (valor >= acumulados.get(i)) {
+                i++;
+            }
+            List<Operacion> delTipo = operaciones.get(tipos.get(i));
+            return delTipo.get(random.nextInt(delTipo.size()));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.prog2.tp4prog2.carga;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opciones del generador, en la forma {@code --clave=valor}.
+ *
+ * @param url dirección de la aplicación
+ * @param tasa pedidos por segundo que se inician, respondan o no los anteriores
+ * @param duracion tiempo medido
+ * @param calentamiento tiempo previo cuyos resultados se descartan
+ * @param mezcla peso de cada tipo de operación
+ * @param libros libros a crear antes de empezar
+ * @param usuarios usuarios a crear antes de empezar
+ * @param prestamos préstamos a crear antes de empezar
+ * @param maxEnVuelo pedidos sin responder a partir de los cuales los nuevos se descartan
+ * @param timeout tiempo máximo de cada pedido
+ * @param hgrm directorio donde guardar la distribución de percentiles de cada operación, o null
+ * @param conexiones clientes en lazo cerrado, cada uno con su conexión; 0 para usar lazo abierto a {@code tasa}
+ */
+record Opciones(URI url, int tasa, Duration duracion, Duration calentamiento,
+                Map<Operacion.Tipo, Integer> mezcla, int libros, int usuarios, int prestamos,
+                int maxEnVuelo, Duration timeout, Path hgrm, int conexiones) {
+
+    static final String USO = """
+        Opciones (todas opcionales):
+          --url=http://localhost:8080            aplicación a probar
+          --tasa=500                             pedidos por segundo (lazo abierto)
+          --duracion=60                          segundos medidos
+          --calentamiento=10                     segundos previos descartados
+          --mezcla=lectura=80,busqueda=15,escritura=5
+          --libros=10000 --usuarios=1000 --prestamos=1000   datos creados antes de empezar
+          --max-en-vuelo=10000                   pedidos pendientes antes de descartar
+          --timeout=10                           segundos por pedido
+          --hgrm=target/carga                    guarda un .hgrm por operación
+          --conexiones=10000                     lazo cerrado: clientes que envían un pedido tras otro
+                                                 (ignora --tasa y --max-en-vuelo)""";
+
+    static Opciones parse(String[] args) {
+        Map<String, String> valores = new HashMap<>();
+        for (String arg : args) {
+            int igual = arg.indexOf('=');
+            if (!arg.startsWith("--") || igual < 0) {
+                throw new IllegalArgumentException("Opción inválida: " + arg);
+            }
+            valores.put(arg.substring(2, igual), arg.substring(igual + 1));
+        }
+        Opciones opciones = new Opciones(
+            URI.create(valores.getOrDefault("url", "http://localhost:8080")),
+            entero(valores, "tasa", 500),
+            Duration.ofSeconds(entero(valores, "duracion", 60)),
+            Duration.ofSeconds(entero(valores, "calentamiento", 10)),
+            mezcla(valores.getOrDefault("mezcla", "lectura=80,busqueda=15,escritura=5")),
+            entero(valores, "libros", 10_000),
+            entero(valores, "usuarios", 1_000),
+            entero(valores, "prestamos", 1_000),
+            entero(valores, "max-en-vuelo", 10_000),
+            Duration.ofSeconds(entero(valores, "timeout", 10)),
+            valores.containsKey("hgrm") ? Path.of(valores.get("hgrm")) : null,
+            entero(valores, "conexiones", 0));
+        for (String clave : valores.keySet()) {
+            if (!USO.contains("--" + clave + "=")) {
+                throw new IllegalArgumentException("Opción desconocida: --" + clave);
+            }
+        }
+        if (opciones.tasa() < 1 || opciones.libros() < 1 || opciones.usuarios() < 1 || opciones.prestamos() < 1
+                || opciones.maxEnVuelo() < 1) {
+            throw new IllegalArgumentException("--tasa, --libros, --usuarios, --prestamos y --max-en-vuelo deben ser positivos");
+        }
+        if (opciones.conexiones() < 0) {
+            throw new IllegalArgumentException("--conexiones no puede ser negativo");
+        }
+        return opciones;
+    }
+
+    private static int entero(Map<String, String> valores, String clave, int porDefecto) {
+        String valor = valores.get(clave);
+        if (valor == null) {
+            return porDefecto;
+        }
+        try {
+            return Integer.parseInt(valor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + clave + " debe ser un número entero: " + valor);
+        }
+    }
+
+    private static Map<Operacion.Tipo, Integer> mezcla(String valor) {
+        Map<Operacion.Tipo, Integer> mezcla = new EnumMap<>(Operacion.Tipo.class);
+        for (String parte : valor.split(",")) {
+            String[] claveValor = parte.split("=");
+            if (claveValor.length != 2) {
+                throw new IllegalArgumentException("Mezcla inválida: " + valor);
+            }
+            Operacion.Tipo tipo;
+            try {
+                tipo = Operacion.Tipo.valueOf(claveValor[0].trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Tipo de operación desconocido: " + claveValor[0]);
+            }
+            int peso = Integer.parseInt(claveValor[1].trim());
+            if (peso < 0) {
+                throw new IllegalArgumentException("Peso negativo en la mezcla: " + parte);
+            }
+            mezcla.put(tipo, peso);
+        }
+        if (mezcla.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("La mezcla no tiene ninguna operación");
+        }
+        return mezcla;
+    }
+}
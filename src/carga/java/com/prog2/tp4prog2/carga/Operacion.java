@@ -0,0 +1,43 @@
+package com.prog2.tp4prog2.carga;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pedidos que puede generar la carga, agrupados por tipo para armar la mezcla.
+ */
+enum Operacion {
+    LEER_LIBRO(Tipo.LECTURA),
+    LEER_USUARIO(Tipo.LECTURA),
+    LEER_PRESTAMO(Tipo.LECTURA),
+    LISTAR_LIBROS(Tipo.LECTURA),
+    BUSCAR_LIBROS(Tipo.BUSQUEDA),
+    BUSCAR_USUARIOS(Tipo.BUSQUEDA),
+    BUSCAR_VENCIMIENTOS(Tipo.BUSQUEDA),
+    CREAR_LIBRO(Tipo.ESCRITURA),
+    ACTUALIZAR_USUARIO(Tipo.ESCRITURA),
+    /** Préstamo y devolución encadenados; la latencia cubre los dos pedidos */
+    PRESTAR_Y_DEVOLVER(Tipo.ESCRITURA);
+
+    enum Tipo { LECTURA, BUSQUEDA, ESCRITURA }
+
+    private final Tipo tipo;
+
+    Operacion(Tipo tipo) {
+        this.tipo = tipo;
+    }
+
+    Tipo tipo() {
+        return tipo;
+    }
+
+    static List<Operacion> delTipo(Tipo tipo) {
+        List<Operacion> operaciones = new ArrayList<>();
+        for (Operacion operacion : values()) {
+            if (operacion.tipo == tipo) {
+                operaciones.add(operacion);
+            }
+        }
+        return operaciones;
+    }
+}
@@ -0,0 +1,131 @@
+package com.prog2.tp4prog2.carga;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencias (en microsegundos, con 3 dígitos significativos) y códigos de estado de
+ * cada operación. Se puede registrar desde varios hilos a la vez.
+ */
+final class Resultados {
+    private static final double MICROS_POR_MILI = 1000.0;
+
+    private final Map<Operacion, Recorder> latencias = new EnumMap<>(Operacion.class);
+    private final Map<Operacion, Contadores> contadores = new EnumMap<>(Operacion.class);
+    private final Map<String, LongAdder> causas = new ConcurrentHashMap<>();
+
+    private static final class Contadores {
+        final LongAdder exitosas = new LongAdder();
+        final LongAdder rechazadas = new LongAdder();
+        final LongAdder fallidas = new LongAdder();
+        final LongAdder descartadas = new LongAdder();
+    }
+
+    Resultados() {
+        for (Operacion operacion : Operacion.values()) {
+            latencias.put(operacion, new Recorder(3));
+            contadores.put(operacion, new Contadores());
+        }
+    }
+
+    /**
+     * @param latenciaNanos desde el momento en que el pedido debía iniciarse hasta la respuesta
+     * @param estado código HTTP, o un valor negativo si el pedido no obtuvo respuesta
+     * @param error por qué el pedido no obtuvo respuesta, o null
+     */
+    void registrar(Operacion operacion, long latenciaNanos, int estado, Throwable error) {
+        if (error != null) {
+            Throwable causa = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            causas.computeIfAbsent(causa.getClass().getSimpleName(), clave -> new LongAdder()).increment();
+        }
+        latencias.get(operacion).recordValue(Math.max(1, latenciaNanos / 1000));
+        Contadores c = contadores.get(operacion);
+        if (estado >= 200 && estado < 400) {
+            c.exitosas.increment();
+        } else if (estado >= 400 && estado < 500) {
+            c.rechazadas.increment();
+        } else {
+            c.fallidas.increment();
+        }
+    }
+
+    /**
+     * Un pedido que no se inició porque ya había demasiados sin responder.
+     */
+    void descartar(Operacion operacion) {
+        contadores.get(operacion).descartadas.increment();
+    }
+
+    /**
+     * Imprime una fila por operación y el total. Debe llamarse una sola vez, al final.
+     *
+     * @param segundos duración de la medición, para calcular los pedidos por segundo
+     * @param hgrm directorio para la distribución completa de cada operación, o null
+     */
+    void imprimir(PrintStream salida, double segundos, Path hgrm) throws IOException {
+        if (hgrm != null) {
+            Files.createDirectories(hgrm);
+        }
+        salida.printf("%-20s %9s %9s %9s %9s %9s %9s %9s %9s %9s %9s%n", "Operación", "Total", "2xx/3xx",
+            "4xx", "Errores", "Descart.", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "máx ms");
+        Histogram total = new Histogram(3);
+        long exitosas = 0;
+        long pedidos = 0;
+        for (Operacion operacion : Operacion.values()) {
+            Histogram histograma = latencias.get(operacion).getIntervalHistogram();
+            Contadores c = contadores.get(operacion);
+            if (histograma.getTotalCount() == 0 && c.descartadas.sum() == 0) {
+                continue;
+            }
+            total.add(histograma);
+            exitosas += c.exitosas.sum();
+            pedidos += histograma.getTotalCount();
+            fila(salida, operacion.name(), histograma, c.exitosas.sum(), c.rechazadas.sum(),
+                c.fallidas.sum(), c.descartadas.sum());
+            if (hgrm != null) {
+                try (PrintStream archivo = new PrintStream(
+                        Files.newOutputStream(hgrm.resolve(operacion.name().toLowerCase(Locale.ROOT) + ".hgrm")))) {
+                    histograma.outputPercentileDistribution(archivo, MICROS_POR_MILI);
+                }
+            }
+        }
+        long descartadas = contadores.values().stream().mapToLong(c -> c.descartadas.sum()).sum();
+        long rechazadas = contadores.values().stream().mapToLong(c -> c.rechazadas.sum()).sum();
+        long fallidas = contadores.values().stream().mapToLong(c -> c.fallidas.sum()).sum();
+        fila(salida, "TOTAL", total, exitosas, rechazadas, fallidas, descartadas);
+        salida.printf(Locale.ROOT, "%nRespondidos: %.1f pedidos/s (%.1f/s con 2xx/3xx)%n",
+            pedidos / segundos, exitosas / segundos);
+        if (!causas.isEmpty()) {
+            salida.println("Errores sin respuesta: " + new TreeMap<>(causas));
+        }
+        if (hgrm != null) {
+            try (PrintStream archivo = new PrintStream(Files.newOutputStream(hgrm.resolve("total.hgrm")))) {
+                total.outputPercentileDistribution(archivo, MICROS_POR_MILI);
+            }
+        }
+    }
+
+    private static void fila(PrintStream salida, String nombre, Histogram histograma, long exitosas,
+                             long rechazadas, long fallidas, long descartadas) {
+        salida.printf(Locale.ROOT, "%-20s %9d %9d %9d %9d %9d %9.2f %9.2f %9.2f %9.2f %9.2f%n", nombre,
+            histograma.getTotalCount(), exitosas, rechazadas, fallidas, descartadas,
+            percentil(histograma, 50), percentil(histograma, 90), percentil(histograma, 99),
+            percentil(histograma, 99.9), histograma.getMaxValue() / MICROS_POR_MILI);
+    }
+
+    private static double percentil(Histogram histograma, double percentil) {
+        return histograma.getValueAtPercentile(percentil) / MICROS_POR_MILI;
+    }
+}
@@ -0,0 +1,125 @@
+package com.prog2.tp4prog2.benchmark;
+
+import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.model.Prestamo;
+import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/**
+ * Datos sintéticos y deterministas para los benchmarks. Los repositorios se pueblan
+ * en orden desde un almacén vacío, así que los IDs {@code 1..filas} siempre existen
+ * y la fila {@code i} tiene el ID {@code i}.
+ */
+final class Datos {
+    static final String DISPONIBLE = "Disponible";
+    static final String PRESTADO = "Prestado";
+    static final LocalDate HOY = LocalDate.now();
+    /** Tamaño de las páginas y de los lotes de escritura medidos */
+    static final int LOTE = 100;
+
+    private static final int LOTE_CARGA = 10_000;
+    private static final String[] PALABRAS = {
+        "sombra", "viento", "ciudad", "noche", "mar", "tiempo", "jardín", "río",
+        "silencio", "memoria", "fuego", "camino", "historia", "luz", "invierno", "casa"
+    };
+    private static final String[] NOMBRES = {
+        "Ana", "Juan", "Lucía", "Pedro", "Sofía", "Diego", "Valentina", "Mateo", "Camila", "Martín"
+    };
+    private static final String[] APELLIDOS = {
+        "García", "Fernández", "López", "Martínez", "Sánchez", "Pérez",
+        "Gómez", "Díaz", "Romero", "Álvarez", "Torres", "Ruiz"
+    };
+
+    private Datos() {
+    }
+
+    static String isbn(long i) {
+        String digitos = Long.toString(i);
+        return "978" + "0000000000".substring(digitos.length()) + digitos;
+    }
+
+    static String titulo(long i) {
+        return PALABRAS[(int) (i % PALABRAS.length)] + " de "
+            + PALABRAS[(int) (i / PALABRAS.length % PALABRAS.length)] + " " + i;
+    }
+
+    static String autor(long i) {
+        return NOMBRES[(int) (i % NOMBRES.length)] + " " + APELLIDOS[(int) (i / NOMBRES.length % APELLIDOS.length)];
+    }
+
+    static String nombre(long i) {
+        return autor(i) + " " + i;
+    }
+
+    static String email(long i) {
+        return "usuario" + i + "@example.com";
+    }
+
+    static Libro libro(long i) {
+        return new Libro(null, isbn(i), titulo(i), autor(i), DISPONIBLE);
+    }
+
+    static Usuario usuario(long i) {
+        return new Usuario(null, nombre(i), email(i), i % 20 == 0 ? "Suspendido" : "Activo");
+    }
+
+    /**
+     * Préstamos de 14 días que empezaron en los últimos 400 días: la mayoría vencidos
+     * y unos pocos activos, como en una biblioteca con historial.
+     */
+    static Prestamo prestamo(long i, Libro libro, Usuario usuario) {
+        LocalDate inicio = HOY.minusDays(i % 400);
+        return new Prestamo(null, libro.getId(), usuario.getId(), inicio, inicio.plusDays(14));
+    }
+
+    static String palabra() {
+        return PALABRAS[ThreadLocalRandom.current().nextInt(PALABRAS.length)];
+    }
+
+    /**
+     * @return un ID existente al azar entre {@code 1} y {@code filas}
+     */
+    static long id(int filas) {
+        return ThreadLocalRandom.current().nextLong(1, filas + 1L);
+    }
+
+    /**
+     * @return IDs consecutivos a partir de uno al azar, sin pasarse de {@code filas}
+     */
+    static List<Long> ids(int filas, int cantidad) {
+        long desde = ThreadLocalRandom.current().nextLong(1, Math.max(2, filas - cantidad + 2L));
+        List<Long> ids = new ArrayList<>(cantidad);
+        for (long id = desde; id < desde + cantidad && id <= filas; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    /**
+     * Carga {@code filas} entidades en lotes, fallando si alguna se rechaza.
+     *
+     * @param filas cantidad de entidades
+     * @param crear entidad para cada índice, de {@code 1} a {@code filas}
+     * @param guardarTodos escritura en lote del repositorio
+     */
+    static <T> void poblar(int filas, LongFunction<T> crear, Function<List<T>, List<BulkWriteResult<T>>> guardarTodos) {
+        for (long desde = 1; desde <= filas; desde += LOTE_CARGA) {
+            List<T> lote = new ArrayList<>(LOTE_CARGA);
+            for (long i = desde; i < desde + LOTE_CARGA && i <= filas; i++) {
+                lote.add(crear.apply(i));
+            }
+            for (BulkWriteResult<T> resultado : guardarTodos.apply(lote)) {
+                if (!resultado.isSaved()) {
+                    throw new IllegalStateException("No se pudo cargar un elemento", resultado.error());
+                }
+            }
+        }
+    }
+}
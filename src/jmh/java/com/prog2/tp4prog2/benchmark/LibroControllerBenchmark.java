@@ -0,0 +1,58 @@
+package com.prog2.tp4prog2.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prog2.tp4prog2.controller.LibroController;
+import com.prog2.tp4prog2.repository.impl.LibroRepositoryImpl;
+import com.prog2.tp4prog2.service.impl.LibroServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code GET /api/libros/{id}} sin HTTP: la búsqueda y la serialización del cuerpo,
+ * con y sin el JSON ya serializado de {@code tp4.cache.libros-json.maximum-size}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LibroControllerBenchmark {
+
+    @Param({"5000"})
+    int filas;
+
+    /** 0 serializa cada respuesta con Jackson */
+    @Param({"0", "10000"})
+    long jsonCache;
+
+    private ObjectMapper objectMapper;
+    private LibroController controller;
+
+    @Setup
+    public void poblar() {
+        LibroRepositoryImpl repository = new LibroRepositoryImpl();
+        Datos.poblar(filas, Datos::libro, repository::saveAll);
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        controller = new LibroController(new LibroServiceImpl(repository), objectMapper, jsonCache);
+    }
+
+    @Benchmark
+    public byte[] obtenerPorId() throws Exception {
+        // Sin la caché el cuerpo es el libro y lo serializa el conversor de Spring, igual que acá
+        Object cuerpo = controller.obtenerPorId(Datos.id(filas), null, null).getBody();
+        return cuerpo instanceof byte[] json ? json : objectMapper.writeValueAsBytes(cuerpo);
+    }
+}
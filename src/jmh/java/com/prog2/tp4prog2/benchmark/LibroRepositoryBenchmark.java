@@ -0,0 +1,145 @@
+package com.prog2.tp4prog2.benchmark;
+
+import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
+import com.prog2.tp4prog2.repository.LibroRepository;
+import com.prog2.tp4prog2.repository.impl.LibroRepositoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Operaciones de {@link LibroRepositoryImpl} sobre un catálogo de {@code filas} libros.
+ * Las escrituras que agregan libros los eliminan en la misma operación para que el
+ * tamaño no cambie durante la medición.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LibroRepositoryBenchmark {
+
+    /** Se puede llevar a 10M con {@code -p filas=10000000} y más heap */
+    @Param({"1000", "100000", "1000000"})
+    int filas;
+
+    private LibroRepository repository;
+    private final AtomicLong nuevos = new AtomicLong();
+
+    @Setup
+    public void poblar() {
+        repository = new LibroRepositoryImpl();
+        Datos.poblar(filas, Datos::libro, repository::saveAll);
+        nuevos.set(filas);
+    }
+
+    @Benchmark
+    public long revision() {
+        return repository.revision();
+    }
+
+    @Benchmark
+    public List<Libro> findAll() {
+        return repository.findAll();
+    }
+
+    @Benchmark
+    public List<Libro> findPage() {
+        return repository.findPage(Datos.id(filas), Datos.LOTE);
+    }
+
+    @Benchmark
+    public Optional<Libro> findById() {
+        return repository.findById(Datos.id(filas));
+    }
+
+    @Benchmark
+    public boolean existsById() {
+        return repository.existsById(Datos.id(filas));
+    }
+
+    @Benchmark
+    public Optional<Libro> findByIsbn() {
+        return repository.findByIsbn(Datos.isbn(Datos.id(filas)));
+    }
+
+    @Benchmark
+    public List<Libro> findByTitulo() {
+        return repository.findByTitulo(Datos.titulo(Datos.id(filas)));
+    }
+
+    @Benchmark
+    public List<Libro> findByAutor() {
+        return repository.findByAutor(Datos.autor(Datos.id(filas)));
+    }
+
+    @Benchmark
+    public List<Libro> search() {
+        return repository.search(Datos.palabra() + " " + Datos.palabra(), 20);
+    }
+
+    @Benchmark
+    public Libro save() {
+        long id = Datos.id(filas);
+        return repository.save(new Libro(id, Datos.isbn(id), Datos.titulo(id), Datos.autor(id), Datos.DISPONIBLE));
+    }
+
+    @Benchmark
+    public Libro saveYDeleteById() {
+        Libro libro = repository.save(Datos.libro(nuevos.incrementAndGet()));
+        repository.deleteById(libro.getId());
+        return libro;
+    }
+
+    @Benchmark
+    public Optional<Libro> replaceIfVersion() {
+        Libro actual = repository.findById(Datos.id(filas)).orElseThrow();
+        Libro nuevo = new Libro(actual.getId(), actual.getIsbn(), actual.getTitulo(), actual.getAutor(), actual.getEstado());
+        return repository.replaceIfVersion(nuevo, actual.getVersion());
+    }
+
+    @Benchmark
+    public Optional<Libro> compareAndSetEstado() {
+        long id = Datos.id(filas);
+        repository.compareAndSetEstado(id, Datos.DISPONIBLE, Datos.PRESTADO);
+        return repository.compareAndSetEstado(id, Datos.PRESTADO, Datos.DISPONIBLE);
+    }
+
+    @Benchmark
+    public List<BulkWriteResult<Libro>> saveAll() {
+        List<Libro> lote = new ArrayList<>(Datos.LOTE);
+        for (Long id : Datos.ids(filas, Datos.LOTE)) {
+            lote.add(new Libro(id, Datos.isbn(id), Datos.titulo(id), Datos.autor(id), Datos.DISPONIBLE));
+        }
+        return repository.saveAll(lote);
+    }
+
+    @Benchmark
+    public List<Long> saveAllYDeleteAllById() {
+        List<Libro> lote = new ArrayList<>(Datos.LOTE);
+        for (int i = 0; i < Datos.LOTE; i++) {
+            lote.add(Datos.libro(nuevos.incrementAndGet()));
+        }
+        List<Long> ids = new ArrayList<>(Datos.LOTE);
+        for (BulkWriteResult<Libro> resultado : repository.saveAll(lote)) {
+            ids.add(resultado.entidad().getId());
+        }
+        return repository.deleteAllById(ids);
+    }
+}
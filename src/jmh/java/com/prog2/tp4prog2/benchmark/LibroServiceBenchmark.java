@@ -0,0 +1,142 @@
+package com.prog2.tp4prog2.benchmark;
+
+import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
+import com.prog2.tp4prog2.repository.impl.LibroRepositoryImpl;
+import com.prog2.tp4prog2.service.LibroService;
+import com.prog2.tp4prog2.service.impl.LibroServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Operaciones de {@link LibroServiceImpl} sobre el repositorio en memoria, sin Spring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LibroServiceBenchmark {
+
+    /** Se puede llevar a 10M con {@code -p filas=10000000} y más heap */
+    @Param({"1000", "100000", "1000000"})
+    int filas;
+
+    private LibroService service;
+    private final AtomicLong nuevos = new AtomicLong();
+
+    @Setup
+    public void poblar() {
+        LibroRepositoryImpl repository = new LibroRepositoryImpl();
+        Datos.poblar(filas, Datos::libro, repository::saveAll);
+        service = new LibroServiceImpl(repository);
+        nuevos.set(filas);
+    }
+
+    private static Libro libro(long id) {
+        return new Libro(id, Datos.isbn(id), Datos.titulo(id), Datos.autor(id), Datos.DISPONIBLE);
+    }
+
+    @Benchmark
+    public Libro buscarPorIsbn() {
+        return service.buscarPorIsbn(Datos.isbn(Datos.id(filas))).orElseThrow();
+    }
+
+    @Benchmark
+    public Libro buscarPorId() {
+        return service.buscarPorId(Datos.id(filas)).orElseThrow();
+    }
+
+    /** Camino de un 404: antes costaba construir una excepción con su stack trace */
+    @Benchmark
+    public Optional<Libro> buscarPorIdInexistente() {
+        return service.buscarPorId(-Datos.id(filas));
+    }
+
+    @Benchmark
+    public boolean existePorId() {
+        return service.existePorId(Datos.id(filas));
+    }
+
+    @Benchmark
+    public List<Libro> buscar() {
+        return service.buscar(Datos.palabra() + " " + Datos.palabra(), 20);
+    }
+
+    @Benchmark
+    public long revision() {
+        return service.revision();
+    }
+
+    @Benchmark
+    public List<Libro> obtenerTodos() {
+        return service.obtenerTodos();
+    }
+
+    @Benchmark
+    public List<Libro> obtenerPagina() {
+        return service.obtenerPagina(Datos.id(filas), Datos.LOTE);
+    }
+
+    @Benchmark
+    public Libro guardar() {
+        return service.guardar(libro(Datos.id(filas)));
+    }
+
+    @Benchmark
+    public Libro guardarYEliminar() {
+        Libro libro = service.guardar(Datos.libro(nuevos.incrementAndGet()));
+        service.eliminar(libro.getId());
+        return libro;
+    }
+
+    @Benchmark
+    public List<BulkWriteResult<Libro>> guardarTodos() {
+        List<Libro> lote = new ArrayList<>(Datos.LOTE);
+        for (Long id : Datos.ids(filas, Datos.LOTE)) {
+            lote.add(libro(id));
+        }
+        return service.guardarTodos(lote);
+    }
+
+    @Benchmark
+    public List<Long> guardarTodosYEliminarTodos() {
+        List<Libro> lote = new ArrayList<>(Datos.LOTE);
+        for (int i = 0; i < Datos.LOTE; i++) {
+            lote.add(Datos.libro(nuevos.incrementAndGet()));
+        }
+        List<Long> ids = new ArrayList<>(Datos.LOTE);
+        for (BulkWriteResult<Libro> resultado : service.guardarTodos(lote)) {
+            ids.add(resultado.entidad().getId());
+        }
+        return service.eliminarTodos(ids);
+    }
+
+    @Benchmark
+    public Libro buscarYActualizar() {
+        long id = Datos.id(filas);
+        return service.buscarYActualizar(id, libro(id));
+    }
+
+    @Benchmark
+    public Libro buscarYActualizarConVersion() {
+        Libro actual = service.buscarPorId(Datos.id(filas)).orElseThrow();
+        return service.buscarYActualizar(actual.getId(), libro(actual.getId()), actual.getVersion());
+    }
+}
@@ -0,0 +1,198 @@
+package com.prog2.tp4prog2.benchmark;
+
+import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.model.Prestamo;
+import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
+import com.prog2.tp4prog2.repository.PrestamoRepository;
+import com.prog2.tp4prog2.repository.impl.PrestamoRepositoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Operaciones de {@link PrestamoRepositoryImpl} (solo en memoria) sobre {@code filas}
+ * préstamos de {@code filas / 4} libros y {@code filas / 10} usuarios.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrestamoRepositoryBenchmark {
+
+    /** Se puede llevar a 10M con {@code -p filas=10000000} y más heap */
+    @Param({"1000", "100000", "1000000"})
+    int filas;
+
+    private PrestamoRepository repository;
+    private Libro[] libros;
+    private Usuario[] usuarios;
+    private final AtomicLong nuevos = new AtomicLong();
+
+    @Setup
+    public void poblar() {
+        libros = new Libro[Math.max(1, filas / 4)];
+        for (int i = 0; i < libros.length; i++) {
+            libros[i] = Datos.libro(i + 1);
+            libros[i].setId(i + 1L);
+        }
+        usuarios = new Usuario[Math.max(1, filas / 10)];
+        for (int i = 0; i < usuarios.length; i++) {
+            usuarios[i] = Datos.usuario(i + 1);
+            usuarios[i].setId(i + 1L);
+        }
+        repository = new PrestamoRepositoryImpl();
+        Datos.poblar(filas, this::prestamo, repository::saveAll);
+        nuevos.set(filas);
+    }
+
+    private Prestamo prestamo(long i) {
+        return Datos.prestamo(i, libros[(int) (i % libros.length)], usuarios[(int) (i % usuarios.length)]);
+    }
+
+    private static LocalDate diaAlAzar() {
+        return Datos.HOY.minusDays(ThreadLocalRandom.current().nextInt(400));
+    }
+
+    @Benchmark
+    public long revision() {
+        return repository.revision();
+    }
+
+    @Benchmark
+    public List<Prestamo> findAll() {
+        return repository.findAll();
+    }
+
+    @Benchmark
+    public List<Prestamo> findPage() {
+        return repository.findPage(Datos.id(filas), Datos.LOTE);
+    }
+
+    @Benchmark
+    public Optional<Prestamo> findById() {
+        return repository.findById(Datos.id(filas));
+    }
+
+    @Benchmark
+    public List<Prestamo> findByUsuario() {
+        return repository.findByUsuario(usuarios[ThreadLocalRandom.current().nextInt(usuarios.length)]);
+    }
+
+    @Benchmark
+    public List<Prestamo> findByUsuarioId() {
+        return repository.findByUsuarioId(Datos.id(usuarios.length));
+    }
+
+    @Benchmark
+    public List<Prestamo> findByLibro() {
+        return repository.findByLibro(libros[ThreadLocalRandom.current().nextInt(libros.length)]);
+    }
+
+    @Benchmark
+    public List<Prestamo> findByLibroId() {
+        return repository.findByLibroId(Datos.id(libros.length));
+    }
+
+    @Benchmark
+    public List<Prestamo> findByFechaPrestamo() {
+        return repository.findByFechaPrestamo(diaAlAzar());
+    }
+
+    @Benchmark
+    public List<Prestamo> findByFechaDevolucion() {
+        return repository.findByFechaDevolucion(diaAlAzar().plusDays(14));
+    }
+
+    @Benchmark
+    public List<Prestamo> findByFechaDevolucionBetween() {
+        LocalDate desde = diaAlAzar();
+        return repository.findByFechaDevolucionBetween(desde, desde.plusDays(7));
+    }
+
+    @Benchmark
+    public List<Prestamo> findActivePrestamos() {
+        return repository.findActivePrestamos();
+    }
+
+    @Benchmark
+    public List<Prestamo> findOverduePrestamos() {
+        return repository.findOverduePrestamos();
+    }
+
+    @Benchmark
+    public List<Prestamo> findOverduePrestamosMasDe30Dias() {
+        return repository.findOverduePrestamos(30);
+    }
+
+    @Benchmark
+    public Prestamo save() {
+        long id = Datos.id(filas);
+        Prestamo prestamo = prestamo(id);
+        prestamo.setId(id);
+        return repository.save(prestamo);
+    }
+
+    @Benchmark
+    public Prestamo saveYDeleteById() {
+        Prestamo prestamo = repository.save(prestamo(nuevos.incrementAndGet()));
+        repository.deleteById(prestamo.getId());
+        return prestamo;
+    }
+
+    @Benchmark
+    public Optional<Prestamo> saveYRemoveById() {
+        Prestamo prestamo = repository.save(prestamo(nuevos.incrementAndGet()));
+        return repository.removeById(prestamo.getId());
+    }
+
+    @Benchmark
+    public Optional<Prestamo> replaceIfVersion() {
+        Prestamo actual = repository.findById(Datos.id(filas)).orElseThrow();
+        Prestamo nuevo = new Prestamo(actual.getId(), actual.getLibroId(), actual.getUsuarioId(),
+            actual.getFechaPrestamo(), actual.getFechaDevolucion());
+        return repository.replaceIfVersion(nuevo, actual.getVersion());
+    }
+
+    @Benchmark
+    public List<BulkWriteResult<Prestamo>> saveAll() {
+        List<Prestamo> lote = new ArrayList<>(Datos.LOTE);
+        for (Long id : Datos.ids(filas, Datos.LOTE)) {
+            Prestamo prestamo = prestamo(id);
+            prestamo.setId(id);
+            lote.add(prestamo);
+        }
+        return repository.saveAll(lote);
+    }
+
+    @Benchmark
+    public List<Long> saveAllYDeleteAllById() {
+        List<Prestamo> lote = new ArrayList<>(Datos.LOTE);
+        for (int i = 0; i < Datos.LOTE; i++) {
+            lote.add(prestamo(nuevos.incrementAndGet()));
+        }
+        List<Long> ids = new ArrayList<>(Datos.LOTE);
+        for (BulkWriteResult<Prestamo> resultado : repository.saveAll(lote)) {
+            ids.add(resultado.entidad().getId());
+        }
+        return repository.deleteAllById(ids);
+    }
+}
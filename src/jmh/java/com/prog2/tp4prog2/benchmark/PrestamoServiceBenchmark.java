@@ -0,0 +1,221 @@
+package com.prog2.tp4prog2.benchmark;
+
+import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.model.Prestamo;
+import com.prog2.tp4prog2.model.PrestamoDetalle;
+import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
+import com.prog2.tp4prog2.repository.impl.LibroRepositoryImpl;
+import com.prog2.tp4prog2.repository.impl.PrestamoRepositoryImpl;
+import com.prog2.tp4prog2.repository.impl.UsuarioRepositoryImpl;
+import com.prog2.tp4prog2.service.LibroNoDisponibleException;
+import com.prog2.tp4prog2.service.PrestamoService;
+import com.prog2.tp4prog2.service.impl.PrestamoServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Operaciones de {@link PrestamoServiceImpl} sobre los tres repositorios en memoria:
+ * {@code filas} préstamos, {@code filas / 4} libros y {@code filas / 10} usuarios.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrestamoServiceBenchmark {
+
+    /** Se puede llevar a 10M con {@code -p filas=10000000} y más heap */
+    @Param({"1000", "100000", "1000000"})
+    int filas;
+
+    private PrestamoService service;
+    private Libro[] libros;
+    private Usuario[] usuarios;
+    private final AtomicLong nuevos = new AtomicLong();
+
+    @Setup
+    public void poblar() {
+        LibroRepositoryImpl libroRepository = new LibroRepositoryImpl();
+        UsuarioRepositoryImpl usuarioRepository = new UsuarioRepositoryImpl();
+        PrestamoRepositoryImpl prestamoRepository = new PrestamoRepositoryImpl();
+        libros = new Libro[Math.max(1, filas / 4)];
+        usuarios = new Usuario[Math.max(1, filas / 10)];
+        Datos.poblar(libros.length, Datos::libro, libroRepository::saveAll);
+        Datos.poblar(usuarios.length, Datos::usuario, usuarioRepository::saveAll);
+        for (int i = 0; i < libros.length; i++) {
+            libros[i] = libroRepository.findById(i + 1L).orElseThrow();
+        }
+        for (int i = 0; i < usuarios.length; i++) {
+            usuarios[i] = usuarioRepository.findById(i + 1L).orElseThrow();
+        }
+        Datos.poblar(filas, this::prestamo, prestamoRepository::saveAll);
+        service = new PrestamoServiceImpl(prestamoRepository, libroRepository, usuarioRepository);
+        nuevos.set(filas);
+    }
+
+    private Prestamo prestamo(long i) {
+        return Datos.prestamo(i, libros[(int) (i % libros.length)], usuarios[(int) (i % usuarios.length)]);
+    }
+
+    private Prestamo prestamoExistente() {
+        long id = Datos.id(filas);
+        Prestamo prestamo = prestamo(id);
+        prestamo.setId(id);
+        return prestamo;
+    }
+
+    @Benchmark
+    public Prestamo buscarPorId() {
+        return service.buscarPorId(Datos.id(filas)).orElseThrow();
+    }
+
+    @Benchmark
+    public long revision() {
+        return service.revision();
+    }
+
+    @Benchmark
+    public List<Prestamo> obtenerTodos() {
+        return service.obtenerTodos();
+    }
+
+    @Benchmark
+    public List<Prestamo> obtenerPagina() {
+        return service.obtenerPagina(Datos.id(filas), Datos.LOTE);
+    }
+
+    /** Página de préstamos con libro y usuario resueltos, como en {@code expand=true} */
+    @Benchmark
+    public List<PrestamoDetalle> obtenerPaginaConDetalle() {
+        return service.conDetalle(service.obtenerPagina(Datos.id(filas), Datos.LOTE));
+    }
+
+    @Benchmark
+    public PrestamoDetalle buscarPorIdConDetalle() {
+        return service.conDetalle(service.buscarPorId(Datos.id(filas)).orElseThrow());
+    }
+
+    @Benchmark
+    public List<Prestamo> buscarPorUsuario() {
+        return service.buscarPorUsuario(usuarios[ThreadLocalRandom.current().nextInt(usuarios.length)]);
+    }
+
+    @Benchmark
+    public List<Prestamo> buscarPorUsuarioId() {
+        return service.buscarPorUsuarioId(Datos.id(usuarios.length));
+    }
+
+    @Benchmark
+    public List<Prestamo> buscarPorLibro() {
+        return service.buscarPorLibro(libros[ThreadLocalRandom.current().nextInt(libros.length)]);
+    }
+
+    @Benchmark
+    public List<Prestamo> buscarPorLibroId() {
+        return service.buscarPorLibroId(Datos.id(libros.length));
+    }
+
+    @Benchmark
+    public List<Prestamo> buscarPrestamosActivos() {
+        return service.buscarPrestamosActivos();
+    }
+
+    @Benchmark
+    public List<Prestamo> buscarPrestamosVencidos() {
+        return service.buscarPrestamosVencidos();
+    }
+
+    @Benchmark
+    public List<Prestamo> buscarPrestamosVencidosMasDe30Dias() {
+        return service.buscarPrestamosVencidos(30);
+    }
+
+    @Benchmark
+    public List<Prestamo> buscarPorVencimientoEntre() {
+        LocalDate desde = Datos.HOY.minusDays(ThreadLocalRandom.current().nextInt(400));
+        return service.buscarPorVencimientoEntre(desde, desde.plusDays(7));
+    }
+
+    @Benchmark
+    public Prestamo guardar() {
+        return service.guardar(prestamoExistente());
+    }
+
+    /**
+     * Préstamo y devolución de un libro al azar. Con varios hilos puede tocar un libro
+     * que otro hilo tiene prestado; ese intento cuenta como una operación más.
+     */
+    @Benchmark
+    public Prestamo prestarYDevolver() {
+        Libro libro = libros[ThreadLocalRandom.current().nextInt(libros.length)];
+        Usuario usuario = usuarios[ThreadLocalRandom.current().nextInt(usuarios.length)];
+        try {
+            Prestamo prestamo = service.prestar(libro.getId(), usuario.getId(), Datos.HOY.plusDays(14));
+            return service.devolver(prestamo.getId());
+        } catch (LibroNoDisponibleException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public Prestamo guardarYEliminar() {
+        Prestamo prestamo = service.guardar(prestamo(nuevos.incrementAndGet()));
+        service.eliminar(prestamo.getId());
+        return prestamo;
+    }
+
+    @Benchmark
+    public List<BulkWriteResult<Prestamo>> guardarTodos() {
+        List<Prestamo> lote = new ArrayList<>(Datos.LOTE);
+        for (Long id : Datos.ids(filas, Datos.LOTE)) {
+            Prestamo prestamo = prestamo(id);
+            prestamo.setId(id);
+            lote.add(prestamo);
+        }
+        return service.guardarTodos(lote);
+    }
+
+    @Benchmark
+    public List<Long> guardarTodosYEliminarTodos() {
+        List<Prestamo> lote = new ArrayList<>(Datos.LOTE);
+        for (int i = 0; i < Datos.LOTE; i++) {
+            lote.add(prestamo(nuevos.incrementAndGet()));
+        }
+        List<Long> ids = new ArrayList<>(Datos.LOTE);
+        for (BulkWriteResult<Prestamo> resultado : service.guardarTodos(lote)) {
+            ids.add(resultado.entidad().getId());
+        }
+        return service.eliminarTodos(ids);
+    }
+
+    @Benchmark
+    public Prestamo buscarYActualizar() {
+        Prestamo prestamo = prestamoExistente();
+        return service.buscarYActualizar(prestamo.getId(), prestamo);
+    }
+
+    @Benchmark
+    public Prestamo buscarYActualizarConVersion() {
+        Prestamo actual = service.buscarPorId(Datos.id(filas)).orElseThrow();
+        Prestamo nuevo = prestamo(actual.getId());
+        return service.buscarYActualizar(actual.getId(), nuevo, actual.getVersion());
+    }
+}
@@ -0,0 +1,136 @@
+package com.prog2.tp4prog2.benchmark;
+
+import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
+import com.prog2.tp4prog2.repository.UsuarioRepository;
+import com.prog2.tp4prog2.repository.impl.UsuarioRepositoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Operaciones de {@link UsuarioRepositoryImpl} sobre {@code filas} usuarios.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UsuarioRepositoryBenchmark {
+
+    /** Se puede llevar a 10M con {@code -p filas=10000000} y más heap */
+    @Param({"1000", "100000", "1000000"})
+    int filas;
+
+    private UsuarioRepository repository;
+    private final AtomicLong nuevos = new AtomicLong();
+
+    @Setup
+    public void poblar() {
+        repository = new UsuarioRepositoryImpl();
+        Datos.poblar(filas, Datos::usuario, repository::saveAll);
+        nuevos.set(filas);
+    }
+
+    @Benchmark
+    public long revision() {
+        return repository.revision();
+    }
+
+    @Benchmark
+    public List<Usuario> findAll() {
+        return repository.findAll();
+    }
+
+    @Benchmark
+    public List<Usuario> findPage() {
+        return repository.findPage(Datos.id(filas), Datos.LOTE);
+    }
+
+    @Benchmark
+    public Optional<Usuario> findById() {
+        return repository.findById(Datos.id(filas));
+    }
+
+    @Benchmark
+    public boolean existsById() {
+        return repository.existsById(Datos.id(filas));
+    }
+
+    @Benchmark
+    public Optional<Usuario> findByEmail() {
+        return repository.findByEmail(Datos.email(Datos.id(filas)));
+    }
+
+    @Benchmark
+    public List<Usuario> findByNombre() {
+        return repository.findByNombre(Datos.nombre(Datos.id(filas)));
+    }
+
+    @Benchmark
+    public List<Usuario> searchByNombre() {
+        return repository.searchByNombre(Datos.autor(Datos.id(filas)), 20);
+    }
+
+    @Benchmark
+    public List<Usuario> findByEstado() {
+        return repository.findByEstado("Suspendido");
+    }
+
+    @Benchmark
+    public Usuario save() {
+        long id = Datos.id(filas);
+        return repository.save(new Usuario(id, Datos.nombre(id), Datos.email(id), "Activo"));
+    }
+
+    @Benchmark
+    public Usuario saveYDeleteById() {
+        Usuario usuario = repository.save(Datos.usuario(nuevos.incrementAndGet()));
+        repository.deleteById(usuario.getId());
+        return usuario;
+    }
+
+    @Benchmark
+    public Optional<Usuario> replaceIfVersion() {
+        Usuario actual = repository.findById(Datos.id(filas)).orElseThrow();
+        Usuario nuevo = new Usuario(actual.getId(), actual.getNombre(), actual.getEmail(), actual.getEstado());
+        return repository.replaceIfVersion(nuevo, actual.getVersion());
+    }
+
+    @Benchmark
+    public List<BulkWriteResult<Usuario>> saveAll() {
+        List<Usuario> lote = new ArrayList<>(Datos.LOTE);
+        for (Long id : Datos.ids(filas, Datos.LOTE)) {
+            lote.add(new Usuario(id, Datos.nombre(id), Datos.email(id), "Activo"));
+        }
+        return repository.saveAll(lote);
+    }
+
+    @Benchmark
+    public List<Long> saveAllYDeleteAllById() {
+        List<Usuario> lote = new ArrayList<>(Datos.LOTE);
+        for (int i = 0; i < Datos.LOTE; i++) {
+            lote.add(Datos.usuario(nuevos.incrementAndGet()));
+        }
+        List<Long> ids = new ArrayList<>(Datos.LOTE);
+        for (BulkWriteResult<Usuario> resultado : repository.saveAll(lote)) {
+            ids.add(resultado.entidad().getId());
+        }
+        return repository.deleteAllById(ids);
+    }
+}
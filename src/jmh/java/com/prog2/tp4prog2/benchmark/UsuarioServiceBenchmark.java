@@ -0,0 +1,135 @@
+package com.prog2.tp4prog2.benchmark;
+
+import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
+import com.prog2.tp4prog2.repository.impl.UsuarioRepositoryImpl;
+import com.prog2.tp4prog2.service.UsuarioService;
+import com.prog2.tp4prog2.service.impl.UsuarioServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Operaciones de {@link UsuarioServiceImpl} sobre el repositorio en memoria, sin Spring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UsuarioServiceBenchmark {
+
+    /** Se puede llevar a 10M con {@code -p filas=10000000} y más heap */
+    @Param({"1000", "100000", "1000000"})
+    int filas;
+
+    private UsuarioService service;
+    private final AtomicLong nuevos = new AtomicLong();
+
+    @Setup
+    public void poblar() {
+        UsuarioRepositoryImpl repository = new UsuarioRepositoryImpl();
+        Datos.poblar(filas, Datos::usuario, repository::saveAll);
+        service = new UsuarioServiceImpl(repository);
+        nuevos.set(filas);
+    }
+
+    private static Usuario usuario(long id) {
+        return new Usuario(id, Datos.nombre(id), Datos.email(id), "Activo");
+    }
+
+    @Benchmark
+    public Usuario buscarPorEmail() {
+        return service.buscarPorEmail(Datos.email(Datos.id(filas))).orElseThrow();
+    }
+
+    @Benchmark
+    public Usuario buscarPorId() {
+        return service.buscarPorId(Datos.id(filas)).orElseThrow();
+    }
+
+    @Benchmark
+    public boolean existePorId() {
+        return service.existePorId(Datos.id(filas));
+    }
+
+    @Benchmark
+    public List<Usuario> buscarPorNombre() {
+        return service.buscarPorNombre(Datos.autor(Datos.id(filas)), 20);
+    }
+
+    @Benchmark
+    public long revision() {
+        return service.revision();
+    }
+
+    @Benchmark
+    public List<Usuario> obtenerTodos() {
+        return service.obtenerTodos();
+    }
+
+    @Benchmark
+    public List<Usuario> obtenerPagina() {
+        return service.obtenerPagina(Datos.id(filas), Datos.LOTE);
+    }
+
+    @Benchmark
+    public Usuario guardar() {
+        return service.guardar(usuario(Datos.id(filas)));
+    }
+
+    @Benchmark
+    public Usuario guardarYEliminar() {
+        Usuario usuario = service.guardar(Datos.usuario(nuevos.incrementAndGet()));
+        service.eliminar(usuario.getId());
+        return usuario;
+    }
+
+    @Benchmark
+    public List<BulkWriteResult<Usuario>> guardarTodos() {
+        List<Usuario> lote = new ArrayList<>(Datos.LOTE);
+        for (Long id : Datos.ids(filas, Datos.LOTE)) {
+            lote.add(usuario(id));
+        }
+        return service.guardarTodos(lote);
+    }
+
+    @Benchmark
+    public List<Long> guardarTodosYEliminarTodos() {
+        List<Usuario> lote = new ArrayList<>(Datos.LOTE);
+        for (int i = 0; i < Datos.LOTE; i++) {
+            lote.add(Datos.usuario(nuevos.incrementAndGet()));
+        }
+        List<Long> ids = new ArrayList<>(Datos.LOTE);
+        for (BulkWriteResult<Usuario> resultado : service.guardarTodos(lote)) {
+            ids.add(resultado.entidad().getId());
+        }
+        return service.eliminarTodos(ids);
+    }
+
+    @Benchmark
+    public Usuario buscarYActualizar() {
+        long id = Datos.id(filas);
+        return service.buscarYActualizar(id, usuario(id));
+    }
+
+    @Benchmark
+    public Usuario buscarYActualizarConVersion() {
+        Usuario actual = service.buscarPorId(Datos.id(filas)).orElseThrow();
+        return service.buscarYActualizar(actual.getId(), usuario(actual.getId()), actual.getVersion());
+    }
+}
@@ -0,0 +1,38 @@
+package com.prog2.tp4prog2.config;
+
+import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.LibroRepository;
+import com.prog2.tp4prog2.repository.UsuarioRepository;
+import com.prog2.tp4prog2.repository.impl.LibroRepositoryImpl;
+import com.prog2.tp4prog2.repository.impl.UsuarioRepositoryImpl;
+import com.prog2.tp4prog2.service.impl.CacheEntidades;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Crea las cachés de lectura que comparten los servicios: los préstamos también
+ * modifican libros y tienen que invalidar la misma caché.
+ */
+@Configuration
+@EnableConfigurationProperties(CacheProperties.class)
+public class CacheConfig {
+
+    @Bean
+    public CacheEntidades<Libro> cacheLibros(LibroRepository libroRepository, CacheProperties properties,
+                                             MeterRegistry registry) {
+        CacheProperties.Cache cache = properties.libros();
+        return new CacheEntidades<>("libros", libroRepository::findById, libroRepository::findByIsbn,
+            Libro::getIsbn, LibroRepositoryImpl::normalizeIsbn, cache.maximumSize(), cache.ttl(), registry);
+    }
+
+    @Bean
+    public CacheEntidades<Usuario> cacheUsuarios(UsuarioRepository usuarioRepository, CacheProperties properties,
+                                                 MeterRegistry registry) {
+        CacheProperties.Cache cache = properties.usuarios();
+        return new CacheEntidades<>("usuarios", usuarioRepository::findById, usuarioRepository::findByEmail,
+            Usuario::getEmail, UsuarioRepositoryImpl::normalizeEmail, cache.maximumSize(), cache.ttl(), registry);
+    }
+}
@@ -0,0 +1,22 @@
+package com.prog2.tp4prog2.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import java.time.Duration;
+
+/**
+ * Configuración de las cachés de lectura de los servicios ({@code tp4.cache.*})
+ *
+ * @param libros caché de libros por ID e ISBN
+ * @param usuarios caché de usuarios por ID y email
+ */
+@ConfigurationProperties(prefix = "tp4.cache")
+public record CacheProperties(@DefaultValue Cache libros, @DefaultValue Cache usuarios) {
+
+    /**
+     * @param maximumSize entidades guardadas como máximo (0 deshabilita la caché)
+     * @param ttl tiempo máximo que una entidad se sirve desde la caché
+     */
+    public record Cache(@DefaultValue("0") long maximumSize, @DefaultValue("10m") Duration ttl) {
+    }
+}
@@ -0,0 +1,94 @@
+package com.prog2.tp4prog2.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Repository;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mide la duración de cada método público de los servicios ({@code tp4.service}) y
+ * de los repositorios ({@code tp4.repository}). Los controladores ya quedan medidos
+ * por {@code http.server.requests}.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public static BeanPostProcessor metricasDeMetodos(ObjectProvider<MeterRegistry> registry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                Class<?> clase = ClassUtils.getUserClass(bean);
+                String metrica = AnnotatedElementUtils.hasAnnotation(clase, Service.class) ? "tp4.service"
+                    : AnnotatedElementUtils.hasAnnotation(clase, Repository.class) ? "tp4.repository"
+                    : null;
+                if (metrica == null || ClassUtils.getAllInterfaces(bean).length == 0) {
+                    return bean;
+                }
+                ProxyFactory proxy = new ProxyFactory(bean);
+                proxy.setInterfaces(ClassUtils.getAllInterfaces(bean));
+                proxy.addAdvice(new Cronometro(registry.getObject(), metrica, clase.getSimpleName()));
+                return proxy.getProxy(ClassUtils.getDefaultClassLoader());
+            }
+        };
+    }
+
+    /**
+     * Registra la duración de cada llamada. El timer de las llamadas exitosas se
+     * resuelve una sola vez por método; las que terminan en excepción llevan su tipo
+     * en la etiqueta {@code exception}.
+     */
+    static final class Cronometro implements MethodInterceptor {
+        private final MeterRegistry registry;
+        private final String metrica;
+        private final String clase;
+        private final Map<Method, Timer> exitosas = new ConcurrentHashMap<>();
+
+        Cronometro(MeterRegistry registry, String metrica, String clase) {
+            this.registry = registry;
+            this.metrica = metrica;
+            this.clase = clase;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocacion) throws Throwable {
+            Method metodo = invocacion.getMethod();
+            if (metodo.getDeclaringClass() == Object.class) {
+                return invocacion.proceed();
+            }
+            long inicio = System.nanoTime();
+            Object resultado;
+            try {
+                resultado = invocacion.proceed();
+            } catch (Throwable e) {
+                timer(metodo, e.getClass().getSimpleName()).record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+                throw e;
+            }
+            exitosas.computeIfAbsent(metodo, m -> timer(m, "none"))
+                .record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+            return resultado;
+        }
+
+        private Timer timer(Method metodo, String excepcion) {
+            return Timer.builder(metrica)
+                .tag("class", clase)
+                .tag("method", metodo.getName())
+                .tag("exception", excepcion)
+                .register(registry);
+        }
+    }
+}
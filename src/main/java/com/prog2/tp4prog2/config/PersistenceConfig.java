@@ -0,0 +1,23 @@
+package com.prog2.tp4prog2.config;
+
+import com.prog2.tp4prog2.repository.persistence.RepositoryPersistence;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Crea el acceso a persistencia que reciben los repositorios
+ */
+@Configuration
+@EnableConfigurationProperties(PersistenceProperties.class)
+public class PersistenceConfig {
+
+    @Bean(destroyMethod = "close")
+    public RepositoryPersistence repositoryPersistence(PersistenceProperties properties) {
+        if (!properties.enabled()) {
+            return RepositoryPersistence.disabled();
+        }
+        return new RepositoryPersistence(properties.directory(), properties.fsync(), properties.fsyncInterval(),
+            properties.snapshotInterval(), properties.snapshotLogSize().toBytes(), properties.archiveRetention());
+    }
+}
@@ -0,0 +1,32 @@
+package com.prog2.tp4prog2.config;
+
+import com.prog2.tp4prog2.repository.persistence.FsyncPolicy;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Period;
+
+/**
+ * Configuración del modo durable de los repositorios ({@code tp4.persistence.*})
+ *
+ * @param enabled si los repositorios escriben un log en disco
+ * @param directory directorio de los archivos de log
+ * @param fsync política de fsync
+ * @param fsyncInterval período de fsync cuando la política es {@code interval}
+ * @param snapshotInterval tiempo máximo entre instantáneas con escrituras pendientes (0 para deshabilitar)
+ * @param snapshotLogSize tamaño de log que dispara una instantánea (0 para deshabilitar)
+ * @param archiveRetention antigüedad de la devolución a partir de la cual los préstamos pasan al
+ *                         archivo histórico (0 para deshabilitar)
+ */
+@ConfigurationProperties(prefix = "tp4.persistence")
+public record PersistenceProperties(
+    @DefaultValue("false") boolean enabled,
+    @DefaultValue("data") Path directory,
+    @DefaultValue("group") FsyncPolicy fsync,
+    @DefaultValue("100ms") Duration fsyncInterval,
+    @DefaultValue("10m") Duration snapshotInterval,
+    @DefaultValue("64MB") DataSize snapshotLogSize,
+    @DefaultValue("0d") Period archiveRetention) {
+}
@@ -0,0 +1,68 @@
+package com.prog2.tp4prog2.controller;
+
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.databind.ser.BeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.PropertyFilter;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Propiedades pedidas con {@code fields=}, separadas por comas. Las anidadas se
+ * nombran con puntos ({@code libro.titulo}); nombrar un objeto incluye todas sus
+ * propiedades. Viaja como {@link FilterProvider} de la escritura para que
+ * {@link ModuloProyeccion} la encuentre sin estado por hilo.
+ */
+final class Campos extends FilterProvider {
+    private final Set<String> pedidos = new HashSet<>();
+    private final Set<String> contenedores = new HashSet<>();
+
+    Campos(String fields) {
+        for (String campo : fields.split(",")) {
+            campo = campo.trim();
+            if (campo.isEmpty()) {
+                continue;
+            }
+            pedidos.add(campo);
+            for (int punto = campo.indexOf('.'); punto > 0; punto = campo.indexOf('.', punto + 1)) {
+                contenedores.add(campo.substring(0, punto));
+            }
+        }
+    }
+
+    /**
+     * @param contexto contexto de salida del objeto que se está escribiendo
+     * @param propiedad nombre de la propiedad
+     * @return true si la propiedad fue pedida, contiene alguna pedida o está dentro de un objeto pedido
+     */
+    boolean incluye(JsonStreamContext contexto, String propiedad) {
+        String ruta = propiedad;
+        // El contexto actual es el del objeto; los objetos que lo contienen aportan el nombre bajo el que se escribió
+        for (JsonStreamContext padre = contexto.getParent(); padre != null; padre = padre.getParent()) {
+            if (padre.inObject()) {
+                ruta = padre.getCurrentName() + "." + ruta;
+            }
+        }
+        if (pedidos.contains(ruta) || contenedores.contains(ruta)) {
+            return true;
+        }
+        for (int punto = ruta.indexOf('.'); punto > 0; punto = ruta.indexOf('.', punto + 1)) {
+            if (pedidos.contains(ruta.substring(0, punto))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @Deprecated
+    public BeanPropertyFilter findFilter(Object filterId) {
+        return null;
+    }
+
+    @Override
+    public PropertyFilter findPropertyFilter(Object filterId, Object valueToFilter) {
+        return null;
+    }
+}
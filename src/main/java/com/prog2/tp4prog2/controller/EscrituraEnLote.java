@@ -0,0 +1,134 @@
+package com.prog2.tp4prog2.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.prog2.tp4prog2.model.Identificable;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
+import com.prog2.tp4prog2.repository.DuplicateKeyException;
+import com.prog2.tp4prog2.service.LibroNoDisponibleException;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Altas, modificaciones y bajas en lote. Los elementos se envían al servicio en
+ * grupos de {@link #TAMANIO_LOTE}, y cada elemento recibe su propio resultado
+ * con el código que hubiera tenido la operación individual.
+ */
+final class EscrituraEnLote {
+    static final int TAMANIO_LOTE = 1000;
+
+    private EscrituraEnLote() {
+    }
+
+    /**
+     * @param elementos entidades recibidas; las que traen ID se actualizan
+     * @param guardarTodos guarda un grupo de entidades
+     * @return un resultado por elemento, en el mismo orden
+     */
+    static <T extends Identificable> List<ResultadoLote> guardar(
+            List<T> elementos, Function<List<T>, List<BulkWriteResult<T>>> guardarTodos) {
+        List<ResultadoLote> resultados = new ArrayList<>(elementos.size());
+        for (int desde = 0; desde < elementos.size(); desde += TAMANIO_LOTE) {
+            guardarGrupo(elementos.subList(desde, Math.min(desde + TAMANIO_LOTE, elementos.size())),
+                guardarTodos, resultados);
+        }
+        return resultados;
+    }
+
+    /**
+     * Lee entidades en formato NDJSON a medida que llegan, sin cargar todo el cuerpo
+     * en memoria. Si una línea no es válida se informa como rechazada y se deja de
+     * leer; lo anterior ya quedó guardado.
+     *
+     * @param reader lector configurado para el tipo de entidad
+     * @param cuerpo cuerpo de la solicitud
+     * @param guardarTodos guarda un grupo de entidades
+     * @return un resultado por elemento leído, en el mismo orden
+     */
+    static <T extends Identificable> List<ResultadoLote> guardarNdjson(
+            ObjectReader reader, InputStream cuerpo,
+            Function<List<T>, List<BulkWriteResult<T>>> guardarTodos) throws IOException {
+        List<ResultadoLote> resultados = new ArrayList<>();
+        List<T> grupo = new ArrayList<>(TAMANIO_LOTE);
+        try (MappingIterator<T> iterador = reader.readValues(cuerpo)) {
+            while (iterador.hasNextValue()) {
+                grupo.add(iterador.nextValue());
+                if (grupo.size() == TAMANIO_LOTE) {
+                    guardarGrupo(grupo, guardarTodos, resultados);
+                    grupo.clear();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            guardarGrupo(grupo, guardarTodos, resultados);
+            resultados.add(new ResultadoLote(resultados.size(), HttpStatus.BAD_REQUEST.value(), null,
+                e.getOriginalMessage()));
+            return resultados;
+        }
+        guardarGrupo(grupo, guardarTodos, resultados);
+        return resultados;
+    }
+
+    /**
+     * @param ids IDs recibidos
+     * @param eliminarTodos elimina los IDs y devuelve los que existían
+     * @return un resultado por ID: 204 si se eliminó, 404 si no existía
+     */
+    static List<ResultadoLote> eliminar(List<Long> ids, Function<Collection<Long>, List<Long>> eliminarTodos) {
+        Set<Long> eliminados = new HashSet<>();
+        for (int desde = 0; desde < ids.size(); desde += TAMANIO_LOTE) {
+            eliminados.addAll(eliminarTodos.apply(ids.subList(desde, Math.min(desde + TAMANIO_LOTE, ids.size()))));
+        }
+        List<ResultadoLote> resultados = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Long id = ids.get(i);
+            HttpStatus estado = id != null && eliminados.contains(id) ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND;
+            resultados.add(new ResultadoLote(i, estado.value(), id, null));
+        }
+        return resultados;
+    }
+
+    private static <T extends Identificable> void guardarGrupo(
+            List<T> grupo, Function<List<T>, List<BulkWriteResult<T>>> guardarTodos,
+            List<ResultadoLote> resultados) {
+        if (grupo.isEmpty()) {
+            return;
+        }
+        boolean[] existentes = new boolean[grupo.size()];
+        for (int i = 0; i < grupo.size(); i++) {
+            existentes[i] = grupo.get(i) != null && grupo.get(i).getId() != null;
+        }
+        List<BulkWriteResult<T>> guardados = guardarTodos.apply(grupo);
+        for (int i = 0; i < guardados.size(); i++) {
+            BulkWriteResult<T> resultado = guardados.get(i);
+            if (resultado.isSaved()) {
+                HttpStatus estado = existentes[i] ? HttpStatus.OK : HttpStatus.CREATED;
+                resultados.add(new ResultadoLote(resultados.size(), estado.value(),
+                    resultado.entidad().getId(), null));
+            } else {
+                // El ID asignado a un alta rechazada no identifica nada, así que no se informa
+                Long id = existentes[i] ? resultado.entidad().getId() : null;
+                resultados.add(new ResultadoLote(resultados.size(), estado(resultado.error()).value(), id,
+                    resultado.error().getMessage()));
+            }
+        }
+    }
+
+    private static HttpStatus estado(RuntimeException error) {
+        if (error instanceof DuplicateKeyException || error instanceof LibroNoDisponibleException) {
+            return HttpStatus.CONFLICT;
+        }
+        if (error instanceof IllegalArgumentException) {
+            return HttpStatus.BAD_REQUEST;
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+}
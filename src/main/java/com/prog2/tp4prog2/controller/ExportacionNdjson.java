@@ -0,0 +1,59 @@
+package com.prog2.tp4prog2.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.prog2.tp4prog2.model.Identificable;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Exportación de colecciones completas como NDJSON (un objeto JSON por línea).
+ * Los elementos se leen por páginas ordenadas por ID y se escriben directamente
+ * en la respuesta, así que la memoria usada no depende del tamaño de la colección.
+ */
+final class ExportacionNdjson {
+    static final int TAMANIO_LOTE = 1000;
+
+    private ExportacionNdjson() {
+    }
+
+    /**
+     * @param objectMapper mapper usado para serializar cada elemento
+     * @param pagina obtiene la página siguiente al ID dado (null para la primera)
+     * @return respuesta 200 que escribe la colección a medida que la recorre
+     */
+    static <T extends Identificable> ResponseEntity<StreamingResponseBody> respuesta(
+            ObjectMapper objectMapper, BiFunction<Long, Integer, List<T>> pagina) {
+        // Sin separador entre valores raíz: cada línea termina con el salto que se escribe a mano
+        ObjectWriter writer = objectMapper.writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+            .withRootValueSeparator((String) null);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = writer.createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                Long despuesDe = null;
+                List<T> lote;
+                do {
+                    lote = pagina.apply(despuesDe, TAMANIO_LOTE);
+                    for (T elemento : lote) {
+                        writer.writeValue(generator, elemento);
+                        generator.writeRaw('\n');
+                    }
+                    generator.flush();
+                    if (!lote.isEmpty()) {
+                        despuesDe = lote.get(lote.size() - 1).getId();
+                    }
+                } while (lote.size() == TAMANIO_LOTE);
+            }
+        };
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(body);
+    }
+}
@@ -0,0 +1,111 @@
+package com.prog2.tp4prog2.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.prog2.tp4prog2.model.Identificable;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * JSON ya serializado de las entidades más leídas, junto con la versión de la que
+ * salió. Si la entidad leída tiene otra versión se vuelve a serializar, así que una
+ * escritura nunca devuelve bytes viejos; las bajas se invalidan porque una entidad
+ * recreada con el mismo ID vuelve a empezar en la versión 1.
+ *
+ * <p>Antes de guardar se vuelve a leer la entidad dentro del {@code compute} de la
+ * caché, que es atómico respecto de {@link #invalidar}: como la invalidación llega
+ * después de la escritura, una lectura lenta no puede dejar guardados los bytes de
+ * una entidad ya eliminada o modificada.
+ */
+final class JsonPorVersion {
+    private final ObjectWriter writer;
+    private final Cache<Long, Codificada> cache;
+    private final Function<Long, Optional<? extends Identificable>> actual;
+
+    private record Codificada(long version, byte[] json) {
+    }
+
+    /**
+     * @param objectMapper mapper usado para serializar las entidades
+     * @param tamanioMaximo entidades guardadas como máximo (0 deshabilita la caché)
+     * @param actual lectura de la entidad almacenada, para comprobar que sigue vigente antes de guardarla
+     */
+    JsonPorVersion(ObjectMapper objectMapper, long tamanioMaximo,
+                   Function<Long, Optional<? extends Identificable>> actual) {
+        this.writer = objectMapper.writer();
+        this.cache = tamanioMaximo > 0 ? Caffeine.newBuilder().maximumSize(tamanioMaximo).build() : null;
+        this.actual = actual;
+    }
+
+    /**
+     * @return true si la caché está habilitada
+     */
+    boolean habilitada() {
+        return cache != null;
+    }
+
+    /**
+     * @param entidad entidad a devolver
+     * @param ifNoneMatch valor del encabezado {@code If-None-Match}, o null si no se envió
+     * @return respuesta 304 sin cuerpo si el cliente ya tiene esta versión, o 200 con el JSON de la entidad y su ETag
+     */
+    ResponseEntity<byte[]> respuesta(Identificable entidad, String ifNoneMatch) {
+        String etag = Precondiciones.etag(entidad.getVersion());
+        if (Precondiciones.coincide(ifNoneMatch, etag)) {
+            return Precondiciones.noModificado(etag);
+        }
+        return ResponseEntity.ok().eTag(etag).contentType(MediaType.APPLICATION_JSON).body(json(entidad));
+    }
+
+    /**
+     * @param entidad entidad a serializar
+     * @return el JSON de la entidad en su versión actual
+     */
+    byte[] json(Identificable entidad) {
+        Codificada codificada = cache.getIfPresent(entidad.getId());
+        if (codificada != null && codificada.version() == entidad.getVersion()) {
+            return codificada.json();
+        }
+        byte[] json;
+        try {
+            json = writer.writeValueAsBytes(entidad);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        Codificada nueva = new Codificada(entidad.getVersion(), json);
+        cache.asMap().compute(entidad.getId(), (id, guardada) -> vigente(entidad) ? nueva : guardada);
+        return json;
+    }
+
+    private boolean vigente(Identificable entidad) {
+        return actual.apply(entidad.getId())
+            .filter(almacenada -> almacenada.getVersion() == entidad.getVersion())
+            .isPresent();
+    }
+
+    /**
+     * @param id identificador de la entidad modificada o eliminada
+     */
+    void invalidar(Long id) {
+        if (cache != null && id != null) {
+            cache.invalidate(id);
+        }
+    }
+
+    /**
+     * @param ids identificadores de las entidades modificadas o eliminadas
+     */
+    void invalidarTodos(Collection<Long> ids) {
+        if (cache != null) {
+            ids.forEach(this::invalidar);
+        }
+    }
+}
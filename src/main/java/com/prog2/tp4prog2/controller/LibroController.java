@@ -1,13 +1,23 @@
 package com.prog2.tp4prog2.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.repository.DuplicateKeyException;
+import com.prog2.tp4prog2.service.ModificacionConcurrenteException;
 import com.prog2.tp4prog2.service.LibroService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Controlador REST para gestionar operaciones CRUD sobre libros.
@@ -16,38 +26,107 @@ import java.util.List;
 @RestController
 @RequestMapping("/api/libros")
 public class LibroController {
+    private static final int MAX_RESULTADOS_BUSQUEDA = 100;
+
     private final LibroService libroService;
+    private final ObjectMapper objectMapper;
+    private final JsonPorVersion json;
 
+    /**
+     * @param jsonCacheSize libros cuyo JSON se guarda ya serializado para {@code GET /{id}}
+     *        ({@code tp4.cache.libros-json.maximum-size}, 0 para deshabilitarlo)
+     */
     @Autowired
-    public LibroController(LibroService libroService) {
+    public LibroController(LibroService libroService, ObjectMapper objectMapper,
+                           @Value("${tp4.cache.libros-json.maximum-size:0}") long jsonCacheSize) {
         this.libroService = libroService;
+        this.objectMapper = objectMapper;
+        this.json = new JsonPorVersion(objectMapper, jsonCacheSize, libroService::buscarPorId);
     }
 
     /**
      * Obtiene todos los libros disponibles en el sistema.
+     * Con {@code limit} o {@code after} devuelve una página ordenada por ID; si puede
+     * haber más, el encabezado {@code Link} (rel="next") apunta a la siguiente.
      * 
-     * @return ResponseEntity con la lista de todos los libros y código de estado 200 (OK)
+     * @param limit Cantidad máxima de elementos por página (entre 1 y 1000, por defecto 100)
+     * @param after ID del último elemento de la página anterior
+     * @param ifNoneMatch ETag de una respuesta anterior; si la colección no cambió desde entonces
+     *        se responde 304 sin leerla
+     * @return ResponseEntity con la lista, la revisión de la colección como {@code ETag} y código
+     *         de estado 200 (OK), código 304 (Not Modified) si el cliente ya tiene esta revisión,
+     *         o código 400 (Bad Request) si el límite está fuera de rango
      */
     @GetMapping
-    public ResponseEntity<List<Libro>> obtenerTodos() {
-        return ResponseEntity.ok(libroService.obtenerTodos());
+    public ResponseEntity<List<Libro>> obtenerTodos(@RequestParam(required = false) Integer limit,
+                                                    @RequestParam(required = false) Long after,
+                                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        int limite = Paginacion.limite(limit);
+        if (limite < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        // La revisión se lee antes que los datos: si cambia durante la lectura, el próximo pedido no coincide
+        String etag = Precondiciones.etagColeccion(libroService.revision());
+        if (Precondiciones.coincide(ifNoneMatch, etag)) {
+            return Precondiciones.noModificado(etag);
+        }
+        if (limit == null && after == null) {
+            return ResponseEntity.ok().eTag(etag).body(libroService.obtenerTodos());
+        }
+        return Paginacion.respuesta(libroService.obtenerPagina(after, limite), limite, etag);
+    }
+
+    /**
+     * Exporta todos los libros como NDJSON (un objeto JSON por línea), escribiendo la
+     * respuesta a medida que se recorre la colección.
+     * 
+     * @return ResponseEntity con el contenido {@code application/x-ndjson} y código de estado 200 (OK)
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportar() {
+        return ExportacionNdjson.respuesta(objectMapper, libroService::obtenerPagina);
+    }
+
+    /**
+     * Busca libros por título y autor. La búsqueda no distingue mayúsculas ni tildes
+     * y ordena los resultados por relevancia.
+     * 
+     * @param q Uno o más términos a buscar
+     * @param limit Cantidad máxima de resultados (entre 1 y 100, por defecto 20)
+     * @return ResponseEntity con los libros encontrados y código de estado 200 (OK),
+     *         o código 400 (Bad Request) si el límite está fuera de rango
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<Libro>> buscar(@RequestParam String q,
+                                              @RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1 || limit > MAX_RESULTADOS_BUSQUEDA) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(libroService.buscar(q, limit));
     }
 
     /**
      * Obtiene un libro específico por su ID.
      * 
      * @param id El identificador único del libro a buscar
-     * @return ResponseEntity con el libro encontrado y código de estado 200 (OK),
-     *         o código 404 (Not Found) si no existe
+     * @param fields Propiedades a incluir, separadas por comas (todas si no se indica)
+     * @param ifNoneMatch ETag de una respuesta anterior
+     * @return ResponseEntity con el libro encontrado, su versión como {@code ETag} y código
+     *         de estado 200 (OK), código 304 (Not Modified) si la versión coincide con
+     *         {@code ifNoneMatch}, o código 404 (Not Found) si no existe
      */
     @GetMapping("/{id}")
-    public ResponseEntity<Libro> obtenerPorId(@PathVariable Long id) {
-        try {
-            Libro libro = libroService.buscarPorId(id);
-            return ResponseEntity.ok(libro);
-        } catch (RuntimeException e) {
+    public ResponseEntity<?> obtenerPorId(@PathVariable Long id,
+                                          @RequestParam(name = ProyeccionDeCampos.PARAMETRO, required = false) String fields,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Optional<Libro> libro = libroService.buscarPorId(id);
+        if (libro.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
+        // Una proyección se serializa aparte: el JSON guardado tiene todas las propiedades
+        return json.habilitada() && fields == null
+            ? json.respuesta(libro.get(), ifNoneMatch)
+            : Precondiciones.conEtag(libro.get(), ifNoneMatch);
     }
 
     /**
@@ -59,24 +138,24 @@ public class LibroController {
      */
     @GetMapping("/isbn/{isbn}")
     public ResponseEntity<Libro> obtenerPorIsbn(@PathVariable String isbn) {
-        try {
-            Libro libro = libroService.buscarPorIsbn(isbn);
-            return ResponseEntity.ok(libro);
-        } catch (RuntimeException e) {
-            return ResponseEntity.notFound().build();
-        }
+        return ResponseEntity.of(libroService.buscarPorIsbn(isbn));
     }
 
     /**
      * Crea un nuevo libro en el sistema.
      * 
      * @param libro El objeto Libro con los datos a guardar
-     * @return ResponseEntity con el libro creado y código de estado 201 (Created)
+     * @return ResponseEntity con el libro creado y código de estado 201 (Created),
+     *         o código 409 (Conflict) si ya existe un libro con el mismo ISBN
      */
     @PostMapping
     public ResponseEntity<Libro> crear(@RequestBody Libro libro) {
-        Libro nuevoLibro = libroService.guardar(libro);
-        return new ResponseEntity<>(nuevoLibro, HttpStatus.CREATED);
+        try {
+            Libro nuevoLibro = libroService.guardar(libro);
+            return new ResponseEntity<>(nuevoLibro, HttpStatus.CREATED);
+        } catch (DuplicateKeyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
     }
 
     /**
@@ -84,19 +163,72 @@ public class LibroController {
      * 
      * @param id El identificador único del libro a actualizar
      * @param libro El objeto Libro con los datos actualizados
-     * @return ResponseEntity con el libro actualizado y código de estado 200 (OK),
-     *         o código 404 (Not Found) si no existe
+     * @param ifMatch Opcional; ETag leído por el cliente. Si el libro cambió desde entonces no se actualiza
+     * @return ResponseEntity con el libro actualizado, su nuevo {@code ETag} y código de estado 200 (OK),
+     *         código 404 (Not Found) si no existe, código 412 (Precondition Failed) si
+     *         no coincide con {@code If-Match}, o código 409 (Conflict) si el
+     *         nuevo ISBN ya pertenece a otro libro
      */
     @PutMapping("/{id}")
-    public ResponseEntity<Libro> actualizar(@PathVariable Long id, @RequestBody Libro libro) {
+    public ResponseEntity<Libro> actualizar(@PathVariable Long id, @RequestBody Libro libro,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         try {
-            Libro libroActualizado = libroService.buscarYActualizar(id, libro);
-            return ResponseEntity.ok(libroActualizado);
+            Long version = Precondiciones.versionEsperada(ifMatch);
+            Libro libroActualizado = version == null
+                ? libroService.buscarYActualizar(id, libro)
+                : libroService.buscarYActualizar(id, libro, version);
+            json.invalidar(id);
+            return Precondiciones.conEtag(libroActualizado);
+        } catch (ModificacionConcurrenteException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        } catch (DuplicateKeyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
     }
 
+    /**
+     * Crea o actualiza varios libros en una sola solicitud. Los que traen ID se
+     * actualizan; el resto se crean. Un elemento rechazado no impide guardar los demás.
+     * 
+     * @param libros Arreglo JSON con los libros a guardar
+     * @return ResponseEntity con un resultado por elemento y código de estado 200 (OK);
+     *         cada resultado indica 201 (creado), 200 (actualizado), 409 (ISBN repetido) o 400 (elemento vacío o inválido)
+     */
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<ResultadoLote>> guardarEnLote(@RequestBody List<Libro> libros) {
+        return ResponseEntity.ok(EscrituraEnLote.guardar(libros, libroService::guardarTodos));
+    }
+
+    /**
+     * Igual que {@link #guardarEnLote(List)}, pero recibe NDJSON (un libro por línea)
+     * y lo procesa a medida que llega, para importar colecciones grandes.
+     * 
+     * @param cuerpo Cuerpo de la solicitud en formato {@code application/x-ndjson}
+     * @return ResponseEntity con un resultado por línea y código de estado 200 (OK);
+     *         una línea mal formada se informa con 400 y termina la lectura
+     */
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<List<ResultadoLote>> guardarEnLoteNdjson(InputStream cuerpo) throws IOException {
+        return ResponseEntity.ok(EscrituraEnLote.guardarNdjson(
+            objectMapper.readerFor(Libro.class), cuerpo, libroService::guardarTodos));
+    }
+
+    /**
+     * Elimina varios libros en una sola solicitud.
+     * 
+     * @param ids Arreglo JSON con los IDs a eliminar
+     * @return ResponseEntity con un resultado por ID y código de estado 200 (OK);
+     *         cada resultado indica 204 (eliminado) o 404 (no existía)
+     */
+    @DeleteMapping("/bulk")
+    public ResponseEntity<List<ResultadoLote>> eliminarEnLote(@RequestBody List<Long> ids) {
+        List<ResultadoLote> resultados = EscrituraEnLote.eliminar(ids, libroService::eliminarTodos);
+        json.invalidarTodos(ids);
+        return ResponseEntity.ok(resultados);
+    }
+
     /**
      * Elimina un libro existente identificado por su ID.
      * 
@@ -108,6 +240,7 @@ public class LibroController {
     public ResponseEntity<Void> eliminar(@PathVariable Long id) {
         try {
             libroService.eliminar(id);
+            json.invalidar(id);
             return ResponseEntity.noContent().build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
@@ -0,0 +1,57 @@
+package com.prog2.tp4prog2.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.prog2.tp4prog2.model.Identificable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hace que las entidades respeten {@code fields=}: cada propiedad se escribe solo
+ * si la escritura lleva {@link Campos} y la incluye. Las entidades se serializan
+ * tal cual, sin copiarlas a otro objeto; sin {@link Campos} se escriben completas.
+ */
+@Component
+class ModuloProyeccion extends SimpleModule {
+
+    ModuloProyeccion() {
+        super("proyeccion");
+        setSerializerModifier(new BeanSerializerModifier() {
+            @Override
+            public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription descripcion,
+                                                             List<BeanPropertyWriter> propiedades) {
+                if (!Identificable.class.isAssignableFrom(descripcion.getBeanClass())) {
+                    return propiedades;
+                }
+                List<BeanPropertyWriter> filtradas = new ArrayList<>(propiedades.size());
+                for (BeanPropertyWriter propiedad : propiedades) {
+                    filtradas.add(new Proyectada(propiedad));
+                }
+                return filtradas;
+            }
+        });
+    }
+
+    private static final class Proyectada extends BeanPropertyWriter {
+
+        Proyectada(BeanPropertyWriter original) {
+            super(original);
+        }
+
+        @Override
+        public void serializeAsField(Object bean, JsonGenerator gen, SerializerProvider prov) throws Exception {
+            if (prov.getConfig().getFilterProvider() instanceof Campos campos
+                    && !campos.incluye(gen.getOutputContext(), getName())) {
+                return;
+            }
+            super.serializeAsField(bean, gen, prov);
+        }
+    }
+}
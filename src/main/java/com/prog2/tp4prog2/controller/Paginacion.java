@@ -0,0 +1,49 @@
+package com.prog2.tp4prog2.controller;
+
+import com.prog2.tp4prog2.model.Identificable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.util.List;
+
+/**
+ * Respuestas de los listados paginados por cursor: el cuerpo es la página y, si
+ * puede haber más elementos, el encabezado {@code Link} apunta a la siguiente.
+ */
+final class Paginacion {
+    static final int LIMITE_POR_DEFECTO = 100;
+    static final int LIMITE_MAXIMO = 1000;
+
+    private Paginacion() {
+    }
+
+    /**
+     * @param limit límite pedido, o null si no se indicó
+     * @return el límite a usar, o -1 si está fuera de rango
+     */
+    static int limite(Integer limit) {
+        int limite = limit != null ? limit : LIMITE_POR_DEFECTO;
+        return limite >= 1 && limite <= LIMITE_MAXIMO ? limite : -1;
+    }
+
+    /**
+     * @param pagina elementos de la página, ordenados por ID
+     * @param limite límite usado para obtenerla
+     * @param etag ETag de la colección
+     * @return respuesta 200 con la página y el enlace a la siguiente si la página está completa
+     */
+    static <L extends List<? extends Identificable>> ResponseEntity<L> respuesta(L pagina, int limite, String etag) {
+        if (pagina.size() < limite) {
+            return ResponseEntity.ok().eTag(etag).body(pagina);
+        }
+        String siguiente = ServletUriComponentsBuilder.fromCurrentRequest()
+            .replaceQueryParam("limit", limite)
+            .replaceQueryParam("after", pagina.get(pagina.size() - 1).getId())
+            .toUriString();
+        return ResponseEntity.ok()
+            .eTag(etag)
+            .header(HttpHeaders.LINK, "<" + siguiente + ">; rel=\"next\"")
+            .body(pagina);
+    }
+}
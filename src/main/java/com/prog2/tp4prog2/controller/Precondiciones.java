@@ -0,0 +1,133 @@
+package com.prog2.tp4prog2.controller;
+
+import com.prog2.tp4prog2.model.Identificable;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * ETags derivados de la versión de cada entidad o de la revisión de cada colección,
+ * y lectura de los encabezados {@code If-Match} (actualizaciones condicionales) e
+ * {@code If-None-Match} (lecturas condicionales).
+ */
+final class Precondiciones {
+    /** Versión que no coincide con ninguna entidad: la condición falla siempre */
+    static final long NINGUNA = -1;
+
+    private Precondiciones() {
+    }
+
+    /**
+     * @param versiones versión de la entidad, seguida de las de las entidades que la
+     *        respuesta incluye resueltas
+     * @return ETag fuerte, entre comillas
+     */
+    static String etag(long... versiones) {
+        return "\"" + unir(versiones) + "\"";
+    }
+
+    /**
+     * Usa otro formato que {@link #etag(long...)} para que la etiqueta de un listado no
+     * pueda pasar por la versión de una entidad en {@code If-Match}.
+     *
+     * @param revisiones revisión de la colección, seguida de las de las colecciones cuyas
+     *        entidades el listado incluye resueltas
+     * @return ETag fuerte de los listados, entre comillas
+     */
+    static String etagColeccion(long... revisiones) {
+        return "\"r" + unir(revisiones) + "\"";
+    }
+
+    private static String unir(long[] valores) {
+        StringBuilder unidos = new StringBuilder();
+        for (long valor : valores) {
+            if (!unidos.isEmpty()) {
+                unidos.append('.');
+            }
+            unidos.append(valor);
+        }
+        return unidos.toString();
+    }
+
+    /**
+     * @param entidad entidad a devolver
+     * @return respuesta 200 con la entidad y su ETag
+     */
+    static <T extends Identificable> ResponseEntity<T> conEtag(T entidad) {
+        return ResponseEntity.ok().eTag(etag(entidad.getVersion())).body(entidad);
+    }
+
+    /**
+     * @param entidad entidad a devolver
+     * @param ifNoneMatch valor del encabezado {@code If-None-Match}, o null si no se envió
+     * @return respuesta 304 sin cuerpo si el cliente ya tiene esta versión, o 200 con la entidad y su ETag
+     */
+    static <T extends Identificable> ResponseEntity<T> conEtag(T entidad, String ifNoneMatch) {
+        return conEtag(entidad, etag(entidad.getVersion()), ifNoneMatch);
+    }
+
+    /**
+     * @param cuerpo cuerpo a devolver
+     * @param etag ETag actual del cuerpo
+     * @param ifNoneMatch valor del encabezado {@code If-None-Match}, o null si no se envió
+     * @return respuesta 304 sin cuerpo si el cliente ya tiene esta etiqueta, o 200 con el cuerpo y su ETag
+     */
+    static <T> ResponseEntity<T> conEtag(T cuerpo, String etag, String ifNoneMatch) {
+        return coincide(ifNoneMatch, etag) ? noModificado(etag) : ResponseEntity.ok().eTag(etag).body(cuerpo);
+    }
+
+    /**
+     * Interpreta {@code If-None-Match}: una lista de etiquetas separadas por comas o
+     * {@code *}. Como indica la especificación, la comparación es débil (se ignora el
+     * prefijo {@code W/}).
+     *
+     * @param ifNoneMatch valor del encabezado, o null si no se envió
+     * @param etag ETag actual del recurso
+     * @return true si el cliente ya tiene la representación actual
+     */
+    static boolean coincide(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String etiqueta : ifNoneMatch.split(",")) {
+            etiqueta = etiqueta.trim();
+            if (etiqueta.startsWith("W/")) {
+                etiqueta = etiqueta.substring(2);
+            }
+            if (etiqueta.equals("*") || etiqueta.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param etag ETag actual del recurso
+     * @return respuesta 304 con el ETag y sin cuerpo
+     */
+    static <T> ResponseEntity<T> noModificado(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    /**
+     * Interpreta {@code If-Match}. Se admite una sola etiqueta; como la comparación
+     * es fuerte, una etiqueta débil ({@code W/"..."}) o con otro formato nunca coincide.
+     *
+     * @param ifMatch valor del encabezado, o null si no se envió
+     * @return la versión exigida, {@link #NINGUNA} si no puede coincidir, o null si
+     *         no hay condición (encabezado ausente o {@code *})
+     */
+    static Long versionEsperada(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String etiqueta = ifMatch.trim();
+        if (etiqueta.length() < 3 || etiqueta.charAt(0) != '"' || etiqueta.charAt(etiqueta.length() - 1) != '"') {
+            return NINGUNA;
+        }
+        try {
+            return Long.parseLong(etiqueta.substring(1, etiqueta.length() - 1));
+        } catch (NumberFormatException e) {
+            return NINGUNA;
+        }
+    }
+}
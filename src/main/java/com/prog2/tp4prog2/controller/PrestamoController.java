@@ -1,22 +1,36 @@
 package com.prog2.tp4prog2.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prog2.tp4prog2.model.Identificable;
 import com.prog2.tp4prog2.model.Prestamo;
-import com.prog2.tp4prog2.model.Libro;
-import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.model.PrestamoDetalle;
+import com.prog2.tp4prog2.service.LibroNoDisponibleException;
+import com.prog2.tp4prog2.service.PrestamoDevueltoException;
 import com.prog2.tp4prog2.service.PrestamoService;
 import com.prog2.tp4prog2.service.LibroService;
+import com.prog2.tp4prog2.service.ModificacionConcurrenteException;
 import com.prog2.tp4prog2.service.UsuarioService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Controlador REST para gestionar operaciones CRUD sobre préstamos.
  * Proporciona endpoints para crear, leer, actualizar y eliminar préstamos,
  * así como para consultar préstamos por usuario, libro, y estado (activos/vencidos).
+ * Los préstamos referencian al libro y al usuario por ID; las consultas aceptan
+ * {@code expand=true} para incluirlos completos.
  */
 @RestController
 @RequestMapping("/api/prestamos")
@@ -24,108 +38,317 @@ public class PrestamoController {
     private final PrestamoService prestamoService;
     private final LibroService libroService;
     private final UsuarioService usuarioService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public PrestamoController(PrestamoService prestamoService, LibroService libroService, UsuarioService usuarioService) {
+    public PrestamoController(PrestamoService prestamoService, LibroService libroService, UsuarioService usuarioService,
+                              ObjectMapper objectMapper) {
         this.prestamoService = prestamoService;
         this.libroService = libroService;
         this.usuarioService = usuarioService;
+        this.objectMapper = objectMapper;
     }
 
     /**
      * Obtiene todos los préstamos registrados en el sistema.
+     * Con {@code limit} o {@code after} devuelve una página ordenada por ID; si puede
+     * haber más, el encabezado {@code Link} (rel="next") apunta a la siguiente.
      * 
-     * @return ResponseEntity con la lista de todos los préstamos y código de estado 200 (OK)
+     * @param limit Cantidad máxima de elementos por página (entre 1 y 1000, por defecto 100)
+     * @param after ID del último elemento de la página anterior
+     * @param expand si es true, cada préstamo incluye el libro y el usuario completos en lugar de sus IDs
+     * @param ifNoneMatch ETag de una respuesta anterior; si la colección no cambió desde entonces
+     *        se responde 304 sin leerla
+     * @return ResponseEntity con la lista, la revisión de la colección como {@code ETag} y código
+     *         de estado 200 (OK), código 304 (Not Modified) si el cliente ya tiene esta revisión,
+     *         o código 400 (Bad Request) si el límite está fuera de rango
      */
     @GetMapping
-    public ResponseEntity<List<Prestamo>> obtenerTodos() {
-        return ResponseEntity.ok(prestamoService.obtenerTodos());
+    public ResponseEntity<List<? extends Identificable>> obtenerTodos(@RequestParam(required = false) Integer limit,
+                                                                      @RequestParam(required = false) Long after,
+                                                                      @RequestParam(defaultValue = "false") boolean expand,
+                                                                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        int limite = Paginacion.limite(limit);
+        if (limite < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        // La revisión se lee antes que los datos: si cambia durante la lectura, el próximo pedido no coincide
+        String etag = expand
+            ? Precondiciones.etagColeccion(prestamoService.revision(), libroService.revision(), usuarioService.revision())
+            : Precondiciones.etagColeccion(prestamoService.revision());
+        if (Precondiciones.coincide(ifNoneMatch, etag)) {
+            return Precondiciones.noModificado(etag);
+        }
+        if (limit == null && after == null) {
+            return ResponseEntity.ok().eTag(etag).body(vista(prestamoService.obtenerTodos(), expand));
+        }
+        return Paginacion.respuesta(vista(prestamoService.obtenerPagina(after, limite), expand), limite, etag);
+    }
+
+    /**
+     * Exporta todos los préstamos como NDJSON (un objeto JSON por línea), escribiendo la
+     * respuesta a medida que se recorre la colección.
+     * 
+     * @return ResponseEntity con el contenido {@code application/x-ndjson} y código de estado 200 (OK)
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportar() {
+        return ExportacionNdjson.respuesta(objectMapper, prestamoService::obtenerPagina);
     }
 
     /**
      * Obtiene todos los préstamos activos (con fecha de devolución posterior a la fecha actual).
      * 
+     * @param expand si es true, cada préstamo incluye el libro y el usuario completos en lugar de sus IDs
      * @return ResponseEntity con la lista de préstamos activos y código de estado 200 (OK)
      */
     @GetMapping("/activos")
-    public ResponseEntity<List<Prestamo>> obtenerPrestamosActivos() {
-        return ResponseEntity.ok(prestamoService.buscarPrestamosActivos());
+    public ResponseEntity<List<? extends Identificable>> obtenerPrestamosActivos(
+            @RequestParam(defaultValue = "false") boolean expand) {
+        return ResponseEntity.ok(vista(prestamoService.buscarPrestamosActivos(), expand));
     }
 
     /**
      * Obtiene todos los préstamos vencidos (con fecha de devolución anterior a la fecha actual).
      * 
-     * @return ResponseEntity con la lista de préstamos vencidos y código de estado 200 (OK)
+     * @param masDeDias Opcional; si se indica, solo devuelve los préstamos vencidos hace más de esa cantidad de días
+     * @param expand si es true, cada préstamo incluye el libro y el usuario completos en lugar de sus IDs
+     * @return ResponseEntity con la lista de préstamos vencidos y código de estado 200 (OK),
+     *         o código 400 (Bad Request) si la cantidad de días es negativa
      */
     @GetMapping("/vencidos")
-    public ResponseEntity<List<Prestamo>> obtenerPrestamosVencidos() {
-        return ResponseEntity.ok(prestamoService.buscarPrestamosVencidos());
+    public ResponseEntity<List<? extends Identificable>> obtenerPrestamosVencidos(
+            @RequestParam(required = false) Integer masDeDias, @RequestParam(defaultValue = "false") boolean expand) {
+        if (masDeDias == null) {
+            return ResponseEntity.ok(vista(prestamoService.buscarPrestamosVencidos(), expand));
+        }
+        if (masDeDias < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(vista(prestamoService.buscarPrestamosVencidos(masDeDias), expand));
+    }
+
+    /**
+     * Obtiene los préstamos cuya fecha de devolución está dentro de un rango, ordenados por esa fecha.
+     * 
+     * @param desde Primera fecha de devolución incluida (formato ISO, opcional)
+     * @param hasta Última fecha de devolución incluida (formato ISO, opcional)
+     * @param expand si es true, cada préstamo incluye el libro y el usuario completos en lugar de sus IDs
+     * @return ResponseEntity con la lista de préstamos y código de estado 200 (OK),
+     *         o código 400 (Bad Request) si {@code desde} es posterior a {@code hasta}
+     */
+    @GetMapping("/vencimiento")
+    public ResponseEntity<List<? extends Identificable>> obtenerPrestamosPorVencimiento(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(defaultValue = "false") boolean expand) {
+        if (desde != null && hasta != null && desde.isAfter(hasta)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(vista(prestamoService.buscarPorVencimientoEntre(desde, hasta), expand));
+    }
+
+    /**
+     * Obtiene un préstamo específico por su ID.
+     * 
+     * @param id El identificador único del préstamo a buscar
+     * @param expand si es true, cada préstamo incluye el libro y el usuario completos en lugar de sus IDs
+     * @param ifNoneMatch ETag de una respuesta anterior
+     * @return ResponseEntity con el préstamo encontrado, su versión como {@code ETag} (con {@code expand},
+     *         también las del libro y el usuario) y código
+     *         de estado 200 (OK), código 304 (Not Modified) si la versión coincide con
+     *         {@code ifNoneMatch}, o código 404 (Not Found) si no existe
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<? extends Identificable> obtenerPorId(@PathVariable Long id,
+                                                                @RequestParam(defaultValue = "false") boolean expand,
+                                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Optional<Prestamo> prestamo = prestamoService.buscarPorId(id);
+        if (prestamo.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!expand) {
+            return Precondiciones.conEtag(prestamo.get(), ifNoneMatch);
+        }
+        PrestamoDetalle detalle = prestamoService.conDetalle(prestamo.get());
+        return Precondiciones.conEtag(detalle, Precondiciones.etag(detalle.getVersion(),
+            version(detalle.getLibro()), version(detalle.getUsuario())), ifNoneMatch);
     }
 
     /**
      * Obtiene todos los préstamos asociados a un usuario específico.
      * 
      * @param usuarioId El identificador único del usuario
+     * @param expand si es true, cada préstamo incluye el libro y el usuario completos en lugar de sus IDs
      * @return ResponseEntity con la lista de préstamos del usuario y código de estado 200 (OK),
      *         o código 404 (Not Found) si el usuario no existe
      */
     @GetMapping("/usuario/{usuarioId}")
-    public ResponseEntity<List<Prestamo>> obtenerPrestamosPorUsuario(@PathVariable Long usuarioId) {
-        try {
-            Usuario usuario = usuarioService.buscarPorId(usuarioId);
-            return ResponseEntity.ok(prestamoService.buscarPorUsuario(usuario));
-        } catch (RuntimeException e) {
+    public ResponseEntity<List<? extends Identificable>> obtenerPrestamosPorUsuario(@PathVariable Long usuarioId,
+            @RequestParam(defaultValue = "false") boolean expand) {
+        if (!usuarioService.existePorId(usuarioId)) {
             return ResponseEntity.notFound().build();
         }
+        return ResponseEntity.ok(vista(prestamoService.buscarPorUsuarioId(usuarioId), expand));
     }
 
     /**
      * Obtiene todos los préstamos asociados a un libro específico.
      * 
      * @param libroId El identificador único del libro
+     * @param expand si es true, cada préstamo incluye el libro y el usuario completos en lugar de sus IDs
      * @return ResponseEntity con la lista de préstamos del libro y código de estado 200 (OK),
      *         o código 404 (Not Found) si el libro no existe
      */
     @GetMapping("/libro/{libroId}")
-    public ResponseEntity<List<Prestamo>> obtenerPrestamosPorLibro(@PathVariable Long libroId) {
-        try {
-            Libro libro = libroService.buscarPorId(libroId);
-            return ResponseEntity.ok(prestamoService.buscarPorLibro(libro));
-        } catch (RuntimeException e) {
+    public ResponseEntity<List<? extends Identificable>> obtenerPrestamosPorLibro(@PathVariable Long libroId,
+            @RequestParam(defaultValue = "false") boolean expand) {
+        if (!libroService.existePorId(libroId)) {
             return ResponseEntity.notFound().build();
         }
+        return ResponseEntity.ok(vista(prestamoService.buscarPorLibroId(libroId), expand));
     }
 
     /**
-     * Crea un nuevo préstamo en el sistema.
+     * Crea un nuevo préstamo en el sistema. Si no trae fecha de entrega, el libro
+     * pasa a estar prestado igual que en {@link #prestar}.
      * 
      * @param prestamo El objeto Prestamo con los datos a guardar
-     * @return ResponseEntity con el préstamo creado y código de estado 201 (Created)
+     * @return ResponseEntity con el préstamo creado y código de estado 201 (Created),
+     *         código 400 (Bad Request) si cambia el libro o la fecha de entrega de un préstamo existente,
+     *         código 404 (Not Found) si el libro o el usuario no existen, o código 409 (Conflict)
+     *         si el libro no está disponible
      */
     @PostMapping
     public ResponseEntity<Prestamo> crear(@RequestBody Prestamo prestamo) {
-        Prestamo nuevoPrestamo = prestamoService.guardar(prestamo);
-        return new ResponseEntity<>(nuevoPrestamo, HttpStatus.CREATED);
+        try {
+            Prestamo nuevoPrestamo = prestamoService.registrar(prestamo);
+            return new ResponseEntity<>(nuevoPrestamo, HttpStatus.CREATED);
+        } catch (LibroNoDisponibleException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
     }
 
     /**
-     * Actualiza un préstamo existente identificado por su ID.
+     * Presta un libro a un usuario. El libro debe estar disponible y pasa a estar
+     * prestado en la misma operación, así que dos solicitudes simultáneas por el
+     * mismo libro no pueden obtenerlo ambas.
+     * 
+     * @param libroId El identificador del libro a prestar
+     * @param usuarioId El identificador del usuario que lo retira
+     * @param fechaDevolucion Fecha de vencimiento del préstamo (formato ISO)
+     * @return ResponseEntity con el préstamo creado y código de estado 201 (Created),
+     *         código 400 (Bad Request) si la fecha de devolución ya pasó, código 404 (Not Found)
+     *         si el libro o el usuario no existen, o código 409 (Conflict) si el libro no está disponible
+     */
+    @PostMapping("/prestar")
+    public ResponseEntity<Prestamo> prestar(@RequestParam Long libroId, @RequestParam Long usuarioId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaDevolucion) {
+        if (fechaDevolucion.isBefore(LocalDate.now())) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            Prestamo prestamo = prestamoService.prestar(libroId, usuarioId, fechaDevolucion);
+            return new ResponseEntity<>(prestamo, HttpStatus.CREATED);
+        } catch (LibroNoDisponibleException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Registra la devolución de un préstamo y deja el libro disponible nuevamente.
+     * 
+     * @param id El identificador único del préstamo
+     * @return ResponseEntity con el préstamo cerrado y código de estado 200 (OK),
+     *         código 404 (Not Found) si no existe, o código 409 (Conflict) si ya fue devuelto
+     */
+    @PostMapping("/{id}/devolver")
+    public ResponseEntity<Prestamo> devolver(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(prestamoService.devolver(id));
+        } catch (PrestamoDevueltoException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Actualiza un préstamo existente identificado por su ID. El libro y la fecha de
+     * entrega no se cambian por aquí sino con {@link #prestar} y {@link #devolver}.
      * 
      * @param id El identificador único del préstamo a actualizar
      * @param prestamo El objeto Prestamo con los datos actualizados
-     * @return ResponseEntity con el préstamo actualizado y código de estado 200 (OK),
-     *         o código 404 (Not Found) si no existe
+     * @param ifMatch Opcional; ETag leído por el cliente. Si el préstamo cambió desde entonces no se actualiza
+     * @return ResponseEntity con el préstamo actualizado, su nuevo {@code ETag} y código de estado 200 (OK),
+     *         código 400 (Bad Request) si cambia el libro o la fecha de entrega, código 404 (Not Found)
+     *         si no existe, o código 412 (Precondition Failed) si no coincide con {@code If-Match}
      */
     @PutMapping("/{id}")
-    public ResponseEntity<Prestamo> actualizar(@PathVariable Long id, @RequestBody Prestamo prestamo) {
+    public ResponseEntity<Prestamo> actualizar(@PathVariable Long id, @RequestBody Prestamo prestamo,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         try {
-            Prestamo prestamoActualizado = prestamoService.buscarYActualizar(id, prestamo);
-            return ResponseEntity.ok(prestamoActualizado);
+            Long version = Precondiciones.versionEsperada(ifMatch);
+            Prestamo prestamoActualizado = version == null
+                ? prestamoService.buscarYActualizar(id, prestamo)
+                : prestamoService.buscarYActualizar(id, prestamo, version);
+            return Precondiciones.conEtag(prestamoActualizado);
+        } catch (ModificacionConcurrenteException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
     }
 
+    /**
+     * Crea o actualiza varios préstamos en una sola solicitud. Los que traen ID se
+     * actualizan; el resto se crean y ocupan su libro como en {@link #crear}. Un
+     * elemento rechazado no impide guardar los demás.
+     * 
+     * @param prestamos Arreglo JSON con los préstamos a guardar
+     * @return ResponseEntity con un resultado por elemento y código de estado 200 (OK);
+     *         cada resultado indica 201 (creado), 200 (actualizado), 400 (elemento vacío o inválido,
+     *         libro o usuario inexistente, o cambio de libro o fecha de entrega) o 409 (libro no disponible)
+     */
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<ResultadoLote>> guardarEnLote(@RequestBody List<Prestamo> prestamos) {
+        return ResponseEntity.ok(EscrituraEnLote.guardar(prestamos, prestamoService::registrarTodos));
+    }
+
+    /**
+     * Igual que {@link #guardarEnLote(List)}, pero recibe NDJSON (un prestamo por línea)
+     * y lo procesa a medida que llega, para importar colecciones grandes.
+     * 
+     * @param cuerpo Cuerpo de la solicitud en formato {@code application/x-ndjson}
+     * @return ResponseEntity con un resultado por línea y código de estado 200 (OK);
+     *         una línea mal formada se informa con 400 y termina la lectura
+     */
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<List<ResultadoLote>> guardarEnLoteNdjson(InputStream cuerpo) throws IOException {
+        return ResponseEntity.ok(EscrituraEnLote.guardarNdjson(
+            objectMapper.readerFor(Prestamo.class), cuerpo, prestamoService::registrarTodos));
+    }
+
+    /**
+     * Elimina varios préstamos en una sola solicitud.
+     * 
+     * @param ids Arreglo JSON con los IDs a eliminar
+     * @return ResponseEntity con un resultado por ID y código de estado 200 (OK);
+     *         cada resultado indica 204 (eliminado) o 404 (no existía)
+     */
+    @DeleteMapping("/bulk")
+    public ResponseEntity<List<ResultadoLote>> eliminarEnLote(@RequestBody List<Long> ids) {
+        return ResponseEntity.ok(EscrituraEnLote.eliminar(ids, prestamoService::eliminarTodos));
+    }
+
     /**
      * Elimina un préstamo existente identificado por su ID.
      * 
@@ -142,4 +365,12 @@ public class PrestamoController {
             return ResponseEntity.notFound().build();
         }
     }
+
+    private List<? extends Identificable> vista(List<Prestamo> prestamos, boolean expand) {
+        return expand ? prestamoService.conDetalle(prestamos) : prestamos;
+    }
+
+    private static long version(Identificable entidad) {
+        return entidad != null ? entidad.getVersion() : 0;
+    }
 }
@@ -0,0 +1,43 @@
+package com.prog2.tp4prog2.controller;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Aplica el parámetro {@code fields} a las respuestas JSON de los controladores:
+ * si está presente, la escritura lleva los {@link Campos} pedidos y solo se
+ * serializan esas propiedades. Sin el parámetro la respuesta no se toca.
+ */
+@ControllerAdvice
+class ProyeccionDeCampos implements ResponseBodyAdvice<Object> {
+    static final String PARAMETRO = "fields";
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return AbstractJackson2HttpMessageConverter.class.isAssignableFrom(converterType);
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType contentType,
+                                  Class<? extends HttpMessageConverter<?>> converterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (body == null || !(request instanceof ServletServerHttpRequest servlet)) {
+            return body;
+        }
+        String fields = servlet.getServletRequest().getParameter(PARAMETRO);
+        if (fields == null || fields.isBlank()) {
+            return body;
+        }
+        MappingJacksonValue valor = body instanceof MappingJacksonValue existente ? existente : new MappingJacksonValue(body);
+        valor.setFilters(new Campos(fields));
+        return valor;
+    }
+}
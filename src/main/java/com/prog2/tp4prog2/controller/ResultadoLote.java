@@ -0,0 +1,15 @@
+package com.prog2.tp4prog2.controller;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Resultado de un elemento de una operación en lote.
+ *
+ * @param indice posición del elemento en el lote recibido
+ * @param estado código HTTP que hubiera tenido la operación individual
+ * @param id ID de la entidad, si se conoce
+ * @param error motivo del rechazo, si lo hubo
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ResultadoLote(int indice, int estado, Long id, String error) {
+}
@@ -1,13 +1,23 @@
 package com.prog2.tp4prog2.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.DuplicateKeyException;
+import com.prog2.tp4prog2.service.ModificacionConcurrenteException;
 import com.prog2.tp4prog2.service.UsuarioService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Controlador REST para gestionar operaciones CRUD sobre usuarios.
@@ -16,38 +26,107 @@ import java.util.List;
 @RestController
 @RequestMapping("/api/usuarios")
 public class UsuarioController {
+    private static final int MAX_RESULTADOS_BUSQUEDA = 100;
+
     private final UsuarioService usuarioService;
+    private final ObjectMapper objectMapper;
+    private final JsonPorVersion json;
 
+    /**
+     * @param jsonCacheSize usuarios cuyo JSON se guarda ya serializado para {@code GET /{id}}
+     *        ({@code tp4.cache.usuarios-json.maximum-size}, 0 para deshabilitarlo)
+     */
     @Autowired
-    public UsuarioController(UsuarioService usuarioService) {
+    public UsuarioController(UsuarioService usuarioService, ObjectMapper objectMapper,
+                             @Value("${tp4.cache.usuarios-json.maximum-size:0}") long jsonCacheSize) {
         this.usuarioService = usuarioService;
+        this.objectMapper = objectMapper;
+        this.json = new JsonPorVersion(objectMapper, jsonCacheSize, usuarioService::buscarPorId);
     }
 
     /**
      * Obtiene todos los usuarios registrados en el sistema.
+     * Con {@code limit} o {@code after} devuelve una página ordenada por ID; si puede
+     * haber más, el encabezado {@code Link} (rel="next") apunta a la siguiente.
      * 
-     * @return ResponseEntity con la lista de todos los usuarios y código de estado 200 (OK)
+     * @param limit Cantidad máxima de elementos por página (entre 1 y 1000, por defecto 100)
+     * @param after ID del último elemento de la página anterior
+     * @param ifNoneMatch ETag de una respuesta anterior; si la colección no cambió desde entonces
+     *        se responde 304 sin leerla
+     * @return ResponseEntity con la lista, la revisión de la colección como {@code ETag} y código
+     *         de estado 200 (OK), código 304 (Not Modified) si el cliente ya tiene esta revisión,
+     *         o código 400 (Bad Request) si el límite está fuera de rango
      */
     @GetMapping
-    public ResponseEntity<List<Usuario>> obtenerTodos() {
-        return ResponseEntity.ok(usuarioService.obtenerTodos());
+    public ResponseEntity<List<Usuario>> obtenerTodos(@RequestParam(required = false) Integer limit,
+                                                      @RequestParam(required = false) Long after,
+                                                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        int limite = Paginacion.limite(limit);
+        if (limite < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        // La revisión se lee antes que los datos: si cambia durante la lectura, el próximo pedido no coincide
+        String etag = Precondiciones.etagColeccion(usuarioService.revision());
+        if (Precondiciones.coincide(ifNoneMatch, etag)) {
+            return Precondiciones.noModificado(etag);
+        }
+        if (limit == null && after == null) {
+            return ResponseEntity.ok().eTag(etag).body(usuarioService.obtenerTodos());
+        }
+        return Paginacion.respuesta(usuarioService.obtenerPagina(after, limite), limite, etag);
+    }
+
+    /**
+     * Exporta todos los usuarios como NDJSON (un objeto JSON por línea), escribiendo la
+     * respuesta a medida que se recorre la colección.
+     * 
+     * @return ResponseEntity con el contenido {@code application/x-ndjson} y código de estado 200 (OK)
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportar() {
+        return ExportacionNdjson.respuesta(objectMapper, usuarioService::obtenerPagina);
+    }
+
+    /**
+     * Busca usuarios por parte de su nombre, sin distinguir mayúsculas ni tildes.
+     * Con uno o dos caracteres busca nombres que tengan una palabra que empiece así.
+     * 
+     * @param q Texto a buscar dentro del nombre
+     * @param limit Cantidad máxima de resultados (entre 1 y 100, por defecto 20)
+     * @return ResponseEntity con los usuarios encontrados y código de estado 200 (OK),
+     *         o código 400 (Bad Request) si el límite está fuera de rango
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<Usuario>> buscar(@RequestParam String q,
+                                                @RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1 || limit > MAX_RESULTADOS_BUSQUEDA) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(usuarioService.buscarPorNombre(q, limit));
     }
 
     /**
      * Obtiene un usuario específico por su ID.
      * 
      * @param id El identificador único del usuario a buscar
-     * @return ResponseEntity con el usuario encontrado y código de estado 200 (OK),
-     *         o código 404 (Not Found) si no existe
+     * @param fields Propiedades a incluir, separadas por comas (todas si no se indica)
+     * @param ifNoneMatch ETag de una respuesta anterior
+     * @return ResponseEntity con el usuario encontrado, su versión como {@code ETag} y código
+     *         de estado 200 (OK), código 304 (Not Modified) si la versión coincide con
+     *         {@code ifNoneMatch}, o código 404 (Not Found) si no existe
      */
     @GetMapping("/{id}")
-    public ResponseEntity<Usuario> obtenerPorId(@PathVariable Long id) {
-        try {
-            Usuario usuario = usuarioService.buscarPorId(id);
-            return ResponseEntity.ok(usuario);
-        } catch (RuntimeException e) {
+    public ResponseEntity<?> obtenerPorId(@PathVariable Long id,
+                                          @RequestParam(name = ProyeccionDeCampos.PARAMETRO, required = false) String fields,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Optional<Usuario> usuario = usuarioService.buscarPorId(id);
+        if (usuario.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
+        // Una proyección se serializa aparte: el JSON guardado tiene todas las propiedades
+        return json.habilitada() && fields == null
+            ? json.respuesta(usuario.get(), ifNoneMatch)
+            : Precondiciones.conEtag(usuario.get(), ifNoneMatch);
     }
 
     /**
@@ -59,24 +138,24 @@ public class UsuarioController {
      */
     @GetMapping("/email/{email}")
     public ResponseEntity<Usuario> obtenerPorEmail(@PathVariable String email) {
-        try {
-            Usuario usuario = usuarioService.buscarPorEmail(email);
-            return ResponseEntity.ok(usuario);
-        } catch (RuntimeException e) {
-            return ResponseEntity.notFound().build();
-        }
+        return ResponseEntity.of(usuarioService.buscarPorEmail(email));
     }
 
     /**
      * Crea un nuevo usuario en el sistema.
      * 
      * @param usuario El objeto Usuario con los datos a guardar
-     * @return ResponseEntity con el usuario creado y código de estado 201 (Created)
+     * @return ResponseEntity con el usuario creado y código de estado 201 (Created),
+     *         o código 409 (Conflict) si ya existe un usuario con el mismo email
      */
     @PostMapping
     public ResponseEntity<Usuario> crear(@RequestBody Usuario usuario) {
-        Usuario nuevoUsuario = usuarioService.guardar(usuario);
-        return new ResponseEntity<>(nuevoUsuario, HttpStatus.CREATED);
+        try {
+            Usuario nuevoUsuario = usuarioService.guardar(usuario);
+            return new ResponseEntity<>(nuevoUsuario, HttpStatus.CREATED);
+        } catch (DuplicateKeyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
     }
 
     /**
@@ -84,19 +163,72 @@ public class UsuarioController {
      * 
      * @param id El identificador único del usuario a actualizar
      * @param usuario El objeto Usuario con los datos actualizados
-     * @return ResponseEntity con el usuario actualizado y código de estado 200 (OK),
-     *         o código 404 (Not Found) si no existe
+     * @param ifMatch Opcional; ETag leído por el cliente. Si el usuario cambió desde entonces no se actualiza
+     * @return ResponseEntity con el usuario actualizado, su nuevo {@code ETag} y código de estado 200 (OK),
+     *         código 404 (Not Found) si no existe, código 412 (Precondition Failed) si
+     *         no coincide con {@code If-Match}, o código 409 (Conflict) si el
+     *         nuevo email ya pertenece a otro usuario
      */
     @PutMapping("/{id}")
-    public ResponseEntity<Usuario> actualizar(@PathVariable Long id, @RequestBody Usuario usuario) {
+    public ResponseEntity<Usuario> actualizar(@PathVariable Long id, @RequestBody Usuario usuario,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         try {
-            Usuario usuarioActualizado = usuarioService.buscarYActualizar(id, usuario);
-            return ResponseEntity.ok(usuarioActualizado);
+            Long version = Precondiciones.versionEsperada(ifMatch);
+            Usuario usuarioActualizado = version == null
+                ? usuarioService.buscarYActualizar(id, usuario)
+                : usuarioService.buscarYActualizar(id, usuario, version);
+            json.invalidar(id);
+            return Precondiciones.conEtag(usuarioActualizado);
+        } catch (ModificacionConcurrenteException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        } catch (DuplicateKeyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
     }
 
+    /**
+     * Crea o actualiza varios usuarios en una sola solicitud. Los que traen ID se
+     * actualizan; el resto se crean. Un elemento rechazado no impide guardar los demás.
+     * 
+     * @param usuarios Arreglo JSON con los usuarios a guardar
+     * @return ResponseEntity con un resultado por elemento y código de estado 200 (OK);
+     *         cada resultado indica 201 (creado), 200 (actualizado), 409 (email repetido) o 400 (elemento vacío o inválido)
+     */
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<ResultadoLote>> guardarEnLote(@RequestBody List<Usuario> usuarios) {
+        return ResponseEntity.ok(EscrituraEnLote.guardar(usuarios, usuarioService::guardarTodos));
+    }
+
+    /**
+     * Igual que {@link #guardarEnLote(List)}, pero recibe NDJSON (un usuario por línea)
+     * y lo procesa a medida que llega, para importar colecciones grandes.
+     * 
+     * @param cuerpo Cuerpo de la solicitud en formato {@code application/x-ndjson}
+     * @return ResponseEntity con un resultado por línea y código de estado 200 (OK);
+     *         una línea mal formada se informa con 400 y termina la lectura
+     */
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<List<ResultadoLote>> guardarEnLoteNdjson(InputStream cuerpo) throws IOException {
+        return ResponseEntity.ok(EscrituraEnLote.guardarNdjson(
+            objectMapper.readerFor(Usuario.class), cuerpo, usuarioService::guardarTodos));
+    }
+
+    /**
+     * Elimina varios usuarios en una sola solicitud.
+     * 
+     * @param ids Arreglo JSON con los IDs a eliminar
+     * @return ResponseEntity con un resultado por ID y código de estado 200 (OK);
+     *         cada resultado indica 204 (eliminado) o 404 (no existía)
+     */
+    @DeleteMapping("/bulk")
+    public ResponseEntity<List<ResultadoLote>> eliminarEnLote(@RequestBody List<Long> ids) {
+        List<ResultadoLote> resultados = EscrituraEnLote.eliminar(ids, usuarioService::eliminarTodos);
+        json.invalidarTodos(ids);
+        return ResponseEntity.ok(resultados);
+    }
+
     /**
      * Elimina un usuario existente identificado por su ID.
      * 
@@ -108,6 +240,7 @@ public class UsuarioController {
     public ResponseEntity<Void> eliminar(@PathVariable Long id) {
         try {
             usuarioService.eliminar(id);
+            json.invalidar(id);
             return ResponseEntity.noContent().build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
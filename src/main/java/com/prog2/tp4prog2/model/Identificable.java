@@ -0,0 +1,16 @@
+package com.prog2.tp4prog2.model;
+
+/**
+ * Entidad con identificador numérico y versión asignados por el repositorio.
+ * La versión empieza en 1 y aumenta con cada escritura; sirve para detectar
+ * modificaciones concurrentes (control optimista).
+ */
+public interface Identificable {
+    Long getId();
+
+    void setId(Long id);
+
+    long getVersion();
+
+    void setVersion(long version);
+}
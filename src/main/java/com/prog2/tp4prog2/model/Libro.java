@@ -8,10 +8,15 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-public class Libro {
+public class Libro implements Identificable {
     private Long id;
     private String isbn;
     private String titulo;
     private String autor;
     private String estado;
+    private long version;
+
+    public Libro(Long id, String isbn, String titulo, String autor, String estado) {
+        this(id, isbn, titulo, autor, estado, 0);
+    }
 }
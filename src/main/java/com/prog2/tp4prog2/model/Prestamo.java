@@ -1,18 +1,45 @@
 package com.prog2.tp4prog2.model;
 
+import com.fasterxml.jackson.annotation.JsonSetter;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import java.time.LocalDate;
 
-
+/**
+ * Préstamo tal como se guarda: el libro y el usuario se referencian por ID. La
+ * vista con ambos resueltos es {@link PrestamoDetalle}. Un préstamo devuelto se
+ * conserva en el historial con su {@code fechaEntrega}.
+ */
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-public class Prestamo {
+public class Prestamo implements Identificable {
     private Long id;
-    private Libro libro;
-    private Usuario usuario;
+    private Long libroId;
+    private Long usuarioId;
     private LocalDate fechaPrestamo;
     private LocalDate fechaDevolucion;
+    private LocalDate fechaEntrega;
+    private long version;
+
+    public Prestamo(Long id, Long libroId, Long usuarioId, LocalDate fechaPrestamo, LocalDate fechaDevolucion) {
+        this(id, libroId, usuarioId, fechaPrestamo, fechaDevolucion, null, 0);
+    }
+
+    /**
+     * Acepta el formato anterior, con el libro anidado ({@code "libro": {"id": 1}}).
+     */
+    @JsonSetter("libro")
+    public void setLibro(Libro libro) {
+        this.libroId = libro != null ? libro.getId() : null;
+    }
+
+    /**
+     * Acepta el formato anterior, con el usuario anidado ({@code "usuario": {"id": 1}}).
+     */
+    @JsonSetter("usuario")
+    public void setUsuario(Usuario usuario) {
+        this.usuarioId = usuario != null ? usuario.getId() : null;
+    }
 }
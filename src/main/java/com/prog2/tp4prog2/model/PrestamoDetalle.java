@@ -0,0 +1,28 @@
+package com.prog2.tp4prog2.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDate;
+
+/**
+ * Préstamo con el libro y el usuario resueltos, armado al responder. El libro o el
+ * usuario quedan en null si ya no existen.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrestamoDetalle implements Identificable {
+    private Long id;
+    private Libro libro;
+    private Usuario usuario;
+    private LocalDate fechaPrestamo;
+    private LocalDate fechaDevolucion;
+    private LocalDate fechaEntrega;
+    private long version;
+
+    public PrestamoDetalle(Prestamo prestamo, Libro libro, Usuario usuario) {
+        this(prestamo.getId(), libro, usuario, prestamo.getFechaPrestamo(), prestamo.getFechaDevolucion(),
+            prestamo.getFechaEntrega(), prestamo.getVersion());
+    }
+}
@@ -8,9 +8,14 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-public class Usuario {
+public class Usuario implements Identificable {
     private Long id;
     private String nombre;
     private String email;
     private String estado;
+    private long version;
+
+    public Usuario(Long id, String nombre, String email, String estado) {
+        this(id, nombre, email, estado, 0);
+    }
 }
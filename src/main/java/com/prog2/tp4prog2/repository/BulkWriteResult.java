@@ -0,0 +1,27 @@
+package com.prog2.tp4prog2.repository;
+
+/**
+ * Resultado de un elemento dentro de una escritura en lote. Los resultados se
+ * devuelven en el mismo orden que los elementos recibidos.
+ *
+ * @param entidad la entidad guardada (o la recibida, si falló)
+ * @param error el motivo del rechazo, o null si se guardó
+ * @param <T> tipo de entidad
+ */
+public record BulkWriteResult<T>(T entidad, RuntimeException error) {
+
+    public static <T> BulkWriteResult<T> saved(T entidad) {
+        return new BulkWriteResult<>(entidad, null);
+    }
+
+    public static <T> BulkWriteResult<T> rejected(T entidad, RuntimeException error) {
+        return new BulkWriteResult<>(entidad, error);
+    }
+
+    /**
+     * @return true si la entidad se guardó
+     */
+    public boolean isSaved() {
+        return error == null;
+    }
+}
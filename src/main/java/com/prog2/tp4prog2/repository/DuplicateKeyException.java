@@ -0,0 +1,10 @@
+package com.prog2.tp4prog2.repository;
+
+/**
+ * Se lanza cuando una escritura viola un índice único del repositorio
+ */
+public class DuplicateKeyException extends RuntimeException {
+    public DuplicateKeyException(String message) {
+        super(message);
+    }
+}
@@ -1,33 +1,110 @@
 package com.prog2.tp4prog2.repository;
 
 import com.prog2.tp4prog2.model.Libro;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface LibroRepository {
 
+    /**
+     * Valor que cambia con cada alta, modificación o baja de libros; si no cambió,
+     * la colección tampoco. Sirve para armar el ETag de los listados.
+     *
+     * @return revisión actual de la colección
+     */
+    long revision();
+
     /**
      * @return lista de todos los libros
      */
     List<Libro> findAll();
 
+    /**
+     * Página de libros ordenados por ID, para paginar por cursor.
+     *
+     * @param despuesDe ID del último elemento de la página anterior, o null para la primera página
+     * @param limite cantidad máxima de elementos
+     * @return los siguientes libros con ID mayor a {@code despuesDe}
+     */
+    List<Libro> findPage(Long despuesDe, int limite);
+
     /**
      * @param id identificador del libro
      * @return el libro si se encuentra
      */
     Optional<Libro> findById(Long id);
 
+    /**
+     * @param id identificador del libro
+     * @return true si existe
+     */
+    boolean existsById(Long id);
+
+    /**
+     * @param ids identificadores de los libros
+     * @return los libros que existen, en el orden de {@code ids}
+     */
+    List<Libro> findAllById(Collection<Long> ids);
+
     /**
      * @param libro el libro a guardar
      * @return el libro guardado
+     * @throws DuplicateKeyException si otro libro ya tiene el mismo ISBN
      */
     Libro save(Libro libro);
 
+    /**
+     * Reemplaza el libro solo si su versión almacenada sigue siendo {@code versionEsperada}
+     * (control optimista): la comprobación y la escritura son atómicas.
+     *
+     * @param libro datos nuevos, con el ID del libro a reemplazar
+     * @param versionEsperada versión que el cliente leyó
+     * @return el libro guardado, o vacío si no existe o fue modificado mientras tanto
+     */
+    Optional<Libro> replaceIfVersion(Libro libro, long versionEsperada);
+
+    /**
+     * Reemplaza el libro solo si sigue existiendo: la comprobación y la escritura son
+     * atómicas, así que una actualización no revive un libro eliminado mientras tanto.
+     *
+     * @param libro datos nuevos, con el ID del libro a reemplazar
+     * @return el libro guardado, o vacío si no existe
+     */
+    Optional<Libro> replaceIfPresent(Libro libro);
+
+    /**
+     * Cambia el estado del libro solo si su estado actual es {@code esperado}. La
+     * comprobación y el cambio son atómicos respecto de cualquier otra escritura
+     * sobre el mismo libro.
+     *
+     * @param id identificador del libro
+     * @param esperado estado que debe tener el libro
+     * @param nuevo estado a asignar
+     * @return el libro actualizado, o vacío si no existe o su estado no era {@code esperado}
+     */
+    Optional<Libro> compareAndSetEstado(Long id, String esperado, String nuevo);
+
     /**
      * @param id identificador del libro a eliminar
      */
     void deleteById(Long id);
 
+    /**
+     * Guarda varios libros tomando cada lock una sola vez por lote. Un elemento
+     * rechazado (por ejemplo, por repetir el ISBN de otro libro) no impide guardar los demás.
+     *
+     * @param libros libros a guardar
+     * @return un resultado por elemento, en el mismo orden
+     */
+    List<BulkWriteResult<Libro>> saveAll(List<Libro> libros);
+
+    /**
+     * @param ids identificadores de los libros a eliminar
+     * @return IDs de los libros que existían y se eliminaron
+     */
+    List<Long> deleteAllById(Collection<Long> ids);
+
     /**
      * @param titulo título a buscar
      * @return lista de libros con título coincidente
@@ -41,7 +118,16 @@ public interface LibroRepository {
     List<Libro> findByAutor(String autor);
 
     /**
-     * @param isbn ISBN a buscar
+     * Búsqueda de texto completo sobre título y autor, sin distinguir mayúsculas ni tildes.
+     *
+     * @param consulta uno o más términos a buscar
+     * @param limite cantidad máxima de resultados
+     * @return libros que contienen algún término, del más al menos relevante
+     */
+    List<Libro> search(String consulta, int limite);
+
+    /**
+     * @param isbn ISBN a buscar (se aceptan guiones y la forma ISBN-10 o ISBN-13)
      * @return libro con el ISBN correspondiente
      */
     Optional<Libro> findByIsbn(String isbn);
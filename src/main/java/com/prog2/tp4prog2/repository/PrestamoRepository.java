@@ -4,16 +4,34 @@ import com.prog2.tp4prog2.model.Prestamo;
 import com.prog2.tp4prog2.model.Libro;
 import com.prog2.tp4prog2.model.Usuario;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface PrestamoRepository {
 
+    /**
+     * Valor que cambia con cada alta, modificación o baja de préstamos; si no cambió,
+     * la colección tampoco. Sirve para armar el ETag de los listados.
+     *
+     * @return revisión actual de la colección
+     */
+    long revision();
+
     /**
      * @return lista de todos los préstamos
      */
     List<Prestamo> findAll();
 
+    /**
+     * Página de préstamos ordenados por ID, para paginar por cursor.
+     *
+     * @param despuesDe ID del último elemento de la página anterior, o null para la primera página
+     * @param limite cantidad máxima de elementos
+     * @return los siguientes préstamos con ID mayor a {@code despuesDe}
+     */
+    List<Prestamo> findPage(Long despuesDe, int limite);
+
     /**
      * @param id identificador del préstamo
      * @return el préstamo si se encuentra
@@ -26,23 +44,77 @@ public interface PrestamoRepository {
      */
     Prestamo save(Prestamo prestamo);
 
+    /**
+     * Reemplaza el préstamo solo si su versión almacenada sigue siendo {@code versionEsperada}
+     * (control optimista): la comprobación y la escritura son atómicas.
+     *
+     * @param prestamo datos nuevos, con el ID del préstamo a reemplazar
+     * @param versionEsperada versión que el cliente leyó
+     * @return el préstamo guardado, o vacío si no existe o fue modificado mientras tanto
+     */
+    Optional<Prestamo> replaceIfVersion(Prestamo prestamo, long versionEsperada);
+
     /**
      * @param id identificador del préstamo a eliminar
      */
     void deleteById(Long id);
 
+    /**
+     * Elimina el préstamo y lo devuelve. Si varios hilos eliminan el mismo préstamo
+     * a la vez, solo uno lo recibe.
+     *
+     * @param id identificador del préstamo a eliminar
+     * @return el préstamo eliminado, o vacío si no existía
+     */
+    Optional<Prestamo> removeById(Long id);
+
+    /**
+     * Guarda varios préstamos tomando cada lock una sola vez por lote. Un elemento
+     * rechazado no impide guardar los demás.
+     *
+     * @param prestamos préstamos a guardar
+     * @return un resultado por elemento, en el mismo orden
+     */
+    List<BulkWriteResult<Prestamo>> saveAll(List<Prestamo> prestamos);
+
+    /**
+     * @param ids identificadores de los préstamos a eliminar
+     * @return IDs de los préstamos que existían y se eliminaron
+     */
+    List<Long> deleteAllById(Collection<Long> ids);
+
+    /**
+     * Igual que {@link #deleteAllById}, pero devuelve los préstamos eliminados.
+     *
+     * @param ids identificadores de los préstamos a eliminar
+     * @return préstamos que existían y se eliminaron
+     */
+    List<Prestamo> removeAllById(Collection<Long> ids);
+
     /**
      * @param usuario usuario a buscar
      * @return lista de préstamos del usuario
      */
     List<Prestamo> findByUsuario(Usuario usuario);
 
+    /**
+     * @param usuarioId identificador del usuario
+     * @return lista de préstamos del usuario
+     */
+    List<Prestamo> findByUsuarioId(Long usuarioId);
+
     /**
      * @param libro libro a buscar
      * @return lista de préstamos del libro
      */
     List<Prestamo> findByLibro(Libro libro);
 
+    /**
+     * @param libroId identificador del libro
+     * @return lista de préstamos del libro
+     */
+    List<Prestamo> findByLibroId(Long libroId);
+
     /**
      * @param fechaPrestamo fecha de préstamo a buscar
      * @return lista de préstamos con la fecha indicada
@@ -56,12 +128,25 @@ public interface PrestamoRepository {
     List<Prestamo> findByFechaDevolucion(LocalDate fechaDevolucion);
 
     /**
-     * @return lista de préstamos activos (fecha de devolución posterior a hoy)
+     * @param desde primera fecha de devolución incluida, o null si no hay límite inferior
+     * @param hasta última fecha de devolución incluida, o null si no hay límite superior
+     * @return lista de préstamos que vencen en el rango, ordenada por fecha de devolución
+     */
+    List<Prestamo> findByFechaDevolucionBetween(LocalDate desde, LocalDate hasta);
+
+    /**
+     * @return lista de préstamos sin devolver con fecha de devolución posterior a hoy
      */
     List<Prestamo> findActivePrestamos();
 
     /**
-     * @return lista de préstamos vencidos (fecha de devolución anterior a hoy)
+     * @return lista de préstamos sin devolver con fecha de devolución anterior a hoy
      */
     List<Prestamo> findOverduePrestamos();
+
+    /**
+     * @param diasMinimos cantidad de días de atraso que se deben superar
+     * @return lista de préstamos sin devolver vencidos hace más de {@code diasMinimos} días
+     */
+    List<Prestamo> findOverduePrestamos(int diasMinimos);
 }
@@ -1,33 +1,89 @@
 package com.prog2.tp4prog2.repository;
 
 import com.prog2.tp4prog2.model.Usuario;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface UsuarioRepository {
 
+    /**
+     * Valor que cambia con cada alta, modificación o baja de usuarios; si no cambió,
+     * la colección tampoco. Sirve para armar el ETag de los listados.
+     *
+     * @return revisión actual de la colección
+     */
+    long revision();
+
     /**
      * @return lista de todos los usuarios
      */
     List<Usuario> findAll();
 
+    /**
+     * Página de usuarios ordenados por ID, para paginar por cursor.
+     *
+     * @param despuesDe ID del último elemento de la página anterior, o null para la primera página
+     * @param limite cantidad máxima de elementos
+     * @return los siguientes usuarios con ID mayor a {@code despuesDe}
+     */
+    List<Usuario> findPage(Long despuesDe, int limite);
+
     /**
      * @param id identificador del usuario
      * @return el usuario si se encuentra
      */
     Optional<Usuario> findById(Long id);
 
+    /**
+     * @param id identificador del usuario
+     * @return true si existe
+     */
+    boolean existsById(Long id);
+
+    /**
+     * @param ids identificadores de los usuarios
+     * @return los usuarios que existen, en el orden de {@code ids}
+     */
+    List<Usuario> findAllById(Collection<Long> ids);
+
     /**
      * @param usuario el usuario a guardar
      * @return el usuario guardado
+     * @throws DuplicateKeyException si otro usuario ya tiene el mismo email
      */
     Usuario save(Usuario usuario);
 
+    /**
+     * Reemplaza el usuario solo si su versión almacenada sigue siendo {@code versionEsperada}
+     * (control optimista): la comprobación y la escritura son atómicas.
+     *
+     * @param usuario datos nuevos, con el ID del usuario a reemplazar
+     * @param versionEsperada versión que el cliente leyó
+     * @return el usuario guardado, o vacío si no existe o fue modificado mientras tanto
+     */
+    Optional<Usuario> replaceIfVersion(Usuario usuario, long versionEsperada);
+
     /**
      * @param id identificador del usuario a eliminar
      */
     void deleteById(Long id);
 
+    /**
+     * Guarda varios usuarios tomando cada lock una sola vez por lote. Un elemento
+     * rechazado (por ejemplo, por repetir el email de otro usuario) no impide guardar los demás.
+     *
+     * @param usuarios usuarios a guardar
+     * @return un resultado por elemento, en el mismo orden
+     */
+    List<BulkWriteResult<Usuario>> saveAll(List<Usuario> usuarios);
+
+    /**
+     * @param ids identificadores de los usuarios a eliminar
+     * @return IDs de los usuarios que existían y se eliminaron
+     */
+    List<Long> deleteAllById(Collection<Long> ids);
+
     /**
      * @param nombre nombre a buscar
      * @return lista de usuarios con nombre coincidente
@@ -35,7 +91,18 @@ public interface UsuarioRepository {
     List<Usuario> findByNombre(String nombre);
 
     /**
-     * @param email email a buscar
+     * Búsqueda parcial por nombre, sin distinguir mayúsculas ni tildes. Las consultas de
+     * tres o más caracteres buscan la subcadena en cualquier posición; las más cortas
+     * buscan palabras que empiecen así.
+     *
+     * @param consulta texto a buscar
+     * @param limite cantidad máxima de resultados
+     * @return usuarios coincidentes, como máximo {@code limite}
+     */
+    List<Usuario> searchByNombre(String consulta, int limite);
+
+    /**
+     * @param email email a buscar (sin distinguir mayúsculas de minúsculas)
      * @return usuario con email coincidente
      */
     Optional<Usuario> findByEmail(String email);
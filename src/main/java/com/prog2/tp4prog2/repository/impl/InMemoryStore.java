@@ -0,0 +1,556 @@
+package com.prog2.tp4prog2.repository.impl;
+
+import com.prog2.tp4prog2.model.Identificable;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
+import com.prog2.tp4prog2.repository.persistence.DurableStore;
+import com.prog2.tp4prog2.repository.persistence.EntityLog;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Almacenamiento en memoria seguro para hilos compartido por los repositorios.
+ * Las lecturas no toman locks; las escrituras sobre un mismo ID se serializan
+ * mediante un conjunto fijo de locks (lock striping) y los IDs se asignan con
+ * un contador atómico. Los índices secundarios registrados se actualizan
+ * dentro del mismo lock que la escritura. Los IDs se mantienen además ordenados
+ * para paginar por cursor en tiempo proporcional al tamaño de la página. Cada
+ * escritura asigna a la entidad la versión siguiente a la almacenada.
+ *
+ * <p>Si tiene un {@link EntityLog} asociado, cada escritura se registra en el
+ * log antes de aplicarse en memoria y se espera su fsync después de liberar el
+ * lock, de modo que varias escrituras concurrentes comparten un mismo fsync.
+ *
+ * @param <T> tipo de entidad almacenada
+ */
+public class InMemoryStore<T extends Identificable> implements DurableStore<T> {
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final Map<Long, T> entidades = new ConcurrentHashMap<>();
+    private final NavigableSet<Long> orden = new ConcurrentSkipListSet<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ReentrantLock[] stripes;
+    private final List<Index<T>> indices = new ArrayList<>();
+    private final LongAdder revision = new LongAdder();
+    private volatile EntityLog<T> log;
+
+    public InMemoryStore() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes cantidad de locks de escritura (se redondea a potencia de 2)
+     */
+    public InMemoryStore(int stripes) {
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        // Empieza en un valor al azar para que una revisión anterior a un reinicio no se repita
+        this.revision.add(ThreadLocalRandom.current().nextLong(1L << 62));
+    }
+
+    /**
+     * Registra un índice secundario. Debe llamarse antes de guardar entidades.
+     */
+    void addIndex(Index<T> index) {
+        indices.add(index);
+    }
+
+    @Override
+    public void restore(Collection<T> recuperadas, long ultimoId) {
+        reserveUpTo(ultimoId);
+        for (T entidad : recuperadas) {
+            Long id = entidad.getId();
+            reserveUpTo(id);
+            ReentrantLock lock = lockFor(id);
+            lock.lock();
+            try {
+                reserveAll(id, entidad);
+                apply(id, entidad);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void attachLog(EntityLog<T> log) {
+        this.log = log;
+    }
+
+    /**
+     * Toma todos los locks de escritura en orden, por lo que no hay escrituras a
+     * medio aplicar mientras corre la acción.
+     */
+    @Override
+    public void writeLocked(Runnable accion) {
+        int tomados = 0;
+        try {
+            for (ReentrantLock stripe : stripes) {
+                stripe.lock();
+                tomados++;
+            }
+            accion.run();
+        } finally {
+            for (int i = tomados - 1; i >= 0; i--) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    @Override
+    public long sequence() {
+        return sequence.get();
+    }
+
+    /**
+     * @return copia de todas las entidades almacenadas
+     */
+    public List<T> findAll() {
+        return new ArrayList<>(entidades.values());
+    }
+
+    /**
+     * @return stream débilmente consistente sobre las entidades almacenadas
+     */
+    @Override
+    public Stream<T> stream() {
+        return entidades.values().stream();
+    }
+
+    /**
+     * @param despuesDe ID a partir del cual empieza la página (exclusivo), o null para la primera
+     * @param limite cantidad máxima de entidades
+     * @return entidades ordenadas por ID
+     */
+    public List<T> page(Long despuesDe, int limite) {
+        List<T> pagina = new ArrayList<>(Math.min(limite, 1024));
+        for (Long id : despuesDe == null ? orden : orden.tailSet(despuesDe, false)) {
+            if (pagina.size() >= limite) {
+                break;
+            }
+            T entidad = entidades.get(id);
+            if (entidad != null) {
+                pagina.add(entidad);
+            }
+        }
+        return pagina;
+    }
+
+    /**
+     * @param id identificador de la entidad
+     * @return la entidad si se encuentra
+     */
+    public Optional<T> findById(Long id) {
+        return id == null ? Optional.empty() : Optional.ofNullable(entidades.get(id));
+    }
+
+    /**
+     * @param id identificador de la entidad
+     * @return true si existe una entidad con ese ID
+     */
+    public boolean existsById(Long id) {
+        return id != null && entidades.containsKey(id);
+    }
+
+    /**
+     * Guarda la entidad, asignándole un ID nuevo si no tiene uno. Si algún índice
+     * rechaza la escritura no se modifica nada y se propaga la excepción.
+     *
+     * @param entidad la entidad a guardar
+     * @return la entidad guardada
+     */
+    public T save(T entidad) {
+        Long id = entidad.getId();
+        if (id == null) {
+            id = sequence.incrementAndGet();
+            entidad.setId(id);
+        } else {
+            reserveUpTo(id);
+        }
+        EntityLog<T> log = this.log;
+        long ticket;
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            ticket = write(log, id, entidad);
+        } finally {
+            lock.unlock();
+        }
+        if (log != null) {
+            log.sync(ticket);
+        }
+        return entidad;
+    }
+
+    /**
+     * Guarda la entidad solo si la almacenada con su ID (o null, si no hay ninguna)
+     * cumple {@code condicion}. La condición se evalúa con el lock del ID tomado.
+     *
+     * @param entidad la entidad a guardar, con ID asignado
+     * @param condicion condición sobre la entidad almacenada
+     * @return la entidad guardada, o vacío si no se cumplió la condición
+     */
+    public Optional<T> saveIf(T entidad, Predicate<T> condicion) {
+        Long id = entidad.getId();
+        reserveUpTo(id);
+        EntityLog<T> log = this.log;
+        long ticket;
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            if (!condicion.test(entidades.get(id))) {
+                return Optional.empty();
+            }
+            ticket = write(log, id, entidad);
+        } finally {
+            lock.unlock();
+        }
+        if (log != null) {
+            log.sync(ticket);
+        }
+        return Optional.of(entidad);
+    }
+
+    /**
+     * Reemplaza atómicamente la entidad almacenada por la que devuelve {@code cambio}.
+     * La función se evalúa con el lock del ID tomado, así que ninguna otra escritura
+     * sobre esa entidad puede intercalarse entre la lectura y el reemplazo.
+     *
+     * @param id identificador de la entidad
+     * @param cambio recibe la entidad actual y devuelve la nueva, o null para no modificarla
+     * @return la entidad nueva, o vacío si no existía o {@code cambio} devolvió null
+     */
+    public Optional<T> update(Long id, UnaryOperator<T> cambio) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        EntityLog<T> log = this.log;
+        long ticket;
+        T nueva;
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            T actual = entidades.get(id);
+            nueva = actual != null ? cambio.apply(actual) : null;
+            if (nueva == null) {
+                return Optional.empty();
+            }
+            nueva.setId(id);
+            ticket = write(log, id, nueva);
+        } finally {
+            lock.unlock();
+        }
+        if (log != null) {
+            log.sync(ticket);
+        }
+        return Optional.of(nueva);
+    }
+
+    /**
+     * Guarda un lote de entidades. Los elementos se agrupan por lock, de modo que
+     * cada lock se toma una sola vez, y cada grupo se registra en el log con una
+     * sola escritura; con log se espera un único fsync al final. Un elemento
+     * rechazado (nulo o con una clave duplicada) no impide guardar los demás.
+     *
+     * @param lote entidades a guardar
+     * @return un resultado por elemento, en el mismo orden
+     */
+    public List<BulkWriteResult<T>> saveAll(List<T> lote) {
+        List<BulkWriteResult<T>> resultados = new ArrayList<>(Collections.nCopies(lote.size(), null));
+        List<List<Integer>> grupos = new ArrayList<>(Collections.nCopies(stripes.length, null));
+        for (int i = 0; i < lote.size(); i++) {
+            T entidad = lote.get(i);
+            if (entidad == null) {
+                resultados.set(i, BulkWriteResult.rejected(null,
+                    new IllegalArgumentException("El elemento " + i + " está vacío")));
+                continue;
+            }
+            Long id = entidad.getId();
+            if (id == null) {
+                id = sequence.incrementAndGet();
+                entidad.setId(id);
+            } else {
+                reserveUpTo(id);
+            }
+            addToGroup(grupos, stripeFor(id), i);
+        }
+
+        EntityLog<T> log = this.log;
+        long ticket = -1;
+        for (int stripe = 0; stripe < grupos.size(); stripe++) {
+            List<Integer> grupo = grupos.get(stripe);
+            if (grupo == null) {
+                continue;
+            }
+            stripes[stripe].lock();
+            try {
+                List<T> aceptadas = new ArrayList<>(grupo.size());
+                // Un mismo ID puede repetirse en el lote: la versión parte de la última aceptada
+                Map<Long, T> previas = new HashMap<>();
+                for (int i : grupo) {
+                    T entidad = lote.get(i);
+                    try {
+                        reserveAll(entidad.getId(), entidad);
+                        T previa = previas.containsKey(entidad.getId())
+                            ? previas.get(entidad.getId()) : entidades.get(entidad.getId());
+                        entidad.setVersion(nextVersion(previa));
+                        previas.put(entidad.getId(), entidad);
+                        aceptadas.add(entidad);
+                        resultados.set(i, BulkWriteResult.saved(entidad));
+                    } catch (RuntimeException e) {
+                        resultados.set(i, BulkWriteResult.rejected(entidad, e));
+                    }
+                }
+                if (log != null && !aceptadas.isEmpty()) {
+                    try {
+                        ticket = log.appendSaves(aceptadas);
+                    } catch (RuntimeException e) {
+                        for (int i : grupo) {
+                            T entidad = lote.get(i);
+                            if (resultados.get(i).isSaved()) {
+                                releaseAll(entidad.getId(), entidad, indices.size());
+                                resultados.set(i, BulkWriteResult.rejected(entidad, e));
+                            }
+                        }
+                        continue;
+                    }
+                }
+                for (T entidad : aceptadas) {
+                    apply(entidad.getId(), entidad);
+                }
+            } finally {
+                stripes[stripe].unlock();
+            }
+        }
+        if (log != null && ticket >= 0) {
+            log.sync(ticket);
+        }
+        return resultados;
+    }
+
+    /**
+     * Elimina un lote de entidades tomando cada lock una sola vez.
+     *
+     * @param ids identificadores de las entidades a eliminar
+     * @return las entidades eliminadas (las que existían)
+     */
+    public List<T> deleteAllById(Collection<Long> ids) {
+        List<List<Long>> grupos = new ArrayList<>(Collections.nCopies(stripes.length, null));
+        for (Long id : ids) {
+            if (id != null) {
+                addToGroup(grupos, stripeFor(id), id);
+            }
+        }
+        EntityLog<T> log = this.log;
+        long ticket = -1;
+        List<T> eliminadas = new ArrayList<>();
+        for (int stripe = 0; stripe < grupos.size(); stripe++) {
+            List<Long> grupo = grupos.get(stripe);
+            if (grupo == null) {
+                continue;
+            }
+            stripes[stripe].lock();
+            try {
+                List<Long> existentes = new ArrayList<>(grupo.size());
+                for (Long id : grupo) {
+                    if (entidades.containsKey(id) && !existentes.contains(id)) {
+                        existentes.add(id);
+                    }
+                }
+                if (log != null && !existentes.isEmpty()) {
+                    ticket = log.appendDeletes(existentes);
+                }
+                for (Long id : existentes) {
+                    eliminadas.add(unapply(id));
+                }
+            } finally {
+                stripes[stripe].unlock();
+            }
+        }
+        if (log != null && ticket >= 0) {
+            log.sync(ticket);
+        }
+        return eliminadas;
+    }
+
+    /**
+     * @param id identificador de la entidad a eliminar
+     * @return la entidad eliminada si existía
+     */
+    public Optional<T> deleteById(Long id) {
+        return delete(id, null);
+    }
+
+    /**
+     * Elimina la entidad solo si la instancia almacenada sigue siendo {@code actual}.
+     *
+     * @param id identificador de la entidad a eliminar
+     * @param actual instancia esperada
+     * @return true si se eliminó
+     */
+    public boolean deleteIfSame(Long id, T actual) {
+        return delete(id, actual).isPresent();
+    }
+
+    /**
+     * @param esperada instancia que debe estar almacenada, o null para eliminar cualquiera
+     */
+    private Optional<T> delete(Long id, T esperada) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        EntityLog<T> log = this.log;
+        long ticket = -1;
+        T removed;
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            T almacenada = entidades.get(id);
+            if (almacenada == null || (esperada != null && almacenada != esperada)) {
+                return Optional.empty();
+            }
+            if (log != null) {
+                ticket = log.appendDelete(id);
+            }
+            removed = unapply(id);
+        } finally {
+            lock.unlock();
+        }
+        if (log != null) {
+            log.sync(ticket);
+        }
+        return Optional.of(removed);
+    }
+
+    /**
+     * Contador que aumenta con cada escritura o baja aplicada. Se incrementa después
+     * de aplicar el cambio, así que si no varió entre dos lecturas la colección leída
+     * en medio no cambió.
+     *
+     * @return revisión actual de la colección
+     */
+    public long revision() {
+        return revision.sum();
+    }
+
+    /**
+     * @return cantidad de entidades almacenadas
+     */
+    public int size() {
+        return entidades.size();
+    }
+
+    /**
+     * Registra y aplica una escritura; debe llamarse con el lock del ID tomado.
+     *
+     * @return posición en el log a sincronizar, o -1 si no hay log
+     */
+    private long write(EntityLog<T> log, Long id, T entidad) {
+        reserveAll(id, entidad);
+        entidad.setVersion(nextVersion(entidades.get(id)));
+        long ticket = -1;
+        if (log != null) {
+            try {
+                ticket = log.appendSave(id, entidad);
+            } catch (RuntimeException e) {
+                releaseAll(id, entidad, indices.size());
+                throw e;
+            }
+        }
+        apply(id, entidad);
+        return ticket;
+    }
+
+    private static long nextVersion(Identificable actual) {
+        return actual != null ? actual.getVersion() + 1 : 1;
+    }
+
+    private void apply(Long id, T entidad) {
+        entidades.put(id, entidad);
+        orden.add(id);
+        for (Index<T> index : indices) {
+            index.update(id, entidad);
+        }
+        revision.increment();
+    }
+
+    private T unapply(Long id) {
+        T removed = entidades.remove(id);
+        if (removed != null) {
+            orden.remove(id);
+            for (Index<T> index : indices) {
+                index.remove(id);
+            }
+            revision.increment();
+        }
+        return removed;
+    }
+
+    private void reserveAll(Long id, T entidad) {
+        int reserved = 0;
+        try {
+            for (Index<T> index : indices) {
+                index.reserve(id, entidad);
+                reserved++;
+            }
+        } catch (RuntimeException e) {
+            releaseAll(id, entidad, reserved);
+            throw e;
+        }
+    }
+
+    private void releaseAll(Long id, T entidad, int reserved) {
+        for (int i = 0; i < reserved; i++) {
+            indices.get(i).release(id, entidad);
+        }
+    }
+
+    /**
+     * Evita que el contador vuelva a entregar un ID que fue asignado externamente.
+     */
+    private void reserveUpTo(long id) {
+        long current = sequence.get();
+        while (current < id && !sequence.compareAndSet(current, id)) {
+            current = sequence.get();
+        }
+    }
+
+    private ReentrantLock lockFor(long id) {
+        return stripes[stripeFor(id)];
+    }
+
+    private int stripeFor(long id) {
+        int h = Long.hashCode(id);
+        h ^= (h >>> 16);
+        return h & (stripes.length - 1);
+    }
+
+    private static <E> void addToGroup(List<List<E>> grupos, int stripe, E elemento) {
+        List<E> grupo = grupos.get(stripe);
+        if (grupo == null) {
+            grupo = new ArrayList<>();
+            grupos.set(stripe, grupo);
+        }
+        grupo.add(elemento);
+    }
+}
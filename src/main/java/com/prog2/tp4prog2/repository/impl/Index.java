@@ -0,0 +1,34 @@
+package com.prog2.tp4prog2.repository.impl;
+
+/**
+ * Índice secundario mantenido por {@link InMemoryStore}. Los métodos se invocan
+ * con el lock de escritura del ID correspondiente tomado, por lo que nunca hay
+ * dos actualizaciones simultáneas para una misma entidad.
+ *
+ * @param <T> tipo de entidad indexada
+ */
+interface Index<T> {
+
+    /**
+     * Reserva las claves que necesita la entidad antes de que se aplique la escritura.
+     * Los índices únicos lanzan una excepción si la clave ya pertenece a otro ID.
+     */
+    default void reserve(Long id, T entidad) {
+    }
+
+    /**
+     * Libera lo reservado por {@link #reserve} cuando la escritura no se aplica.
+     */
+    default void release(Long id, T entidad) {
+    }
+
+    /**
+     * Actualiza el índice con el nuevo estado de la entidad.
+     */
+    void update(Long id, T entidad);
+
+    /**
+     * Quita la entidad del índice.
+     */
+    void remove(Long id);
+}
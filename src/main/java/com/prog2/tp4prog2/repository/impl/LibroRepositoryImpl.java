@@ -1,12 +1,17 @@
 package com.prog2.tp4prog2.repository.impl;
 
 import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
 import com.prog2.tp4prog2.repository.LibroRepository;
+import com.prog2.tp4prog2.repository.persistence.EntityCodecs;
+import com.prog2.tp4prog2.repository.persistence.RepositoryPersistence;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -15,51 +20,195 @@ import java.util.stream.Collectors;
  */
 @Repository
 public class LibroRepositoryImpl implements LibroRepository {
-    private final Map<Long, Libro> libros = new HashMap<>();
-    private Long nextId = 1L;
+    private final InMemoryStore<Libro> libros = new InMemoryStore<>();
+    private final UniqueIndex<String, Libro> porIsbn =
+        new UniqueIndex<>("ISBN", libro -> normalizeIsbn(libro.getIsbn()));
+    private final TextIndex<Libro> porTexto = new TextIndex<Libro>(libros::size)
+        .field(Libro::getTitulo, 2)
+        .field(Libro::getAutor, 1);
+    private final MetricasRepositorio metricas;
+
+    public LibroRepositoryImpl() {
+        this(RepositoryPersistence.disabled());
+    }
+
+    public LibroRepositoryImpl(RepositoryPersistence persistence) {
+        this(persistence, new CompositeMeterRegistry());
+    }
+
+    /**
+     * @param persistence acceso al log de escritura; si está deshabilitado el repositorio es solo en memoria
+     * @param registry registro donde publicar las métricas de acceso
+     */
+    @Autowired
+    public LibroRepositoryImpl(RepositoryPersistence persistence, MeterRegistry registry) {
+        libros.addIndex(porIsbn);
+        libros.addIndex(porTexto);
+        persistence.attach("libros", EntityCodecs.LIBRO, libros);
+        this.metricas = new MetricasRepositorio(registry, "libros", libros);
+    }
+
+    @Override
+    public long revision() {
+        return libros.revision();
+    }
 
     @Override
     public List<Libro> findAll() {
-        return new ArrayList<>(libros.values());
+        metricas.recorrido(libros.size());
+        return libros.findAll();
+    }
+
+    @Override
+    public List<Libro> findPage(Long despuesDe, int limite) {
+        return libros.page(despuesDe, limite);
     }
 
     @Override
     public Optional<Libro> findById(Long id) {
-        return Optional.ofNullable(libros.get(id));
+        return libros.findById(id);
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return libros.existsById(id);
+    }
+
+    @Override
+    public List<Libro> findAllById(Collection<Long> ids) {
+        return ids.stream()
+            .map(libros::findById)
+            .flatMap(Optional::stream)
+            .collect(Collectors.toList());
     }
 
     @Override
     public Libro save(Libro libro) {
-        if (libro.getId() == null) {
-            libro.setId(nextId++);
-        }
-        libros.put(libro.getId(), libro);
-        return libro;
+        return libros.save(libro);
+    }
+
+    @Override
+    public Optional<Libro> replaceIfVersion(Libro libro, long versionEsperada) {
+        return libros.saveIf(libro, actual -> actual != null && actual.getVersion() == versionEsperada);
+    }
+
+    @Override
+    public Optional<Libro> replaceIfPresent(Libro libro) {
+        return libros.saveIf(libro, Objects::nonNull);
+    }
+
+    @Override
+    public Optional<Libro> compareAndSetEstado(Long id, String esperado, String nuevo) {
+        // Se reemplaza por una copia: las instancias ya entregadas no cambian por debajo
+        return libros.update(id, actual -> Objects.equals(actual.getEstado(), esperado)
+            ? new Libro(actual.getId(), actual.getIsbn(), actual.getTitulo(), actual.getAutor(), nuevo)
+            : null);
     }
 
     @Override
     public void deleteById(Long id) {
-        libros.remove(id);
+        libros.deleteById(id);
+    }
+
+    @Override
+    public List<BulkWriteResult<Libro>> saveAll(List<Libro> lote) {
+        return libros.saveAll(lote);
+    }
+
+    @Override
+    public List<Long> deleteAllById(Collection<Long> ids) {
+        return libros.deleteAllById(ids).stream()
+            .map(Libro::getId)
+            .collect(Collectors.toList());
     }
 
     @Override
     public List<Libro> findByTitulo(String titulo) {
-        return libros.values().stream()
+        metricas.recorrido(libros.size());
+        return libros.stream()
             .filter(libro -> libro.getTitulo().contains(titulo))
             .collect(Collectors.toList());
     }
 
     @Override
     public List<Libro> findByAutor(String autor) {
-        return libros.values().stream()
+        metricas.recorrido(libros.size());
+        return libros.stream()
             .filter(libro -> libro.getAutor().contains(autor))
             .collect(Collectors.toList());
     }
 
+    @Override
+    public List<Libro> search(String consulta, int limite) {
+        metricas.indice("texto");
+        return porTexto.search(consulta, limite).stream()
+            .map(libros::findById)
+            .flatMap(Optional::stream)
+            .collect(Collectors.toList());
+    }
+
     @Override
     public Optional<Libro> findByIsbn(String isbn) {
-        return libros.values().stream()
-            .filter(libro -> libro.getIsbn().equals(isbn))
-            .findFirst();
+        String key = normalizeIsbn(isbn);
+        metricas.indice("isbn");
+        return porIsbn.get(key)
+            .flatMap(libros::findById)
+            .filter(libro -> key.equals(normalizeIsbn(libro.getIsbn())));
+    }
+
+    /**
+     * Lleva un ISBN a su forma canónica: sin guiones ni espacios y, si es un
+     * ISBN-10 válido, convertido a ISBN-13 con prefijo 978.
+     *
+     * @param isbn ISBN tal como fue ingresado
+     * @return ISBN normalizado, o null si no contiene dígitos
+     */
+    public static String normalizeIsbn(String isbn) {
+        if (isbn == null) {
+            return null;
+        }
+        StringBuilder limpio = new StringBuilder(13);
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c >= '0' && c <= '9') {
+                limpio.append(c);
+            } else if (c == 'X' || c == 'x') {
+                limpio.append('X');
+            }
+        }
+        if (limpio.length() == 0) {
+            return null;
+        }
+        if (limpio.length() == 10 && isValidIsbn10(limpio)) {
+            return toIsbn13(limpio);
+        }
+        return limpio.toString();
+    }
+
+    private static boolean isValidIsbn10(CharSequence isbn) {
+        int suma = 0;
+        for (int i = 0; i < 10; i++) {
+            char c = isbn.charAt(i);
+            int digito;
+            if (c == 'X') {
+                if (i != 9) {
+                    return false;
+                }
+                digito = 10;
+            } else {
+                digito = c - '0';
+            }
+            suma += (10 - i) * digito;
+        }
+        return suma % 11 == 0;
+    }
+
+    private static String toIsbn13(CharSequence isbn10) {
+        StringBuilder isbn13 = new StringBuilder(13).append("978").append(isbn10, 0, 9);
+        int suma = 0;
+        for (int i = 0; i < 12; i++) {
+            suma += (isbn13.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return isbn13.append((10 - suma % 10) % 10).toString();
     }
 }
@@ -0,0 +1,56 @@
+package com.prog2.tp4prog2.repository.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Métricas de acceso de un repositorio: cuántas entidades guarda, cuántas consultas
+ * resuelve con un índice y cuántas filas recorre cuando no tiene uno. Sin un registro
+ * real (por ejemplo, con un {@code CompositeMeterRegistry} vacío) no miden nada.
+ */
+final class MetricasRepositorio {
+    private final MeterRegistry registry;
+    private final String repositorio;
+    private final DistributionSummary recorridos;
+    private final Map<String, Counter> porIndice = new ConcurrentHashMap<>();
+
+    MetricasRepositorio(MeterRegistry registry, String repositorio, InMemoryStore<?> store) {
+        this.registry = registry;
+        this.repositorio = repositorio;
+        Gauge.builder("tp4.repository.entities", store, InMemoryStore::size)
+            .description("Entidades en memoria")
+            .tag("repository", repositorio)
+            .register(registry);
+        this.recorridos = DistributionSummary.builder("tp4.repository.scan.rows")
+            .description("Filas recorridas por cada consulta sin índice")
+            .tag("repository", repositorio)
+            .register(registry);
+    }
+
+    /**
+     * Una consulta que recorre todas las entidades.
+     *
+     * @param filas cantidad de entidades recorridas
+     */
+    void recorrido(int filas) {
+        recorridos.record(filas);
+    }
+
+    /**
+     * Una consulta resuelta con un índice secundario.
+     *
+     * @param indice nombre del índice
+     */
+    void indice(String indice) {
+        porIndice.computeIfAbsent(indice, nombre -> Counter.builder("tp4.repository.index.lookups")
+            .description("Consultas resueltas con un índice")
+            .tag("repository", repositorio)
+            .tag("index", nombre)
+            .register(registry)).increment();
+    }
+}
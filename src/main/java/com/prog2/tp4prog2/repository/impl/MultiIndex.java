@@ -0,0 +1,113 @@
+package com.prog2.tp4prog2.repository.impl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Índice hash no único: asocia cada clave con el conjunto de IDs que la tienen.
+ *
+ * <p>Dos entidades con la misma clave pueden escribirse a la vez (tienen locks de
+ * ID distintos), así que los cambios de un conjunto se hacen con un lock por
+ * clave. No se usa {@code compute}: en un {@code ConcurrentSkipListMap} no es
+ * atómico y la función, que modifica el conjunto, puede ejecutarse dos veces.
+ *
+ * @param <K> tipo de la clave
+ * @param <T> tipo de entidad indexada
+ */
+class MultiIndex<K, T> implements Index<T> {
+    private static final int STRIPES = 64;
+
+    private final Function<T, K> clave;
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final Map<K, Set<Long>> idsPorClave;
+    private final Map<Long, K> clavesPorId = new ConcurrentHashMap<>();
+
+    /**
+     * @param clave función que obtiene la clave (o null si no se indexa)
+     */
+    MultiIndex(Function<T, K> clave) {
+        this(clave, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * @param clave función que obtiene la clave (o null si no se indexa)
+     * @param idsPorClave mapa concurrente vacío donde se guardan las entradas
+     */
+    MultiIndex(Function<T, K> clave, Map<K, Set<Long>> idsPorClave) {
+        this.clave = clave;
+        this.idsPorClave = idsPorClave;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @param key clave a buscar
+     * @return vista de los IDs asociados a la clave
+     */
+    Set<Long> get(K key) {
+        Set<Long> ids = key == null ? null : idsPorClave.get(key);
+        return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(ids);
+    }
+
+    @Override
+    public void update(Long id, T entidad) {
+        K key = clave.apply(entidad);
+        K previous = key == null ? clavesPorId.remove(id) : clavesPorId.put(id, key);
+        if (previous != null && previous.equals(key)) {
+            return;
+        }
+        if (previous != null) {
+            unlink(previous, id);
+        }
+        if (key != null) {
+            link(key, id);
+        }
+    }
+
+    @Override
+    public void remove(Long id) {
+        K previous = clavesPorId.remove(id);
+        if (previous != null) {
+            unlink(previous, id);
+        }
+    }
+
+    private void link(K key, Long id) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            Set<Long> ids = idsPorClave.get(key);
+            if (ids == null) {
+                ids = ConcurrentHashMap.newKeySet();
+                idsPorClave.put(key, ids);
+            }
+            ids.add(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void unlink(K key, Long id) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            Set<Long> ids = idsPorClave.get(key);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                idsPorClave.remove(key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock lockFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (STRIPES - 1)];
+    }
+}
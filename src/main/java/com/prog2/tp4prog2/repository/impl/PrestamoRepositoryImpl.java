@@ -3,86 +3,381 @@ package com.prog2.tp4prog2.repository.impl;
 import com.prog2.tp4prog2.model.Prestamo;
 import com.prog2.tp4prog2.model.Libro;
 import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
 import com.prog2.tp4prog2.repository.PrestamoRepository;
+import com.prog2.tp4prog2.repository.persistence.EntityCodecs;
+import com.prog2.tp4prog2.repository.persistence.PrestamoArchive;
+import com.prog2.tp4prog2.repository.persistence.RepositoryPersistence;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Los préstamos abiertos y los devueltos recientemente viven en memoria; si el
+ * archivo histórico está habilitado, los devueltos hace más del período de
+ * retención se mueven a un {@link PrestamoArchive} fuera del heap. Las consultas
+ * combinan ambos niveles.
+ */
 @Repository
 public class PrestamoRepositoryImpl implements PrestamoRepository {
-    private final Map<Long, Prestamo> prestamos = new HashMap<>();
-    private Long nextId = 1L;
+    private static final int LOTE_ARCHIVO = 10_000;
+
+    private final InMemoryStore<Prestamo> prestamos = new InMemoryStore<>();
+    private final MultiIndex<Long, Prestamo> porUsuario = new MultiIndex<>(Prestamo::getUsuarioId);
+    private final MultiIndex<Long, Prestamo> porLibro = new MultiIndex<>(Prestamo::getLibroId);
+    private final SortedIndex<LocalDate, Prestamo> porFechaDevolucion =
+        new SortedIndex<>(Prestamo::getFechaDevolucion);
+    private final SortedIndex<LocalDate, Prestamo> porFechaEntrega =
+        new SortedIndex<>(Prestamo::getFechaEntrega);
+    // Solo los préstamos abiertos: activos y vencidos no recorren el histórico de devueltos
+    private final SortedIndex<LocalDate, Prestamo> abiertosPorVencimiento =
+        new SortedIndex<>(prestamo -> prestamo.getFechaEntrega() == null ? prestamo.getFechaDevolucion() : null);
+    private final PrestamoArchive archivo;
+    private final AtomicLong bajasArchivadas = new AtomicLong();
+    // Un lock y no synchronized: el archivado escribe en disco y no debe fijar un hilo virtual a su portador
+    private final ReentrantLock archivando = new ReentrantLock();
+    private final MetricasRepositorio metricas;
+
+    public PrestamoRepositoryImpl() {
+        this(RepositoryPersistence.disabled());
+    }
+
+    public PrestamoRepositoryImpl(RepositoryPersistence persistence) {
+        this(persistence, new CompositeMeterRegistry());
+    }
+
+    /**
+     * @param persistence acceso al log de escritura; si está deshabilitado el repositorio es solo en memoria
+     * @param registry registro donde publicar las métricas de acceso
+     */
+    @Autowired
+    public PrestamoRepositoryImpl(RepositoryPersistence persistence, MeterRegistry registry) {
+        prestamos.addIndex(porUsuario);
+        prestamos.addIndex(porLibro);
+        prestamos.addIndex(porFechaDevolucion);
+        prestamos.addIndex(porFechaEntrega);
+        prestamos.addIndex(abiertosPorVencimiento);
+        persistence.attach("prestamos", EntityCodecs.PRESTAMO, prestamos);
+        this.archivo = persistence.openArchive("prestamos").orElse(null);
+        persistence.scheduleArchiving("prestamos", this::archiveBefore);
+        this.metricas = new MetricasRepositorio(registry, "prestamos", prestamos);
+    }
+
+    /**
+     * Mueve al archivo histórico los préstamos devueltos antes de {@code corte}.
+     * Las filas quedan en disco antes de eliminar los préstamos de memoria; si un
+     * préstamo se modifica mientras tanto, se conserva la versión en memoria.
+     * Después compacta el archivo si las filas dadas de baja ya superan a las vivas.
+     *
+     * @param corte fecha de entrega límite, exclusiva
+     * @return cantidad de préstamos archivados
+     */
+    public int archiveBefore(LocalDate corte) {
+        if (archivo == null) {
+            return 0;
+        }
+        archivando.lock();
+        try {
+            int archivados = archivar(corte);
+            if (archivo.rows() - archivo.size() > archivo.size()) {
+                archivo.compact();
+            }
+            return archivados;
+        } finally {
+            archivando.unlock();
+        }
+    }
+
+    private int archivar(LocalDate corte) {
+        List<Prestamo> candidatos = resolve(porFechaEntrega.range(null, false, corte, false),
+            prestamo -> prestamo.getFechaEntrega() != null && prestamo.getFechaEntrega().isBefore(corte));
+        int archivados = 0;
+        for (int desde = 0; desde < candidatos.size(); desde += LOTE_ARCHIVO) {
+            List<Prestamo> lote = candidatos.subList(desde, Math.min(desde + LOTE_ARCHIVO, candidatos.size()));
+            archivo.append(lote);
+            for (Prestamo prestamo : lote) {
+                if (prestamos.deleteIfSame(prestamo.getId(), prestamo)) {
+                    archivados++;
+                } else {
+                    quitarArchivado(prestamo.getId());
+                }
+            }
+        }
+        return archivados;
+    }
+
+    @Override
+    public long revision() {
+        // Las bajas de filas archivadas no pasan por el almacén en memoria
+        return prestamos.revision() + bajasArchivadas.get();
+    }
 
     @Override
     public List<Prestamo> findAll() {
-        return new ArrayList<>(prestamos.values());
+        metricas.recorrido(prestamos.size());
+        return withArchived(prestamos.findAll(), PrestamoArchive::findAll);
+    }
+
+    @Override
+    public List<Prestamo> findPage(Long despuesDe, int limite) {
+        List<Prestamo> enMemoria = prestamos.page(despuesDe, limite);
+        if (archivo == null) {
+            return enMemoria;
+        }
+        // Une las dos páginas ordenadas por ID y se queda con las primeras
+        List<Prestamo> archivados = archivo.page(despuesDe == null ? 0 : despuesDe, limite);
+        List<Prestamo> pagina = new ArrayList<>(limite);
+        int i = 0;
+        int j = 0;
+        while (pagina.size() < limite && (i < enMemoria.size() || j < archivados.size())) {
+            if (j == archivados.size()
+                || (i < enMemoria.size() && enMemoria.get(i).getId() <= archivados.get(j).getId())) {
+                Prestamo prestamo = enMemoria.get(i++);
+                if (j < archivados.size() && archivados.get(j).getId().equals(prestamo.getId())) {
+                    j++;
+                }
+                pagina.add(prestamo);
+            } else {
+                Prestamo archivado = archivados.get(j++);
+                if (!prestamos.existsById(archivado.getId())) {
+                    pagina.add(archivado);
+                }
+            }
+        }
+        return pagina;
     }
 
     @Override
     public Optional<Prestamo> findById(Long id) {
-        return Optional.ofNullable(prestamos.get(id));
+        Optional<Prestamo> prestamo = prestamos.findById(id);
+        if (prestamo.isPresent() || archivo == null || id == null) {
+            return prestamo;
+        }
+        return archivo.findById(id);
     }
 
     @Override
     public Prestamo save(Prestamo prestamo) {
-        if (prestamo.getId() == null) {
-            prestamo.setId(nextId++);
+        Prestamo guardado = prestamos.save(prestamo);
+        // La versión en memoria reemplaza a la archivada
+        if (archivo != null && archivo.contains(guardado.getId())) {
+            quitarArchivado(guardado.getId());
+        }
+        return guardado;
+    }
+
+    @Override
+    public Optional<Prestamo> replaceIfVersion(Prestamo prestamo, long versionEsperada) {
+        Long id = prestamo.getId();
+        // Las filas archivadas no guardan la versión y se leen con versión 0
+        Optional<Prestamo> guardado = prestamos.saveIf(prestamo, actual -> actual != null
+            ? actual.getVersion() == versionEsperada
+            : versionEsperada == 0 && archivo != null && archivo.contains(id));
+        if (guardado.isPresent() && archivo != null && archivo.contains(id)) {
+            quitarArchivado(id);
         }
-        prestamos.put(prestamo.getId(), prestamo);
-        return prestamo;
+        return guardado;
     }
 
     @Override
     public void deleteById(Long id) {
-        prestamos.remove(id);
+        prestamos.deleteById(id);
+        if (archivo != null && id != null) {
+            quitarArchivado(id);
+        }
+    }
+
+    @Override
+    public Optional<Prestamo> removeById(Long id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        Optional<Prestamo> eliminado = prestamos.deleteById(id);
+        if (archivo != null) {
+            // remove() decide cuál de los hilos que leyeron la fila archivada la recibe
+            Optional<Prestamo> archivado = archivo.findById(id);
+            if (archivado.isPresent() && quitarArchivado(id) && eliminado.isEmpty()) {
+                return archivado;
+            }
+        }
+        return eliminado;
+    }
+
+    @Override
+    public List<BulkWriteResult<Prestamo>> saveAll(List<Prestamo> lote) {
+        List<BulkWriteResult<Prestamo>> resultados = prestamos.saveAll(lote);
+        if (archivo != null) {
+            for (BulkWriteResult<Prestamo> resultado : resultados) {
+                if (resultado.isSaved() && archivo.contains(resultado.entidad().getId())) {
+                    quitarArchivado(resultado.entidad().getId());
+                }
+            }
+        }
+        return resultados;
+    }
+
+    @Override
+    public List<Long> deleteAllById(Collection<Long> ids) {
+        return removeAllById(ids).stream().map(Prestamo::getId).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Prestamo> removeAllById(Collection<Long> ids) {
+        List<Prestamo> eliminados = new ArrayList<>(prestamos.deleteAllById(ids));
+        if (archivo != null) {
+            Set<Long> enMemoria = new HashSet<>();
+            eliminados.forEach(prestamo -> enMemoria.add(prestamo.getId()));
+            for (Long id : new LinkedHashSet<>(ids)) {
+                if (id == null) {
+                    continue;
+                }
+                Optional<Prestamo> archivado = archivo.findById(id);
+                if (archivado.isPresent() && quitarArchivado(id) && !enMemoria.contains(id)) {
+                    eliminados.add(archivado.get());
+                }
+            }
+        }
+        return eliminados;
+    }
+
+    private boolean quitarArchivado(Long id) {
+        if (archivo.remove(id)) {
+            bajasArchivadas.incrementAndGet();
+            return true;
+        }
+        return false;
     }
 
     @Override
     public List<Prestamo> findByUsuario(Usuario usuario) {
-        return prestamos.values().stream()
-            .filter(prestamo -> prestamo.getUsuario().equals(usuario))
-            .collect(Collectors.toList());
+        return findByUsuarioId(usuario.getId());
+    }
+
+    @Override
+    public List<Prestamo> findByUsuarioId(Long usuarioId) {
+        metricas.indice("usuario");
+        return withArchived(resolve(porUsuario.get(usuarioId).stream(),
+            prestamo -> usuarioId.equals(prestamo.getUsuarioId())),
+            archive -> archive.findByUsuarioId(usuarioId));
     }
 
     @Override
     public List<Prestamo> findByLibro(Libro libro) {
-        return prestamos.values().stream()
-            .filter(prestamo -> prestamo.getLibro().equals(libro))
-            .collect(Collectors.toList());
+        return findByLibroId(libro.getId());
+    }
+
+    @Override
+    public List<Prestamo> findByLibroId(Long libroId) {
+        metricas.indice("libro");
+        return withArchived(resolve(porLibro.get(libroId).stream(),
+            prestamo -> libroId.equals(prestamo.getLibroId())),
+            archive -> archive.findByLibroId(libroId));
     }
 
     @Override
     public List<Prestamo> findByFechaPrestamo(LocalDate fechaPrestamo) {
-        return prestamos.values().stream()
+        metricas.recorrido(prestamos.size());
+        return withArchived(prestamos.stream()
             .filter(prestamo -> prestamo.getFechaPrestamo().equals(fechaPrestamo))
-            .collect(Collectors.toList());
+            .collect(Collectors.toList()),
+            archive -> archive.findByFechaPrestamo(fechaPrestamo));
     }
 
     @Override
     public List<Prestamo> findByFechaDevolucion(LocalDate fechaDevolucion) {
-        return prestamos.values().stream()
-            .filter(prestamo -> prestamo.getFechaDevolucion().equals(fechaDevolucion))
-            .collect(Collectors.toList());
+        metricas.indice("fechaDevolucion");
+        return withArchived(resolve(porFechaDevolucion.get(fechaDevolucion).stream(),
+            prestamo -> fechaDevolucion.equals(prestamo.getFechaDevolucion())),
+            archive -> archive.findByFechaDevolucionBetween(fechaDevolucion, fechaDevolucion));
     }
 
+    @Override
+    public List<Prestamo> findByFechaDevolucionBetween(LocalDate desde, LocalDate hasta) {
+        metricas.indice("fechaDevolucion");
+        return byFechaDevolucion(withArchived(resolve(porFechaDevolucion.range(desde, true, hasta, true),
+            prestamo -> isWithin(prestamo.getFechaDevolucion(), desde, hasta)),
+            archive -> archive.findByFechaDevolucionBetween(desde, hasta)));
+    }
+
+    // Los préstamos archivados ya fueron devueltos: activos y vencidos solo se buscan en memoria
     @Override
     public List<Prestamo> findActivePrestamos() {
+        metricas.indice("vencimientoAbierto");
         LocalDate today = LocalDate.now();
-        return prestamos.values().stream()
-            .filter(prestamo -> prestamo.getFechaDevolucion().isAfter(today))
-            .collect(Collectors.toList());
+        return resolve(abiertosPorVencimiento.range(today, false, null, false),
+            prestamo -> prestamo.getFechaEntrega() == null
+                && prestamo.getFechaDevolucion() != null && prestamo.getFechaDevolucion().isAfter(today));
     }
 
     @Override
     public List<Prestamo> findOverduePrestamos() {
-        LocalDate today = LocalDate.now();
-        return prestamos.values().stream()
-            .filter(prestamo -> prestamo.getFechaDevolucion().isBefore(today))
+        return findOverduePrestamos(0);
+    }
+
+    @Override
+    public List<Prestamo> findOverduePrestamos(int diasMinimos) {
+        metricas.indice("vencimientoAbierto");
+        LocalDate limite = LocalDate.now().minusDays(diasMinimos);
+        return resolve(abiertosPorVencimiento.range(null, false, limite, false),
+            prestamo -> prestamo.getFechaEntrega() == null
+                && prestamo.getFechaDevolucion() != null && prestamo.getFechaDevolucion().isBefore(limite));
+    }
+
+    /**
+     * Obtiene los préstamos de los IDs devueltos por un índice, descartando los que
+     * cambiaron entre la lectura del índice y la del almacenamiento.
+     */
+    private List<Prestamo> resolve(Stream<Long> ids, Predicate<Prestamo> sigueCoincidiendo) {
+        return ids
+            .map(prestamos::findById)
+            .flatMap(Optional::stream)
+            .filter(sigueCoincidiendo)
             .collect(Collectors.toList());
     }
+
+    /**
+     * Agrega a un resultado en memoria los préstamos archivados que coinciden. Se
+     * omiten los que también están en memoria (los que se están archivando en
+     * este momento), para no devolverlos dos veces.
+     */
+    private List<Prestamo> withArchived(List<Prestamo> enMemoria, Function<PrestamoArchive, List<Prestamo>> consulta) {
+        if (archivo == null) {
+            return enMemoria;
+        }
+        for (Prestamo archivado : consulta.apply(archivo)) {
+            if (!prestamos.existsById(archivado.getId())) {
+                enMemoria.add(archivado);
+            }
+        }
+        return enMemoria;
+    }
+
+    private List<Prestamo> byFechaDevolucion(List<Prestamo> resultado) {
+        if (archivo != null) {
+            resultado.sort(Comparator.comparing(Prestamo::getFechaDevolucion));
+        }
+        return resultado;
+    }
+
+    private static boolean isWithin(LocalDate fecha, LocalDate desde, LocalDate hasta) {
+        return fecha != null
+            && (desde == null || !fecha.isBefore(desde))
+            && (hasta == null || !fecha.isAfter(hasta));
+    }
 }
@@ -0,0 +1,52 @@
+package com.prog2.tp4prog2.repository.impl;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Índice no único ordenado por clave, que permite consultas por rango cuyo costo
+ * depende de la cantidad de resultados y no del tamaño de la tabla.
+ *
+ * @param <K> tipo de la clave
+ * @param <T> tipo de entidad indexada
+ */
+class SortedIndex<K extends Comparable<? super K>, T> extends MultiIndex<K, T> {
+    private final ConcurrentNavigableMap<K, Set<Long>> idsPorClave;
+
+    /**
+     * @param clave función que obtiene la clave (o null si no se indexa)
+     */
+    SortedIndex(Function<T, K> clave) {
+        this(clave, new ConcurrentSkipListMap<>());
+    }
+
+    private SortedIndex(Function<T, K> clave, ConcurrentNavigableMap<K, Set<Long>> idsPorClave) {
+        super(clave, idsPorClave);
+        this.idsPorClave = idsPorClave;
+    }
+
+    /**
+     * @param desde límite inferior, o null si no hay límite
+     * @param desdeInclusive si el límite inferior se incluye
+     * @param hasta límite superior, o null si no hay límite
+     * @param hastaInclusive si el límite superior se incluye
+     * @return IDs con clave dentro del rango, en orden ascendente de clave
+     */
+    Stream<Long> range(K desde, boolean desdeInclusive, K hasta, boolean hastaInclusive) {
+        ConcurrentNavigableMap<K, Set<Long>> rango = idsPorClave;
+        if (desde != null && hasta != null && desde.compareTo(hasta) > 0) {
+            return Stream.empty();
+        }
+        if (desde != null) {
+            rango = rango.tailMap(desde, desdeInclusive);
+        }
+        if (hasta != null) {
+            rango = rango.headMap(hasta, hastaInclusive);
+        }
+        return rango.values().stream().flatMap(Collection::stream);
+    }
+}
@@ -0,0 +1,134 @@
+package com.prog2.tp4prog2.repository.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Índice invertido para búsqueda de texto completo. Cada palabra normalizada
+ * apunta a los IDs que la contienen junto con un peso que depende del campo
+ * donde aparece. Las consultas devuelven los IDs ordenados por relevancia:
+ * primero los que contienen más términos de la consulta y, a igualdad, los de
+ * mayor puntaje TF-IDF.
+ *
+ * @param <T> tipo de entidad indexada
+ */
+class TextIndex<T> implements Index<T> {
+    private final List<Campo<T>> campos = new ArrayList<>();
+    private final IntSupplier totalDocumentos;
+    private final Map<String, Map<Long, Integer>> postings = new ConcurrentHashMap<>();
+    private final Map<Long, Map<String, Integer>> pesosPorId = new ConcurrentHashMap<>();
+
+    private record Campo<T>(Function<T, String> texto, int peso) {
+    }
+
+    private record Resultado(long id, int coincidencias, double puntaje) {
+    }
+
+    private static final Comparator<Resultado> POR_RELEVANCIA = Comparator
+        .comparingInt(Resultado::coincidencias)
+        .thenComparingDouble(Resultado::puntaje)
+        .thenComparing(Comparator.comparingLong(Resultado::id).reversed());
+
+    /**
+     * @param totalDocumentos cantidad actual de entidades, usada para calcular el IDF
+     */
+    TextIndex(IntSupplier totalDocumentos) {
+        this.totalDocumentos = totalDocumentos;
+    }
+
+    /**
+     * @param texto función que obtiene el texto del campo
+     * @param peso importancia relativa de las coincidencias en este campo
+     * @return este índice
+     */
+    TextIndex<T> field(Function<T, String> texto, int peso) {
+        campos.add(new Campo<>(texto, peso));
+        return this;
+    }
+
+    /**
+     * @param consulta texto libre con uno o más términos
+     * @param limite cantidad máxima de IDs a devolver
+     * @return IDs de las entidades que contienen algún término, de mayor a menor relevancia
+     */
+    List<Long> search(String consulta, int limite) {
+        Set<String> terminos = new LinkedHashSet<>(Texto.tokens(consulta));
+        if (terminos.isEmpty() || limite <= 0) {
+            return List.of();
+        }
+        double total = Math.max(1, totalDocumentos.getAsInt());
+        Map<Long, double[]> acumulado = new HashMap<>();
+        for (String termino : terminos) {
+            Map<Long, Integer> lista = postings.get(termino);
+            if (lista == null || lista.isEmpty()) {
+                continue;
+            }
+            double idf = Math.log(1 + total / lista.size());
+            lista.forEach((id, peso) -> {
+                double[] parcial = acumulado.computeIfAbsent(id, k -> new double[2]);
+                parcial[0]++;
+                parcial[1] += idf * peso;
+            });
+        }
+
+        PriorityQueue<Resultado> mejores = new PriorityQueue<>(limite + 1, POR_RELEVANCIA);
+        acumulado.forEach((id, parcial) -> {
+            mejores.add(new Resultado(id, (int) parcial[0], parcial[1]));
+            if (mejores.size() > limite) {
+                mejores.poll();
+            }
+        });
+        List<Long> ids = new ArrayList<>(mejores.size());
+        while (!mejores.isEmpty()) {
+            ids.add(mejores.poll().id());
+        }
+        Collections.reverse(ids);
+        return ids;
+    }
+
+    @Override
+    public void update(Long id, T entidad) {
+        Map<String, Integer> pesos = new HashMap<>();
+        for (Campo<T> campo : campos) {
+            for (String token : Texto.tokens(campo.texto().apply(entidad))) {
+                pesos.merge(token, campo.peso(), Integer::sum);
+            }
+        }
+        Map<String, Integer> anteriores = pesos.isEmpty() ? pesosPorId.remove(id) : pesosPorId.put(id, pesos);
+        if (anteriores != null) {
+            anteriores.keySet().stream()
+                .filter(token -> !pesos.containsKey(token))
+                .forEach(token -> unlink(token, id));
+        }
+        pesos.forEach((token, peso) -> postings.compute(token, (k, lista) -> {
+            Map<Long, Integer> destino = lista != null ? lista : new ConcurrentHashMap<>();
+            destino.put(id, peso);
+            return destino;
+        }));
+    }
+
+    @Override
+    public void remove(Long id) {
+        Map<String, Integer> anteriores = pesosPorId.remove(id);
+        if (anteriores != null) {
+            anteriores.keySet().forEach(token -> unlink(token, id));
+        }
+    }
+
+    private void unlink(String token, Long id) {
+        postings.computeIfPresent(token, (k, lista) -> {
+            lista.remove(id);
+            return lista.isEmpty() ? null : lista;
+        });
+    }
+}
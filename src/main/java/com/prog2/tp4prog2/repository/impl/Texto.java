@@ -0,0 +1,57 @@
+package com.prog2.tp4prog2.repository.impl;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Normalización de texto compartida por los índices de búsqueda: minúsculas,
+ * sin tildes ni diéresis y dividido en palabras.
+ */
+final class Texto {
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final Set<String> PALABRAS_VACIAS = Set.of(
+        "a", "al", "con", "de", "del", "e", "el", "en", "la", "las", "lo", "los",
+        "o", "para", "por", "se", "su", "un", "una", "y");
+
+    private Texto() {
+    }
+
+    /**
+     * @param texto texto original
+     * @return el texto en minúsculas y sin marcas diacríticas, o cadena vacía si es null
+     */
+    static String fold(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String descompuesto = Normalizer.normalize(texto.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        return MARCAS.matcher(descompuesto).replaceAll("");
+    }
+
+    /**
+     * @param texto texto original
+     * @return palabras normalizadas del texto, sin artículos ni preposiciones comunes
+     */
+    static List<String> tokens(String texto) {
+        String normalizado = fold(texto);
+        List<String> tokens = new ArrayList<>();
+        int inicio = -1;
+        for (int i = 0; i <= normalizado.length(); i++) {
+            boolean esPalabra = i < normalizado.length() && Character.isLetterOrDigit(normalizado.charAt(i));
+            if (esPalabra && inicio < 0) {
+                inicio = i;
+            } else if (!esPalabra && inicio >= 0) {
+                String token = normalizado.substring(inicio, i);
+                if (!PALABRAS_VACIAS.contains(token)) {
+                    tokens.add(token);
+                }
+                inicio = -1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,124 @@
+package com.prog2.tp4prog2.repository.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Índice de trigramas para búsqueda por subcadena. El texto se normaliza con
+ * {@link Texto#fold} y se indexan todos sus trigramas, más un trigrama de inicio
+ * de palabra ("  x") que permite buscar prefijos de uno o dos caracteres.
+ * El índice solo entrega candidatos; quien consulta debe verificar la coincidencia.
+ *
+ * @param <T> tipo de entidad indexada
+ */
+class TrigramIndex<T> implements Index<T> {
+    private final Function<T, String> texto;
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> gramasPorId = new ConcurrentHashMap<>();
+
+    /**
+     * @param texto función que obtiene el texto a indexar
+     */
+    TrigramIndex(Function<T, String> texto) {
+        this.texto = texto;
+    }
+
+    /**
+     * Devuelve los IDs cuyo texto normalizado podría contener la consulta. Para
+     * consultas de tres o más caracteres los candidatos contienen todos sus
+     * trigramas; para consultas más cortas, tienen una palabra que empieza así.
+     *
+     * @param consulta consulta ya normalizada con {@link Texto#fold}
+     * @return candidatos, empezando por la lista de trigramas más corta
+     */
+    Iterable<Long> candidates(String consulta) {
+        List<Set<Long>> listas = new ArrayList<>();
+        for (String grama : queryGrams(consulta)) {
+            Set<Long> ids = postings.get(grama);
+            if (ids == null) {
+                return List.of();
+            }
+            listas.add(ids);
+        }
+        if (listas.isEmpty()) {
+            return List.of();
+        }
+        listas.sort(Comparator.comparingInt(Set::size));
+        Set<Long> menor = listas.get(0);
+        List<Set<Long>> resto = listas.subList(1, listas.size());
+        return () -> menor.stream()
+            .filter(id -> resto.stream().allMatch(ids -> ids.contains(id)))
+            .iterator();
+    }
+
+    @Override
+    public void update(Long id, T entidad) {
+        Set<String> gramas = documentGrams(Texto.fold(texto.apply(entidad)));
+        Set<String> anteriores = gramas.isEmpty() ? gramasPorId.remove(id) : gramasPorId.put(id, gramas);
+        if (anteriores != null) {
+            anteriores.stream()
+                .filter(grama -> !gramas.contains(grama))
+                .forEach(grama -> unlink(grama, id));
+        }
+        for (String grama : gramas) {
+            postings.compute(grama, (k, ids) -> {
+                Set<Long> destino = ids != null ? ids : ConcurrentHashMap.newKeySet();
+                destino.add(id);
+                return destino;
+            });
+        }
+    }
+
+    @Override
+    public void remove(Long id) {
+        Set<String> anteriores = gramasPorId.remove(id);
+        if (anteriores != null) {
+            anteriores.forEach(grama -> unlink(grama, id));
+        }
+    }
+
+    private void unlink(String grama, Long id) {
+        postings.computeIfPresent(grama, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private static Set<String> documentGrams(String normalizado) {
+        Set<String> gramas = new HashSet<>();
+        if (normalizado.isBlank()) {
+            return gramas;
+        }
+        String relleno = " " + normalizado + " ";
+        for (int i = 0; i + 3 <= relleno.length(); i++) {
+            gramas.add(relleno.substring(i, i + 3));
+        }
+        for (int i = 0; i < normalizado.length(); i++) {
+            char c = normalizado.charAt(i);
+            if (!Character.isWhitespace(c) && (i == 0 || Character.isWhitespace(normalizado.charAt(i - 1)))) {
+                gramas.add("  " + c);
+            }
+        }
+        return gramas;
+    }
+
+    private static List<String> queryGrams(String consulta) {
+        if (consulta.length() == 1) {
+            return List.of("  " + consulta);
+        }
+        if (consulta.length() == 2) {
+            return List.of(" " + consulta);
+        }
+        List<String> gramas = new ArrayList<>(consulta.length() - 2);
+        for (int i = 0; i + 3 <= consulta.length(); i++) {
+            gramas.add(consulta.substring(i, i + 3));
+        }
+        return gramas;
+    }
+}
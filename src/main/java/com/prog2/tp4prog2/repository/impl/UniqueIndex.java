@@ -0,0 +1,75 @@
+package com.prog2.tp4prog2.repository.impl;
+
+import com.prog2.tp4prog2.repository.DuplicateKeyException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Índice hash único. La clave se reserva con {@code putIfAbsent}, de modo que dos
+ * altas concurrentes con la misma clave nunca pueden tener éxito a la vez.
+ *
+ * @param <K> tipo de la clave normalizada
+ * @param <T> tipo de entidad indexada
+ */
+class UniqueIndex<K, T> implements Index<T> {
+    private final String nombre;
+    private final Function<T, K> clave;
+    private final Map<K, Long> idsPorClave = new ConcurrentHashMap<>();
+    private final Map<Long, K> clavesPorId = new ConcurrentHashMap<>();
+
+    /**
+     * @param nombre nombre del campo indexado, usado en los mensajes de error
+     * @param clave función que obtiene la clave normalizada (o null si no se indexa)
+     */
+    UniqueIndex(String nombre, Function<T, K> clave) {
+        this.nombre = nombre;
+        this.clave = clave;
+    }
+
+    /**
+     * @param key clave normalizada
+     * @return el ID de la entidad con esa clave
+     */
+    Optional<Long> get(K key) {
+        return key == null ? Optional.empty() : Optional.ofNullable(idsPorClave.get(key));
+    }
+
+    @Override
+    public void reserve(Long id, T entidad) {
+        K key = clave.apply(entidad);
+        if (key == null) {
+            return;
+        }
+        Long owner = idsPorClave.putIfAbsent(key, id);
+        if (owner != null && !owner.equals(id)) {
+            throw new DuplicateKeyException("Ya existe un registro con " + nombre + ": " + key);
+        }
+    }
+
+    @Override
+    public void release(Long id, T entidad) {
+        K key = clave.apply(entidad);
+        if (key != null && !key.equals(clavesPorId.get(id))) {
+            idsPorClave.remove(key, id);
+        }
+    }
+
+    @Override
+    public void update(Long id, T entidad) {
+        K key = clave.apply(entidad);
+        K previous = key == null ? clavesPorId.remove(id) : clavesPorId.put(id, key);
+        if (previous != null && !previous.equals(key)) {
+            idsPorClave.remove(previous, id);
+        }
+    }
+
+    @Override
+    public void remove(Long id) {
+        K previous = clavesPorId.remove(id);
+        if (previous != null) {
+            idsPorClave.remove(previous, id);
+        }
+    }
+}
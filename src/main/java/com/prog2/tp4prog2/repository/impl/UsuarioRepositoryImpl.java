@@ -1,62 +1,187 @@
 package com.prog2.tp4prog2.repository.impl;
 
 import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
 import com.prog2.tp4prog2.repository.UsuarioRepository;
+import com.prog2.tp4prog2.repository.persistence.EntityCodecs;
+import com.prog2.tp4prog2.repository.persistence.RepositoryPersistence;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Repository
 public class UsuarioRepositoryImpl implements UsuarioRepository {
-    private final Map<Long, Usuario> usuarios = new HashMap<>();
-    private Long nextId = 1L;
+    private final InMemoryStore<Usuario> usuarios = new InMemoryStore<>();
+    private final UniqueIndex<String, Usuario> porEmail =
+        new UniqueIndex<>("email", usuario -> normalizeEmail(usuario.getEmail()));
+    private final TrigramIndex<Usuario> porNombre = new TrigramIndex<>(Usuario::getNombre);
+    private final MetricasRepositorio metricas;
+
+    public UsuarioRepositoryImpl() {
+        this(RepositoryPersistence.disabled());
+    }
+
+    public UsuarioRepositoryImpl(RepositoryPersistence persistence) {
+        this(persistence, new CompositeMeterRegistry());
+    }
+
+    /**
+     * @param persistence acceso al log de escritura; si está deshabilitado el repositorio es solo en memoria
+     * @param registry registro donde publicar las métricas de acceso
+     */
+    @Autowired
+    public UsuarioRepositoryImpl(RepositoryPersistence persistence, MeterRegistry registry) {
+        usuarios.addIndex(porEmail);
+        usuarios.addIndex(porNombre);
+        persistence.attach("usuarios", EntityCodecs.USUARIO, usuarios);
+        this.metricas = new MetricasRepositorio(registry, "usuarios", usuarios);
+    }
+
+    @Override
+    public long revision() {
+        return usuarios.revision();
+    }
 
     @Override
     public List<Usuario> findAll() {
-        return new ArrayList<>(usuarios.values());
+        metricas.recorrido(usuarios.size());
+        return usuarios.findAll();
+    }
+
+    @Override
+    public List<Usuario> findPage(Long despuesDe, int limite) {
+        return usuarios.page(despuesDe, limite);
     }
 
     @Override
     public Optional<Usuario> findById(Long id) {
-        return Optional.ofNullable(usuarios.get(id));
+        return usuarios.findById(id);
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return usuarios.existsById(id);
+    }
+
+    @Override
+    public List<Usuario> findAllById(Collection<Long> ids) {
+        return ids.stream()
+            .map(usuarios::findById)
+            .flatMap(Optional::stream)
+            .collect(Collectors.toList());
     }
 
     @Override
     public Usuario save(Usuario usuario) {
-        if (usuario.getId() == null) {
-            usuario.setId(nextId++);
-        }
-        usuarios.put(usuario.getId(), usuario);
-        return usuario;
+        return usuarios.save(usuario);
+    }
+
+    @Override
+    public Optional<Usuario> replaceIfVersion(Usuario usuario, long versionEsperada) {
+        return usuarios.saveIf(usuario, actual -> actual != null && actual.getVersion() == versionEsperada);
     }
 
     @Override
     public void deleteById(Long id) {
-        usuarios.remove(id);
+        usuarios.deleteById(id);
     }
 
     @Override
-    public List<Usuario> findByNombre(String nombre) {
-        return usuarios.values().stream()
-            .filter(usuario -> usuario.getNombre().contains(nombre))
+    public List<BulkWriteResult<Usuario>> saveAll(List<Usuario> lote) {
+        return usuarios.saveAll(lote);
+    }
+
+    @Override
+    public List<Long> deleteAllById(Collection<Long> ids) {
+        return usuarios.deleteAllById(ids).stream()
+            .map(Usuario::getId)
             .collect(Collectors.toList());
     }
 
+    @Override
+    public List<Usuario> findByNombre(String nombre) {
+        String consulta = Texto.fold(nombre);
+        if (consulta.length() < 3) {
+            metricas.recorrido(usuarios.size());
+            return usuarios.stream()
+                .filter(usuario -> usuario.getNombre().contains(nombre))
+                .collect(Collectors.toList());
+        }
+        metricas.indice("nombre");
+        // Los trigramas del texto normalizado dan un superconjunto de las coincidencias exactas
+        List<Usuario> resultado = new ArrayList<>();
+        for (Long id : porNombre.candidates(consulta)) {
+            usuarios.findById(id)
+                .filter(usuario -> usuario.getNombre() != null && usuario.getNombre().contains(nombre))
+                .ifPresent(resultado::add);
+        }
+        return resultado;
+    }
+
+    @Override
+    public List<Usuario> searchByNombre(String consulta, int limite) {
+        String normalizada = Texto.fold(consulta).strip();
+        List<Usuario> resultado = new ArrayList<>();
+        if (normalizada.isEmpty() || limite <= 0) {
+            return resultado;
+        }
+        metricas.indice("nombre");
+        Predicate<String> coincide = normalizada.length() < 3
+            ? nombre -> startsAnyWord(nombre, normalizada)
+            : nombre -> nombre.contains(normalizada);
+        for (Long id : porNombre.candidates(normalizada)) {
+            usuarios.findById(id)
+                .filter(usuario -> coincide.test(Texto.fold(usuario.getNombre())))
+                .ifPresent(resultado::add);
+            if (resultado.size() >= limite) {
+                break;
+            }
+        }
+        return resultado;
+    }
+
     @Override
     public Optional<Usuario> findByEmail(String email) {
-        return usuarios.values().stream()
-            .filter(usuario -> usuario.getEmail().equals(email))
-            .findFirst();
+        String key = normalizeEmail(email);
+        metricas.indice("email");
+        return porEmail.get(key)
+            .flatMap(usuarios::findById)
+            .filter(usuario -> key.equals(normalizeEmail(usuario.getEmail())));
     }
 
     @Override
     public List<Usuario> findByEstado(String estado) {
-        return usuarios.values().stream()
+        metricas.recorrido(usuarios.size());
+        return usuarios.stream()
             .filter(usuario -> usuario.getEstado().equals(estado))
             .collect(Collectors.toList());
     }
+
+    private static boolean startsAnyWord(String texto, String prefijo) {
+        for (String palabra : texto.split("\\s+")) {
+            if (palabra.startsWith(prefijo)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param email email tal como fue ingresado
+     * @return email sin espacios en los extremos y en minúsculas, o null si está vacío
+     */
+    public static String normalizeEmail(String email) {
+        if (email == null || email.isBlank()) {
+            return null;
+        }
+        return email.strip().toLowerCase(Locale.ROOT);
+    }
 }
@@ -0,0 +1,42 @@
+package com.prog2.tp4prog2.repository.persistence;
+
+import com.prog2.tp4prog2.model.Identificable;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * Operaciones que necesita un {@link EntityLog} del almacenamiento en memoria
+ * al que da durabilidad.
+ *
+ * @param <T> tipo de entidad almacenada
+ */
+public interface DurableStore<T extends Identificable> {
+
+    /**
+     * Carga el estado recuperado de disco, sin registrarlo en el log.
+     *
+     * @param entidades entidades recuperadas
+     * @param sequence mayor ID entregado hasta el momento
+     */
+    void restore(Collection<T> entidades, long sequence);
+
+    /**
+     * Asocia el log donde se deben registrar las escrituras siguientes.
+     */
+    void attachLog(EntityLog<T> log);
+
+    /**
+     * Ejecuta la acción con todas las escrituras bloqueadas.
+     */
+    void writeLocked(Runnable accion);
+
+    /**
+     * @return stream débilmente consistente sobre las entidades almacenadas
+     */
+    Stream<T> stream();
+
+    /**
+     * @return mayor ID entregado hasta el momento
+     */
+    long sequence();
+}
@@ -0,0 +1,24 @@
+package com.prog2.tp4prog2.repository.persistence;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Serialización binaria compacta de una entidad para el log de escritura
+ *
+ * @param <T> tipo de entidad
+ */
+public interface EntityCodec<T> {
+    /**
+     * @param entidad entidad a escribir
+     * @param out destino
+     */
+    void write(T entidad, DataOutput out) throws IOException;
+
+    /**
+     * @param in origen
+     * @return la entidad leída
+     */
+    T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,106 @@
+package com.prog2.tp4prog2.repository.persistence;
+
+import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.model.Prestamo;
+import com.prog2.tp4prog2.model.Usuario;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Codecs binarios de las entidades del dominio. Los campos que admiten null se
+ * escriben precedidos por un byte de presencia. Si cambia el formato hay que
+ * aumentar la versión del log y de la instantánea.
+ */
+public final class EntityCodecs {
+
+    public static final EntityCodec<Libro> LIBRO = new EntityCodec<>() {
+        @Override
+        public void write(Libro libro, DataOutput out) throws IOException {
+            writeLong(out, libro.getId());
+            writeString(out, libro.getIsbn());
+            writeString(out, libro.getTitulo());
+            writeString(out, libro.getAutor());
+            writeString(out, libro.getEstado());
+            out.writeLong(libro.getVersion());
+        }
+
+        @Override
+        public Libro read(DataInput in) throws IOException {
+            return new Libro(readLong(in), readString(in), readString(in), readString(in), readString(in),
+                in.readLong());
+        }
+    };
+
+    public static final EntityCodec<Usuario> USUARIO = new EntityCodec<>() {
+        @Override
+        public void write(Usuario usuario, DataOutput out) throws IOException {
+            writeLong(out, usuario.getId());
+            writeString(out, usuario.getNombre());
+            writeString(out, usuario.getEmail());
+            writeString(out, usuario.getEstado());
+            out.writeLong(usuario.getVersion());
+        }
+
+        @Override
+        public Usuario read(DataInput in) throws IOException {
+            return new Usuario(readLong(in), readString(in), readString(in), readString(in), in.readLong());
+        }
+    };
+
+    public static final EntityCodec<Prestamo> PRESTAMO = new EntityCodec<>() {
+        @Override
+        public void write(Prestamo prestamo, DataOutput out) throws IOException {
+            writeLong(out, prestamo.getId());
+            writeLong(out, prestamo.getLibroId());
+            writeLong(out, prestamo.getUsuarioId());
+            writeDate(out, prestamo.getFechaPrestamo());
+            writeDate(out, prestamo.getFechaDevolucion());
+            writeDate(out, prestamo.getFechaEntrega());
+            out.writeLong(prestamo.getVersion());
+        }
+
+        @Override
+        public Prestamo read(DataInput in) throws IOException {
+            return new Prestamo(readLong(in), readLong(in), readLong(in),
+                readDate(in), readDate(in), readDate(in), in.readLong());
+        }
+    };
+
+    private EntityCodecs() {
+    }
+
+    private static void writeString(DataOutput out, String valor) throws IOException {
+        out.writeBoolean(valor != null);
+        if (valor != null) {
+            out.writeUTF(valor);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeLong(DataOutput out, Long valor) throws IOException {
+        out.writeBoolean(valor != null);
+        if (valor != null) {
+            out.writeLong(valor);
+        }
+    }
+
+    private static Long readLong(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeDate(DataOutput out, LocalDate fecha) throws IOException {
+        out.writeBoolean(fecha != null);
+        if (fecha != null) {
+            out.writeInt((int) fecha.toEpochDay());
+        }
+    }
+
+    private static LocalDate readDate(DataInput in) throws IOException {
+        return in.readBoolean() ? LocalDate.ofEpochDay(in.readInt()) : null;
+    }
+}
@@ -0,0 +1,409 @@
+package com.prog2.tp4prog2.repository.persistence;
+
+import com.prog2.tp4prog2.model.Identificable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Log de escritura de un repositorio: traduce altas, modificaciones y bajas a
+ * registros binarios {@code [operación:byte][id:long][entidad]} sobre un
+ * {@link WriteAheadLog}.
+ *
+ * <p>Con {@link #checkpoint()} el estado completo se vuelca a una instantánea
+ * ({@code <nombre>.snap}) y el log se trunca, así el arranque solo lee la
+ * instantánea y lo escrito después. El log se rota con las escrituras
+ * bloqueadas; la instantánea se escribe después, sin bloquearlas, y puede
+ * contener cambios posteriores a la rotación: como cada registro guarda la
+ * entidad completa, reproducir el log nuevo sobre ella da el mismo resultado.
+ *
+ * @param <T> tipo de entidad
+ */
+public class EntityLog<T extends Identificable> implements Closeable {
+    private static final byte SAVE = 1;
+    private static final byte DELETE = 2;
+    private static final int SNAPSHOT_MAGIC = 0x54503453; // "TP4S"
+    private static final int SNAPSHOT_VERSION = 4;
+
+    private final EntityCodec<T> codec;
+    private final DurableStore<T> store;
+    private final FsyncPolicy policy;
+    private final Duration intervalo;
+    private final Path actual;
+    private final Path anterior;
+    private final Path snapshot;
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+    private volatile Segment segment;
+    private volatile long ultimoCheckpoint = System.nanoTime();
+
+    /**
+     * Log abierto y cantidad de bytes de los logs ya rotados, para que las
+     * posiciones devueltas por {@link #appendSave} crezcan entre rotaciones.
+     */
+    private record Segment(WriteAheadLog wal, long base) {
+    }
+
+    private EntityLog(Path directorio, String nombre, EntityCodec<T> codec, DurableStore<T> store,
+                      FsyncPolicy policy, Duration intervalo) {
+        this.codec = codec;
+        this.store = store;
+        this.policy = policy;
+        this.intervalo = intervalo;
+        this.actual = directorio.resolve(nombre + ".wal");
+        this.anterior = directorio.resolve(nombre + ".wal.prev");
+        this.snapshot = directorio.resolve(nombre + ".snap");
+    }
+
+    /**
+     * Recupera el estado guardado en {@code directorio} (instantánea y logs), lo
+     * carga en {@code store} y deja el log asociado al almacenamiento.
+     *
+     * @param directorio directorio de los archivos
+     * @param nombre prefijo de los archivos
+     * @param codec codec de la entidad
+     * @param policy política de fsync
+     * @param intervalo período de fsync para {@link FsyncPolicy#INTERVAL}
+     * @param store almacenamiento a restaurar
+     * @return el log listo para registrar nuevas operaciones
+     */
+    public static <T extends Identificable> EntityLog<T> open(Path directorio, String nombre, EntityCodec<T> codec, FsyncPolicy policy,
+                                        Duration intervalo, DurableStore<T> store) throws IOException {
+        EntityLog<T> log = new EntityLog<>(directorio, nombre, codec, store, policy, intervalo);
+        log.recover();
+        return log;
+    }
+
+    /**
+     * @param id ID de la entidad
+     * @param entidad entidad guardada
+     * @return posición a pasar a {@link #sync(long)}
+     */
+    public long appendSave(long id, T entidad) {
+        return append(encode(SAVE, id, entidad));
+    }
+
+    /**
+     * @param id ID de la entidad eliminada
+     * @return posición a pasar a {@link #sync(long)}
+     */
+    public long appendDelete(long id) {
+        return append(encode(DELETE, id, null));
+    }
+
+    /**
+     * Registra varias entidades guardadas con una sola escritura.
+     *
+     * @param entidades entidades guardadas, con ID asignado
+     * @return posición a pasar a {@link #sync(long)}
+     */
+    public long appendSaves(List<T> entidades) {
+        List<byte[]> registros = new ArrayList<>(entidades.size());
+        for (T entidad : entidades) {
+            registros.add(encode(SAVE, entidad.getId(), entidad));
+        }
+        return appendAll(registros);
+    }
+
+    /**
+     * Registra varias bajas con una sola escritura.
+     *
+     * @param ids IDs de las entidades eliminadas
+     * @return posición a pasar a {@link #sync(long)}
+     */
+    public long appendDeletes(List<Long> ids) {
+        List<byte[]> registros = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            registros.add(encode(DELETE, id, null));
+        }
+        return appendAll(registros);
+    }
+
+    /**
+     * Espera a que el registro en {@code position} sea durable según la política configurada.
+     */
+    public void sync(long position) {
+        Segment s = segment;
+        // Los logs rotados se cierran con fsync, así que lo escrito en ellos ya es durable
+        if (position > s.base()) {
+            s.wal().sync(position - s.base());
+        }
+    }
+
+    /**
+     * @return bytes de registros escritos desde el último checkpoint
+     */
+    public long pendingBytes() {
+        return segment.wal().size() - WriteAheadLog.HEADER_SIZE;
+    }
+
+    /**
+     * @return tiempo transcurrido desde el último checkpoint
+     */
+    public Duration sinceLastCheckpoint() {
+        return Duration.ofNanos(System.nanoTime() - ultimoCheckpoint);
+    }
+
+    /**
+     * Escribe una instantánea del estado actual y descarta el log que cubre.
+     * Las escrituras solo se bloquean mientras se rota el log.
+     */
+    public void checkpoint() throws IOException {
+        checkpointLock.lock();
+        try {
+            store.writeLocked(() -> {
+                try {
+                    rotate();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writeSnapshot(store.stream().iterator(), store::sequence);
+            Files.deleteIfExists(anterior);
+            ultimoCheckpoint = System.nanoTime();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        checkpointLock.lock();
+        try {
+            segment.wal().close();
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    private long append(byte[] registro) {
+        Segment s = segment;
+        return s.base() + s.wal().append(registro);
+    }
+
+    private long appendAll(List<byte[]> registros) {
+        Segment s = segment;
+        return s.base() + s.wal().appendAll(registros);
+    }
+
+    /**
+     * Reconstruye el estado a partir de la instantánea, el log rotado (si un
+     * checkpoint quedó a medias) y el log actual, en ese orden.
+     */
+    private void recover() throws IOException {
+        Map<Long, T> estado = new HashMap<>();
+        long[] sequence = {0};
+        if (Files.exists(snapshot)) {
+            sequence[0] = readSnapshot(estado);
+        }
+        Consumer<ByteBuffer> replay = registro -> sequence[0] = Math.max(sequence[0], replay(registro, estado));
+        boolean checkpointIncompleto = Files.exists(anterior);
+        if (checkpointIncompleto) {
+            WriteAheadLog.open(anterior, FsyncPolicy.GROUP, intervalo, replay).close();
+        }
+        WriteAheadLog wal = WriteAheadLog.open(actual, policy, intervalo, replay);
+        segment = new Segment(wal, 0);
+        try {
+            store.restore(estado.values(), sequence[0]);
+            if (checkpointIncompleto) {
+                long valor = sequence[0];
+                writeSnapshot(estado.values().iterator(), () -> valor);
+                Files.delete(anterior);
+            }
+        } catch (IOException | RuntimeException e) {
+            wal.close();
+            throw e;
+        }
+        store.attachLog(this);
+    }
+
+    /**
+     * @return el ID del registro
+     */
+    private long replay(ByteBuffer registro, Map<Long, T> estado) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteBufferInputStream(registro));
+            byte operacion = in.readByte();
+            long id = in.readLong();
+            if (operacion == SAVE) {
+                estado.put(id, codec.read(in));
+            } else if (operacion == DELETE) {
+                estado.remove(id);
+            } else {
+                throw new IOException("Operación desconocida en el log: " + operacion);
+            }
+            return id;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Registro ilegible en " + actual, e);
+        }
+    }
+
+    /**
+     * Cierra el log actual, lo renombra como rotado y abre uno vacío. Se ejecuta
+     * con las escrituras bloqueadas.
+     */
+    private void rotate() throws IOException {
+        Segment viejo = segment;
+        long fin = viejo.wal().size();
+        try {
+            viejo.wal().close();
+            Files.move(actual, anterior, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Se sigue escribiendo al final del mismo archivo para no dejar al repositorio sin log
+            segment = new Segment(WriteAheadLog.open(actual, policy, intervalo, registro -> { }), viejo.base());
+            throw e;
+        }
+        segment = new Segment(WriteAheadLog.open(actual, policy, intervalo, registro -> { }), viejo.base() + fin);
+        syncDirectory();
+    }
+
+    private void writeSnapshot(Iterator<T> entidades, LongSupplier sequence) throws IOException {
+        Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                new BufferedOutputStream(new ChannelOutputStream(channel), 64 * 1024), new CRC32C());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            while (entidades.hasNext()) {
+                out.writeBoolean(true);
+                codec.write(entidades.next(), out);
+            }
+            out.writeBoolean(false);
+            // Se lee al final para cubrir también los IDs entregados durante la escritura
+            out.writeLong(sequence.getAsLong());
+            out.flush();
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+    }
+
+    /**
+     * @return la secuencia guardada en la instantánea
+     */
+    private long readSnapshot(Map<Long, T> estado) throws IOException {
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(snapshot), 64 * 1024)) {
+            CheckedInputStream checked = new CheckedInputStream(file, new CRC32C());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("El archivo no es una instantánea válida: " + snapshot);
+            }
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Versión de instantánea no soportada (" + version + "): " + snapshot);
+            }
+            while (in.readBoolean()) {
+                T entidad = codec.read(in);
+                estado.put(entidad.getId(), entidad);
+            }
+            long sequence = in.readLong();
+            int esperado = (int) checked.getChecksum().getValue();
+            if (new DataInputStream(file).readInt() != esperado) {
+                throw new IOException("Instantánea corrupta: " + snapshot);
+            }
+            return sequence;
+        }
+    }
+
+    /**
+     * Hace durables los renombres dentro del directorio. No todas las plataformas
+     * permiten abrir un directorio; en esas el renombre ya es durable o no hay forma
+     * de forzarlo.
+     */
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(actual.getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Sin soporte para fsync de directorios
+        }
+    }
+
+    private byte[] encode(byte operacion, long id, T entidad) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(operacion);
+            out.writeLong(id);
+            if (entidad != null) {
+                codec.write(entidad, out);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+
+    private static final class ChannelOutputStream extends OutputStream {
+        private final FileChannel channel;
+
+        ChannelOutputStream(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
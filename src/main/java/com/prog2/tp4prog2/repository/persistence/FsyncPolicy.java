@@ -0,0 +1,23 @@
+package com.prog2.tp4prog2.repository.persistence;
+
+/**
+ * Cuándo se fuerza a disco el contenido del log de escritura
+ */
+public enum FsyncPolicy {
+    /**
+     * Un fsync por cada escritura, antes de confirmarla. Máxima durabilidad, mínimo rendimiento.
+     */
+    ALWAYS,
+
+    /**
+     * Commit agrupado: cada escritura espera a estar en disco, pero las que llegan
+     * mientras se ejecuta un fsync se confirman juntas con el siguiente.
+     */
+    GROUP,
+
+    /**
+     * Las escrituras se confirman sin esperar y un hilo en segundo plano hace fsync
+     * periódicamente. Ante una caída se pueden perder las del último intervalo.
+     */
+    INTERVAL
+}
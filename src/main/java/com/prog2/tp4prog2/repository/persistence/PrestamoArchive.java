@@ -0,0 +1,573 @@
+package com.prog2.tp4prog2.repository.persistence;
+
+import com.prog2.tp4prog2.model.Prestamo;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Archivo histórico de préstamos devueltos fuera del heap. Cada columna (ID, ID
+ * de libro, ID de usuario, fechas de préstamo, de devolución y de entrega como día
+ * epoch) es un archivo de ancho fijo mapeado en memoria, así que un préstamo
+ * archivado ocupa 36 bytes en disco/page cache y solo 12 bytes en el heap (el
+ * índice ordenado de IDs).
+ *
+ * <p>Las filas se agregan en lotes y se confirman actualizando el contador del
+ * encabezado después de forzar las columnas a disco. Las bajas marcan la fila
+ * con ID 0; {@link #compact()} reescribe el archivo sin ellas. Las lecturas no
+ * toman locks.
+ *
+ * <p>Guarda el libro y el usuario de cada préstamo por ID, igual que el almacén en memoria.
+ */
+public final class PrestamoArchive implements Closeable {
+    private static final int MAGIC = 0x54503441; // "TP4A"
+    private static final int VERSION = 2;
+    private static final int HEADER = 16;
+    private static final int CAPACIDAD_INICIAL = 4096;
+    private static final long SIN_REFERENCIA = 0;
+    private static final int SIN_FECHA = Integer.MIN_VALUE;
+    private static final String[] COLUMNAS = {"id", "libro", "usuario", "prestamo", "devolucion", "entrega"};
+    private static final int LOTE_COMPACTACION = 10_000;
+
+    private final Path directorio;
+    private final FileChannel[] channels;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Columns columns;
+    // Filas dadas de baja entre las confirmadas; se modifica con el lock de escritura tomado
+    private volatile int bajas;
+
+    /**
+     * Columnas mapeadas y estado publicado para los lectores: filas confirmadas,
+     * rango de fechas de devolución e índice de IDs ordenado.
+     */
+    private record Columns(MappedByteBuffer id, MappedByteBuffer libro, MappedByteBuffer usuario,
+                           MappedByteBuffer prestamo, MappedByteBuffer devolucion, MappedByteBuffer entrega,
+                           int count, int capacity, int minDevolucion, int maxDevolucion,
+                           long[] sortedIds, int[] rows) {
+
+        long idAt(int row) {
+            return id.getLong(HEADER + row * 8);
+        }
+
+        int devolucionAt(int row) {
+            return devolucion.getInt(row * 4);
+        }
+
+        int find(long buscado) {
+            int i = Arrays.binarySearch(sortedIds, buscado);
+            return i >= 0 && idAt(rows[i]) == buscado ? rows[i] : -1;
+        }
+
+        Prestamo materialize(int row) {
+            long libroId = libro.getLong(row * 8);
+            long usuarioId = usuario.getLong(row * 8);
+            return new Prestamo(idAt(row),
+                libroId == SIN_REFERENCIA ? null : libroId,
+                usuarioId == SIN_REFERENCIA ? null : usuarioId,
+                fecha(prestamo.getInt(row * 4)),
+                fecha(devolucionAt(row)),
+                fecha(entrega.getInt(row * 4)), 0);
+        }
+
+        private static LocalDate fecha(int dia) {
+            return dia == SIN_FECHA ? null : LocalDate.ofEpochDay(dia);
+        }
+    }
+
+    private PrestamoArchive(Path directorio, FileChannel[] channels) {
+        this.directorio = directorio;
+        this.channels = channels;
+    }
+
+    /**
+     * Abre (o crea) el archivo en {@code directorio}.
+     *
+     * @param directorio directorio de las columnas
+     * @return el archivo abierto
+     */
+    public static PrestamoArchive open(Path directorio) throws IOException {
+        terminarCompactacion(directorio);
+        Files.createDirectories(directorio);
+        FileChannel[] channels = new FileChannel[COLUMNAS.length];
+        try {
+            abrirColumnas(directorio, channels);
+            PrestamoArchive archive = new PrestamoArchive(directorio, channels);
+            archive.load();
+            return archive;
+        } catch (IOException | RuntimeException e) {
+            for (FileChannel channel : channels) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return cantidad de filas archivadas, incluidas las dadas de baja
+     */
+    public int rows() {
+        return columns.count();
+    }
+
+    /**
+     * @return cantidad de préstamos archivados, sin las filas dadas de baja
+     */
+    public int size() {
+        return columns.count() - bajas;
+    }
+
+    /**
+     * @param id ID del préstamo
+     * @return true si el préstamo está archivado
+     */
+    public boolean contains(long id) {
+        return columns.find(id) >= 0;
+    }
+
+    /**
+     * @param id ID del préstamo
+     * @return el préstamo archivado, si existe
+     */
+    public Optional<Prestamo> findById(long id) {
+        Columns c = columns;
+        int row = c.find(id);
+        return row < 0 ? Optional.empty() : Optional.of(c.materialize(row));
+    }
+
+    /**
+     * @return todos los préstamos archivados
+     */
+    public List<Prestamo> findAll() {
+        return scan(columns, row -> true);
+    }
+
+    /**
+     * @param despuesDe ID a partir del cual empieza la página (exclusivo)
+     * @param limite cantidad máxima de préstamos
+     * @return préstamos archivados ordenados por ID
+     */
+    public List<Prestamo> page(long despuesDe, int limite) {
+        Columns c = columns;
+        long[] ids = c.sortedIds();
+        int i = Arrays.binarySearch(ids, despuesDe);
+        i = i >= 0 ? i + 1 : -i - 1;
+        List<Prestamo> pagina = new ArrayList<>(Math.min(limite, 1024));
+        for (; i < ids.length && pagina.size() < limite; i++) {
+            int row = c.rows()[i];
+            if (c.idAt(row) == ids[i]) {
+                pagina.add(c.materialize(row));
+            }
+        }
+        return pagina;
+    }
+
+    /**
+     * @param usuarioId ID del usuario
+     * @return préstamos archivados del usuario
+     */
+    public List<Prestamo> findByUsuarioId(long usuarioId) {
+        Columns c = columns;
+        return scan(c, row -> c.usuario().getLong(row * 8) == usuarioId);
+    }
+
+    /**
+     * @param libroId ID del libro
+     * @return préstamos archivados del libro
+     */
+    public List<Prestamo> findByLibroId(long libroId) {
+        Columns c = columns;
+        return scan(c, row -> c.libro().getLong(row * 8) == libroId);
+    }
+
+    /**
+     * @param fechaPrestamo fecha de préstamo
+     * @return préstamos archivados con esa fecha de préstamo
+     */
+    public List<Prestamo> findByFechaPrestamo(LocalDate fechaPrestamo) {
+        Columns c = columns;
+        int dia = (int) fechaPrestamo.toEpochDay();
+        return scan(c, row -> c.prestamo().getInt(row * 4) == dia);
+    }
+
+    /**
+     * @param desde fecha mínima inclusive, o null
+     * @param hasta fecha máxima inclusive, o null
+     * @return préstamos archivados que vencen en el rango
+     */
+    public List<Prestamo> findByFechaDevolucionBetween(LocalDate desde, LocalDate hasta) {
+        Columns c = columns;
+        long min = desde == null ? Long.MIN_VALUE : desde.toEpochDay();
+        long max = hasta == null ? Long.MAX_VALUE : hasta.toEpochDay();
+        if (c.count() == 0 || max < c.minDevolucion() || min > c.maxDevolucion()) {
+            return new ArrayList<>();
+        }
+        return scan(c, row -> {
+            int dia = c.devolucionAt(row);
+            return dia != SIN_FECHA && dia >= min && dia <= max;
+        });
+    }
+
+    /**
+     * Agrega préstamos al archivo. Si alguno ya estaba archivado se reemplaza.
+     * Al volver las filas ya están en disco.
+     *
+     * @param lote préstamos devueltos, con ID
+     */
+    public void append(List<Prestamo> lote) {
+        if (lote.isEmpty()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            Columns c = ensureCapacity(columns, columns.count() + lote.size());
+            int count = c.count();
+            int min = c.minDevolucion();
+            int max = c.maxDevolucion();
+            long[] nuevosIds = new long[lote.size()];
+            int[] nuevasFilas = new int[lote.size()];
+            List<Integer> reemplazadas = new ArrayList<>();
+            for (int i = 0; i < lote.size(); i++) {
+                Prestamo prestamo = lote.get(i);
+                long id = prestamo.getId();
+                int existente = c.find(id);
+                if (existente >= 0) {
+                    reemplazadas.add(existente);
+                }
+                int row = count + i;
+                int devolucion = dia(prestamo.getFechaDevolucion());
+                c.id().putLong(HEADER + row * 8, id);
+                c.libro().putLong(row * 8, prestamo.getLibroId() != null ? prestamo.getLibroId() : SIN_REFERENCIA);
+                c.usuario().putLong(row * 8, prestamo.getUsuarioId() != null ? prestamo.getUsuarioId() : SIN_REFERENCIA);
+                c.prestamo().putInt(row * 4, dia(prestamo.getFechaPrestamo()));
+                c.devolucion().putInt(row * 4, devolucion);
+                c.entrega().putInt(row * 4, dia(prestamo.getFechaEntrega()));
+                if (devolucion != SIN_FECHA) {
+                    min = Math.min(min, devolucion);
+                    max = Math.max(max, devolucion);
+                }
+                nuevosIds[i] = id;
+                nuevasFilas[i] = row;
+            }
+            c.libro().force();
+            c.usuario().force();
+            c.prestamo().force();
+            c.devolucion().force();
+            c.entrega().force();
+            c.id().force();
+            count += lote.size();
+            c.id().putLong(8, count);
+            c.id().force(8, 8);
+            // Las filas reemplazadas se dan de baja recién con las nuevas confirmadas: un corte
+            // en el medio deja dos filas con el mismo ID, que load() resuelve a favor de la nueva
+            for (int existente : reemplazadas) {
+                c.id().putLong(HEADER + existente * 8, SIN_REFERENCIA);
+            }
+            if (!reemplazadas.isEmpty()) {
+                c.id().force();
+                bajas += reemplazadas.size();
+            }
+            columns = withIndex(new Columns(c.id(), c.libro(), c.usuario(), c.prestamo(), c.devolucion(),
+                c.entrega(), count, c.capacity(), min, max, c.sortedIds(), c.rows()), nuevosIds, nuevasFilas);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Da de baja un préstamo archivado.
+     *
+     * @param id ID del préstamo
+     * @return true si estaba archivado
+     */
+    public boolean remove(long id) {
+        writeLock.lock();
+        try {
+            Columns c = columns;
+            int row = c.find(id);
+            if (row < 0) {
+                return false;
+            }
+            c.id().putLong(HEADER + row * 8, SIN_REFERENCIA);
+            c.id().force(HEADER + row * 8, 8);
+            bajas++;
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Reescribe el archivo solo con las filas vivas. Las columnas nuevas se escriben
+     * en un directorio aparte y después se rota: el actual pasa a ser el anterior y
+     * el nuevo ocupa su lugar. Si el proceso se corta entre las dos rotaciones,
+     * {@link #open} termina de instalar el nuevo, que ya estaba completo. Las
+     * lecturas en curso siguen usando las columnas viejas, que quedan mapeadas.
+     *
+     * @return true si había filas dadas de baja y se compactó
+     */
+    public boolean compact() {
+        writeLock.lock();
+        try {
+            Columns c = columns;
+            if (bajas == 0) {
+                return false;
+            }
+            Path nuevo = hermano(directorio, "compactando");
+            Path anterior = hermano(directorio, "anterior");
+            borrar(nuevo);
+            try (PrestamoArchive destino = open(nuevo)) {
+                List<Prestamo> lote = new ArrayList<>(LOTE_COMPACTACION);
+                for (int row = 0; row < c.count(); row++) {
+                    if (c.idAt(row) == SIN_REFERENCIA) {
+                        continue;
+                    }
+                    lote.add(c.materialize(row));
+                    if (lote.size() == LOTE_COMPACTACION) {
+                        destino.append(lote);
+                        lote.clear();
+                    }
+                }
+                destino.append(lote);
+            }
+            rotar(nuevo, anterior);
+            borrar(anterior);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo compactar el archivo de préstamos", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Reemplaza el directorio actual por {@code nuevo} y vuelve a abrir las columnas.
+     * Se ejecuta con el lock de escritura tomado.
+     */
+    private void rotar(Path nuevo, Path anterior) throws IOException {
+        for (FileChannel channel : channels) {
+            channel.close();
+        }
+        try {
+            Files.move(directorio, anterior, StandardCopyOption.ATOMIC_MOVE);
+            try {
+                Files.move(nuevo, directorio, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(anterior, directorio, StandardCopyOption.ATOMIC_MOVE);
+                throw e;
+            }
+            syncDirectory(directorio.getParent());
+        } finally {
+            // Con el directorio que haya quedado en su lugar, para no dejar el archivo cerrado
+            abrirColumnas(directorio, channels);
+            load();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            for (FileChannel channel : channels) {
+                channel.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static void abrirColumnas(Path directorio, FileChannel[] channels) throws IOException {
+        for (int i = 0; i < COLUMNAS.length; i++) {
+            channels[i] = FileChannel.open(directorio.resolve(COLUMNAS[i] + ".col"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    /**
+     * Deja el directorio como después de una compactación completa o como si no
+     * hubiera empezado, según dónde se haya cortado.
+     */
+    private static void terminarCompactacion(Path directorio) throws IOException {
+        Path nuevo = hermano(directorio, "compactando");
+        Path anterior = hermano(directorio, "anterior");
+        if (!Files.exists(directorio) && Files.exists(anterior)) {
+            // Corte entre las dos rotaciones: el nuevo ya estaba completo antes de la primera
+            Files.move(Files.exists(nuevo) ? nuevo : anterior, directorio, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(directorio.getParent());
+        }
+        borrar(nuevo);
+        borrar(anterior);
+    }
+
+    private static Path hermano(Path directorio, String sufijo) {
+        return directorio.resolveSibling(directorio.getFileName() + "." + sufijo);
+    }
+
+    private static void borrar(Path directorio) throws IOException {
+        if (!Files.exists(directorio)) {
+            return;
+        }
+        try (Stream<Path> contenido = Files.walk(directorio)) {
+            for (Path path : contenido.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static void syncDirectory(Path directorio) {
+        try (FileChannel dir = FileChannel.open(directorio, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Sin soporte para fsync de directorios
+        }
+    }
+
+    private static int dia(LocalDate fecha) {
+        return fecha != null ? (int) fecha.toEpochDay() : SIN_FECHA;
+    }
+
+    private static List<Prestamo> scan(Columns c, IntPredicate coincide) {
+        return IntStream.range(0, c.count())
+            .filter(row -> c.idAt(row) != SIN_REFERENCIA && coincide.test(row))
+            .mapToObj(c::materialize)
+            .collect(Collectors.toList());
+    }
+
+    private void load() throws IOException {
+        FileChannel ids = channels[0];
+        long count = 0;
+        if (ids.size() >= HEADER) {
+            MappedByteBuffer header = ids.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("El directorio no contiene un archivo de préstamos válido: " + directorio);
+            }
+            count = header.getLong(8);
+        }
+        int capacity = CAPACIDAD_INICIAL;
+        while (capacity < count) {
+            capacity <<= 1;
+        }
+        Columns c = map(capacity, (int) count, Integer.MAX_VALUE, Integer.MIN_VALUE, new long[0], new int[0]);
+        c.id().putInt(0, MAGIC).putInt(4, VERSION).putLong(8, count);
+        c.id().force(0, HEADER);
+        descartarReemplazadas(c);
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        long[] sortedIds = new long[(int) count];
+        int[] rows = new int[(int) count];
+        for (int row = 0; row < count; row++) {
+            if (c.devolucionAt(row) != SIN_FECHA) {
+                min = Math.min(min, c.devolucionAt(row));
+                max = Math.max(max, c.devolucionAt(row));
+            }
+            sortedIds[row] = c.idAt(row);
+            rows[row] = row;
+        }
+        Columns cargadas = withIndex(new Columns(c.id(), c.libro(), c.usuario(), c.prestamo(), c.devolucion(),
+            c.entrega(), (int) count, capacity, min, max, new long[0], new int[0]), sortedIds, rows);
+        bajas = cargadas.count() - cargadas.sortedIds().length;
+        columns = cargadas;
+    }
+
+    /**
+     * Da de baja las filas que quedaron repetidas por un corte durante {@link #append}:
+     * de cada ID vale la última fila.
+     */
+    private static void descartarReemplazadas(Columns c) {
+        Integer[] vivas = IntStream.range(0, c.count())
+            .filter(row -> c.idAt(row) != SIN_REFERENCIA)
+            .boxed()
+            .toArray(Integer[]::new);
+        Arrays.sort(vivas, Comparator.comparingLong((Integer row) -> c.idAt(row)).thenComparingInt(row -> row));
+        boolean descartadas = false;
+        for (int i = 0; i + 1 < vivas.length; i++) {
+            if (c.idAt(vivas[i]) == c.idAt(vivas[i + 1])) {
+                c.id().putLong(HEADER + vivas[i] * 8, SIN_REFERENCIA);
+                descartadas = true;
+            }
+        }
+        if (descartadas) {
+            c.id().force();
+        }
+    }
+
+    private Columns ensureCapacity(Columns c, int requerida) {
+        if (requerida <= c.capacity()) {
+            return c;
+        }
+        long capacity = c.capacity();
+        while (capacity < requerida) {
+            capacity <<= 1;
+        }
+        if (HEADER + capacity * 8 > Integer.MAX_VALUE) {
+            throw new IllegalStateException("El archivo de préstamos alcanzó su capacidad máxima");
+        }
+        try {
+            return map((int) capacity, c.count(), c.minDevolucion(), c.maxDevolucion(), c.sortedIds(), c.rows());
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo ampliar el archivo de préstamos", e);
+        }
+    }
+
+    private Columns map(int capacity, int count, int min, int max, long[] sortedIds, int[] rows) throws IOException {
+        return new Columns(
+            channels[0].map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) capacity * 8),
+            channels[1].map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * 8),
+            channels[2].map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * 8),
+            channels[3].map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * 4),
+            channels[4].map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * 4),
+            channels[5].map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * 4),
+            count, capacity, min, max, sortedIds, rows);
+    }
+
+    /**
+     * Combina el índice ordenado de {@code c} con filas nuevas, descartando las dadas de baja.
+     */
+    private static Columns withIndex(Columns c, long[] ids, int[] filas) {
+        Integer[] orden = new Integer[ids.length];
+        for (int i = 0; i < orden.length; i++) {
+            orden[i] = i;
+        }
+        Arrays.sort(orden, (a, b) -> Long.compare(ids[a], ids[b]));
+
+        long[] viejos = c.sortedIds();
+        int[] viejasFilas = c.rows();
+        long[] sortedIds = new long[viejos.length + ids.length];
+        int[] rows = new int[sortedIds.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < viejos.length || j < orden.length) {
+            boolean tomarViejo = j == orden.length
+                || (i < viejos.length && viejos[i] <= ids[orden[j]]);
+            long id = tomarViejo ? viejos[i] : ids[orden[j]];
+            int row = tomarViejo ? viejasFilas[i++] : filas[orden[j++]];
+            if (id != SIN_REFERENCIA && c.idAt(row) == id) {
+                sortedIds[n] = id;
+                rows[n++] = row;
+            }
+        }
+        return new Columns(c.id(), c.libro(), c.usuario(), c.prestamo(), c.devolucion(), c.entrega(),
+            c.count(), c.capacity(), c.minDevolucion(), c.maxDevolucion(),
+            Arrays.copyOf(sortedIds, n), Arrays.copyOf(rows, n));
+    }
+}
@@ -0,0 +1,205 @@
+package com.prog2.tp4prog2.repository.persistence;
+
+import com.prog2.tp4prog2.model.Identificable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Punto de acceso de los repositorios al modo durable. Si está deshabilitado los
+ * repositorios trabajan solo en memoria; si no, cada uno abre su propio log de
+ * escritura dentro del directorio configurado.
+ *
+ * <p>Un hilo en segundo plano hace checkpoint de cada log cuando acumula
+ * {@code snapshotLogSize} bytes o pasa {@code snapshotIntervalo} con escrituras
+ * pendientes, de modo que el tiempo de arranque depende del tamaño del estado y
+ * no de la historia. El mismo hilo mueve periódicamente los préstamos devueltos
+ * hace más de {@code archiveRetention} al {@link PrestamoArchive}.
+ */
+public class RepositoryPersistence implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(RepositoryPersistence.class);
+    private static final RepositoryPersistence DISABLED =
+        new RepositoryPersistence(null, FsyncPolicy.GROUP, Duration.ZERO, Duration.ZERO, 0, Period.ZERO);
+    private static final Duration ARCHIVE_PERIOD = Duration.ofHours(1);
+    private static final long CHECK_PERIOD_MILLIS = 1000;
+
+    private final Path directorio;
+    private final FsyncPolicy policy;
+    private final Duration fsyncIntervalo;
+    private final Duration snapshotIntervalo;
+    private final long snapshotLogSize;
+    private final Period archiveRetention;
+    private final List<Closeable> abiertos = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService mantenimiento;
+
+    /**
+     * @param directorio directorio de los archivos de log
+     * @param policy política de fsync
+     * @param fsyncIntervalo período de fsync para {@link FsyncPolicy#INTERVAL}
+     * @param snapshotIntervalo tiempo máximo entre checkpoints con escrituras pendientes (cero para deshabilitar)
+     * @param snapshotLogSize bytes de log que disparan un checkpoint (cero para deshabilitar)
+     * @param archiveRetention antigüedad de la devolución a partir de la cual un préstamo pasa al
+     *                         archivo histórico (cero para deshabilitar)
+     */
+    public RepositoryPersistence(Path directorio, FsyncPolicy policy, Duration fsyncIntervalo,
+                                 Duration snapshotIntervalo, long snapshotLogSize, Period archiveRetention) {
+        this.directorio = directorio;
+        this.policy = policy;
+        this.fsyncIntervalo = fsyncIntervalo;
+        this.snapshotIntervalo = snapshotIntervalo;
+        this.snapshotLogSize = snapshotLogSize;
+        this.archiveRetention = archiveRetention;
+        if (directorio != null) {
+            this.mantenimiento = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "repository-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (!snapshotIntervalo.isZero() || snapshotLogSize > 0) {
+                this.mantenimiento.scheduleWithFixedDelay(this::checkpointIfNeeded,
+                    CHECK_PERIOD_MILLIS, CHECK_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } else {
+            this.mantenimiento = null;
+        }
+    }
+
+    /**
+     * @return instancia que no persiste nada
+     */
+    public static RepositoryPersistence disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * @return true si los repositorios deben escribir a disco
+     */
+    public boolean isEnabled() {
+        return directorio != null;
+    }
+
+    /**
+     * Restaura el estado guardado de un repositorio en {@code store} y le asocia
+     * un log para las escrituras siguientes. No hace nada si la persistencia está
+     * deshabilitada.
+     *
+     * @param nombre nombre del repositorio, usado como prefijo de los archivos
+     * @param codec codec de la entidad
+     * @param store almacenamiento del repositorio
+     */
+    public <T extends Identificable> void attach(String nombre, EntityCodec<T> codec, DurableStore<T> store) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            Files.createDirectories(directorio);
+            abiertos.add(EntityLog.open(directorio, nombre, codec, policy, fsyncIntervalo, store));
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo abrir el log de " + nombre, e);
+        }
+    }
+
+    /**
+     * Abre el archivo histórico de un repositorio. No hace nada si la persistencia
+     * o el archivo están deshabilitados.
+     *
+     * @param nombre nombre del repositorio
+     * @return el archivo abierto
+     */
+    public Optional<PrestamoArchive> openArchive(String nombre) {
+        if (!isEnabled() || archiveRetention.isZero()) {
+            return Optional.empty();
+        }
+        try {
+            PrestamoArchive archive = PrestamoArchive.open(directorio.resolve(nombre + ".archive"));
+            abiertos.add(archive);
+            return Optional.of(archive);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo abrir el archivo de " + nombre, e);
+        }
+    }
+
+    /**
+     * Programa el archivado periódico de un repositorio, empezando ahora. No hace
+     * nada si la persistencia o el archivo están deshabilitados.
+     *
+     * @param nombre nombre del repositorio
+     * @param archivar recibe la fecha de corte: lo devuelto antes debe archivarse
+     */
+    public void scheduleArchiving(String nombre, Consumer<LocalDate> archivar) {
+        if (!isEnabled() || archiveRetention.isZero()) {
+            return;
+        }
+        mantenimiento.scheduleWithFixedDelay(() -> {
+            try {
+                archivar.accept(LocalDate.now().minus(archiveRetention));
+            } catch (RuntimeException e) {
+                log.warn("Falló el archivado de " + nombre, e);
+            }
+        }, 0, ARCHIVE_PERIOD.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hace checkpoint de todos los logs abiertos.
+     */
+    public void checkpoint() throws IOException {
+        for (Closeable abierto : abiertos) {
+            if (abierto instanceof EntityLog<?> entityLog) {
+                entityLog.checkpoint();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mantenimiento != null) {
+            mantenimiento.shutdownNow();
+        }
+        IOException error = null;
+        for (Closeable abierto : abiertos) {
+            try {
+                abierto.close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        abiertos.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void checkpointIfNeeded() {
+        for (Closeable abierto : abiertos) {
+            if (!(abierto instanceof EntityLog<?> entityLog)) {
+                continue;
+            }
+            long pendientes = entityLog.pendingBytes();
+            boolean porTamanio = snapshotLogSize > 0 && pendientes >= snapshotLogSize;
+            boolean porTiempo = !snapshotIntervalo.isZero() && pendientes > 0
+                && entityLog.sinceLastCheckpoint().compareTo(snapshotIntervalo) >= 0;
+            if (porTamanio || porTiempo) {
+                try {
+                    entityLog.checkpoint();
+                } catch (IOException | RuntimeException e) {
+                    // Se reintenta en la próxima revisión; el log sigue siendo válido
+                    log.warn("Falló el checkpoint del log de escritura", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.prog2.tp4prog2.repository.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Archivo de log de solo agregado. Cada registro se guarda como
+ * {@code [longitud:int][crc32c:int][datos]}; al abrir el archivo se descarta
+ * cualquier registro final incompleto o corrupto (escritura interrumpida).
+ *
+ * <p>Las escrituras se serializan con un lock y devuelven la posición del final
+ * del registro; {@link #sync(long)} espera a que esa posición esté en disco
+ * según la {@link FsyncPolicy} configurada.
+ */
+public final class WriteAheadLog implements Closeable {
+    private static final int MAGIC = 0x54503457; // "TP4W"
+    private static final int VERSION = 4;
+    static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER = 8;
+    private static final int MAX_RECORD = 16 * 1024 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final FsyncPolicy policy;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+    private volatile long writtenPosition;
+    private volatile long syncedPosition;
+    // Error que dejó el archivo con bytes que no se pudieron descartar; desde ahí no se agrega nada más
+    private volatile IOException fallo;
+
+    private WriteAheadLog(Path path, FileChannel channel, FsyncPolicy policy, Duration intervalo, long end) {
+        this.path = path;
+        this.channel = channel;
+        this.policy = policy;
+        this.writtenPosition = end;
+        this.syncedPosition = end;
+        if (policy == FsyncPolicy.INTERVAL) {
+            long millis = Math.max(1, intervalo.toMillis());
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "wal-flusher-" + path.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.flusher.scheduleWithFixedDelay(this::flushQuietly, millis, millis, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * Abre (o crea) el log, entregando cada registro válido existente a {@code replay}
+     * en el orden en que fue escrito.
+     *
+     * @param path archivo del log
+     * @param policy política de fsync
+     * @param intervalo período de fsync para {@link FsyncPolicy#INTERVAL}
+     * @param replay consumidor de los registros existentes
+     * @return el log listo para agregar registros
+     */
+    public static WriteAheadLog open(Path path, FsyncPolicy policy, Duration intervalo,
+                                     Consumer<ByteBuffer> replay) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long end = recover(channel, replay);
+            channel.position(end);
+            return new WriteAheadLog(path, channel, policy, intervalo, end);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return archivo del log
+     */
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * @return tamaño en bytes de los registros escritos
+     */
+    public long size() {
+        return writtenPosition;
+    }
+
+    /**
+     * Agrega un registro. Con {@link FsyncPolicy#ALWAYS} el registro ya está en
+     * disco al volver; con las demás políticas hay que llamar a {@link #sync(long)}.
+     *
+     * @param datos contenido del registro
+     * @return posición del final del registro, para pasar a {@link #sync(long)}
+     */
+    public long append(byte[] datos) {
+        return appendAll(List.of(datos));
+    }
+
+    /**
+     * Agrega varios registros con una sola escritura (y un solo fsync con
+     * {@link FsyncPolicy#ALWAYS}). Si la escritura falla, lo que haya llegado al
+     * archivo se descarta para que los registros siguientes no queden detrás de un
+     * registro a medias; si ni eso es posible, el log rechaza toda escritura posterior.
+     *
+     * @param registros contenido de cada registro
+     * @return posición del final del último registro, para pasar a {@link #sync(long)}
+     */
+    public long appendAll(List<byte[]> registros) {
+        int total = 0;
+        for (byte[] datos : registros) {
+            if (datos.length > MAX_RECORD) {
+                throw new IllegalArgumentException("Registro demasiado grande: " + datos.length + " bytes");
+            }
+            total += RECORD_HEADER + datos.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        CRC32C crc = new CRC32C();
+        for (byte[] datos : registros) {
+            crc.reset();
+            crc.update(datos);
+            buffer.putInt(datos.length).putInt((int) crc.getValue()).put(datos);
+        }
+        buffer.flip();
+        writeLock.lock();
+        try {
+            if (fallo != null) {
+                throw new UncheckedIOException("Log inutilizable tras un error de escritura: " + path, fallo);
+            }
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (policy == FsyncPolicy.ALWAYS) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                descartarEscrituraFallida(e);
+                throw new UncheckedIOException("No se pudo escribir en " + path, e);
+            }
+            long end = writtenPosition + total;
+            writtenPosition = end;
+            if (policy == FsyncPolicy.ALWAYS) {
+                syncedPosition = end;
+            }
+            return end;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Vuelve el archivo al final del último registro completo. Se llama con el lock
+     * de escritura tomado.
+     */
+    private void descartarEscrituraFallida(IOException causa) {
+        try {
+            channel.truncate(writtenPosition);
+            channel.position(writtenPosition);
+        } catch (IOException e) {
+            causa.addSuppressed(e);
+            fallo = causa;
+        }
+    }
+
+    /**
+     * Espera a que todo lo escrito hasta {@code position} esté en disco. Con commit
+     * agrupado, el primer hilo que toma el lock hace un único fsync que cubre también
+     * las escrituras de los hilos que esperan detrás de él.
+     *
+     * @param position valor devuelto por {@link #append(byte[])}
+     */
+    public void sync(long position) {
+        if (policy != FsyncPolicy.GROUP || syncedPosition >= position) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (syncedPosition >= position) {
+                return;
+            }
+            long target = writtenPosition;
+            channel.force(false);
+            syncedPosition = target;
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo sincronizar " + path, e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Fuerza a disco todo lo escrito hasta el momento.
+     */
+    public void flush() throws IOException {
+        syncLock.lock();
+        try {
+            long target = writtenPosition;
+            if (syncedPosition < target) {
+                channel.force(false);
+                syncedPosition = target;
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            // Sin interrumpir: un hilo interrumpido durante force() cierra el canal
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        writeLock.lock();
+        try {
+            flush();
+            channel.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            // Se reintenta en el próximo intervalo; close() hace el flush final
+        }
+    }
+
+    /**
+     * Lee los registros válidos y trunca el archivo después del último.
+     *
+     * @return posición donde deben continuar las escrituras
+     */
+    private static long recover(FileChannel channel, Consumer<ByteBuffer> replay) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.force(true);
+            return HEADER_SIZE;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, 0);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("El archivo no es un log de escritura válido");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("Versión de log no soportada: " + header.getInt(4));
+        }
+
+        long position = HEADER_SIZE;
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER);
+        while (position + RECORD_HEADER <= size) {
+            recordHeader.clear();
+            readFully(channel, recordHeader, position);
+            int length = recordHeader.getInt(0);
+            if (length < 0 || length > MAX_RECORD || position + RECORD_HEADER + length > size) {
+                break;
+            }
+            ByteBuffer datos = ByteBuffer.allocate(length);
+            readFully(channel, datos, position + RECORD_HEADER);
+            CRC32C crc = new CRC32C();
+            crc.update(datos.array());
+            if ((int) crc.getValue() != recordHeader.getInt(4)) {
+                break;
+            }
+            replay.accept(datos.asReadOnlyBuffer());
+            position += RECORD_HEADER + length;
+        }
+        if (position < size) {
+            channel.truncate(position);
+            channel.force(true);
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Fin de archivo inesperado");
+            }
+        }
+        buffer.flip();
+    }
+}
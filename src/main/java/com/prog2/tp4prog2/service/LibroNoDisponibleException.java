@@ -0,0 +1,10 @@
+package com.prog2.tp4prog2.service;
+
+/**
+ * Se lanza al intentar prestar un libro que no está disponible
+ */
+public class LibroNoDisponibleException extends RuntimeException {
+    public LibroNoDisponibleException(String message) {
+        super(message);
+    }
+}
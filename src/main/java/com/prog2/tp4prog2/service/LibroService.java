@@ -1,7 +1,10 @@
 package com.prog2.tp4prog2.service;
 
 import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Interfaz de servicio para la entidad Libro
@@ -9,21 +12,46 @@ import java.util.List;
 public interface LibroService {
     /**
      * @param isbn ISBN a buscar
-     * @return libro con ISBN coincidente
+     * @return libro con ISBN coincidente, o vacío si no existe
      */
-    Libro buscarPorIsbn(String isbn);
+    Optional<Libro> buscarPorIsbn(String isbn);
 
     /**
      * @param id ID a buscar
-     * @return libro con ID coincidente
+     * @return libro con ID coincidente, o vacío si no existe
      */
-    Libro buscarPorId(Long id);
+    Optional<Libro> buscarPorId(Long id);
+
+    /**
+     * @param id ID a verificar
+     * @return true si existe un libro con ese ID
+     */
+    boolean existePorId(Long id);
+
+    /**
+     * @param consulta términos a buscar en título y autor
+     * @param limite cantidad máxima de resultados
+     * @return libros coincidentes, del más al menos relevante
+     */
+    List<Libro> buscar(String consulta, int limite);
+
+    /**
+     * @return revisión de la colección de libros, que cambia con cada modificación
+     */
+    long revision();
 
     /**
      * @return lista de todos los libros
      */
     List<Libro> obtenerTodos();
 
+    /**
+     * @param despuesDe ID del último elemento de la página anterior, o null para la primera página
+     * @param limite cantidad máxima de elementos
+     * @return página de libros ordenados por ID
+     */
+    List<Libro> obtenerPagina(Long despuesDe, int limite);
+
     /**
      * @param libro libro a guardar
      * @return libro guardado
@@ -35,10 +63,34 @@ public interface LibroService {
      */
     void eliminar(Long id);
 
+    /**
+     * @param libros libros a guardar
+     * @return un resultado por elemento, en el mismo orden
+     */
+    List<BulkWriteResult<Libro>> guardarTodos(List<Libro> libros);
+
+    /**
+     * @param ids identificadores de los libros a eliminar
+     * @return IDs de los libros eliminados
+     */
+    List<Long> eliminarTodos(Collection<Long> ids);
+
     /**
      * @param id identificador del libro a buscar y actualizar
      * @param libro datos actualizados del libro
      * @return libro actualizado
      */
     Libro buscarYActualizar(Long id, Libro libro);
+
+    /**
+     * Actualiza el libro solo si nadie lo modificó desde que el cliente leyó la
+     * versión {@code versionEsperada}.
+     *
+     * @param id identificador del libro a actualizar
+     * @param libro datos actualizados del libro
+     * @param versionEsperada versión leída por el cliente
+     * @return libro actualizado
+     * @throws ModificacionConcurrenteException si la versión almacenada es otra
+     */
+    Libro buscarYActualizar(Long id, Libro libro, long versionEsperada);
 }
@@ -0,0 +1,11 @@
+package com.prog2.tp4prog2.service;
+
+/**
+ * Se lanza cuando una actualización condicional encuentra que la entidad fue
+ * modificada desde que el cliente la leyó
+ */
+public class ModificacionConcurrenteException extends RuntimeException {
+    public ModificacionConcurrenteException(String message) {
+        super(message);
+    }
+}
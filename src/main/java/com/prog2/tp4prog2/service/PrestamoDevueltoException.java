@@ -0,0 +1,10 @@
+package com.prog2.tp4prog2.service;
+
+/**
+ * Se lanza al intentar devolver un préstamo que ya fue devuelto
+ */
+public class PrestamoDevueltoException extends RuntimeException {
+    public PrestamoDevueltoException(String message) {
+        super(message);
+    }
+}
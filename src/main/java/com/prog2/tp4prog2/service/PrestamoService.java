@@ -1,10 +1,14 @@
 package com.prog2.tp4prog2.service;
 
 import com.prog2.tp4prog2.model.Prestamo;
+import com.prog2.tp4prog2.model.PrestamoDetalle;
 import com.prog2.tp4prog2.model.Libro;
 import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Interfaz de servicio para la entidad Prestamo
@@ -12,27 +16,51 @@ import java.util.List;
 public interface PrestamoService {
     /**
      * @param id ID a buscar
-     * @return préstamo con ID coincidente
+     * @return préstamo con ID coincidente, o vacío si no existe
      */
-    Prestamo buscarPorId(Long id);
+    Optional<Prestamo> buscarPorId(Long id);
+
+    /**
+     * @return revisión de la colección de préstamos, que cambia con cada modificación
+     */
+    long revision();
 
     /**
      * @return lista de todos los préstamos
      */
     List<Prestamo> obtenerTodos();
 
+    /**
+     * @param despuesDe ID del último elemento de la página anterior, o null para la primera página
+     * @param limite cantidad máxima de elementos
+     * @return página de préstamos ordenados por ID
+     */
+    List<Prestamo> obtenerPagina(Long despuesDe, int limite);
+
     /**
      * @param usuario usuario a buscar
      * @return lista de préstamos del usuario
      */
     List<Prestamo> buscarPorUsuario(Usuario usuario);
 
+    /**
+     * @param usuarioId ID del usuario
+     * @return lista de préstamos del usuario
+     */
+    List<Prestamo> buscarPorUsuarioId(Long usuarioId);
+
     /**
      * @param libro libro a buscar
      * @return lista de préstamos del libro
      */
     List<Prestamo> buscarPorLibro(Libro libro);
 
+    /**
+     * @param libroId ID del libro
+     * @return lista de préstamos del libro
+     */
+    List<Prestamo> buscarPorLibroId(Long libroId);
+
     /**
      * @return lista de préstamos activos (fecha de devolución posterior a hoy)
      */
@@ -44,20 +72,129 @@ public interface PrestamoService {
     List<Prestamo> buscarPrestamosVencidos();
 
     /**
+     * @param diasMinimos cantidad de días de atraso que se deben superar
+     * @return lista de préstamos vencidos hace más de {@code diasMinimos} días
+     */
+    List<Prestamo> buscarPrestamosVencidos(int diasMinimos);
+
+    /**
+     * @param desde primera fecha de devolución incluida, o null si no hay límite inferior
+     * @param hasta última fecha de devolución incluida, o null si no hay límite superior
+     * @return lista de préstamos que vencen en el rango, ordenada por fecha de devolución
+     */
+    List<Prestamo> buscarPorVencimientoEntre(LocalDate desde, LocalDate hasta);
+
+    /**
+     * Resuelve el libro y el usuario de cada préstamo. Cada libro y cada usuario se
+     * busca una sola vez aunque aparezca en varios préstamos.
+     *
+     * @param prestamos préstamos a resolver
+     * @return un detalle por préstamo, en el mismo orden
+     */
+    List<PrestamoDetalle> conDetalle(List<Prestamo> prestamos);
+
+    /**
+     * @param prestamo préstamo a resolver
+     * @return el préstamo con su libro y su usuario
+     */
+    PrestamoDetalle conDetalle(Prestamo prestamo);
+
+    /**
+     * Guarda el préstamo tal como llega, sin cambiar el estado del libro.
+     *
      * @param prestamo préstamo a guardar
      * @return préstamo guardado
      */
     Prestamo guardar(Prestamo prestamo);
 
     /**
+     * Da de alta un préstamo recibido completo. Si es nuevo, el usuario tiene que
+     * existir y, si no está devuelto, el libro pasa de disponible a prestado igual
+     * que en {@link #prestar}. Si ya existe, se guarda como modificación sin cambiar
+     * el libro ni la fecha de entrega.
+     *
+     * @param prestamo préstamo a registrar
+     * @return préstamo guardado
+     * @throws LibroNoDisponibleException si el libro no está disponible
+     * @throws IllegalArgumentException si modifica el libro o la fecha de entrega de un préstamo existente
+     */
+    Prestamo registrar(Prestamo prestamo);
+
+    /**
+     * Presta un libro disponible: lo marca como prestado y registra el préstamo. Si
+     * dos solicitudes piden el mismo libro a la vez, solo una lo obtiene.
+     *
+     * @param libroId identificador del libro a prestar
+     * @param usuarioId identificador del usuario que lo retira
+     * @param fechaDevolucion fecha en la que vence el préstamo
+     * @return préstamo creado
+     * @throws LibroNoDisponibleException si el libro no está disponible
+     */
+    Prestamo prestar(Long libroId, Long usuarioId, LocalDate fechaDevolucion);
+
+    /**
+     * Registra la devolución: el préstamo queda en el historial con la fecha de
+     * entrega y el libro vuelve a estar disponible. Una devolución repetida no
+     * afecta a un préstamo posterior del libro.
+     *
+     * @param prestamoId identificador del préstamo
+     * @return préstamo cerrado
+     * @throws PrestamoDevueltoException si el préstamo ya fue devuelto
+     */
+    Prestamo devolver(Long prestamoId);
+
+    /**
+     * Elimina el préstamo. Si todavía no estaba devuelto, el libro vuelve a estar disponible.
+     *
      * @param id identificador del préstamo a eliminar
      */
     void eliminar(Long id);
 
     /**
+     * @param prestamos préstamos a guardar
+     * @return un resultado por elemento, en el mismo orden
+     */
+    List<BulkWriteResult<Prestamo>> guardarTodos(List<Prestamo> prestamos);
+
+    /**
+     * Igual que {@link #registrar} para cada elemento. Un préstamo cuyo libro no está
+     * disponible se rechaza con {@link LibroNoDisponibleException} y uno cuyo libro
+     * o usuario no existe, o que cambia el libro o la fecha de entrega, con
+     * {@link IllegalArgumentException}, sin afectar a los demás.
+     *
+     * @param prestamos préstamos a registrar; los que traen ID se guardan como modificaciones
+     * @return un resultado por elemento, en el mismo orden
+     */
+    List<BulkWriteResult<Prestamo>> registrarTodos(List<Prestamo> prestamos);
+
+    /**
+     * Igual que {@link #eliminar} para cada ID.
+     *
+     * @param ids identificadores de los préstamos a eliminar
+     * @return IDs de los préstamos eliminados
+     */
+    List<Long> eliminarTodos(Collection<Long> ids);
+
+    /**
+     * El libro y la fecha de entrega no se modifican por aquí: se cambian con
+     * {@link #prestar} y {@link #devolver}.
+     *
      * @param id identificador del préstamo a buscar y actualizar
      * @param prestamo datos actualizados del préstamo
      * @return préstamo actualizado
+     * @throws IllegalArgumentException si cambia el libro o la fecha de entrega
      */
     Prestamo buscarYActualizar(Long id, Prestamo prestamo);
+
+    /**
+     * Actualiza el préstamo solo si nadie lo modificó desde que el cliente leyó la
+     * versión {@code versionEsperada}.
+     *
+     * @param id identificador del préstamo a actualizar
+     * @param prestamo datos actualizados del préstamo
+     * @param versionEsperada versión leída por el cliente
+     * @return préstamo actualizado
+     * @throws ModificacionConcurrenteException si la versión almacenada es otra
+     */
+    Prestamo buscarYActualizar(Long id, Prestamo prestamo, long versionEsperada);
 }
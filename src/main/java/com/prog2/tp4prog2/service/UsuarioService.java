@@ -1,7 +1,10 @@
 package com.prog2.tp4prog2.service;
 
 import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Interfaz de servicio para la entidad Usuario
@@ -9,21 +12,46 @@ import java.util.List;
 public interface UsuarioService {
     /**
      * @param email email a buscar
-     * @return usuario con email coincidente
+     * @return usuario con email coincidente, o vacío si no existe
      */
-    Usuario buscarPorEmail(String email);
+    Optional<Usuario> buscarPorEmail(String email);
 
     /**
      * @param id ID a buscar
-     * @return usuario con ID coincidente
+     * @return usuario con ID coincidente, o vacío si no existe
      */
-    Usuario buscarPorId(Long id);
+    Optional<Usuario> buscarPorId(Long id);
+
+    /**
+     * @param id ID a verificar
+     * @return true si existe un usuario con ese ID
+     */
+    boolean existePorId(Long id);
+
+    /**
+     * @param consulta parte del nombre a buscar
+     * @param limite cantidad máxima de resultados
+     * @return usuarios cuyo nombre coincide, sin distinguir mayúsculas ni tildes
+     */
+    List<Usuario> buscarPorNombre(String consulta, int limite);
+
+    /**
+     * @return revisión de la colección de usuarios, que cambia con cada modificación
+     */
+    long revision();
 
     /**
      * @return lista de todos los usuarios
      */
     List<Usuario> obtenerTodos();
 
+    /**
+     * @param despuesDe ID del último elemento de la página anterior, o null para la primera página
+     * @param limite cantidad máxima de elementos
+     * @return página de usuarios ordenados por ID
+     */
+    List<Usuario> obtenerPagina(Long despuesDe, int limite);
+
     /**
      * @param usuario usuario a guardar
      * @return usuario guardado
@@ -35,10 +63,34 @@ public interface UsuarioService {
      */
     void eliminar(Long id);
 
+    /**
+     * @param usuarios usuarios a guardar
+     * @return un resultado por elemento, en el mismo orden
+     */
+    List<BulkWriteResult<Usuario>> guardarTodos(List<Usuario> usuarios);
+
+    /**
+     * @param ids identificadores de los usuarios a eliminar
+     * @return IDs de los usuarios eliminados
+     */
+    List<Long> eliminarTodos(Collection<Long> ids);
+
     /**
      * @param id identificador del usuario a buscar y actualizar
      * @param usuario datos actualizados del usuario
      * @return usuario actualizado
      */
     Usuario buscarYActualizar(Long id, Usuario usuario);
+
+    /**
+     * Actualiza el usuario solo si nadie lo modificó desde que el cliente leyó la
+     * versión {@code versionEsperada}.
+     *
+     * @param id identificador del usuario a actualizar
+     * @param usuario datos actualizados del usuario
+     * @param versionEsperada versión leída por el cliente
+     * @return usuario actualizado
+     * @throws ModificacionConcurrenteException si la versión almacenada es otra
+     */
+    Usuario buscarYActualizar(Long id, Usuario usuario, long versionEsperada);
 }
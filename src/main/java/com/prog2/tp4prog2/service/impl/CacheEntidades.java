@@ -0,0 +1,125 @@
+package com.prog2.tp4prog2.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.prog2.tp4prog2.model.Identificable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Caché de lectura de entidades por ID y por una clave única (ISBN, email), con la
+ * admisión y el desalojo W-TinyLFU de Caffeine. Por clave solo se guarda el ID y al
+ * leer se comprueba que la entidad siga teniendo esa clave, así que después de cada
+ * escritura basta con invalidar el ID. Las claves se comparan normalizadas igual
+ * que en el repositorio. Las búsquedas sin resultado no se guardan.
+ *
+ * @param <T> tipo de entidad
+ */
+public final class CacheEntidades<T extends Identificable> {
+    private final Function<Long, Optional<T>> cargaPorId;
+    private final Function<String, Optional<T>> cargaPorClave;
+    private final Function<T, String> clave;
+    private final UnaryOperator<String> normalizar;
+    private final Cache<Long, T> porId;
+    private final Cache<String, Long> porClave;
+
+    /**
+     * @param nombre prefijo de las cachés en las métricas ({@code <nombre>.id}, {@code <nombre>.clave})
+     * @param cargaPorId búsqueda por ID en el repositorio
+     * @param cargaPorClave búsqueda por clave en el repositorio
+     * @param clave clave única de una entidad
+     * @param normalizar forma canónica de una clave, la misma que usa el repositorio para buscarla
+     * @param tamanioMaximo entidades guardadas como máximo (0 deshabilita la caché)
+     * @param ttl tiempo desde que se lee una entidad hasta que se vuelve a buscar en el repositorio
+     * @param registry registro donde se publican aciertos, fallos y desalojos
+     */
+    public CacheEntidades(String nombre, Function<Long, Optional<T>> cargaPorId,
+                          Function<String, Optional<T>> cargaPorClave, Function<T, String> clave,
+                          UnaryOperator<String> normalizar, long tamanioMaximo, Duration ttl,
+                          MeterRegistry registry) {
+        this.cargaPorId = cargaPorId;
+        this.cargaPorClave = cargaPorClave;
+        this.clave = clave;
+        this.normalizar = normalizar;
+        if (tamanioMaximo <= 0) {
+            this.porId = null;
+            this.porClave = null;
+            return;
+        }
+        this.porId = Caffeine.newBuilder().maximumSize(tamanioMaximo).expireAfterWrite(ttl).recordStats().build();
+        this.porClave = Caffeine.newBuilder().maximumSize(tamanioMaximo).expireAfterWrite(ttl).recordStats().build();
+        CaffeineCacheMetrics.monitor(registry, porId, nombre + ".id");
+        CaffeineCacheMetrics.monitor(registry, porClave, nombre + ".clave");
+    }
+
+    /**
+     * @return una caché deshabilitada, que siempre busca en el repositorio
+     */
+    public static <T extends Identificable> CacheEntidades<T> deshabilitada(
+            Function<Long, Optional<T>> cargaPorId, Function<String, Optional<T>> cargaPorClave,
+            Function<T, String> clave) {
+        return new CacheEntidades<>(null, cargaPorId, cargaPorClave, clave, UnaryOperator.identity(), 0, null, null);
+    }
+
+    /**
+     * @param id identificador de la entidad
+     * @return la entidad guardada en la caché o, si no está, la del repositorio
+     */
+    public Optional<T> buscarPorId(Long id) {
+        if (porId == null || id == null) {
+            return cargaPorId.apply(id);
+        }
+        // La carga se hace dentro del cómputo de la clave: una invalidación concurrente espera a que termine
+        return Optional.ofNullable(porId.get(id, buscado -> cargaPorId.apply(buscado).orElse(null)));
+    }
+
+    /**
+     * @param valor clave única de la entidad
+     * @return la entidad con esa clave, de la caché o del repositorio
+     */
+    public Optional<T> buscarPorClave(String valor) {
+        String normalizada = valor != null ? normalizar.apply(valor) : null;
+        if (porClave == null || normalizada == null) {
+            return cargaPorClave.apply(valor);
+        }
+        Long id = porClave.getIfPresent(normalizada);
+        if (id != null) {
+            Optional<T> entidad = buscarPorId(id);
+            if (entidad.isPresent() && normalizada.equals(normalizar.apply(clave.apply(entidad.get())))) {
+                return entidad;
+            }
+            porClave.invalidate(normalizada);
+        }
+        // La entidad no se guarda por ID desde acá: podría estar desactualizada si hubo una escritura en el medio
+        Optional<T> entidad = cargaPorClave.apply(valor);
+        entidad.ifPresent(encontrada -> porClave.put(normalizada, encontrada.getId()));
+        return entidad;
+    }
+
+    /**
+     * Descarta la entidad de la caché; se llama después de escribirla en el repositorio.
+     *
+     * @param id identificador de la entidad modificada o eliminada
+     */
+    public void invalidar(Long id) {
+        if (porId != null && id != null) {
+            porId.invalidate(id);
+        }
+    }
+
+    /**
+     * @param ids identificadores de las entidades modificadas o eliminadas
+     */
+    public void invalidarTodos(Collection<Long> ids) {
+        if (porId != null) {
+            ids.stream().filter(Objects::nonNull).forEach(porId::invalidate);
+        }
+    }
+}
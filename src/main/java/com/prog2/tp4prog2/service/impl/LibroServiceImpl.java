@@ -1,31 +1,55 @@
 package com.prog2.tp4prog2.service.impl;
 
 import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
 import com.prog2.tp4prog2.repository.LibroRepository;
 import com.prog2.tp4prog2.service.LibroService;
+import com.prog2.tp4prog2.service.ModificacionConcurrenteException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 public class LibroServiceImpl implements LibroService {
     private final LibroRepository libroRepository;
+    private final CacheEntidades<Libro> cache;
 
-    @Autowired
     public LibroServiceImpl(LibroRepository libroRepository) {
+        this(libroRepository, CacheEntidades.deshabilitada(libroRepository::findById, libroRepository::findByIsbn,
+            Libro::getIsbn));
+    }
+
+    @Autowired
+    public LibroServiceImpl(LibroRepository libroRepository, CacheEntidades<Libro> cache) {
         this.libroRepository = libroRepository;
+        this.cache = cache;
     }
 
     @Override
-    public Libro buscarPorIsbn(String isbn) {
-        return libroRepository.findByIsbn(isbn)
-            .orElseThrow(() -> new RuntimeException("Libro no encontrado con ISBN: " + isbn));
+    public Optional<Libro> buscarPorIsbn(String isbn) {
+        return cache.buscarPorClave(isbn);
     }
 
     @Override
-    public Libro buscarPorId(Long id) {
-        return libroRepository.findById(id)
-            .orElseThrow(() -> new RuntimeException("Libro no encontrado con ID: " + id));
+    public Optional<Libro> buscarPorId(Long id) {
+        return cache.buscarPorId(id);
+    }
+
+    @Override
+    public boolean existePorId(Long id) {
+        return libroRepository.existsById(id);
+    }
+
+    @Override
+    public List<Libro> buscar(String consulta, int limite) {
+        return libroRepository.search(consulta, limite);
+    }
+
+    @Override
+    public long revision() {
+        return libroRepository.revision();
     }
 
     @Override
@@ -33,22 +57,59 @@ public class LibroServiceImpl implements LibroService {
         return libroRepository.findAll();
     }
 
+    @Override
+    public List<Libro> obtenerPagina(Long despuesDe, int limite) {
+        return libroRepository.findPage(despuesDe, limite);
+    }
+
     @Override
     public Libro guardar(Libro libro) {
-        return libroRepository.save(libro);
+        Libro guardado = libroRepository.save(libro);
+        cache.invalidar(guardado.getId());
+        return guardado;
     }
 
     @Override
     public void eliminar(Long id) {
         libroRepository.deleteById(id);
+        cache.invalidar(id);
+    }
+
+    @Override
+    public List<BulkWriteResult<Libro>> guardarTodos(List<Libro> libros) {
+        List<BulkWriteResult<Libro>> resultados = libroRepository.saveAll(libros);
+        cache.invalidarTodos(resultados.stream().filter(BulkWriteResult::isSaved).map(r -> r.entidad().getId()).toList());
+        return resultados;
+    }
+
+    @Override
+    public List<Long> eliminarTodos(Collection<Long> ids) {
+        List<Long> eliminados = libroRepository.deleteAllById(ids);
+        cache.invalidarTodos(eliminados);
+        return eliminados;
     }
 
     @Override
     public Libro buscarYActualizar(Long id, Libro libro) {
-        if (!libroRepository.findById(id).isPresent()) {
-            throw new RuntimeException("Libro no encontrado con ID: " + id);
-        }
         libro.setId(id);
-        return libroRepository.save(libro);
+        Libro guardado = libroRepository.replaceIfPresent(libro)
+            .orElseThrow(() -> new RuntimeException("Libro no encontrado con ID: " + id));
+        cache.invalidar(id);
+        return guardado;
+    }
+
+    @Override
+    public Libro buscarYActualizar(Long id, Libro libro, long versionEsperada) {
+        libro.setId(id);
+        Libro guardado = libroRepository.replaceIfVersion(libro, versionEsperada)
+            .orElseThrow(() -> noActualizado(id));
+        cache.invalidar(id);
+        return guardado;
+    }
+
+    private RuntimeException noActualizado(Long id) {
+        return libroRepository.findById(id).isPresent()
+            ? new ModificacionConcurrenteException("Libro modificado por otra solicitud, ID: " + id)
+            : new RuntimeException("Libro no encontrado con ID: " + id);
     }
 }
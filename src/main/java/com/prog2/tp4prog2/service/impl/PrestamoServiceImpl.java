@@ -1,28 +1,67 @@
 package com.prog2.tp4prog2.service.impl;
 
 import com.prog2.tp4prog2.model.Prestamo;
+import com.prog2.tp4prog2.model.PrestamoDetalle;
 import com.prog2.tp4prog2.model.Libro;
 import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
+import com.prog2.tp4prog2.repository.LibroRepository;
 import com.prog2.tp4prog2.repository.PrestamoRepository;
+import com.prog2.tp4prog2.repository.UsuarioRepository;
+import com.prog2.tp4prog2.service.LibroNoDisponibleException;
+import com.prog2.tp4prog2.service.ModificacionConcurrenteException;
+import com.prog2.tp4prog2.service.PrestamoDevueltoException;
 import com.prog2.tp4prog2.service.PrestamoService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 
 @Service
 public class PrestamoServiceImpl implements PrestamoService {
+    private static final String DISPONIBLE = "Disponible";
+    private static final String PRESTADO = "Prestado";
+
     private final PrestamoRepository prestamoRepository;
+    private final LibroRepository libroRepository;
+    private final UsuarioRepository usuarioRepository;
+    private final CacheEntidades<Libro> cacheLibros;
+
+    public PrestamoServiceImpl(PrestamoRepository prestamoRepository, LibroRepository libroRepository,
+                               UsuarioRepository usuarioRepository) {
+        this(prestamoRepository, libroRepository, usuarioRepository,
+            CacheEntidades.deshabilitada(libroRepository::findById, libroRepository::findByIsbn, Libro::getIsbn));
+    }
 
+    /**
+     * @param cacheLibros caché de {@link LibroServiceImpl}, que se invalida al cambiar el estado de un libro
+     */
     @Autowired
-    public PrestamoServiceImpl(PrestamoRepository prestamoRepository) {
+    public PrestamoServiceImpl(PrestamoRepository prestamoRepository, LibroRepository libroRepository,
+                               UsuarioRepository usuarioRepository, CacheEntidades<Libro> cacheLibros) {
         this.prestamoRepository = prestamoRepository;
+        this.libroRepository = libroRepository;
+        this.usuarioRepository = usuarioRepository;
+        this.cacheLibros = cacheLibros;
+    }
+
+    @Override
+    public Optional<Prestamo> buscarPorId(Long id) {
+        return prestamoRepository.findById(id);
     }
 
     @Override
-    public Prestamo buscarPorId(Long id) {
-        return prestamoRepository.findById(id)
-            .orElseThrow(() -> new RuntimeException("Prestamo no encontrado con ID: " + id));
+    public long revision() {
+        return prestamoRepository.revision();
     }
 
     @Override
@@ -30,16 +69,31 @@ public class PrestamoServiceImpl implements PrestamoService {
         return prestamoRepository.findAll();
     }
 
+    @Override
+    public List<Prestamo> obtenerPagina(Long despuesDe, int limite) {
+        return prestamoRepository.findPage(despuesDe, limite);
+    }
+
     @Override
     public List<Prestamo> buscarPorUsuario(Usuario usuario) {
         return prestamoRepository.findByUsuario(usuario);
     }
 
+    @Override
+    public List<Prestamo> buscarPorUsuarioId(Long usuarioId) {
+        return prestamoRepository.findByUsuarioId(usuarioId);
+    }
+
     @Override
     public List<Prestamo> buscarPorLibro(Libro libro) {
         return prestamoRepository.findByLibro(libro);
     }
 
+    @Override
+    public List<Prestamo> buscarPorLibroId(Long libroId) {
+        return prestamoRepository.findByLibroId(libroId);
+    }
+
     @Override
     public List<Prestamo> buscarPrestamosActivos() {
         return prestamoRepository.findActivePrestamos();
@@ -50,22 +104,258 @@ public class PrestamoServiceImpl implements PrestamoService {
         return prestamoRepository.findOverduePrestamos();
     }
 
+    @Override
+    public List<Prestamo> buscarPrestamosVencidos(int diasMinimos) {
+        return prestamoRepository.findOverduePrestamos(diasMinimos);
+    }
+
+    @Override
+    public List<Prestamo> buscarPorVencimientoEntre(LocalDate desde, LocalDate hasta) {
+        return prestamoRepository.findByFechaDevolucionBetween(desde, hasta);
+    }
+
+    @Override
+    public List<PrestamoDetalle> conDetalle(List<Prestamo> prestamos) {
+        Map<Long, Libro> libros = porId(libroRepository.findAllById(ids(prestamos, Prestamo::getLibroId)), Libro::getId);
+        Map<Long, Usuario> usuarios =
+            porId(usuarioRepository.findAllById(ids(prestamos, Prestamo::getUsuarioId)), Usuario::getId);
+        List<PrestamoDetalle> detalles = new ArrayList<>(prestamos.size());
+        for (Prestamo prestamo : prestamos) {
+            detalles.add(new PrestamoDetalle(prestamo, libros.get(prestamo.getLibroId()),
+                usuarios.get(prestamo.getUsuarioId())));
+        }
+        return detalles;
+    }
+
+    @Override
+    public PrestamoDetalle conDetalle(Prestamo prestamo) {
+        return new PrestamoDetalle(prestamo,
+            prestamo.getLibroId() != null ? libroRepository.findById(prestamo.getLibroId()).orElse(null) : null,
+            prestamo.getUsuarioId() != null ? usuarioRepository.findById(prestamo.getUsuarioId()).orElse(null) : null);
+    }
+
+    private static Set<Long> ids(List<Prestamo> prestamos, Function<Prestamo, Long> referencia) {
+        Set<Long> ids = new LinkedHashSet<>();
+        for (Prestamo prestamo : prestamos) {
+            Long id = referencia.apply(prestamo);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private static <T> Map<Long, T> porId(List<T> entidades, Function<T, Long> id) {
+        Map<Long, T> porId = new HashMap<>();
+        for (T entidad : entidades) {
+            porId.put(id.apply(entidad), entidad);
+        }
+        return porId;
+    }
+
     @Override
     public Prestamo guardar(Prestamo prestamo) {
         return prestamoRepository.save(prestamo);
     }
 
+    @Override
+    public Prestamo registrar(Prestamo prestamo) {
+        if (!preparar(prestamo)) {
+            return prestamoRepository.save(prestamo);
+        }
+        try {
+            return prestamoRepository.save(prestamo);
+        } catch (RuntimeException e) {
+            liberar(prestamo.getLibroId());
+            throw e;
+        }
+    }
+
+    /**
+     * Reserva los libros uno por uno antes de guardar el lote; los préstamos cuyo
+     * libro no se pudo reservar no llegan al repositorio.
+     */
+    @Override
+    public List<BulkWriteResult<Prestamo>> registrarTodos(List<Prestamo> prestamos) {
+        List<BulkWriteResult<Prestamo>> resultados = new ArrayList<>(prestamos.size());
+        List<Prestamo> aceptados = new ArrayList<>(prestamos.size());
+        List<Boolean> reservados = new ArrayList<>(prestamos.size());
+        List<Integer> posiciones = new ArrayList<>(prestamos.size());
+        for (int i = 0; i < prestamos.size(); i++) {
+            Prestamo prestamo = prestamos.get(i);
+            resultados.add(null);
+            boolean reservado = false;
+            if (prestamo != null) {
+                try {
+                    reservado = preparar(prestamo);
+                } catch (LibroNoDisponibleException | IllegalArgumentException e) {
+                    resultados.set(i, BulkWriteResult.rejected(prestamo, e));
+                    continue;
+                } catch (RuntimeException e) {
+                    resultados.set(i, BulkWriteResult.rejected(prestamo, new IllegalArgumentException(e.getMessage())));
+                    continue;
+                }
+            }
+            aceptados.add(prestamo);
+            reservados.add(reservado);
+            posiciones.add(i);
+        }
+        List<BulkWriteResult<Prestamo>> guardados = prestamoRepository.saveAll(aceptados);
+        for (int j = 0; j < guardados.size(); j++) {
+            if (!guardados.get(j).isSaved() && reservados.get(j)) {
+                liberar(aceptados.get(j).getLibroId());
+            }
+            resultados.set(posiciones.get(j), guardados.get(j));
+        }
+        return resultados;
+    }
+
+    /**
+     * El cambio de estado del libro es la operación que decide quién lo obtiene: se
+     * hace con el lock de ese libro en el repositorio, sin bloquear a los demás.
+     */
+    @Override
+    public Prestamo prestar(Long libroId, Long usuarioId, LocalDate fechaDevolucion) {
+        if (!usuarioRepository.existsById(usuarioId)) {
+            throw new RuntimeException("Usuario no encontrado con ID: " + usuarioId);
+        }
+        reservar(libroId);
+        try {
+            return prestamoRepository.save(new Prestamo(null, libroId, usuarioId, LocalDate.now(), fechaDevolucion));
+        } catch (RuntimeException e) {
+            liberar(libroId);
+            throw e;
+        }
+    }
+
+    /**
+     * Valida un préstamo recibido completo antes de guardarlo. Un alta necesita un
+     * usuario existente y, si no llega devuelto, ocupa el libro. Una modificación
+     * no puede cambiar el libro ni la fecha de entrega: eso lo hacen
+     * {@link #prestar} y {@link #devolver}, que mueven el estado del libro.
+     *
+     * @return true si se ocupó el libro, que hay que liberar si el guardado falla
+     */
+    private boolean preparar(Prestamo prestamo) {
+        Optional<Prestamo> actual = prestamo.getId() != null
+            ? prestamoRepository.findById(prestamo.getId())
+            : Optional.empty();
+        if (actual.isPresent()) {
+            validarCambio(actual.get(), prestamo);
+            return false;
+        }
+        if (!usuarioRepository.existsById(prestamo.getUsuarioId())) {
+            throw new RuntimeException("Usuario no encontrado con ID: " + prestamo.getUsuarioId());
+        }
+        if (prestamo.getFechaEntrega() != null) {
+            return false;
+        }
+        reservar(prestamo.getLibroId());
+        return true;
+    }
+
+    private static void validarCambio(Prestamo actual, Prestamo nuevo) {
+        if (!Objects.equals(actual.getLibroId(), nuevo.getLibroId())
+            || !Objects.equals(actual.getFechaEntrega(), nuevo.getFechaEntrega())) {
+            throw new IllegalArgumentException(
+                "El libro y la fecha de entrega se cambian prestando o devolviendo el préstamo: " + actual.getId());
+        }
+    }
+
+    private void reservar(Long libroId) {
+        libroRepository.compareAndSetEstado(libroId, DISPONIBLE, PRESTADO)
+            .orElseThrow(() -> libroRepository.existsById(libroId)
+                ? new LibroNoDisponibleException("El libro no está disponible: " + libroId)
+                : new RuntimeException("Libro no encontrado con ID: " + libroId));
+        cacheLibros.invalidar(libroId);
+    }
+
+    private void liberarSiAbierto(Prestamo prestamo) {
+        if (prestamo.getFechaEntrega() == null && prestamo.getLibroId() != null) {
+            liberar(prestamo.getLibroId());
+        }
+    }
+
+    private void liberar(Long libroId) {
+        libroRepository.compareAndSetEstado(libroId, PRESTADO, DISPONIBLE);
+        cacheLibros.invalidar(libroId);
+    }
+
+    /**
+     * La fecha de entrega se registra comparando la versión leída, así que de dos
+     * devoluciones simultáneas solo una libera el libro. Si el préstamo cambió por
+     * otro motivo se vuelve a leer.
+     */
+    @Override
+    public Prestamo devolver(Long prestamoId) {
+        while (true) {
+            Prestamo prestamo = prestamoRepository.findById(prestamoId)
+                .orElseThrow(() -> new RuntimeException("Prestamo no encontrado con ID: " + prestamoId));
+            if (prestamo.getFechaEntrega() != null) {
+                throw new PrestamoDevueltoException("El préstamo ya fue devuelto: " + prestamoId);
+            }
+            Prestamo devuelto = new Prestamo(prestamo.getId(), prestamo.getLibroId(), prestamo.getUsuarioId(),
+                prestamo.getFechaPrestamo(), prestamo.getFechaDevolucion(), LocalDate.now(), prestamo.getVersion());
+            Optional<Prestamo> guardado = prestamoRepository.replaceIfVersion(devuelto, prestamo.getVersion());
+            if (guardado.isPresent()) {
+                if (prestamo.getLibroId() != null) {
+                    libroRepository.compareAndSetEstado(prestamo.getLibroId(), PRESTADO, DISPONIBLE);
+                    cacheLibros.invalidar(prestamo.getLibroId());
+                }
+                return guardado.get();
+            }
+        }
+    }
+
+    /**
+     * Si el préstamo eliminado seguía abierto, el libro vuelve a estar disponible.
+     */
     @Override
     public void eliminar(Long id) {
-        prestamoRepository.deleteById(id);
+        prestamoRepository.removeById(id).ifPresent(this::liberarSiAbierto);
+    }
+
+    @Override
+    public List<BulkWriteResult<Prestamo>> guardarTodos(List<Prestamo> prestamos) {
+        return prestamoRepository.saveAll(prestamos);
+    }
+
+    @Override
+    public List<Long> eliminarTodos(Collection<Long> ids) {
+        List<Long> eliminados = new ArrayList<>();
+        for (Prestamo prestamo : prestamoRepository.removeAllById(ids)) {
+            liberarSiAbierto(prestamo);
+            eliminados.add(prestamo.getId());
+        }
+        return eliminados;
     }
 
     @Override
     public Prestamo buscarYActualizar(Long id, Prestamo prestamo) {
-        if (!prestamoRepository.findById(id).isPresent()) {
-            throw new RuntimeException("Prestamo no encontrado con ID: " + id);
+        prestamo.setId(id);
+        // Se reemplaza la versión que se validó: un borrado o un cambio concurrente no se pisa
+        while (true) {
+            Prestamo actual = prestamoRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Prestamo no encontrado con ID: " + id));
+            validarCambio(actual, prestamo);
+            Optional<Prestamo> guardado = prestamoRepository.replaceIfVersion(prestamo, actual.getVersion());
+            if (guardado.isPresent()) {
+                return guardado.get();
+            }
         }
+    }
+
+    @Override
+    public Prestamo buscarYActualizar(Long id, Prestamo prestamo, long versionEsperada) {
+        prestamoRepository.findById(id).ifPresent(actual -> validarCambio(actual, prestamo));
         prestamo.setId(id);
-        return prestamoRepository.save(prestamo);
+        return prestamoRepository.replaceIfVersion(prestamo, versionEsperada)
+            .orElseThrow(() -> noActualizado(id));
+    }
+
+    private RuntimeException noActualizado(Long id) {
+        return prestamoRepository.findById(id).isPresent()
+            ? new ModificacionConcurrenteException("Prestamo modificado por otra solicitud, ID: " + id)
+            : new RuntimeException("Prestamo no encontrado con ID: " + id);
     }
 }
@@ -1,31 +1,55 @@
 package com.prog2.tp4prog2.service.impl;
 
 import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
 import com.prog2.tp4prog2.repository.UsuarioRepository;
+import com.prog2.tp4prog2.service.ModificacionConcurrenteException;
 import com.prog2.tp4prog2.service.UsuarioService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 public class UsuarioServiceImpl implements UsuarioService {
     private final UsuarioRepository usuarioRepository;
+    private final CacheEntidades<Usuario> cache;
 
-    @Autowired
     public UsuarioServiceImpl(UsuarioRepository usuarioRepository) {
+        this(usuarioRepository, CacheEntidades.deshabilitada(usuarioRepository::findById,
+            usuarioRepository::findByEmail, Usuario::getEmail));
+    }
+
+    @Autowired
+    public UsuarioServiceImpl(UsuarioRepository usuarioRepository, CacheEntidades<Usuario> cache) {
         this.usuarioRepository = usuarioRepository;
+        this.cache = cache;
     }
 
     @Override
-    public Usuario buscarPorEmail(String email) {
-        return usuarioRepository.findByEmail(email)
-            .orElseThrow(() -> new RuntimeException("Usuario no encontrado con email: " + email));
+    public Optional<Usuario> buscarPorEmail(String email) {
+        return cache.buscarPorClave(email);
     }
 
     @Override
-    public Usuario buscarPorId(Long id) {
-        return usuarioRepository.findById(id)
-            .orElseThrow(() -> new RuntimeException("Usuario no encontrado con ID: " + id));
+    public Optional<Usuario> buscarPorId(Long id) {
+        return cache.buscarPorId(id);
+    }
+
+    @Override
+    public boolean existePorId(Long id) {
+        return usuarioRepository.existsById(id);
+    }
+
+    @Override
+    public List<Usuario> buscarPorNombre(String consulta, int limite) {
+        return usuarioRepository.searchByNombre(consulta, limite);
+    }
+
+    @Override
+    public long revision() {
+        return usuarioRepository.revision();
     }
 
     @Override
@@ -33,33 +57,80 @@ public class UsuarioServiceImpl implements UsuarioService {
         return usuarioRepository.findAll();
     }
 
+    @Override
+    public List<Usuario> obtenerPagina(Long despuesDe, int limite) {
+        return usuarioRepository.findPage(despuesDe, limite);
+    }
+
     @Override
     public Usuario guardar(Usuario usuario) {
-        return usuarioRepository.save(usuario);
+        Usuario guardado = usuarioRepository.save(usuario);
+        cache.invalidar(guardado.getId());
+        return guardado;
     }
 
     @Override
     public void eliminar(Long id) {
         usuarioRepository.deleteById(id);
+        cache.invalidar(id);
+    }
+
+    @Override
+    public List<BulkWriteResult<Usuario>> guardarTodos(List<Usuario> usuarios) {
+        List<BulkWriteResult<Usuario>> resultados = usuarioRepository.saveAll(usuarios);
+        cache.invalidarTodos(resultados.stream().filter(BulkWriteResult::isSaved).map(r -> r.entidad().getId()).toList());
+        return resultados;
+    }
+
+    @Override
+    public List<Long> eliminarTodos(Collection<Long> ids) {
+        List<Long> eliminados = usuarioRepository.deleteAllById(ids);
+        cache.invalidarTodos(eliminados);
+        return eliminados;
     }
 
     @Override
     public Usuario buscarYActualizar(Long id, Usuario usuario) {
-        Usuario existingUsuario = usuarioRepository.findById(id)
-            .orElseThrow(() -> new RuntimeException("Usuario no encontrado con ID: " + id));
+        while (true) {
+            Usuario existingUsuario = usuarioRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado con ID: " + id));
 
-        // Update the existing user with the provided data
-        if (usuario.getNombre() != null) {
-            existingUsuario.setNombre(usuario.getNombre());
-        }
-        if (usuario.getEmail() != null) {
-            existingUsuario.setEmail(usuario.getEmail());
+            // Merge the provided data into a copy so a rejected save (e.g. duplicate email)
+            // leaves the stored user untouched
+            Usuario updatedUsuario = new Usuario(
+                existingUsuario.getId(),
+                usuario.getNombre() != null ? usuario.getNombre() : existingUsuario.getNombre(),
+                usuario.getEmail() != null ? usuario.getEmail() : existingUsuario.getEmail(),
+                usuario.getEstado() != null ? usuario.getEstado() : existingUsuario.getEstado());
+
+            // Save only over the version the merge was based on: a concurrent delete is not
+            // undone, and a concurrent edit is merged again on the next pass
+            Optional<Usuario> guardado = usuarioRepository.replaceIfVersion(updatedUsuario, existingUsuario.getVersion());
+            if (guardado.isPresent()) {
+                cache.invalidar(id);
+                return guardado.get();
+            }
         }
-        if (usuario.getEstado() != null) {
-            existingUsuario.setEstado(usuario.getEstado());
+    }
+
+    @Override
+    public Usuario buscarYActualizar(Long id, Usuario usuario, long versionEsperada) {
+        Usuario existingUsuario = usuarioRepository.findById(id)
+            .orElseThrow(() -> new RuntimeException("Usuario no encontrado con ID: " + id));
+        if (existingUsuario.getVersion() != versionEsperada) {
+            throw new ModificacionConcurrenteException("Usuario modificado por otra solicitud, ID: " + id);
         }
 
-        // Save the updated user
-        return usuarioRepository.save(existingUsuario);
+        // The merge is based on the version the client read; if the user changed in
+        // the meantime the conditional save is rejected instead of mixing both edits
+        Usuario updatedUsuario = new Usuario(
+            existingUsuario.getId(),
+            usuario.getNombre() != null ? usuario.getNombre() : existingUsuario.getNombre(),
+            usuario.getEmail() != null ? usuario.getEmail() : existingUsuario.getEmail(),
+            usuario.getEstado() != null ? usuario.getEstado() : existingUsuario.getEstado());
+        Usuario guardado = usuarioRepository.replaceIfVersion(updatedUsuario, versionEsperada)
+            .orElseThrow(() -> new ModificacionConcurrenteException("Usuario modificado por otra solicitud, ID: " + id));
+        cache.invalidar(id);
+        return guardado;
     }
 }
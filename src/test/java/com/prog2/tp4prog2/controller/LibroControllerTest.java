@@ -2,7 +2,10 @@ package com.prog2.tp4prog2.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
+import com.prog2.tp4prog2.repository.DuplicateKeyException;
 import com.prog2.tp4prog2.service.LibroService;
+import com.prog2.tp4prog2.service.ModificacionConcurrenteException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,12 +13,23 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -69,10 +83,91 @@ public class LibroControllerTest {
         verify(libroService).obtenerTodos();
     }
 
+    @Test
+    void obtenerTodos_withFields_shouldOnlySerializeRequestedProperties() throws Exception {
+        // Arrange
+        when(libroService.obtenerTodos()).thenReturn(List.of(libro1, libro2));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/libros").param("fields", "id,titulo"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[0].titulo", is("El Quijote")))
+                .andExpect(jsonPath("$[0].isbn").doesNotExist())
+                .andExpect(jsonPath("$[0].autor").doesNotExist())
+                .andExpect(jsonPath("$[0].version").doesNotExist())
+                .andExpect(jsonPath("$[1].titulo", is("Cien años de soledad")));
+    }
+
+    @Test
+    void obtenerTodos_withFullPage_shouldReturnPageAndNextLink() throws Exception {
+        // Arrange
+        when(libroService.obtenerPagina(null, 2)).thenReturn(List.of(libro1, libro2));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/libros").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(header().string("Link", "<http://localhost/api/libros?limit=2&after=2>; rel=\"next\""));
+
+        verify(libroService, never()).obtenerTodos();
+    }
+
+    @Test
+    void obtenerTodos_withLastPage_shouldNotReturnNextLink() throws Exception {
+        // Arrange
+        when(libroService.obtenerPagina(1L, 100)).thenReturn(List.of(libro2));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/libros").param("after", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(header().doesNotExist("Link"));
+    }
+
+    @Test
+    void obtenerTodos_withLimitOutOfRange_shouldReturnBadRequest() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/api/libros").param("limit", "1001"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(libroService);
+    }
+
+    @Test
+    void exportar_shouldStreamEveryPageAsNdjson() throws Exception {
+        // Arrange: one full batch followed by a partial one
+        List<Libro> primerLote = new ArrayList<>();
+        for (long id = 1; id <= ExportacionNdjson.TAMANIO_LOTE; id++) {
+            primerLote.add(new Libro(id, "isbn-" + id, "Título " + id, "Autor", "Disponible"));
+        }
+        Libro ultimo = new Libro(ExportacionNdjson.TAMANIO_LOTE + 1L, "isbn", "Último", "Autor", "Disponible");
+        when(libroService.obtenerPagina(null, ExportacionNdjson.TAMANIO_LOTE)).thenReturn(primerLote);
+        when(libroService.obtenerPagina((long) ExportacionNdjson.TAMANIO_LOTE, ExportacionNdjson.TAMANIO_LOTE))
+                .thenReturn(List.of(ultimo));
+
+        // Act
+        MvcResult result = mockMvc.perform(get("/api/libros/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        String[] lineas = body.split("\n");
+        assertEquals(ExportacionNdjson.TAMANIO_LOTE + 1, lineas.length);
+        assertTrue(body.endsWith("\n"));
+        assertEquals(primerLote.get(0), objectMapper.readValue(lineas[0], Libro.class));
+        assertEquals(ultimo, objectMapper.readValue(lineas[lineas.length - 1], Libro.class));
+    }
+
     @Test
     void obtenerPorId_withExistingId_shouldReturnBook() throws Exception {
         // Arrange
-        when(libroService.buscarPorId(1L)).thenReturn(libro1);
+        when(libroService.buscarPorId(1L)).thenReturn(Optional.of(libro1));
 
         // Act & Assert
         mockMvc.perform(get("/api/libros/1"))
@@ -87,10 +182,60 @@ public class LibroControllerTest {
         verify(libroService).buscarPorId(1L);
     }
 
+    @Test
+    void obtenerPorId_withJsonCache_shouldReuseBytesUntilVersionChanges() throws Exception {
+        // Arrange
+        LibroController conCache = new LibroController(libroService, objectMapper, 100);
+        Libro modificado = new Libro(1L, "1234567890", "El Quijote", "Miguel de Cervantes", "Prestado", 1);
+        // The first miss reads the book again before caching it
+        when(libroService.buscarPorId(1L))
+            .thenReturn(Optional.of(libro1), Optional.of(libro1), Optional.of(libro1), Optional.of(modificado));
+
+        // Act
+        byte[] primero = (byte[]) conCache.obtenerPorId(1L, null, null).getBody();
+        byte[] segundo = (byte[]) conCache.obtenerPorId(1L, null, null).getBody();
+        byte[] tercero = (byte[]) conCache.obtenerPorId(1L, null, null).getBody();
+
+        // Assert
+        assertSame(primero, segundo);
+        assertEquals(objectMapper.writeValueAsString(libro1), new String(primero, StandardCharsets.UTF_8));
+        assertEquals(modificado, objectMapper.readValue(tercero, Libro.class));
+        assertEquals(304, conCache.obtenerPorId(1L, null, "\"1\"").getStatusCode().value());
+    }
+
+    @Test
+    void obtenerPorId_withJsonCacheAndConcurrentDelete_shouldNotCacheDeletedBook() throws Exception {
+        // Arrange: the book is deleted between the read and the cache write, then recreated with the same ID
+        LibroController conCache = new LibroController(libroService, objectMapper, 100);
+        Libro recreado = new Libro(1L, "1111111111", "Rayuela", "Julio Cortázar", "Disponible");
+        when(libroService.buscarPorId(1L)).thenReturn(Optional.of(libro1), Optional.empty(), Optional.of(recreado));
+
+        // Act
+        conCache.obtenerPorId(1L, null, null);
+        byte[] segundo = (byte[]) conCache.obtenerPorId(1L, null, null).getBody();
+
+        // Assert
+        assertEquals(recreado, objectMapper.readValue(segundo, Libro.class));
+    }
+
+    @Test
+    void obtenerPorId_withJsonCacheAndFields_shouldNotUseCachedBody() {
+        // Arrange
+        LibroController conCache = new LibroController(libroService, objectMapper, 100);
+        when(libroService.buscarPorId(1L)).thenReturn(Optional.of(libro1));
+        conCache.obtenerPorId(1L, null, null);
+
+        // Act
+        Object cuerpo = conCache.obtenerPorId(1L, "titulo", null).getBody();
+
+        // Assert: the entity is returned so the projection can serialize only the requested fields
+        assertSame(libro1, cuerpo);
+    }
+
     @Test
     void obtenerPorId_withNonExistingId_shouldReturnNotFound() throws Exception {
         // Arrange
-        when(libroService.buscarPorId(999L)).thenThrow(new RuntimeException("Libro no encontrado con ID: 999"));
+        when(libroService.buscarPorId(999L)).thenReturn(Optional.empty());
 
         // Act & Assert
         mockMvc.perform(get("/api/libros/999"))
@@ -102,7 +247,7 @@ public class LibroControllerTest {
     @Test
     void obtenerPorIsbn_withExistingIsbn_shouldReturnBook() throws Exception {
         // Arrange
-        when(libroService.buscarPorIsbn("1234567890")).thenReturn(libro1);
+        when(libroService.buscarPorIsbn("1234567890")).thenReturn(Optional.of(libro1));
 
         // Act & Assert
         mockMvc.perform(get("/api/libros/isbn/1234567890"))
@@ -120,7 +265,7 @@ public class LibroControllerTest {
     @Test
     void obtenerPorIsbn_withNonExistingIsbn_shouldReturnNotFound() throws Exception {
         // Arrange
-        when(libroService.buscarPorIsbn("9999999999")).thenThrow(new RuntimeException("Libro no encontrado con ISBN: 9999999999"));
+        when(libroService.buscarPorIsbn("9999999999")).thenReturn(Optional.empty());
 
         // Act & Assert
         mockMvc.perform(get("/api/libros/isbn/9999999999"))
@@ -129,6 +274,32 @@ public class LibroControllerTest {
         verify(libroService).buscarPorIsbn("9999999999");
     }
 
+    @Test
+    void buscar_shouldReturnRankedBooks() throws Exception {
+        // Arrange
+        when(libroService.buscar("cien anos", 20)).thenReturn(Arrays.asList(libro2));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/libros/search").param("q", "cien anos"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].titulo", is("Cien años de soledad")));
+
+        verify(libroService).buscar("cien anos", 20);
+    }
+
+    @Test
+    void buscar_withOutOfRangeLimit_shouldReturnBadRequest() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/api/libros/search").param("q", "quijote").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/libros/search").param("q", "quijote").param("limit", "1000"))
+                .andExpect(status().isBadRequest());
+
+        verify(libroService, never()).buscar(anyString(), anyInt());
+    }
+
     @Test
     void crear_shouldCreateAndReturnBook() throws Exception {
         // Arrange
@@ -152,6 +323,23 @@ public class LibroControllerTest {
         verify(libroService).guardar(any(Libro.class));
     }
 
+    @Test
+    void crear_withDuplicateIsbn_shouldReturnConflict() throws Exception {
+        // Arrange
+        Libro nuevoLibro = new Libro(null, "1234567890", "Otro Quijote", "Otro Autor", "Disponible");
+
+        when(libroService.guardar(any(Libro.class)))
+            .thenThrow(new DuplicateKeyException("Ya existe un registro con ISBN: 1234567890"));
+
+        // Act & Assert
+        mockMvc.perform(post("/api/libros")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(nuevoLibro)))
+                .andExpect(status().isConflict());
+
+        verify(libroService).guardar(any(Libro.class));
+    }
+
     @Test
     void actualizar_withExistingId_shouldUpdateAndReturnBook() throws Exception {
         // Arrange
@@ -192,6 +380,23 @@ public class LibroControllerTest {
         verify(libroService).buscarYActualizar(eq(999L), any(Libro.class));
     }
 
+    @Test
+    void actualizar_withDuplicateIsbn_shouldReturnConflict() throws Exception {
+        // Arrange
+        Libro libroActualizado = new Libro(null, "0987654321", "Título Actualizado", "Autor Actualizado", "Disponible");
+
+        when(libroService.buscarYActualizar(eq(1L), any(Libro.class)))
+            .thenThrow(new DuplicateKeyException("Ya existe un registro con ISBN: 0987654321"));
+
+        // Act & Assert
+        mockMvc.perform(put("/api/libros/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(libroActualizado)))
+                .andExpect(status().isConflict());
+
+        verify(libroService).buscarYActualizar(eq(1L), any(Libro.class));
+    }
+
     @Test
     void eliminar_withExistingId_shouldReturnNoContent() throws Exception {
         // Arrange
@@ -215,4 +420,190 @@ public class LibroControllerTest {
 
         verify(libroService).eliminar(999L);
     }
+
+    @Test
+    void guardarEnLote_shouldReturnOneResultPerItem() throws Exception {
+        // Arrange
+        Libro nuevo = new Libro(null, "1111111111", "Rayuela", "Julio Cortázar", "Disponible");
+        Libro repetido = new Libro(null, "1234567890", "Otro", "Autor", "Disponible");
+        when(libroService.guardarTodos(anyList())).thenAnswer(invocation -> {
+            List<Libro> lote = invocation.getArgument(0);
+            lote.get(0).setId(3L);
+            return List.of(BulkWriteResult.saved(lote.get(0)),
+                    BulkWriteResult.rejected(lote.get(1), new DuplicateKeyException("Ya existe un registro con ISBN: 1234567890")),
+                    BulkWriteResult.saved(lote.get(2)));
+        });
+
+        // Act & Assert
+        mockMvc.perform(post("/api/libros/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(nuevo, repetido, libro1))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].estado", is(201)))
+                .andExpect(jsonPath("$[0].id", is(3)))
+                .andExpect(jsonPath("$[1].indice", is(1)))
+                .andExpect(jsonPath("$[1].estado", is(409)))
+                .andExpect(jsonPath("$[1].id").doesNotExist())
+                .andExpect(jsonPath("$[2].estado", is(200)))
+                .andExpect(jsonPath("$[2].id", is(1)));
+    }
+
+    @Test
+    void guardarEnLoteNdjson_shouldSaveInBatchesAndStopAtMalformedLine() throws Exception {
+        // Arrange: one full batch, a partial one, then a malformed line
+        StringBuilder cuerpo = new StringBuilder();
+        for (int i = 0; i <= EscrituraEnLote.TAMANIO_LOTE; i++) {
+            cuerpo.append(objectMapper.writeValueAsString(
+                    new Libro(null, "isbn-" + i, "Título " + i, "Autor", "Disponible"))).append('\n');
+        }
+        cuerpo.append("{\"isbn\": ").append('\n');
+        when(libroService.guardarTodos(anyList())).thenAnswer(invocation -> {
+            List<Libro> lote = invocation.getArgument(0);
+            List<BulkWriteResult<Libro>> resultados = new ArrayList<>();
+            for (Libro libro : lote) {
+                resultados.add(BulkWriteResult.saved(libro));
+            }
+            return resultados;
+        });
+
+        // Act & Assert
+        mockMvc.perform(post("/api/libros/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content(cuerpo.toString().getBytes(StandardCharsets.UTF_8)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(EscrituraEnLote.TAMANIO_LOTE + 2)))
+                .andExpect(jsonPath("$[0].estado", is(201)))
+                .andExpect(jsonPath("$[" + EscrituraEnLote.TAMANIO_LOTE + "].estado", is(201)))
+                .andExpect(jsonPath("$[" + (EscrituraEnLote.TAMANIO_LOTE + 1) + "].estado", is(400)));
+
+        verify(libroService, times(2)).guardarTodos(anyList());
+    }
+
+    @Test
+    void eliminarEnLote_shouldReportDeletedAndMissingIds() throws Exception {
+        // Arrange
+        when(libroService.eliminarTodos(List.of(1L, 99L))).thenReturn(List.of(1L));
+
+        // Act & Assert
+        mockMvc.perform(delete("/api/libros/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1, 99]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[0].estado", is(204)))
+                .andExpect(jsonPath("$[1].id", is(99)))
+                .andExpect(jsonPath("$[1].estado", is(404)));
+    }
+
+    @Test
+    void obtenerPorId_shouldReturnVersionAsEtag() throws Exception {
+        // Arrange
+        libro1.setVersion(4);
+        when(libroService.buscarPorId(1L)).thenReturn(Optional.of(libro1));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/libros/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"4\""));
+    }
+
+    @Test
+    void actualizar_withMatchingIfMatch_shouldUpdateConditionallyAndReturnNewEtag() throws Exception {
+        // Arrange
+        Libro libroGuardado = new Libro(1L, "1234567890", "Título Actualizado", "Autor", "Disponible", 5);
+        when(libroService.buscarYActualizar(eq(1L), any(Libro.class), eq(4L))).thenReturn(libroGuardado);
+
+        // Act & Assert
+        mockMvc.perform(put("/api/libros/1")
+                .header("If-Match", "\"4\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(libroGuardado)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"5\""));
+
+        verify(libroService, never()).buscarYActualizar(anyLong(), any(Libro.class));
+    }
+
+    @Test
+    void actualizar_withStaleIfMatch_shouldReturnPreconditionFailed() throws Exception {
+        // Arrange
+        when(libroService.buscarYActualizar(eq(1L), any(Libro.class), eq(3L)))
+                .thenThrow(new ModificacionConcurrenteException("Libro modificado por otra solicitud, ID: 1"));
+
+        // Act & Assert
+        mockMvc.perform(put("/api/libros/1")
+                .header("If-Match", "\"3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(libro1)))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    void actualizar_withWeakIfMatch_shouldNeverMatch() throws Exception {
+        // Arrange
+        when(libroService.buscarYActualizar(eq(1L), any(Libro.class), eq(Precondiciones.NINGUNA)))
+                .thenThrow(new ModificacionConcurrenteException("Libro modificado por otra solicitud, ID: 1"));
+
+        // Act & Assert
+        mockMvc.perform(put("/api/libros/1")
+                .header("If-Match", "W/\"1\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(libro1)))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    void obtenerTodos_shouldReturnCollectionRevisionAsEtag() throws Exception {
+        // Arrange
+        when(libroService.revision()).thenReturn(7L);
+        when(libroService.obtenerTodos()).thenReturn(Arrays.asList(libro1, libro2));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/libros"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"r7\""))
+                .andExpect(jsonPath("$", hasSize(2)));
+    }
+
+    @Test
+    void obtenerTodos_withMatchingIfNoneMatch_shouldReturnNotModifiedWithoutReading() throws Exception {
+        // Arrange
+        when(libroService.revision()).thenReturn(7L);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/libros").header("If-None-Match", "\"r6\", W/\"r7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"r7\""))
+                .andExpect(content().string(""));
+
+        verify(libroService, never()).obtenerTodos();
+        verify(libroService, never()).obtenerPagina(any(), anyInt());
+    }
+
+    @Test
+    void obtenerTodos_withStaleIfNoneMatch_shouldReturnPage() throws Exception {
+        // Arrange
+        when(libroService.revision()).thenReturn(8L);
+        when(libroService.obtenerPagina(null, 10)).thenReturn(List.of(libro1));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/libros").param("limit", "10").header("If-None-Match", "\"r7\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"r8\""))
+                .andExpect(jsonPath("$", hasSize(1)));
+    }
+
+    @Test
+    void obtenerPorId_withMatchingIfNoneMatch_shouldReturnNotModified() throws Exception {
+        // Arrange
+        libro1.setVersion(4);
+        when(libroService.buscarPorId(1L)).thenReturn(Optional.of(libro1));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/libros/1").header("If-None-Match", "\"4\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"4\""))
+                .andExpect(content().string(""));
+    }
 }
@@ -3,8 +3,12 @@ package com.prog2.tp4prog2.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.prog2.tp4prog2.model.Libro;
 import com.prog2.tp4prog2.model.Prestamo;
+import com.prog2.tp4prog2.model.PrestamoDetalle;
 import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
+import com.prog2.tp4prog2.service.LibroNoDisponibleException;
 import com.prog2.tp4prog2.service.LibroService;
+import com.prog2.tp4prog2.service.PrestamoDevueltoException;
 import com.prog2.tp4prog2.service.PrestamoService;
 import com.prog2.tp4prog2.service.UsuarioService;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,17 +16,20 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 import static org.hamcrest.Matchers.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -32,7 +39,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @Import(PrestamoControllerTest.TestConfig.class)
 public class PrestamoControllerTest {
 
-    @Configuration
+    @TestConfiguration
     static class TestConfig {
         @Bean
         public PrestamoService prestamoService() {
@@ -91,8 +98,8 @@ public class PrestamoControllerTest {
         libro2 = new Libro(2L, "0987654321", "Cien años de soledad", "Gabriel García Márquez", "Prestado");
         
         // Create test loans
-        prestamo1 = new Prestamo(1L, libro1, usuario1, yesterday, tomorrow);
-        prestamo2 = new Prestamo(2L, libro2, usuario2, today, yesterday); // Overdue loan
+        prestamo1 = new Prestamo(1L, libro1.getId(), usuario1.getId(), yesterday, tomorrow);
+        prestamo2 = new Prestamo(2L, libro2.getId(), usuario2.getId(), today, yesterday); // Overdue loan
         
         // Reset the mocks before each test
         reset(prestamoService, libroService, usuarioService);
@@ -110,15 +117,105 @@ public class PrestamoControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$", hasSize(2)))
                 .andExpect(jsonPath("$[0].id", is(1)))
-                .andExpect(jsonPath("$[0].libro.id", is(1)))
-                .andExpect(jsonPath("$[0].usuario.id", is(1)))
+                .andExpect(jsonPath("$[0].libroId", is(1)))
+                .andExpect(jsonPath("$[0].usuarioId", is(1)))
                 .andExpect(jsonPath("$[1].id", is(2)))
-                .andExpect(jsonPath("$[1].libro.id", is(2)))
-                .andExpect(jsonPath("$[1].usuario.id", is(2)));
+                .andExpect(jsonPath("$[1].libroId", is(2)))
+                .andExpect(jsonPath("$[1].usuarioId", is(2)));
 
         verify(prestamoService).obtenerTodos();
     }
 
+    @Test
+    void obtenerTodos_withExpand_shouldEmbedBooksAndUsers() throws Exception {
+        // Arrange
+        List<Prestamo> prestamos = Arrays.asList(prestamo1, prestamo2);
+        when(prestamoService.obtenerTodos()).thenReturn(prestamos);
+        when(prestamoService.conDetalle(prestamos)).thenReturn(List.of(
+                new PrestamoDetalle(prestamo1, libro1, usuario1), new PrestamoDetalle(prestamo2, libro2, usuario2)));
+        when(prestamoService.revision()).thenReturn(7L);
+        when(libroService.revision()).thenReturn(3L);
+        when(usuarioService.revision()).thenReturn(5L);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/prestamos").param("expand", "true"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"r7.3.5\""))
+                .andExpect(jsonPath("$[0].libro.titulo", is("El Quijote")))
+                .andExpect(jsonPath("$[0].usuario.nombre", is("Juan Pérez")))
+                .andExpect(jsonPath("$[0].libroId").doesNotExist())
+                .andExpect(jsonPath("$[1].libro.id", is(2)));
+    }
+
+    @Test
+    void obtenerTodos_withExpandAndFields_shouldProjectNestedProperties() throws Exception {
+        // Arrange
+        List<Prestamo> prestamos = Arrays.asList(prestamo1, prestamo2);
+        when(prestamoService.obtenerTodos()).thenReturn(prestamos);
+        when(prestamoService.conDetalle(prestamos)).thenReturn(List.of(
+                new PrestamoDetalle(prestamo1, libro1, usuario1), new PrestamoDetalle(prestamo2, libro2, usuario2)));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/prestamos").param("expand", "true").param("fields", "id,libro.titulo,usuario"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[0].libro.titulo", is("El Quijote")))
+                .andExpect(jsonPath("$[0].libro.isbn").doesNotExist())
+                .andExpect(jsonPath("$[0].usuario.nombre", is("Juan Pérez")))
+                .andExpect(jsonPath("$[0].usuario.email", is("juan@example.com")))
+                .andExpect(jsonPath("$[0].fechaPrestamo").doesNotExist());
+    }
+
+    @Test
+    void obtenerPorId_withExpand_shouldUseVersionsOfLoanBookAndUser() throws Exception {
+        // Arrange
+        prestamo1.setVersion(4);
+        libro1.setVersion(2);
+        usuario1.setVersion(1);
+        when(prestamoService.buscarPorId(1L)).thenReturn(Optional.of(prestamo1));
+        when(prestamoService.conDetalle(prestamo1)).thenReturn(new PrestamoDetalle(prestamo1, libro1, usuario1));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/prestamos/1").param("expand", "true"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"4.2.1\""))
+                .andExpect(jsonPath("$.libro.estado", is("Prestado")));
+        mockMvc.perform(get("/api/prestamos/1").param("expand", "true").header("If-None-Match", "\"4.2.1\""))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void crear_withNestedBookAndUser_shouldAcceptPreviousFormat() throws Exception {
+        // Arrange
+        when(prestamoService.registrar(any(Prestamo.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act & Assert
+        mockMvc.perform(post("/api/prestamos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"libro\":{\"id\":1},\"usuario\":{\"id\":2},\"fechaDevolucion\":\"" + tomorrow + "\"}"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.libroId", is(1)))
+                .andExpect(jsonPath("$.usuarioId", is(2)));
+    }
+
+    @Test
+    void exportar_withNoLoans_shouldReturnEmptyNdjson() throws Exception {
+        // Arrange
+        when(prestamoService.obtenerPagina(null, ExportacionNdjson.TAMANIO_LOTE)).thenReturn(List.of());
+
+        // Act
+        MvcResult result = mockMvc.perform(get("/api/prestamos/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(""));
+        verify(prestamoService, never()).obtenerTodos();
+    }
+
     @Test
     void obtenerPrestamosActivos_shouldReturnActiveLoans() throws Exception {
         // Arrange
@@ -131,8 +228,8 @@ public class PrestamoControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$", hasSize(1)))
                 .andExpect(jsonPath("$[0].id", is(1)))
-                .andExpect(jsonPath("$[0].libro.id", is(1)))
-                .andExpect(jsonPath("$[0].usuario.id", is(1)));
+                .andExpect(jsonPath("$[0].libroId", is(1)))
+                .andExpect(jsonPath("$[0].usuarioId", is(1)));
 
         verify(prestamoService).buscarPrestamosActivos();
     }
@@ -149,18 +246,67 @@ public class PrestamoControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$", hasSize(1)))
                 .andExpect(jsonPath("$[0].id", is(2)))
-                .andExpect(jsonPath("$[0].libro.id", is(2)))
-                .andExpect(jsonPath("$[0].usuario.id", is(2)));
+                .andExpect(jsonPath("$[0].libroId", is(2)))
+                .andExpect(jsonPath("$[0].usuarioId", is(2)));
 
         verify(prestamoService).buscarPrestamosVencidos();
     }
 
+    @Test
+    void obtenerPrestamosVencidos_withMasDeDias_shouldReturnLoansOverdueLongerThanThat() throws Exception {
+        // Arrange
+        List<Prestamo> prestamosVencidos = Arrays.asList(prestamo2);
+        when(prestamoService.buscarPrestamosVencidos(7)).thenReturn(prestamosVencidos);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/prestamos/vencidos").param("masDeDias", "7"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(2)));
+
+        verify(prestamoService).buscarPrestamosVencidos(7);
+    }
+
+    @Test
+    void obtenerPrestamosVencidos_withNegativeMasDeDias_shouldReturnBadRequest() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/api/prestamos/vencidos").param("masDeDias", "-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void obtenerPrestamosPorVencimiento_shouldReturnLoansDueInRange() throws Exception {
+        // Arrange
+        List<Prestamo> prestamosEnRango = Arrays.asList(prestamo2, prestamo1);
+        when(prestamoService.buscarPorVencimientoEntre(yesterday, tomorrow)).thenReturn(prestamosEnRango);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/prestamos/vencimiento")
+                .param("desde", yesterday.toString())
+                .param("hasta", tomorrow.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(2)))
+                .andExpect(jsonPath("$[1].id", is(1)));
+
+        verify(prestamoService).buscarPorVencimientoEntre(yesterday, tomorrow);
+    }
+
+    @Test
+    void obtenerPrestamosPorVencimiento_withInvertedRange_shouldReturnBadRequest() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/api/prestamos/vencimiento")
+                .param("desde", tomorrow.toString())
+                .param("hasta", yesterday.toString()))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void obtenerPrestamosPorUsuario_withExistingUser_shouldReturnUserLoans() throws Exception {
         // Arrange
         List<Prestamo> prestamosUsuario1 = Arrays.asList(prestamo1);
-        when(usuarioService.buscarPorId(1L)).thenReturn(usuario1);
-        when(prestamoService.buscarPorUsuario(usuario1)).thenReturn(prestamosUsuario1);
+        when(usuarioService.existePorId(1L)).thenReturn(true);
+        when(prestamoService.buscarPorUsuarioId(1L)).thenReturn(prestamosUsuario1);
 
         // Act & Assert
         mockMvc.perform(get("/api/prestamos/usuario/1"))
@@ -168,32 +314,32 @@ public class PrestamoControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$", hasSize(1)))
                 .andExpect(jsonPath("$[0].id", is(1)))
-                .andExpect(jsonPath("$[0].libro.id", is(1)))
-                .andExpect(jsonPath("$[0].usuario.id", is(1)));
+                .andExpect(jsonPath("$[0].libroId", is(1)))
+                .andExpect(jsonPath("$[0].usuarioId", is(1)));
 
-        verify(usuarioService).buscarPorId(1L);
-        verify(prestamoService).buscarPorUsuario(usuario1);
+        verify(usuarioService).existePorId(1L);
+        verify(prestamoService).buscarPorUsuarioId(1L);
     }
 
     @Test
     void obtenerPrestamosPorUsuario_withNonExistingUser_shouldReturnNotFound() throws Exception {
         // Arrange
-        when(usuarioService.buscarPorId(999L)).thenThrow(new RuntimeException("Usuario no encontrado con ID: 999"));
+        when(usuarioService.existePorId(999L)).thenReturn(false);
 
         // Act & Assert
         mockMvc.perform(get("/api/prestamos/usuario/999"))
                 .andExpect(status().isNotFound());
 
-        verify(usuarioService).buscarPorId(999L);
-        verify(prestamoService, never()).buscarPorUsuario(any(Usuario.class));
+        verify(usuarioService).existePorId(999L);
+        verify(prestamoService, never()).buscarPorUsuarioId(999L);
     }
 
     @Test
     void obtenerPrestamosPorLibro_withExistingBook_shouldReturnBookLoans() throws Exception {
         // Arrange
         List<Prestamo> prestamosLibro1 = Arrays.asList(prestamo1);
-        when(libroService.buscarPorId(1L)).thenReturn(libro1);
-        when(prestamoService.buscarPorLibro(libro1)).thenReturn(prestamosLibro1);
+        when(libroService.existePorId(1L)).thenReturn(true);
+        when(prestamoService.buscarPorLibroId(1L)).thenReturn(prestamosLibro1);
 
         // Act & Assert
         mockMvc.perform(get("/api/prestamos/libro/1"))
@@ -201,33 +347,33 @@ public class PrestamoControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$", hasSize(1)))
                 .andExpect(jsonPath("$[0].id", is(1)))
-                .andExpect(jsonPath("$[0].libro.id", is(1)))
-                .andExpect(jsonPath("$[0].usuario.id", is(1)));
+                .andExpect(jsonPath("$[0].libroId", is(1)))
+                .andExpect(jsonPath("$[0].usuarioId", is(1)));
 
-        verify(libroService).buscarPorId(1L);
-        verify(prestamoService).buscarPorLibro(libro1);
+        verify(libroService).existePorId(1L);
+        verify(prestamoService).buscarPorLibroId(1L);
     }
 
     @Test
     void obtenerPrestamosPorLibro_withNonExistingBook_shouldReturnNotFound() throws Exception {
         // Arrange
-        when(libroService.buscarPorId(999L)).thenThrow(new RuntimeException("Libro no encontrado con ID: 999"));
+        when(libroService.existePorId(999L)).thenReturn(false);
 
         // Act & Assert
         mockMvc.perform(get("/api/prestamos/libro/999"))
                 .andExpect(status().isNotFound());
 
-        verify(libroService).buscarPorId(999L);
-        verify(prestamoService, never()).buscarPorLibro(any(Libro.class));
+        verify(libroService).existePorId(999L);
+        verify(prestamoService, never()).buscarPorLibroId(999L);
     }
 
     @Test
     void crear_shouldCreateAndReturnLoan() throws Exception {
         // Arrange
-        Prestamo nuevoPrestamo = new Prestamo(null, libro1, usuario1, today, tomorrow);
-        Prestamo prestamoGuardado = new Prestamo(3L, libro1, usuario1, today, tomorrow);
+        Prestamo nuevoPrestamo = new Prestamo(null, libro1.getId(), usuario1.getId(), today, tomorrow);
+        Prestamo prestamoGuardado = new Prestamo(3L, libro1.getId(), usuario1.getId(), today, tomorrow);
         
-        when(prestamoService.guardar(any(Prestamo.class))).thenReturn(prestamoGuardado);
+        when(prestamoService.registrar(any(Prestamo.class))).thenReturn(prestamoGuardado);
 
         // Act & Assert
         mockMvc.perform(post("/api/prestamos")
@@ -236,20 +382,76 @@ public class PrestamoControllerTest {
                 .andExpect(status().isCreated())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.id", is(3)))
-                .andExpect(jsonPath("$.libro.id", is(1)))
-                .andExpect(jsonPath("$.usuario.id", is(1)))
+                .andExpect(jsonPath("$.libroId", is(1)))
+                .andExpect(jsonPath("$.usuarioId", is(1)))
                 .andExpect(jsonPath("$.fechaPrestamo").exists())
                 .andExpect(jsonPath("$.fechaDevolucion").exists());
 
-        verify(prestamoService).guardar(any(Prestamo.class));
+        verify(prestamoService).registrar(any(Prestamo.class));
+    }
+
+    @Test
+    void crear_withUnavailableBook_shouldReturnConflict() throws Exception {
+        // Arrange
+        Prestamo nuevoPrestamo = new Prestamo(null, libro1.getId(), usuario1.getId(), today, tomorrow);
+        when(prestamoService.registrar(any(Prestamo.class)))
+                .thenThrow(new LibroNoDisponibleException("El libro no está disponible: 1"));
+
+        // Act & Assert
+        mockMvc.perform(post("/api/prestamos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(nuevoPrestamo)))
+                .andExpect(status().isConflict());
+
+        verify(prestamoService, never()).guardar(any(Prestamo.class));
+    }
+
+    @Test
+    void crear_withMissingBook_shouldReturnNotFound() throws Exception {
+        // Arrange
+        Prestamo nuevoPrestamo = new Prestamo(null, 999L, usuario1.getId(), today, tomorrow);
+        when(prestamoService.registrar(any(Prestamo.class)))
+                .thenThrow(new RuntimeException("Libro no encontrado con ID: 999"));
+
+        // Act & Assert
+        mockMvc.perform(post("/api/prestamos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(nuevoPrestamo)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void guardarEnLote_withUnavailableBook_shouldRejectOnlyThatLoan() throws Exception {
+        // Arrange
+        Prestamo disponible = new Prestamo(null, libro1.getId(), usuario1.getId(), today, tomorrow);
+        Prestamo prestado = new Prestamo(null, libro2.getId(), usuario1.getId(), today, tomorrow);
+        when(prestamoService.registrarTodos(anyList())).thenAnswer(invocation -> {
+            List<Prestamo> lote = invocation.getArgument(0);
+            lote.get(0).setId(3L);
+            return List.of(BulkWriteResult.saved(lote.get(0)),
+                    BulkWriteResult.rejected(lote.get(1), new LibroNoDisponibleException("El libro no está disponible: 2")));
+        });
+
+        // Act & Assert
+        mockMvc.perform(post("/api/prestamos/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(disponible, prestado))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].estado", is(201)))
+                .andExpect(jsonPath("$[0].id", is(3)))
+                .andExpect(jsonPath("$[1].estado", is(409)))
+                .andExpect(jsonPath("$[1].id").doesNotExist());
+
+        verify(prestamoService, never()).guardarTodos(anyList());
     }
 
     @Test
     void actualizar_withExistingId_shouldUpdateAndReturnLoan() throws Exception {
         // Arrange
         LocalDate newFechaDevolucion = today.plusDays(7);
-        Prestamo prestamoActualizado = new Prestamo(null, libro1, usuario1, yesterday, newFechaDevolucion);
-        Prestamo prestamoGuardado = new Prestamo(1L, libro1, usuario1, yesterday, newFechaDevolucion);
+        Prestamo prestamoActualizado = new Prestamo(null, libro1.getId(), usuario1.getId(), yesterday, newFechaDevolucion);
+        Prestamo prestamoGuardado = new Prestamo(1L, libro1.getId(), usuario1.getId(), yesterday, newFechaDevolucion);
         
         when(prestamoService.buscarYActualizar(eq(1L), any(Prestamo.class))).thenReturn(prestamoGuardado);
 
@@ -260,8 +462,8 @@ public class PrestamoControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.id", is(1)))
-                .andExpect(jsonPath("$.libro.id", is(1)))
-                .andExpect(jsonPath("$.usuario.id", is(1)))
+                .andExpect(jsonPath("$.libroId", is(1)))
+                .andExpect(jsonPath("$.usuarioId", is(1)))
                 .andExpect(jsonPath("$.fechaPrestamo").exists())
                 .andExpect(jsonPath("$.fechaDevolucion").exists());
 
@@ -271,7 +473,7 @@ public class PrestamoControllerTest {
     @Test
     void actualizar_withNonExistingId_shouldReturnNotFound() throws Exception {
         // Arrange
-        Prestamo prestamoActualizado = new Prestamo(null, libro1, usuario1, yesterday, tomorrow);
+        Prestamo prestamoActualizado = new Prestamo(null, libro1.getId(), usuario1.getId(), yesterday, tomorrow);
         
         when(prestamoService.buscarYActualizar(eq(999L), any(Prestamo.class)))
             .thenThrow(new RuntimeException("Prestamo no encontrado con ID: 999"));
@@ -285,6 +487,21 @@ public class PrestamoControllerTest {
         verify(prestamoService).buscarYActualizar(eq(999L), any(Prestamo.class));
     }
 
+    @Test
+    void actualizar_changingBook_shouldReturnBadRequest() throws Exception {
+        // Arrange
+        Prestamo prestamoActualizado = new Prestamo(null, libro2.getId(), usuario1.getId(), yesterday, tomorrow);
+
+        when(prestamoService.buscarYActualizar(eq(1L), any(Prestamo.class)))
+            .thenThrow(new IllegalArgumentException("El libro y la fecha de entrega se cambian prestando o devolviendo el préstamo: 1"));
+
+        // Act & Assert
+        mockMvc.perform(put("/api/prestamos/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(prestamoActualizado)))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void eliminar_withExistingId_shouldReturnNoContent() throws Exception {
         // Arrange
@@ -308,4 +525,66 @@ public class PrestamoControllerTest {
 
         verify(prestamoService).eliminar(999L);
     }
-}
\ No newline at end of file
+
+    @Test
+    void prestar_withAvailableBook_shouldReturnCreatedLoan() throws Exception {
+        // Arrange
+        when(prestamoService.prestar(1L, 1L, tomorrow)).thenReturn(prestamo1);
+
+        // Act & Assert
+        mockMvc.perform(post("/api/prestamos/prestar")
+                .param("libroId", "1")
+                .param("usuarioId", "1")
+                .param("fechaDevolucion", tomorrow.toString()))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id", is(1)))
+                .andExpect(jsonPath("$.libroId", is(1)))
+                .andExpect(jsonPath("$.libro").doesNotExist());
+    }
+
+    @Test
+    void prestar_withUnavailableBook_shouldReturnConflict() throws Exception {
+        // Arrange
+        when(prestamoService.prestar(1L, 1L, tomorrow))
+                .thenThrow(new LibroNoDisponibleException("El libro no está disponible: 1"));
+
+        // Act & Assert
+        mockMvc.perform(post("/api/prestamos/prestar")
+                .param("libroId", "1")
+                .param("usuarioId", "1")
+                .param("fechaDevolucion", tomorrow.toString()))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void prestar_withPastDueDate_shouldReturnBadRequest() throws Exception {
+        // Act & Assert
+        mockMvc.perform(post("/api/prestamos/prestar")
+                .param("libroId", "1")
+                .param("usuarioId", "1")
+                .param("fechaDevolucion", yesterday.toString()))
+                .andExpect(status().isBadRequest());
+
+        verify(prestamoService, never()).prestar(any(), any(), any());
+    }
+
+    @Test
+    void devolver_withMissingLoan_shouldReturnNotFound() throws Exception {
+        // Arrange
+        when(prestamoService.devolver(1L)).thenThrow(new RuntimeException("Prestamo no encontrado con ID: 1"));
+
+        // Act & Assert
+        mockMvc.perform(post("/api/prestamos/1/devolver"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void devolver_withReturnedLoan_shouldReturnConflict() throws Exception {
+        // Arrange
+        when(prestamoService.devolver(1L)).thenThrow(new PrestamoDevueltoException("El préstamo ya fue devuelto: 1"));
+
+        // Act & Assert
+        mockMvc.perform(post("/api/prestamos/1/devolver"))
+                .andExpect(status().isConflict());
+    }
+}
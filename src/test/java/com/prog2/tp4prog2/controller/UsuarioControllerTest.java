@@ -2,21 +2,26 @@ package com.prog2.tp4prog2.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.DuplicateKeyException;
 import com.prog2.tp4prog2.service.UsuarioService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -27,7 +32,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @Import(UsuarioControllerTest.TestConfig.class)
 public class UsuarioControllerTest {
 
-    @Configuration
+    @TestConfiguration
     static class TestConfig {
         @Bean
         public UsuarioService usuarioService() {
@@ -83,7 +88,7 @@ public class UsuarioControllerTest {
     @Test
     void obtenerPorId_withExistingId_shouldReturnUser() throws Exception {
         // Arrange
-        when(usuarioService.buscarPorId(1L)).thenReturn(usuario1);
+        when(usuarioService.buscarPorId(1L)).thenReturn(Optional.of(usuario1));
 
         // Act & Assert
         mockMvc.perform(get("/api/usuarios/1"))
@@ -97,10 +102,59 @@ public class UsuarioControllerTest {
         verify(usuarioService).buscarPorId(1L);
     }
 
+    @Test
+    void obtenerPorId_withJsonCache_shouldReuseBytesUntilVersionChanges() throws Exception {
+        // Arrange
+        UsuarioController conCache = new UsuarioController(usuarioService, objectMapper, 100);
+        Usuario modificado = new Usuario(1L, "Juan Pérez", "juan.perez@example.com", "Activo", 1);
+        // The first miss reads the user again before caching it
+        when(usuarioService.buscarPorId(1L))
+            .thenReturn(Optional.of(usuario1), Optional.of(usuario1), Optional.of(usuario1), Optional.of(modificado));
+
+        // Act
+        byte[] primero = (byte[]) conCache.obtenerPorId(1L, null, null).getBody();
+        byte[] segundo = (byte[]) conCache.obtenerPorId(1L, null, null).getBody();
+        byte[] tercero = (byte[]) conCache.obtenerPorId(1L, null, null).getBody();
+
+        // Assert
+        assertSame(primero, segundo);
+        assertEquals(objectMapper.writeValueAsString(usuario1), new String(primero, StandardCharsets.UTF_8));
+        assertEquals(modificado, objectMapper.readValue(tercero, Usuario.class));
+        assertEquals(304, conCache.obtenerPorId(1L, null, "\"1\"").getStatusCode().value());
+    }
+
+    @Test
+    void obtenerPorId_withJsonCacheAndFields_shouldNotUseCachedBody() {
+        // Arrange
+        UsuarioController conCache = new UsuarioController(usuarioService, objectMapper, 100);
+        when(usuarioService.buscarPorId(1L)).thenReturn(Optional.of(usuario1));
+        conCache.obtenerPorId(1L, null, null);
+
+        // Act
+        Object cuerpo = conCache.obtenerPorId(1L, "nombre", null).getBody();
+
+        // Assert: the entity is returned so the projection can serialize only the requested fields
+        assertSame(usuario1, cuerpo);
+    }
+
+    @Test
+    void obtenerPorId_withFields_shouldOnlySerializeRequestedProperties() throws Exception {
+        // Arrange
+        when(usuarioService.buscarPorId(1L)).thenReturn(Optional.of(usuario1));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/usuarios/1").param("fields", "nombre, email"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.nombre", is("Juan Pérez")))
+                .andExpect(jsonPath("$.email", is("juan@example.com")))
+                .andExpect(jsonPath("$.id").doesNotExist())
+                .andExpect(jsonPath("$.estado").doesNotExist());
+    }
+
     @Test
     void obtenerPorId_withNonExistingId_shouldReturnNotFound() throws Exception {
         // Arrange
-        when(usuarioService.buscarPorId(999L)).thenThrow(new RuntimeException("Usuario no encontrado con ID: 999"));
+        when(usuarioService.buscarPorId(999L)).thenReturn(Optional.empty());
 
         // Act & Assert
         mockMvc.perform(get("/api/usuarios/999"))
@@ -112,7 +166,7 @@ public class UsuarioControllerTest {
     @Test
     void obtenerPorEmail_withExistingEmail_shouldReturnUser() throws Exception {
         // Arrange
-        when(usuarioService.buscarPorEmail("juan@example.com")).thenReturn(usuario1);
+        when(usuarioService.buscarPorEmail("juan@example.com")).thenReturn(Optional.of(usuario1));
 
         // Act & Assert
         mockMvc.perform(get("/api/usuarios/email/juan@example.com"))
@@ -129,7 +183,7 @@ public class UsuarioControllerTest {
     @Test
     void obtenerPorEmail_withNonExistingEmail_shouldReturnNotFound() throws Exception {
         // Arrange
-        when(usuarioService.buscarPorEmail("noexiste@example.com")).thenThrow(new RuntimeException("Usuario no encontrado con email: noexiste@example.com"));
+        when(usuarioService.buscarPorEmail("noexiste@example.com")).thenReturn(Optional.empty());
 
         // Act & Assert
         mockMvc.perform(get("/api/usuarios/email/noexiste@example.com"))
@@ -138,6 +192,28 @@ public class UsuarioControllerTest {
         verify(usuarioService).buscarPorEmail("noexiste@example.com");
     }
 
+    @Test
+    void buscar_shouldReturnUsersMatchingName() throws Exception {
+        // Arrange
+        when(usuarioService.buscarPorNombre("garci", 20)).thenReturn(Arrays.asList(usuario2));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/usuarios/search").param("q", "garci"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].nombre", is("María García")));
+
+        verify(usuarioService).buscarPorNombre("garci", 20);
+    }
+
+    @Test
+    void buscar_withOutOfRangeLimit_shouldReturnBadRequest() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/api/usuarios/search").param("q", "juan").param("limit", "101"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void crear_shouldCreateAndReturnUser() throws Exception {
         // Arrange
@@ -160,6 +236,23 @@ public class UsuarioControllerTest {
         verify(usuarioService).guardar(any(Usuario.class));
     }
 
+    @Test
+    void crear_withDuplicateEmail_shouldReturnConflict() throws Exception {
+        // Arrange
+        Usuario nuevoUsuario = new Usuario(null, "Otro Juan", "JUAN@example.com", "Activo");
+
+        when(usuarioService.guardar(any(Usuario.class)))
+            .thenThrow(new DuplicateKeyException("Ya existe un registro con email: juan@example.com"));
+
+        // Act & Assert
+        mockMvc.perform(post("/api/usuarios")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(nuevoUsuario)))
+                .andExpect(status().isConflict());
+
+        verify(usuarioService).guardar(any(Usuario.class));
+    }
+
     @Test
     void actualizar_withExistingId_shouldUpdateAndReturnUser() throws Exception {
         // Arrange
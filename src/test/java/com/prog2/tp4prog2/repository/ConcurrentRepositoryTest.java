@@ -0,0 +1,230 @@
+package com.prog2.tp4prog2.repository;
+
+import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.model.Prestamo;
+import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.impl.LibroRepositoryImpl;
+import com.prog2.tp4prog2.repository.impl.PrestamoRepositoryImpl;
+import com.prog2.tp4prog2.repository.impl.UsuarioRepositoryImpl;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentRepositoryTest {
+
+    private static final int WRITERS = 64;
+    private static final int WRITES_PER_THREAD = 500;
+
+    @Test
+    void librosSave_withConcurrentWriters_shouldNotLoseWritesOrDuplicateIds() throws Exception {
+        // Arrange
+        LibroRepository repository = new LibroRepositoryImpl();
+
+        // Act
+        List<Long> ids = runConcurrently(repository::findAll, (thread, i) -> repository.save(
+            new Libro(null, isbn(thread, i), "Título " + i, "Autor " + thread, "Disponible")).getId());
+
+        // Assert
+        assertNoLostWritesOrDuplicates(ids, repository.findAll().size());
+    }
+
+    @Test
+    void usuariosSave_withConcurrentWriters_shouldNotLoseWritesOrDuplicateIds() throws Exception {
+        // Arrange
+        UsuarioRepository repository = new UsuarioRepositoryImpl();
+
+        // Act
+        List<Long> ids = runConcurrently(repository::findAll, (thread, i) -> repository.save(
+            new Usuario(null, "Usuario " + i, "u" + thread + "-" + i + "@example.com", "Activo")).getId());
+
+        // Assert
+        assertNoLostWritesOrDuplicates(ids, repository.findAll().size());
+    }
+
+    @Test
+    void prestamosSave_withConcurrentWriters_shouldNotLoseWritesOrDuplicateIds() throws Exception {
+        // Arrange
+        PrestamoRepository repository = new PrestamoRepositoryImpl();
+        Libro libro = new Libro(1L, "1234567890", "El Quijote", "Miguel de Cervantes", "Prestado");
+        Usuario usuario = new Usuario(1L, "Juan Pérez", "juan@example.com", "Activo");
+        LocalDate today = LocalDate.now();
+
+        // Act
+        List<Long> ids = runConcurrently(repository::findAll, (thread, i) -> repository.save(
+            new Prestamo(null, libro.getId(), usuario.getId(), today, today.plusDays(i % 30))).getId());
+
+        // Assert
+        assertNoLostWritesOrDuplicates(ids, repository.findAll().size());
+    }
+
+    @Test
+    void saveAndDelete_withConcurrentWriters_shouldKeepOnlySurvivingEntities() throws Exception {
+        // Arrange
+        LibroRepository repository = new LibroRepositoryImpl();
+
+        // Act: every thread deletes every other book it created
+        List<Long> ids = runConcurrently(repository::findAll, (thread, i) -> {
+            Long id = repository.save(new Libro(null, isbn(thread, i), "Título", "Autor", "Disponible")).getId();
+            if (i % 2 == 0) {
+                repository.deleteById(id);
+            }
+            return id;
+        });
+
+        // Assert
+        assertEquals(WRITERS * WRITES_PER_THREAD, new HashSet<>(ids).size());
+        assertEquals(WRITERS * WRITES_PER_THREAD / 2, repository.findAll().size());
+    }
+
+    @Test
+    void prestamosSaveAndDelete_withSameDueDate_shouldKeepEverySurvivorInDateIndex() throws Exception {
+        // Arrange: every loan shares one key of the sorted due-date index
+        PrestamoRepository repository = new PrestamoRepositoryImpl();
+        LocalDate ayer = LocalDate.now().minusDays(1);
+
+        // Act: adds and removes of different IDs race on the same bucket
+        runConcurrently(repository::findOverduePrestamos, (thread, i) -> {
+            Long id = repository.save(new Prestamo(null, (long) thread, (long) i, ayer.minusDays(14), ayer)).getId();
+            if (i % 2 == 0) {
+                repository.deleteById(id);
+            }
+            return id;
+        });
+
+        // Assert
+        int sobrevivientes = WRITERS * WRITES_PER_THREAD / 2;
+        assertEquals(sobrevivientes, repository.findByFechaDevolucion(ayer).size());
+        assertEquals(sobrevivientes, repository.findOverduePrestamos().size());
+    }
+
+    @Test
+    void save_withExplicitId_shouldNotBeReassignedByLaterInserts() {
+        // Arrange
+        LibroRepository repository = new LibroRepositoryImpl();
+        repository.save(new Libro(10L, "1111111111", "Existente", "Autor", "Disponible"));
+
+        // Act
+        Libro nuevo = repository.save(new Libro(null, "2222222222", "Nuevo", "Autor", "Disponible"));
+
+        // Assert
+        assertTrue(nuevo.getId() > 10L);
+        assertEquals("Existente", repository.findById(10L).get().getTitulo());
+    }
+
+    @Test
+    void librosSave_withConcurrentDuplicateIsbn_shouldAcceptExactlyOne() throws Exception {
+        // Arrange
+        LibroRepository repository = new LibroRepositoryImpl();
+
+        // Act
+        List<Long> ids = runConcurrently(repository::findAll, (thread, i) -> {
+            try {
+                return repository.save(new Libro(null, "978-0-306-40615-" + (i % 10), "Título", "Autor", "Disponible")).getId();
+            } catch (DuplicateKeyException e) {
+                return null;
+            }
+        });
+
+        // Assert: the ten distinct ISBNs were stored exactly once each
+        assertEquals(10, ids.stream().filter(id -> id != null).count());
+        assertEquals(10, repository.findAll().size());
+    }
+
+    @Test
+    void replaceIfVersion_withConcurrentWriters_shouldNotLoseUpdates() throws Exception {
+        // Arrange: every writer increments a counter stored in the title
+        LibroRepository repository = new LibroRepositoryImpl();
+        Long id = repository.save(new Libro(null, "1234567890", "0", "Autor", "Disponible")).getId();
+
+        // Act: read, modify and retry on conflict, as a client honouring ETags would
+        runConcurrently(repository::findAll, (thread, i) -> {
+            while (true) {
+                Libro leido = repository.findById(id).get();
+                long version = leido.getVersion();
+                int contador = Integer.parseInt(leido.getTitulo());
+                Libro nuevo = new Libro(id, "1234567890", Integer.toString(contador + 1), "Autor", "Disponible");
+                if (repository.replaceIfVersion(nuevo, version).isPresent()) {
+                    return id;
+                }
+            }
+        });
+
+        // Assert
+        Libro libro = repository.findById(id).get();
+        assertEquals(WRITERS * WRITES_PER_THREAD, Integer.parseInt(libro.getTitulo()));
+        assertEquals(WRITERS * WRITES_PER_THREAD + 1, libro.getVersion());
+    }
+
+    private static String isbn(int thread, int iteration) {
+        return Long.toString(thread * 1_000_000L + iteration);
+    }
+
+    private interface Writer {
+        Long write(int thread, int iteration);
+    }
+
+    private interface Reader {
+        List<?> read();
+    }
+
+    /**
+     * Runs {@link #WRITERS} writer threads released at the same time while a reader
+     * thread keeps iterating over the repository, and returns every assigned ID.
+     */
+    private List<Long> runConcurrently(Reader reader, Writer writer) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean done = new AtomicBoolean(false);
+        try {
+            Future<?> readerFuture = executor.submit(() -> {
+                while (!done.get()) {
+                    reader.read();
+                }
+                return null;
+            });
+            List<Future<List<Long>>> futures = new ArrayList<>();
+            for (int t = 0; t < WRITERS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    List<Long> ids = new ArrayList<>(WRITES_PER_THREAD);
+                    for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                        ids.add(writer.write(thread, i));
+                    }
+                    return ids;
+                }));
+            }
+            start.countDown();
+
+            List<Long> ids = new ArrayList<>();
+            for (Future<List<Long>> future : futures) {
+                ids.addAll(future.get(30, TimeUnit.SECONDS));
+            }
+            done.set(true);
+            readerFuture.get(30, TimeUnit.SECONDS);
+            return ids;
+        } finally {
+            done.set(true);
+            executor.shutdownNow();
+        }
+    }
+
+    private void assertNoLostWritesOrDuplicates(List<Long> ids, int storedCount) {
+        Set<Long> distinct = new HashSet<>(ids);
+        assertEquals(WRITERS * WRITES_PER_THREAD, ids.size());
+        assertEquals(ids.size(), distinct.size(), "duplicate IDs were assigned");
+        assertEquals(ids.size(), storedCount, "writes were lost");
+    }
+}
@@ -2,9 +2,12 @@ package com.prog2.tp4prog2.repository;
 
 import com.prog2.tp4prog2.model.Libro;
 import com.prog2.tp4prog2.repository.impl.LibroRepositoryImpl;
+import com.prog2.tp4prog2.repository.persistence.RepositoryPersistence;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -167,4 +170,267 @@ public class LibroRepositoryTest {
         // Assert
         assertFalse(result.isPresent());
     }
-}
\ No newline at end of file
+
+    @Test
+    void findByIsbn_withHyphenatedOrIsbn13Form_shouldReturnBook() {
+        // Arrange
+        Libro libro = libroRepository.save(new Libro(null, "0-306-40615-2", "Libro ISBN-10", "Autor", "Disponible"));
+
+        // Act
+        Optional<Libro> byIsbn10 = libroRepository.findByIsbn("0306406152");
+        Optional<Libro> byIsbn13 = libroRepository.findByIsbn("978-0-306-40615-7");
+
+        // Assert
+        assertTrue(byIsbn10.isPresent());
+        assertEquals(libro, byIsbn10.get());
+        assertTrue(byIsbn13.isPresent());
+        assertEquals(libro, byIsbn13.get());
+    }
+
+    @Test
+    void save_withDuplicateIsbn_shouldThrowAndKeepExistingBook() {
+        // Arrange
+        Libro duplicado = new Libro(null, "978-0-306-40615-7", "Duplicado", "Autor", "Disponible");
+        libroRepository.save(new Libro(null, "0306406152", "Original", "Autor", "Disponible"));
+
+        // Act & Assert
+        assertThrows(DuplicateKeyException.class, () -> libroRepository.save(duplicado));
+        assertEquals("Original", libroRepository.findByIsbn("0306406152").get().getTitulo());
+        assertEquals(3, libroRepository.findAll().size());
+    }
+
+    @Test
+    void save_withChangedIsbn_shouldUpdateIndex() {
+        // Arrange
+        Libro actualizado = new Libro(libro1.getId(), "5555555555", "El Quijote", "Miguel de Cervantes", "Disponible");
+
+        // Act
+        libroRepository.save(actualizado);
+
+        // Assert
+        assertFalse(libroRepository.findByIsbn("1234567890").isPresent());
+        assertEquals(actualizado, libroRepository.findByIsbn("5555555555").get());
+        // The old ISBN is free again
+        assertDoesNotThrow(() -> libroRepository.save(new Libro(null, "1234567890", "Otro", "Autor", "Disponible")));
+    }
+
+    @Test
+    void deleteById_shouldReleaseIsbn() {
+        // Act
+        libroRepository.deleteById(libro1.getId());
+
+        // Assert
+        assertFalse(libroRepository.findByIsbn("1234567890").isPresent());
+        assertDoesNotThrow(() -> libroRepository.save(new Libro(null, "1234567890", "Reedición", "Autor", "Disponible")));
+    }
+
+    @Test
+    void search_shouldIgnoreCaseAndAccents() {
+        // Act
+        List<Libro> result = libroRepository.search("CIEN ANOS", 10);
+
+        // Assert
+        assertEquals(List.of(libro2), result);
+    }
+
+    @Test
+    void search_shouldRankBooksMatchingMoreTermsAndTitlesFirst() {
+        // Arrange
+        Libro porAutor = libroRepository.save(new Libro(null, "1111111111", "Novelas ejemplares", "Miguel de Cervantes", "Disponible"));
+        Libro porTitulo = libroRepository.save(new Libro(null, "2222222222", "Cervantes y su tiempo", "Jean Canavaggio", "Disponible"));
+
+        // Act
+        List<Libro> result = libroRepository.search("quijote cervantes", 10);
+
+        // Assert
+        assertEquals(List.of(libro1, porTitulo, porAutor), result);
+    }
+
+    @Test
+    void search_shouldRespectLimitAndIgnoreStopWords() {
+        // Act
+        List<Libro> soloArticulos = libroRepository.search("de la", 10);
+        List<Libro> limitado = libroRepository.search("quijote soledad", 1);
+
+        // Assert
+        assertTrue(soloArticulos.isEmpty());
+        assertEquals(1, limitado.size());
+    }
+
+    @Test
+    void search_afterUpdateAndDelete_shouldReflectCurrentData() {
+        // Arrange
+        libroRepository.save(new Libro(libro1.getId(), "1234567890", "La Galatea", "Miguel de Cervantes", "Disponible"));
+        libroRepository.deleteById(libro2.getId());
+
+        // Act & Assert
+        assertTrue(libroRepository.search("quijote", 10).isEmpty());
+        assertTrue(libroRepository.search("soledad", 10).isEmpty());
+        assertEquals(1, libroRepository.search("galatea", 10).size());
+    }
+
+    @Test
+    void findPage_shouldWalkAllBooksInIdOrderAfterCursor() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            libroRepository.save(new Libro(null, "97800000000" + i, "Libro " + i, "Autor", "Disponible"));
+        }
+        libroRepository.deleteById(4L);
+
+        // Act
+        List<Libro> primera = libroRepository.findPage(null, 3);
+        List<Libro> segunda = libroRepository.findPage(primera.get(2).getId(), 3);
+        List<Libro> ultima = libroRepository.findPage(segunda.get(2).getId(), 3);
+
+        // Assert
+        assertEquals(List.of(1L, 2L, 3L), primera.stream().map(Libro::getId).toList());
+        assertEquals(List.of(5L, 6L, 7L), segunda.stream().map(Libro::getId).toList());
+        assertTrue(ultima.isEmpty());
+    }
+
+    @Test
+    void saveAll_withDuplicateIsbn_shouldRejectOnlyThatItem() {
+        // Arrange
+        Libro nuevo = new Libro(null, "1111111111", "Rayuela", "Julio Cortázar", "Disponible");
+        Libro repetido = new Libro(null, "1234567890", "Otro", "Autor", "Disponible");
+        libro1.setEstado("Prestado");
+
+        // Act
+        List<BulkWriteResult<Libro>> result = libroRepository.saveAll(Arrays.asList(nuevo, repetido, null, libro1));
+
+        // Assert: results keep the input order
+        assertEquals(4, result.size());
+        assertTrue(result.get(0).isSaved());
+        assertNotNull(result.get(0).entidad().getId());
+        assertInstanceOf(DuplicateKeyException.class, result.get(1).error());
+        assertInstanceOf(IllegalArgumentException.class, result.get(2).error());
+        assertTrue(result.get(3).isSaved());
+        assertEquals(3, libroRepository.findAll().size());
+        assertEquals("Rayuela", libroRepository.findByIsbn("1111111111").get().getTitulo());
+        assertEquals("Prestado", libroRepository.findById(libro1.getId()).get().getEstado());
+    }
+
+    @Test
+    void deleteAllById_shouldRemoveExistingBooksAndReturnTheirIds() {
+        // Act
+        List<Long> result = libroRepository.deleteAllById(Arrays.asList(libro1.getId(), 99L, null));
+
+        // Assert
+        assertEquals(List.of(libro1.getId()), result);
+        assertEquals(1, libroRepository.findAll().size());
+        assertFalse(libroRepository.findByIsbn("1234567890").isPresent());
+    }
+
+    @Test
+    void compareAndSetEstado_withExpectedEstado_shouldReplaceBook() {
+        // Act
+        Optional<Libro> result = libroRepository.compareAndSetEstado(libro1.getId(), "Disponible", "Prestado");
+
+        // Assert
+        assertTrue(result.isPresent());
+        assertEquals("Prestado", libroRepository.findById(libro1.getId()).get().getEstado());
+        assertEquals("Disponible", libro1.getEstado());
+        assertEquals(libro1.getId(), libroRepository.findByIsbn("1234567890").get().getId());
+    }
+
+    @Test
+    void compareAndSetEstado_withOtherEstado_shouldNotChangeBook() {
+        // Arrange
+        libroRepository.compareAndSetEstado(libro1.getId(), "Disponible", "Prestado");
+
+        // Act
+        Optional<Libro> result = libroRepository.compareAndSetEstado(libro1.getId(), "Disponible", "Prestado");
+
+        // Assert
+        assertFalse(result.isPresent());
+        assertFalse(libroRepository.compareAndSetEstado(99L, "Disponible", "Prestado").isPresent());
+    }
+
+    @Test
+    void save_shouldIncrementVersionOnEveryWrite() {
+        // Arrange
+        long inicial = libro1.getVersion();
+
+        // Act
+        libro1.setTitulo("Don Quijote");
+        libroRepository.save(libro1);
+
+        // Assert
+        assertEquals(1, inicial);
+        assertEquals(2, libroRepository.findById(libro1.getId()).get().getVersion());
+    }
+
+    @Test
+    void replaceIfVersion_withStaleVersion_shouldKeepStoredBook() {
+        // Arrange
+        Libro primera = new Libro(libro1.getId(), "1234567890", "Primera edición", "Autor", "Disponible");
+        Libro segunda = new Libro(libro1.getId(), "1234567890", "Segunda edición", "Autor", "Disponible");
+
+        // Act
+        Optional<Libro> aceptada = libroRepository.replaceIfVersion(primera, 1);
+        Optional<Libro> rechazada = libroRepository.replaceIfVersion(segunda, 1);
+
+        // Assert
+        assertTrue(aceptada.isPresent());
+        assertEquals(2, aceptada.get().getVersion());
+        assertFalse(rechazada.isPresent());
+        assertEquals("Primera edición", libroRepository.findById(libro1.getId()).get().getTitulo());
+        assertFalse(libroRepository.replaceIfVersion(new Libro(99L, "9", "T", "A", "Disponible"), 0).isPresent());
+    }
+
+    @Test
+    void replaceIfPresent_afterDelete_shouldNotRecreateBook() {
+        // Arrange
+        Libro actualizado = new Libro(libro1.getId(), "1234567890", "Nueva edición", "Autor", "Disponible");
+        libroRepository.deleteById(libro1.getId());
+
+        // Act
+        Optional<Libro> result = libroRepository.replaceIfPresent(actualizado);
+
+        // Assert
+        assertFalse(result.isPresent());
+        assertFalse(libroRepository.findById(libro1.getId()).isPresent());
+        assertTrue(libroRepository.replaceIfPresent(
+            new Libro(libro2.getId(), "0987654321", "Otra edición", "Autor", "Disponible")).isPresent());
+    }
+
+    @Test
+    void revision_shouldChangeOnlyWhenCollectionChanges() {
+        // Arrange
+        long inicial = libroRepository.revision();
+
+        // Act
+        libroRepository.findAll();
+        long despuesDeLeer = libroRepository.revision();
+        assertThrows(DuplicateKeyException.class,
+                () -> libroRepository.save(new Libro(null, "1234567890", "Copia", "Autor", "Disponible")));
+        long despuesDeRechazar = libroRepository.revision();
+        libroRepository.deleteById(libro1.getId());
+        long despuesDeEliminar = libroRepository.revision();
+
+        // Assert
+        assertEquals(inicial, despuesDeLeer);
+        assertEquals(inicial, despuesDeRechazar);
+        assertNotEquals(inicial, despuesDeEliminar);
+    }
+
+    @Test
+    void metricas_shouldCountScansAndIndexLookups() {
+        // Arrange
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LibroRepository repository = new LibroRepositoryImpl(RepositoryPersistence.disabled(), registry);
+        repository.save(new Libro(null, "1234567890", "El Quijote", "Miguel de Cervantes", "Disponible"));
+        repository.save(new Libro(null, "0987654321", "Cien años de soledad", "Gabriel García Márquez", "Disponible"));
+
+        // Act
+        repository.findByTitulo("Quijote");
+        repository.findByAutor("Gabriel");
+        repository.findByIsbn("1234567890");
+
+        // Assert
+        assertEquals(2.0, registry.get("tp4.repository.entities").tag("repository", "libros").gauge().value());
+        assertEquals(2, registry.get("tp4.repository.scan.rows").summary().count());
+        assertEquals(4.0, registry.get("tp4.repository.scan.rows").summary().totalAmount());
+        assertEquals(1.0, registry.get("tp4.repository.index.lookups").tag("index", "isbn").counter().count());
+    }
+}
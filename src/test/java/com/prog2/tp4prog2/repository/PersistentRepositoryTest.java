@@ -0,0 +1,413 @@
+package com.prog2.tp4prog2.repository;
+
+import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.model.Prestamo;
+import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.impl.LibroRepositoryImpl;
+import com.prog2.tp4prog2.repository.impl.PrestamoRepositoryImpl;
+import com.prog2.tp4prog2.repository.impl.UsuarioRepositoryImpl;
+import com.prog2.tp4prog2.repository.persistence.FsyncPolicy;
+import com.prog2.tp4prog2.repository.persistence.PrestamoArchive;
+import com.prog2.tp4prog2.repository.persistence.RepositoryPersistence;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentRepositoryTest {
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void libros_afterRestart_shouldRestoreEntitiesAndIndexes() throws IOException {
+        // Arrange
+        try (RepositoryPersistence persistence = open(FsyncPolicy.GROUP)) {
+            LibroRepository repository = new LibroRepositoryImpl(persistence);
+            repository.save(new Libro(null, "978-0-306-40615-7", "El Quijote", "Miguel de Cervantes", "Disponible"));
+            Libro modificado = repository.save(new Libro(null, "1234567890", "Rayuela", "Julio Cortázar", "Disponible"));
+            modificado.setEstado("Prestado");
+            repository.save(modificado);
+        }
+
+        // Act
+        try (RepositoryPersistence persistence = open(FsyncPolicy.GROUP)) {
+            LibroRepository repository = new LibroRepositoryImpl(persistence);
+
+            // Assert
+            assertEquals(2, repository.findAll().size());
+            assertEquals("El Quijote", repository.findByIsbn("9780306406157").get().getTitulo());
+            assertEquals("Prestado", repository.findById(2L).get().getEstado());
+            assertEquals(1, repository.search("rayuela", 10).size());
+            assertThrows(DuplicateKeyException.class, () ->
+                repository.save(new Libro(null, "1234567890", "Otro", "Autor", "Disponible")));
+        }
+    }
+
+    @Test
+    void usuarios_afterRestart_shouldReplayDeletesAndContinueSequence() throws IOException {
+        // Arrange
+        try (RepositoryPersistence persistence = open(FsyncPolicy.ALWAYS)) {
+            UsuarioRepository repository = new UsuarioRepositoryImpl(persistence);
+            repository.save(new Usuario(null, "Juan Pérez", "juan@example.com", "Activo"));
+            repository.save(new Usuario(null, "María García", "maria@example.com", "Activo"));
+            repository.deleteById(1L);
+        }
+
+        // Act
+        try (RepositoryPersistence persistence = open(FsyncPolicy.ALWAYS)) {
+            UsuarioRepository repository = new UsuarioRepositoryImpl(persistence);
+            Usuario nuevo = repository.save(new Usuario(null, "Juan Pérez", "juan@example.com", "Activo"));
+
+            // Assert
+            assertEquals(3L, nuevo.getId());
+            assertFalse(repository.existsById(1L));
+            assertEquals(2, repository.findAll().size());
+        }
+    }
+
+    @Test
+    void prestamos_afterRestart_shouldRestoreReferencesAndDates() throws IOException {
+        // Arrange
+        Libro libro = new Libro(1L, "1234567890", "El Quijote", "Miguel de Cervantes", "Prestado");
+        Usuario usuario = new Usuario(1L, "Juan Pérez", "juan@example.com", "Activo");
+        LocalDate hoy = LocalDate.now();
+        try (RepositoryPersistence persistence = open(FsyncPolicy.INTERVAL)) {
+            new PrestamoRepositoryImpl(persistence).save(new Prestamo(null, libro.getId(), usuario.getId(), hoy, hoy.minusDays(3)));
+        }
+
+        // Act
+        try (RepositoryPersistence persistence = open(FsyncPolicy.INTERVAL)) {
+            PrestamoRepository repository = new PrestamoRepositoryImpl(persistence);
+
+            // Assert
+            Prestamo prestamo = repository.findById(1L).get();
+            assertEquals(libro.getId(), prestamo.getLibroId());
+            assertEquals(usuario.getId(), prestamo.getUsuarioId());
+            assertEquals(hoy.minusDays(3), prestamo.getFechaDevolucion());
+            assertEquals(1, repository.findOverduePrestamos().size());
+        }
+    }
+
+    @Test
+    void open_withTornTail_shouldDiscardIncompleteRecord() throws IOException {
+        // Arrange
+        try (RepositoryPersistence persistence = open(FsyncPolicy.GROUP)) {
+            LibroRepository repository = new LibroRepositoryImpl(persistence);
+            repository.save(new Libro(null, "1111111111", "Primero", "Autor", "Disponible"));
+            repository.save(new Libro(null, "2222222222", "Segundo", "Autor", "Disponible"));
+        }
+        Path log = directorio.resolve("libros.wal");
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(log) - 5);
+        }
+
+        // Act
+        try (RepositoryPersistence persistence = open(FsyncPolicy.GROUP)) {
+            LibroRepository repository = new LibroRepositoryImpl(persistence);
+            repository.save(new Libro(null, "3333333333", "Tercero", "Autor", "Disponible"));
+        }
+        try (RepositoryPersistence persistence = open(FsyncPolicy.GROUP)) {
+            LibroRepository repository = new LibroRepositoryImpl(persistence);
+
+            // Assert: the torn record is gone and later writes were appended after the last valid one
+            assertEquals(2, repository.findAll().size());
+            assertEquals("Primero", repository.findById(1L).get().getTitulo());
+            assertEquals("Tercero", repository.findById(2L).get().getTitulo());
+        }
+    }
+
+    @Test
+    void checkpoint_shouldTruncateLogAndRestoreFromSnapshot() throws IOException {
+        // Arrange
+        try (RepositoryPersistence persistence = open(FsyncPolicy.GROUP)) {
+            LibroRepository repository = new LibroRepositoryImpl(persistence);
+            repository.save(new Libro(null, "1111111111", "Primero", "Autor", "Disponible"));
+            repository.save(new Libro(null, "2222222222", "Segundo", "Autor", "Disponible"));
+            repository.save(new Libro(null, "3333333333", "Tercero", "Autor", "Disponible"));
+            repository.deleteById(3L);
+
+            // Act
+            persistence.checkpoint();
+            repository.save(new Libro(null, "4444444444", "Cuarto", "Autor", "Disponible"));
+            repository.deleteById(1L);
+        }
+
+        // Assert
+        assertTrue(Files.exists(directorio.resolve("libros.snap")));
+        assertFalse(Files.exists(directorio.resolve("libros.wal.prev")));
+        try (RepositoryPersistence persistence = open(FsyncPolicy.GROUP)) {
+            LibroRepository repository = new LibroRepositoryImpl(persistence);
+            assertEquals(List.of(2L, 4L), repository.findAll().stream().map(Libro::getId).sorted().toList());
+            assertEquals("Cuarto", repository.findByIsbn("4444444444").get().getTitulo());
+            assertEquals(5L, repository.save(new Libro(null, "5555555555", "Quinto", "Autor", "Disponible")).getId());
+        }
+    }
+
+    @Test
+    void checkpoint_withConcurrentWriters_shouldNotLoseWrites() throws Exception {
+        // Arrange
+        List<Libro> esperado;
+        try (RepositoryPersistence persistence = open(FsyncPolicy.INTERVAL)) {
+            LibroRepository repository = new LibroRepositoryImpl(persistence);
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<?>> writers = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    int thread = t;
+                    writers.add(executor.submit(() -> {
+                        for (int i = 0; i < 2_000; i++) {
+                            Libro libro = repository.save(new Libro(null, Long.toString(thread * 1_000_000L + i),
+                                "Título " + i, "Autor", "Disponible"));
+                            if (i % 3 == 0) {
+                                libro.setEstado("Prestado");
+                                repository.save(libro);
+                            } else if (i % 3 == 1) {
+                                repository.deleteById(libro.getId());
+                            }
+                        }
+                        return null;
+                    }));
+                }
+
+                // Act: checkpoint repeatedly while the writers are running
+                while (!writers.stream().allMatch(Future::isDone)) {
+                    persistence.checkpoint();
+                }
+                for (Future<?> writer : writers) {
+                    writer.get(30, TimeUnit.SECONDS);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            esperado = repository.findAll();
+        }
+
+        // Assert
+        try (RepositoryPersistence persistence = open(FsyncPolicy.INTERVAL)) {
+            LibroRepository repository = new LibroRepositoryImpl(persistence);
+            assertEquals(new HashSet<>(esperado), new HashSet<>(repository.findAll()));
+        }
+    }
+
+    @Test
+    void open_withInterruptedCheckpoint_shouldReplayRotatedLog() throws IOException {
+        // Arrange: a crash right after rotating leaves the old log next to the new one
+        try (RepositoryPersistence persistence = open(FsyncPolicy.GROUP)) {
+            LibroRepository repository = new LibroRepositoryImpl(persistence);
+            repository.save(new Libro(null, "1111111111", "Primero", "Autor", "Disponible"));
+            repository.save(new Libro(null, "2222222222", "Segundo", "Autor", "Disponible"));
+        }
+        Files.move(directorio.resolve("libros.wal"), directorio.resolve("libros.wal.prev"));
+
+        // Act
+        try (RepositoryPersistence persistence = open(FsyncPolicy.GROUP)) {
+            new LibroRepositoryImpl(persistence)
+                .save(new Libro(null, "3333333333", "Tercero", "Autor", "Disponible"));
+        }
+
+        // Assert
+        assertFalse(Files.exists(directorio.resolve("libros.wal.prev")));
+        try (RepositoryPersistence persistence = open(FsyncPolicy.GROUP)) {
+            LibroRepository repository = new LibroRepositoryImpl(persistence);
+            assertEquals(3, repository.findAll().size());
+            assertEquals("Tercero", repository.findById(3L).get().getTitulo());
+        }
+    }
+
+    @Test
+    void archiveBefore_shouldMoveOldReturnedLoansToArchiveAndKeepQueriesTransparent() throws IOException {
+        // Arrange
+        LocalDate hoy = LocalDate.now();
+        Libro libro = new Libro(1L, "1234567890", "El Quijote", "Miguel de Cervantes", "Disponible");
+        Usuario usuario = new Usuario(1L, "Juan Pérez", "juan@example.com", "Activo");
+        try (RepositoryPersistence persistence = openWithArchive()) {
+            PrestamoRepositoryImpl repository = new PrestamoRepositoryImpl(persistence);
+            repository.save(new Prestamo(null, libro.getId(), usuario.getId(), hoy.minusDays(430), hoy.minusDays(400),
+                hoy.minusDays(395), 0));
+            // Overdue but never returned: stays in memory however old it is
+            repository.save(new Prestamo(null, libro.getId(), usuario.getId(), hoy.minusDays(430), hoy.minusDays(400)));
+            repository.save(new Prestamo(null, libro.getId(), usuario.getId(), hoy.minusDays(500), hoy.minusDays(480),
+                hoy.minusDays(470), 0));
+            repository.save(new Prestamo(null, libro.getId(), usuario.getId(), hoy, hoy.plusDays(14)));
+
+            // Act
+            int archivados = repository.archiveBefore(hoy.minusDays(365));
+
+            // Assert
+            assertEquals(2, archivados);
+            assertEquals(4, repository.findAll().size());
+            Prestamo archivado = repository.findById(1L).get();
+            assertEquals(1L, archivado.getLibroId());
+            assertEquals(1L, archivado.getUsuarioId());
+            assertEquals(hoy.minusDays(400), archivado.getFechaDevolucion());
+            assertEquals(hoy.minusDays(395), archivado.getFechaEntrega());
+            assertEquals(4, repository.findByUsuarioId(1L).size());
+            assertEquals(List.of(2L), repository.findOverduePrestamos().stream().map(Prestamo::getId).toList());
+            assertEquals(List.of(4L), repository.findActivePrestamos().stream().map(Prestamo::getId).toList());
+            assertEquals(List.of(1L, 2L), repository.findPage(null, 2).stream().map(Prestamo::getId).toList());
+            assertEquals(List.of(3L, 4L), repository.findPage(2L, 5).stream().map(Prestamo::getId).toList());
+        }
+    }
+
+    @Test
+    void archivedLoans_afterRestart_shouldReflectUpdatesAndDeletes() throws IOException {
+        // Arrange
+        LocalDate hoy = LocalDate.now();
+        Libro libro = new Libro(1L, "1234567890", "El Quijote", "Miguel de Cervantes", "Disponible");
+        Usuario usuario = new Usuario(1L, "Juan Pérez", "juan@example.com", "Activo");
+        try (RepositoryPersistence persistence = openWithArchive()) {
+            PrestamoRepositoryImpl repository = new PrestamoRepositoryImpl(persistence);
+            repository.save(new Prestamo(null, libro.getId(), usuario.getId(), hoy.minusDays(430), hoy.minusDays(400),
+                hoy.minusDays(400), 0));
+            repository.save(new Prestamo(null, libro.getId(), usuario.getId(), hoy.minusDays(530), hoy.minusDays(500),
+                hoy.minusDays(500), 0));
+            repository.save(new Prestamo(null, libro.getId(), usuario.getId(), hoy.minusDays(630), hoy.minusDays(600),
+                hoy.minusDays(600), 0));
+            repository.archiveBefore(hoy.minusDays(365));
+
+            // Act
+            repository.deleteById(1L);
+            repository.save(new Prestamo(2L, libro.getId(), usuario.getId(), hoy.minusDays(530), hoy.plusDays(7)));
+        }
+
+        // Assert
+        try (RepositoryPersistence persistence = openWithArchive()) {
+            PrestamoRepository repository = new PrestamoRepositoryImpl(persistence);
+            assertTrue(repository.findById(1L).isEmpty());
+            assertEquals(hoy.plusDays(7), repository.findById(2L).get().getFechaDevolucion());
+            assertEquals(1L, repository.findById(2L).get().getLibroId());
+            assertEquals(hoy.minusDays(600), repository.findById(3L).get().getFechaDevolucion());
+            assertEquals(hoy.minusDays(600), repository.findById(3L).get().getFechaEntrega());
+            assertEquals(2, repository.findAll().size());
+        }
+    }
+
+    @Test
+    void archiveBefore_withMostArchivedRowsDeleted_shouldCompactArchive() throws IOException {
+        // Arrange
+        LocalDate hoy = LocalDate.now();
+        try (RepositoryPersistence persistence = openWithArchive()) {
+            PrestamoRepositoryImpl repository = new PrestamoRepositoryImpl(persistence);
+            for (int i = 0; i < 3; i++) {
+                repository.save(new Prestamo(null, 1L, 1L, hoy.minusDays(430 + i), hoy.minusDays(400 + i),
+                    hoy.minusDays(400 + i), 0));
+            }
+            repository.archiveBefore(hoy.minusDays(365));
+            repository.deleteById(1L);
+            repository.deleteById(2L);
+
+            // Act
+            repository.archiveBefore(hoy.minusDays(365));
+
+            // Assert
+            assertEquals(List.of(3L), repository.findAll().stream().map(Prestamo::getId).toList());
+            assertEquals(hoy.minusDays(402), repository.findById(3L).get().getFechaEntrega());
+        }
+        Path archivo = directorio.resolve("prestamos.archive");
+        try (PrestamoArchive archive = PrestamoArchive.open(archivo)) {
+            assertEquals(1, archive.rows());
+            assertEquals(hoy.minusDays(402), archive.findById(3L).get().getFechaDevolucion());
+        }
+        assertFalse(Files.exists(directorio.resolve("prestamos.archive.compactando")));
+        assertFalse(Files.exists(directorio.resolve("prestamos.archive.anterior")));
+    }
+
+    @Test
+    void deleteById_withArchivedLoan_shouldChangeRevision() throws IOException {
+        // Arrange
+        LocalDate hoy = LocalDate.now();
+        Libro libro = new Libro(1L, "1234567890", "El Quijote", "Miguel de Cervantes", "Disponible");
+        Usuario usuario = new Usuario(1L, "Juan Pérez", "juan@example.com", "Activo");
+        try (RepositoryPersistence persistence = openWithArchive()) {
+            PrestamoRepositoryImpl repository = new PrestamoRepositoryImpl(persistence);
+            repository.save(new Prestamo(null, libro.getId(), usuario.getId(), hoy.minusDays(430), hoy.minusDays(400),
+                hoy.minusDays(400), 0));
+            repository.archiveBefore(hoy.minusDays(365));
+            long archivado = repository.revision();
+
+            // Act: the row only exists in the archive, outside the in-memory store
+            repository.deleteById(1L);
+
+            // Assert
+            assertNotEquals(archivado, repository.revision());
+            assertTrue(repository.findAll().isEmpty());
+        }
+    }
+
+    @Test
+    void saveAllAndDeleteAllById_afterRestart_shouldReplayEveryItem() throws IOException {
+        // Arrange
+        try (RepositoryPersistence persistence = open(FsyncPolicy.GROUP)) {
+            LibroRepository repository = new LibroRepositoryImpl(persistence);
+            List<Libro> lote = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                lote.add(new Libro(null, "isbn-" + i, "Título " + i, "Autor", "Disponible"));
+            }
+            lote.add(new Libro(null, "isbn-0", "Repetido", "Autor", "Disponible"));
+            List<BulkWriteResult<Libro>> result = repository.saveAll(lote);
+            assertFalse(result.get(200).isSaved());
+            repository.deleteAllById(List.of(1L, 2L, 3L));
+        }
+
+        // Act
+        try (RepositoryPersistence persistence = open(FsyncPolicy.GROUP)) {
+            LibroRepository repository = new LibroRepositoryImpl(persistence);
+
+            // Assert
+            assertEquals(197, repository.findAll().size());
+            assertFalse(repository.existsById(2L));
+            assertEquals("Título 199", repository.findByIsbn("isbn-199").get().getTitulo());
+            assertTrue(repository.save(new Libro(null, "nuevo", "Nuevo", "Autor", "Disponible")).getId() > 200L);
+        }
+    }
+
+    @Test
+    void versions_afterRestart_shouldContinueFromStoredVersion() throws IOException {
+        // Arrange
+        Long id;
+        try (RepositoryPersistence persistence = open(FsyncPolicy.GROUP)) {
+            UsuarioRepository repository = new UsuarioRepositoryImpl(persistence);
+            Usuario usuario = repository.save(new Usuario(null, "Juan Pérez", "juan@example.com", "Activo"));
+            usuario.setEstado("Inactivo");
+            repository.save(usuario);
+            id = usuario.getId();
+        }
+
+        // Act
+        try (RepositoryPersistence persistence = open(FsyncPolicy.GROUP)) {
+            UsuarioRepository repository = new UsuarioRepositoryImpl(persistence);
+
+            // Assert: a client holding version 1 must still be rejected after the restart
+            assertEquals(2, repository.findById(id).get().getVersion());
+            assertFalse(repository.replaceIfVersion(new Usuario(id, "Otro", "otro@example.com", "Activo"), 1).isPresent());
+            assertTrue(repository.replaceIfVersion(new Usuario(id, "Otro", "otro@example.com", "Activo"), 2).isPresent());
+        }
+    }
+
+    private RepositoryPersistence open(FsyncPolicy policy) {
+        return new RepositoryPersistence(directorio, policy, Duration.ofMillis(10), Duration.ZERO, 0, Period.ZERO);
+    }
+
+    private RepositoryPersistence openWithArchive() {
+        // The retention is long enough that the background archiving never touches the test data
+        return new RepositoryPersistence(directorio, FsyncPolicy.GROUP, Duration.ofMillis(10), Duration.ZERO, 0,
+            Period.ofYears(10));
+    }
+}
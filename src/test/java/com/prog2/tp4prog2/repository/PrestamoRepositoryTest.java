@@ -45,8 +45,8 @@ public class PrestamoRepositoryTest {
         libro2 = new Libro(2L, "0987654321", "Cien años de soledad", "Gabriel García Márquez", "Prestado");
         
         // Create test loans
-        prestamo1 = new Prestamo(null, libro1, usuario1, yesterday, tomorrow);
-        prestamo2 = new Prestamo(null, libro2, usuario2, today, yesterday); // Overdue loan
+        prestamo1 = new Prestamo(null, libro1.getId(), usuario1.getId(), yesterday, tomorrow);
+        prestamo2 = new Prestamo(null, libro2.getId(), usuario2.getId(), today, yesterday); // Overdue loan
         
         // Save the loans to the repository
         prestamoRepository.save(prestamo1);
@@ -88,15 +88,15 @@ public class PrestamoRepositoryTest {
         // Arrange
         Libro libro3 = new Libro(3L, "5555555555", "Nuevo Libro", "Nuevo Autor", "Prestado");
         Usuario usuario3 = new Usuario(3L, "Nuevo Usuario", "nuevo@example.com", "Activo");
-        Prestamo newPrestamo = new Prestamo(null, libro3, usuario3, today, tomorrow);
+        Prestamo newPrestamo = new Prestamo(null, libro3.getId(), usuario3.getId(), today, tomorrow);
         
         // Act
         Prestamo result = prestamoRepository.save(newPrestamo);
         
         // Assert
         assertNotNull(result.getId());
-        assertEquals(newPrestamo.getLibro(), result.getLibro());
-        assertEquals(newPrestamo.getUsuario(), result.getUsuario());
+        assertEquals(3L, result.getLibroId());
+        assertEquals(3L, result.getUsuarioId());
         assertEquals(newPrestamo.getFechaPrestamo(), result.getFechaPrestamo());
         assertEquals(newPrestamo.getFechaDevolucion(), result.getFechaDevolucion());
         
@@ -202,4 +202,138 @@ public class PrestamoRepositoryTest {
         assertEquals(1, result.size());
         assertEquals(prestamo2, result.get(0));
     }
-}
\ No newline at end of file
+
+    @Test
+    void findOverduePrestamos_afterReturnAndReopen_shouldFollowReturnDate() {
+        // Arrange
+        Prestamo devuelto = new Prestamo(prestamo2.getId(), libro2.getId(), usuario2.getId(), today, yesterday, today, 0);
+
+        // Act
+        prestamoRepository.save(devuelto);
+        List<Prestamo> trasDevolver = prestamoRepository.findOverduePrestamos();
+        List<Prestamo> porVencimiento = prestamoRepository.findByFechaDevolucion(yesterday);
+        prestamoRepository.save(new Prestamo(prestamo2.getId(), libro2.getId(), usuario2.getId(), today, yesterday));
+        List<Prestamo> trasReabrir = prestamoRepository.findOverduePrestamos();
+
+        // Assert
+        assertTrue(trasDevolver.isEmpty());
+        assertEquals(1, porVencimiento.size());
+        assertEquals(1, trasReabrir.size());
+        assertEquals(prestamo2.getId(), trasReabrir.get(0).getId());
+    }
+
+    @Test
+    void findByUsuarioId_shouldReturnLoansForUser() {
+        // Arrange
+        Prestamo prestamo3 = prestamoRepository.save(new Prestamo(null, libro2.getId(), usuario1.getId(), today, tomorrow));
+
+        // Act
+        List<Prestamo> result = prestamoRepository.findByUsuarioId(usuario1.getId());
+
+        // Assert
+        assertEquals(2, result.size());
+        assertTrue(result.contains(prestamo1));
+        assertTrue(result.contains(prestamo3));
+    }
+
+    @Test
+    void findByLibroId_shouldMatchByIdEvenIfBookChanged() {
+        // Arrange: a copy of the book with different data but the same ID
+        Libro libroModificado = new Libro(libro1.getId(), "1234567890", "Otro título", "Otro autor", "Disponible");
+
+        // Act
+        List<Prestamo> result = prestamoRepository.findByLibro(libroModificado);
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals(prestamo1, result.get(0));
+    }
+
+    @Test
+    void save_withChangedUsuario_shouldMoveLoanBetweenUsers() {
+        // Arrange
+        Prestamo actualizado = new Prestamo(prestamo1.getId(), libro1.getId(), usuario2.getId(), yesterday, tomorrow);
+
+        // Act
+        prestamoRepository.save(actualizado);
+
+        // Assert
+        assertTrue(prestamoRepository.findByUsuarioId(usuario1.getId()).isEmpty());
+        assertEquals(2, prestamoRepository.findByUsuarioId(usuario2.getId()).size());
+    }
+
+    @Test
+    void deleteById_shouldRemoveLoanFromForeignKeyIndexes() {
+        // Act
+        prestamoRepository.deleteById(prestamo1.getId());
+
+        // Assert
+        assertTrue(prestamoRepository.findByUsuarioId(usuario1.getId()).isEmpty());
+        assertTrue(prestamoRepository.findByLibroId(libro1.getId()).isEmpty());
+    }
+
+    @Test
+    void findByFechaDevolucionBetween_shouldReturnLoansInRangeOrderedByDueDate() {
+        // Arrange
+        Prestamo prestamo3 = prestamoRepository.save(new Prestamo(null, libro1.getId(), usuario2.getId(), today, today));
+        prestamoRepository.save(new Prestamo(null, libro2.getId(), usuario1.getId(), today, today.plusDays(10)));
+
+        // Act
+        List<Prestamo> result = prestamoRepository.findByFechaDevolucionBetween(yesterday, tomorrow);
+
+        // Assert
+        assertEquals(List.of(prestamo2, prestamo3, prestamo1), result);
+    }
+
+    @Test
+    void findByFechaDevolucionBetween_withOpenBounds_shouldBeUnbounded() {
+        // Act
+        List<Prestamo> hastaHoy = prestamoRepository.findByFechaDevolucionBetween(null, today);
+        List<Prestamo> desdeHoy = prestamoRepository.findByFechaDevolucionBetween(today, null);
+
+        // Assert
+        assertEquals(List.of(prestamo2), hastaHoy);
+        assertEquals(List.of(prestamo1), desdeHoy);
+    }
+
+    @Test
+    void findOverduePrestamos_withDiasMinimos_shouldOnlyReturnLoansOverdueLongerThanThat() {
+        // Arrange
+        Prestamo muyVencido = prestamoRepository.save(new Prestamo(null, libro1.getId(), usuario2.getId(), today.minusDays(30), today.minusDays(10)));
+
+        // Act
+        List<Prestamo> result = prestamoRepository.findOverduePrestamos(5);
+
+        // Assert
+        assertEquals(List.of(muyVencido), result);
+    }
+
+    @Test
+    void findActivePrestamos_afterDueDateUpdate_shouldReflectNewDate() {
+        // Arrange
+        prestamo2.setFechaDevolucion(today.plusDays(3));
+
+        // Act
+        prestamoRepository.save(prestamo2);
+
+        // Assert
+        assertEquals(2, prestamoRepository.findActivePrestamos().size());
+        assertTrue(prestamoRepository.findOverduePrestamos().isEmpty());
+    }
+
+    @Test
+    void findActiveAndOverduePrestamos_withReturnedLoans_shouldExcludeThem() {
+        // Arrange
+        prestamo1.setFechaEntrega(today);
+        prestamo2.setFechaEntrega(today);
+
+        // Act
+        prestamoRepository.save(prestamo1);
+        prestamoRepository.save(prestamo2);
+
+        // Assert
+        assertTrue(prestamoRepository.findActivePrestamos().isEmpty());
+        assertTrue(prestamoRepository.findOverduePrestamos().isEmpty());
+        assertEquals(List.of(prestamo1), prestamoRepository.findByUsuarioId(usuario1.getId()));
+    }
+}
@@ -174,4 +174,101 @@ public class UsuarioRepositoryTest {
         // Assert
         assertTrue(result.isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    void findByEmail_withDifferentCase_shouldReturnUser() {
+        // Act
+        Optional<Usuario> result = usuarioRepository.findByEmail("  Juan@Example.COM ");
+
+        // Assert
+        assertTrue(result.isPresent());
+        assertEquals(usuario1, result.get());
+    }
+
+    @Test
+    void save_withDuplicateEmailInDifferentCase_shouldThrow() {
+        // Arrange
+        Usuario duplicado = new Usuario(null, "Otro Juan", "JUAN@example.com", "Activo");
+
+        // Act & Assert
+        assertThrows(DuplicateKeyException.class, () -> usuarioRepository.save(duplicado));
+        assertEquals(2, usuarioRepository.findAll().size());
+    }
+
+    @Test
+    void save_withChangedEmail_shouldUpdateIndex() {
+        // Arrange
+        Usuario actualizado = new Usuario(usuario1.getId(), "Juan Pérez", "juan.perez@example.com", "Activo");
+
+        // Act
+        usuarioRepository.save(actualizado);
+
+        // Assert
+        assertFalse(usuarioRepository.findByEmail("juan@example.com").isPresent());
+        assertEquals(actualizado, usuarioRepository.findByEmail("juan.perez@example.com").get());
+    }
+
+    @Test
+    void deleteById_shouldReleaseEmail() {
+        // Act
+        usuarioRepository.deleteById(usuario1.getId());
+
+        // Assert
+        assertFalse(usuarioRepository.findByEmail("juan@example.com").isPresent());
+        assertDoesNotThrow(() -> usuarioRepository.save(new Usuario(null, "Juan Nuevo", "juan@example.com", "Activo")));
+    }
+
+    @Test
+    void searchByNombre_withSubstring_shouldIgnoreCaseAndAccents() {
+        // Act
+        List<Usuario> result = usuarioRepository.searchByNombre("GARCIA", 10);
+
+        // Assert
+        assertEquals(List.of(usuario2), result);
+    }
+
+    @Test
+    void searchByNombre_withMiddleOfWord_shouldMatchSubstring() {
+        // Act
+        List<Usuario> result = usuarioRepository.searchByNombre("arí", 10);
+
+        // Assert
+        assertEquals(List.of(usuario2), result);
+    }
+
+    @Test
+    void searchByNombre_withShortQuery_shouldMatchWordPrefixes() {
+        // Act
+        List<Usuario> porInicial = usuarioRepository.searchByNombre("p", 10);
+        List<Usuario> porMitadDePalabra = usuarioRepository.searchByNombre("ua", 10);
+
+        // Assert
+        assertEquals(List.of(usuario1), porInicial);
+        assertTrue(porMitadDePalabra.isEmpty());
+    }
+
+    @Test
+    void searchByNombre_shouldRespectLimit() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            usuarioRepository.save(new Usuario(null, "Juana " + i, "juana" + i + "@example.com", "Activo"));
+        }
+
+        // Act
+        List<Usuario> result = usuarioRepository.searchByNombre("juan", 3);
+
+        // Assert
+        assertEquals(3, result.size());
+    }
+
+    @Test
+    void findByNombre_afterRename_shouldUseUpdatedName() {
+        // Arrange
+        usuarioRepository.save(new Usuario(usuario1.getId(), "Pedro Gómez", "juan@example.com", "Activo"));
+
+        // Act & Assert
+        assertTrue(usuarioRepository.findByNombre("Juan").isEmpty());
+        assertEquals(1, usuarioRepository.findByNombre("Gómez").size());
+        assertTrue(usuarioRepository.findByNombre("Gomez").isEmpty());
+    }
+}
@@ -0,0 +1,167 @@
+package com.prog2.tp4prog2.service;
+
+import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.model.Prestamo;
+import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.LibroRepository;
+import com.prog2.tp4prog2.repository.PrestamoRepository;
+import com.prog2.tp4prog2.repository.UsuarioRepository;
+import com.prog2.tp4prog2.repository.impl.LibroRepositoryImpl;
+import com.prog2.tp4prog2.repository.impl.PrestamoRepositoryImpl;
+import com.prog2.tp4prog2.repository.impl.UsuarioRepositoryImpl;
+import com.prog2.tp4prog2.service.impl.PrestamoServiceImpl;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentPrestamoServiceTest {
+
+    private static final int DESKS = 64;
+    private static final int ATTEMPTS_PER_DESK = 500;
+    private static final int BOOKS = 8;
+
+    @Test
+    void prestar_withConcurrentDesks_shouldNeverLendTheSameBookTwice() throws Exception {
+        // Arrange: many desks competing for a handful of books
+        LibroRepository libroRepository = new LibroRepositoryImpl();
+        UsuarioRepository usuarioRepository = new UsuarioRepositoryImpl();
+        PrestamoRepository prestamoRepository = new PrestamoRepositoryImpl();
+        PrestamoService prestamoService = new PrestamoServiceImpl(prestamoRepository, libroRepository, usuarioRepository);
+        List<Long> libros = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            libros.add(libroRepository.save(new Libro(null, "isbn-" + i, "Título " + i, "Autor", "Disponible")).getId());
+        }
+        Long usuarioId = usuarioRepository.save(new Usuario(null, "Juan Pérez", "juan@example.com", "Activo")).getId();
+        LocalDate vencimiento = LocalDate.now().plusDays(14);
+        ConcurrentHashMap<Long, AtomicInteger> titulares = new ConcurrentHashMap<>();
+        libros.forEach(id -> titulares.put(id, new AtomicInteger()));
+
+        // Act: every desk lends a random book and returns it right away
+        ExecutorService executor = Executors.newFixedThreadPool(DESKS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<int[]>> futures = new ArrayList<>();
+        try {
+            for (int d = 0; d < DESKS; d++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    int prestados = 0;
+                    int maximoTitulares = 0;
+                    for (int i = 0; i < ATTEMPTS_PER_DESK; i++) {
+                        Long libroId = libros.get(ThreadLocalRandom.current().nextInt(BOOKS));
+                        Prestamo prestamo;
+                        try {
+                            prestamo = prestamoService.prestar(libroId, usuarioId, vencimiento);
+                        } catch (LibroNoDisponibleException e) {
+                            continue;
+                        }
+                        // Count holders while the loan is open; the count drops before the return
+                        maximoTitulares = Math.max(maximoTitulares, titulares.get(libroId).incrementAndGet());
+                        Thread.yield();
+                        titulares.get(libroId).decrementAndGet();
+                        prestamoService.devolver(prestamo.getId());
+                        prestados++;
+                    }
+                    return new int[] {prestados, maximoTitulares};
+                }));
+            }
+            start.countDown();
+
+            int prestados = 0;
+            int maximoTitulares = 0;
+            for (Future<int[]> future : futures) {
+                int[] resultado = future.get(60, TimeUnit.SECONDS);
+                prestados += resultado[0];
+                maximoTitulares = Math.max(maximoTitulares, resultado[1]);
+            }
+
+            // Assert
+            assertTrue(prestados > 0);
+            assertEquals(1, maximoTitulares, "a book was lent to two desks at the same time");
+            assertEquals(prestados, prestamoRepository.findAll().size());
+            assertTrue(prestamoRepository.findAll().stream().allMatch(prestamo -> prestamo.getFechaEntrega() != null));
+            assertTrue(prestamoRepository.findActivePrestamos().isEmpty());
+            for (Long libroId : libros) {
+                assertEquals("Disponible", libroRepository.findById(libroId).get().getEstado());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void devolver_withConcurrentReturnsOfSameLoan_shouldReleaseBookOnce() throws Exception {
+        // Arrange
+        LibroRepository libroRepository = new LibroRepositoryImpl();
+        UsuarioRepository usuarioRepository = new UsuarioRepositoryImpl();
+        PrestamoRepository prestamoRepository = new PrestamoRepositoryImpl();
+        PrestamoService prestamoService = new PrestamoServiceImpl(prestamoRepository, libroRepository, usuarioRepository);
+        Long libroId = libroRepository.save(new Libro(null, "isbn", "Título", "Autor", "Disponible")).getId();
+        Long usuarioId = usuarioRepository.save(new Usuario(null, "Juan Pérez", "juan@example.com", "Activo")).getId();
+        Prestamo prestamo = prestamoService.prestar(libroId, usuarioId, LocalDate.now().plusDays(7));
+
+        // Act
+        ExecutorService executor = Executors.newFixedThreadPool(DESKS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try {
+            for (int d = 0; d < DESKS; d++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        prestamoService.devolver(prestamo.getId());
+                        return true;
+                    } catch (RuntimeException e) {
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+            int devoluciones = 0;
+            for (Future<Boolean> future : futures) {
+                devoluciones += future.get(30, TimeUnit.SECONDS) ? 1 : 0;
+            }
+
+            // Assert
+            assertEquals(1, devoluciones);
+            assertEquals("Disponible", libroRepository.findById(libroId).get().getEstado());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void devolver_shouldKeepLoanInUserAndBookHistory() {
+        // Arrange
+        LibroRepository libroRepository = new LibroRepositoryImpl();
+        UsuarioRepository usuarioRepository = new UsuarioRepositoryImpl();
+        PrestamoRepository prestamoRepository = new PrestamoRepositoryImpl();
+        PrestamoService prestamoService = new PrestamoServiceImpl(prestamoRepository, libroRepository, usuarioRepository);
+        Long libroId = libroRepository.save(new Libro(null, "isbn", "Título", "Autor", "Disponible")).getId();
+        Long usuarioId = usuarioRepository.save(new Usuario(null, "Juan Pérez", "juan@example.com", "Activo")).getId();
+        Prestamo prestamo = prestamoService.prestar(libroId, usuarioId, LocalDate.now().plusDays(7));
+
+        // Act
+        prestamoService.devolver(prestamo.getId());
+
+        // Assert
+        List<Prestamo> historial = prestamoService.buscarPorUsuarioId(usuarioId);
+        assertEquals(1, historial.size());
+        assertEquals(prestamo.getId(), historial.get(0).getId());
+        assertEquals(LocalDate.now(), historial.get(0).getFechaEntrega());
+        assertEquals(1, prestamoService.buscarPorLibroId(libroId).size());
+        assertTrue(prestamoService.buscarPrestamosActivos().isEmpty());
+        assertEquals("Disponible", libroRepository.findById(libroId).get().getEstado());
+    }
+}
@@ -1,14 +1,19 @@
 package com.prog2.tp4prog2.service;
 
 import com.prog2.tp4prog2.model.Libro;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
 import com.prog2.tp4prog2.repository.LibroRepository;
+import com.prog2.tp4prog2.repository.impl.LibroRepositoryImpl;
+import com.prog2.tp4prog2.service.impl.CacheEntidades;
 import com.prog2.tp4prog2.service.impl.LibroServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -42,7 +47,7 @@ public class LibroServiceTest {
         when(libroRepository.findByIsbn("1234567890")).thenReturn(Optional.of(libro1));
         
         // Act
-        Libro result = libroService.buscarPorIsbn("1234567890");
+        Libro result = libroService.buscarPorIsbn("1234567890").orElseThrow();
         
         // Assert
         assertEquals(libro1, result);
@@ -50,16 +55,15 @@ public class LibroServiceTest {
     }
 
     @Test
-    void buscarPorIsbn_withNonExistingIsbn_shouldThrowException() {
+    void buscarPorIsbn_withNonExistingIsbn_shouldReturnEmpty() {
         // Arrange
         when(libroRepository.findByIsbn("9999999999")).thenReturn(Optional.empty());
         
-        // Act & Assert
-        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
-            libroService.buscarPorIsbn("9999999999");
-        });
+        // Act
+        Optional<Libro> result = libroService.buscarPorIsbn("9999999999");
         
-        assertEquals("Libro no encontrado con ISBN: 9999999999", exception.getMessage());
+        // Assert
+        assertTrue(result.isEmpty());
         verify(libroRepository).findByIsbn("9999999999");
     }
 
@@ -69,7 +73,7 @@ public class LibroServiceTest {
         when(libroRepository.findById(1L)).thenReturn(Optional.of(libro1));
         
         // Act
-        Libro result = libroService.buscarPorId(1L);
+        Libro result = libroService.buscarPorId(1L).orElseThrow();
         
         // Assert
         assertEquals(libro1, result);
@@ -77,19 +81,32 @@ public class LibroServiceTest {
     }
 
     @Test
-    void buscarPorId_withNonExistingId_shouldThrowException() {
+    void buscarPorId_withNonExistingId_shouldReturnEmpty() {
         // Arrange
         when(libroRepository.findById(999L)).thenReturn(Optional.empty());
         
-        // Act & Assert
-        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
-            libroService.buscarPorId(999L);
-        });
+        // Act
+        Optional<Libro> result = libroService.buscarPorId(999L);
         
-        assertEquals("Libro no encontrado con ID: 999", exception.getMessage());
+        // Assert
+        assertTrue(result.isEmpty());
         verify(libroRepository).findById(999L);
     }
 
+    @Test
+    void buscar_shouldDelegateToRepositorySearch() {
+        // Arrange
+        when(libroRepository.search("quijote", 20)).thenReturn(Arrays.asList(libro1));
+
+        // Act
+        List<Libro> result = libroService.buscar("quijote", 20);
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals(libro1, result.get(0));
+        verify(libroRepository).search("quijote", 20);
+    }
+
     @Test
     void obtenerTodos_shouldReturnAllBooks() {
         // Arrange
@@ -106,6 +123,19 @@ public class LibroServiceTest {
         verify(libroRepository).findAll();
     }
 
+    @Test
+    void obtenerPagina_shouldDelegateToRepository() {
+        // Arrange
+        when(libroRepository.findPage(1L, 10)).thenReturn(List.of(libro2));
+
+        // Act
+        List<Libro> result = libroService.obtenerPagina(1L, 10);
+
+        // Assert
+        assertEquals(List.of(libro2), result);
+        verify(libroRepository).findPage(1L, 10);
+    }
+
     @Test
     void guardar_shouldSaveAndReturnBook() {
         // Arrange
@@ -137,16 +167,15 @@ public class LibroServiceTest {
         Libro libroActualizado = new Libro(null, "1234567890", "Título Actualizado", "Autor Actualizado", "Disponible");
         Libro libroGuardado = new Libro(1L, "1234567890", "Título Actualizado", "Autor Actualizado", "Disponible");
         
-        when(libroRepository.findById(1L)).thenReturn(Optional.of(libro1));
-        when(libroRepository.save(any(Libro.class))).thenReturn(libroGuardado);
+        when(libroRepository.replaceIfPresent(any(Libro.class))).thenReturn(Optional.of(libroGuardado));
         
         // Act
         Libro result = libroService.buscarYActualizar(1L, libroActualizado);
         
         // Assert
         assertEquals(libroGuardado, result);
-        verify(libroRepository).findById(1L);
-        verify(libroRepository).save(any(Libro.class));
+        verify(libroRepository).replaceIfPresent(libroActualizado);
+        verify(libroRepository, never()).save(any(Libro.class));
     }
 
     @Test
@@ -154,7 +183,7 @@ public class LibroServiceTest {
         // Arrange
         Libro libroActualizado = new Libro(null, "1234567890", "Título Actualizado", "Autor Actualizado", "Disponible");
         
-        when(libroRepository.findById(999L)).thenReturn(Optional.empty());
+        when(libroRepository.replaceIfPresent(any(Libro.class))).thenReturn(Optional.empty());
         
         // Act & Assert
         RuntimeException exception = assertThrows(RuntimeException.class, () -> {
@@ -162,7 +191,121 @@ public class LibroServiceTest {
         });
         
         assertEquals("Libro no encontrado con ID: 999", exception.getMessage());
-        verify(libroRepository).findById(999L);
         verify(libroRepository, never()).save(any(Libro.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void guardarTodos_shouldDelegateToRepository() {
+        // Arrange
+        List<Libro> libros = Arrays.asList(libro1, libro2);
+        List<BulkWriteResult<Libro>> resultados = List.of(BulkWriteResult.saved(libro1), BulkWriteResult.saved(libro2));
+        when(libroRepository.saveAll(libros)).thenReturn(resultados);
+
+        // Act
+        List<BulkWriteResult<Libro>> result = libroService.guardarTodos(libros);
+
+        // Assert
+        assertEquals(resultados, result);
+        verify(libroRepository).saveAll(libros);
+    }
+
+    @Test
+    void buscarYActualizar_withChangedVersion_shouldThrowConcurrentModification() {
+        // Arrange
+        Libro libroActualizado = new Libro(null, "1234567890", "Título Actualizado", "Autor", "Disponible");
+        when(libroRepository.replaceIfVersion(libroActualizado, 1L)).thenReturn(Optional.empty());
+        when(libroRepository.findById(1L)).thenReturn(Optional.of(libro1));
+
+        // Act & Assert
+        assertThrows(ModificacionConcurrenteException.class, () ->
+            libroService.buscarYActualizar(1L, libroActualizado, 1L));
+        assertEquals(1L, libroActualizado.getId());
+    }
+
+    @Test
+    void buscarYActualizar_withVersionAndNonExistingId_shouldThrowNotFound() {
+        // Arrange
+        Libro libroActualizado = new Libro(null, "1234567890", "Título Actualizado", "Autor", "Disponible");
+        when(libroRepository.replaceIfVersion(libroActualizado, 1L)).thenReturn(Optional.empty());
+        when(libroRepository.findById(999L)).thenReturn(Optional.empty());
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () ->
+            libroService.buscarYActualizar(999L, libroActualizado, 1L));
+        assertEquals("Libro no encontrado con ID: 999", exception.getMessage());
+    }
+
+    @Test
+    void buscarPorId_withCache_shouldReadRepositoryOnceAndCountHits() {
+        // Arrange
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LibroService conCache = new LibroServiceImpl(libroRepository, cache(registry));
+        when(libroRepository.findById(1L)).thenReturn(Optional.of(libro1));
+
+        // Act
+        conCache.buscarPorId(1L);
+        Libro result = conCache.buscarPorId(1L).orElseThrow();
+
+        // Assert
+        assertEquals(libro1, result);
+        verify(libroRepository, times(1)).findById(1L);
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "libros.id").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void guardar_withCache_shouldInvalidateCachedBook() {
+        // Arrange
+        LibroService conCache = new LibroServiceImpl(libroRepository, cache(new SimpleMeterRegistry()));
+        Libro actualizado = new Libro(1L, "1234567890", "El Quijote", "Miguel de Cervantes", "Prestado");
+        when(libroRepository.findById(1L)).thenReturn(Optional.of(libro1), Optional.of(actualizado));
+        when(libroRepository.save(actualizado)).thenReturn(actualizado);
+        conCache.buscarPorId(1L);
+
+        // Act
+        conCache.guardar(actualizado);
+
+        // Assert
+        assertEquals("Prestado", conCache.buscarPorId(1L).orElseThrow().getEstado());
+    }
+
+    @Test
+    void buscarPorIsbn_withCacheAfterIsbnChange_shouldNotReturnStaleBook() {
+        // Arrange
+        LibroService conCache = new LibroServiceImpl(libroRepository, cache(new SimpleMeterRegistry()));
+        Libro otroIsbn = new Libro(1L, "1111111111", "El Quijote", "Miguel de Cervantes", "Disponible");
+        when(libroRepository.findByIsbn("1234567890")).thenReturn(Optional.of(libro1), Optional.empty());
+        when(libroRepository.findById(1L)).thenReturn(Optional.of(otroIsbn));
+        when(libroRepository.save(otroIsbn)).thenReturn(otroIsbn);
+        conCache.buscarPorIsbn("1234567890");
+
+        // Act
+        conCache.guardar(otroIsbn);
+
+        // Assert
+        assertTrue(conCache.buscarPorIsbn("1234567890").isEmpty());
+    }
+
+    @Test
+    void buscarPorIsbn_withCacheAndNonCanonicalIsbn_shouldHitCache() {
+        // Arrange: the repository stores ISBNs as ISBN-13
+        LibroService conCache = new LibroServiceImpl(libroRepository, cache(new SimpleMeterRegistry()));
+        Libro libro = new Libro(3L, "9780306406157", "Física", "Autor", "Disponible");
+        when(libroRepository.findByIsbn(anyString())).thenReturn(Optional.of(libro));
+        when(libroRepository.findById(3L)).thenReturn(Optional.of(libro));
+        conCache.buscarPorIsbn("9780306406157");
+
+        // Act
+        Optional<Libro> conGuiones = conCache.buscarPorIsbn("978-0-306-40615-7");
+        Optional<Libro> isbn10 = conCache.buscarPorIsbn("0-306-40615-2");
+
+        // Assert
+        assertEquals(Optional.of(libro), conGuiones);
+        assertEquals(Optional.of(libro), isbn10);
+        verify(libroRepository, times(1)).findByIsbn(anyString());
+    }
+
+    private CacheEntidades<Libro> cache(SimpleMeterRegistry registry) {
+        return new CacheEntidades<>("libros", libroRepository::findById, libroRepository::findByIsbn,
+            Libro::getIsbn, LibroRepositoryImpl::normalizeIsbn, 100, Duration.ofMinutes(10), registry);
+    }
+}
@@ -2,19 +2,28 @@ package com.prog2.tp4prog2.service;
 
 import com.prog2.tp4prog2.model.Libro;
 import com.prog2.tp4prog2.model.Prestamo;
+import com.prog2.tp4prog2.model.PrestamoDetalle;
 import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.BulkWriteResult;
+import com.prog2.tp4prog2.repository.LibroRepository;
 import com.prog2.tp4prog2.repository.PrestamoRepository;
+import com.prog2.tp4prog2.repository.UsuarioRepository;
+import com.prog2.tp4prog2.repository.impl.LibroRepositoryImpl;
+import com.prog2.tp4prog2.service.impl.CacheEntidades;
 import com.prog2.tp4prog2.service.impl.PrestamoServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -25,6 +34,12 @@ public class PrestamoServiceTest {
     @Mock
     private PrestamoRepository prestamoRepository;
 
+    @Mock
+    private LibroRepository libroRepository;
+
+    @Mock
+    private UsuarioRepository usuarioRepository;
+
     private PrestamoService prestamoService;
     private Prestamo prestamo1;
     private Prestamo prestamo2;
@@ -38,8 +53,8 @@ public class PrestamoServiceTest {
 
     @BeforeEach
     void setUp() {
-        // Initialize the service with the mocked repository
-        prestamoService = new PrestamoServiceImpl(prestamoRepository);
+        // Initialize the service with the mocked repositories
+        prestamoService = new PrestamoServiceImpl(prestamoRepository, libroRepository, usuarioRepository);
         
         // Set up dates
         today = LocalDate.now();
@@ -55,8 +70,8 @@ public class PrestamoServiceTest {
         libro2 = new Libro(2L, "0987654321", "Cien años de soledad", "Gabriel García Márquez", "Prestado");
         
         // Create test loans
-        prestamo1 = new Prestamo(1L, libro1, usuario1, yesterday, tomorrow);
-        prestamo2 = new Prestamo(2L, libro2, usuario2, today, yesterday); // Overdue loan
+        prestamo1 = new Prestamo(1L, libro1.getId(), usuario1.getId(), yesterday, tomorrow);
+        prestamo2 = new Prestamo(2L, libro2.getId(), usuario2.getId(), today, yesterday); // Overdue loan
     }
 
     @Test
@@ -65,7 +80,7 @@ public class PrestamoServiceTest {
         when(prestamoRepository.findById(1L)).thenReturn(Optional.of(prestamo1));
         
         // Act
-        Prestamo result = prestamoService.buscarPorId(1L);
+        Prestamo result = prestamoService.buscarPorId(1L).orElseThrow();
         
         // Assert
         assertEquals(prestamo1, result);
@@ -73,16 +88,15 @@ public class PrestamoServiceTest {
     }
 
     @Test
-    void buscarPorId_withNonExistingId_shouldThrowException() {
+    void buscarPorId_withNonExistingId_shouldReturnEmpty() {
         // Arrange
         when(prestamoRepository.findById(999L)).thenReturn(Optional.empty());
         
-        // Act & Assert
-        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
-            prestamoService.buscarPorId(999L);
-        });
+        // Act
+        Optional<Prestamo> result = prestamoService.buscarPorId(999L);
         
-        assertEquals("Prestamo no encontrado con ID: 999", exception.getMessage());
+        // Assert
+        assertTrue(result.isEmpty());
         verify(prestamoRepository).findById(999L);
     }
 
@@ -132,6 +146,36 @@ public class PrestamoServiceTest {
         verify(prestamoRepository).findByLibro(libro1);
     }
 
+    @Test
+    void buscarPorUsuarioId_shouldReturnLoansForUser() {
+        // Arrange
+        List<Prestamo> prestamosUsuario1 = Arrays.asList(prestamo1);
+        when(prestamoRepository.findByUsuarioId(1L)).thenReturn(prestamosUsuario1);
+
+        // Act
+        List<Prestamo> result = prestamoService.buscarPorUsuarioId(1L);
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals(prestamo1, result.get(0));
+        verify(prestamoRepository).findByUsuarioId(1L);
+    }
+
+    @Test
+    void buscarPorLibroId_shouldReturnLoansForBook() {
+        // Arrange
+        List<Prestamo> prestamosLibro1 = Arrays.asList(prestamo1);
+        when(prestamoRepository.findByLibroId(1L)).thenReturn(prestamosLibro1);
+
+        // Act
+        List<Prestamo> result = prestamoService.buscarPorLibroId(1L);
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals(prestamo1, result.get(0));
+        verify(prestamoRepository).findByLibroId(1L);
+    }
+
     @Test
     void buscarPrestamosActivos_shouldReturnActiveLoans() {
         // Arrange
@@ -162,13 +206,41 @@ public class PrestamoServiceTest {
         verify(prestamoRepository).findOverduePrestamos();
     }
 
+    @Test
+    void buscarPrestamosVencidos_withDiasMinimos_shouldDelegateToRepository() {
+        // Arrange
+        when(prestamoRepository.findOverduePrestamos(7)).thenReturn(Arrays.asList(prestamo2));
+
+        // Act
+        List<Prestamo> result = prestamoService.buscarPrestamosVencidos(7);
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals(prestamo2, result.get(0));
+        verify(prestamoRepository).findOverduePrestamos(7);
+    }
+
+    @Test
+    void buscarPorVencimientoEntre_shouldDelegateToRepository() {
+        // Arrange
+        when(prestamoRepository.findByFechaDevolucionBetween(yesterday, tomorrow))
+            .thenReturn(Arrays.asList(prestamo2, prestamo1));
+
+        // Act
+        List<Prestamo> result = prestamoService.buscarPorVencimientoEntre(yesterday, tomorrow);
+
+        // Assert
+        assertEquals(Arrays.asList(prestamo2, prestamo1), result);
+        verify(prestamoRepository).findByFechaDevolucionBetween(yesterday, tomorrow);
+    }
+
     @Test
     void guardar_shouldSaveAndReturnLoan() {
         // Arrange
         Libro libro3 = new Libro(3L, "5555555555", "Nuevo Libro", "Nuevo Autor", "Prestado");
         Usuario usuario3 = new Usuario(3L, "Nuevo Usuario", "nuevo@example.com", "Activo");
-        Prestamo nuevoPrestamo = new Prestamo(null, libro3, usuario3, today, tomorrow);
-        Prestamo prestamoGuardado = new Prestamo(3L, libro3, usuario3, today, tomorrow);
+        Prestamo nuevoPrestamo = new Prestamo(null, libro3.getId(), usuario3.getId(), today, tomorrow);
+        Prestamo prestamoGuardado = new Prestamo(3L, libro3.getId(), usuario3.getId(), today, tomorrow);
         
         when(prestamoRepository.save(nuevoPrestamo)).thenReturn(prestamoGuardado);
         
@@ -181,23 +253,163 @@ public class PrestamoServiceTest {
     }
 
     @Test
-    void eliminar_shouldCallRepositoryDeleteById() {
+    void registrar_withAvailableBook_shouldMarkBookAsLentAndSave() {
+        // Arrange
+        Prestamo nuevoPrestamo = new Prestamo(null, libro1.getId(), usuario1.getId(), today, tomorrow);
+        when(usuarioRepository.existsById(1L)).thenReturn(true);
+        when(libroRepository.compareAndSetEstado(1L, "Disponible", "Prestado")).thenReturn(Optional.of(libro1));
+        when(prestamoRepository.save(nuevoPrestamo)).thenReturn(nuevoPrestamo);
+
+        // Act
+        Prestamo result = prestamoService.registrar(nuevoPrestamo);
+
+        // Assert
+        assertEquals(nuevoPrestamo, result);
+        verify(prestamoRepository).save(nuevoPrestamo);
+    }
+
+    @Test
+    void registrar_withUnavailableBook_shouldThrowAndNotSave() {
+        // Arrange
+        Prestamo nuevoPrestamo = new Prestamo(null, libro1.getId(), usuario1.getId(), today, tomorrow);
+        when(usuarioRepository.existsById(1L)).thenReturn(true);
+        when(libroRepository.compareAndSetEstado(1L, "Disponible", "Prestado")).thenReturn(Optional.empty());
+        when(libroRepository.existsById(1L)).thenReturn(true);
+
+        // Act & Assert
+        assertThrows(LibroNoDisponibleException.class, () -> prestamoService.registrar(nuevoPrestamo));
+        verify(prestamoRepository, never()).save(any());
+    }
+
+    @Test
+    void registrar_withNonExistingUser_shouldThrowAndNotTouchBook() {
+        // Arrange
+        Prestamo nuevoPrestamo = new Prestamo(null, libro1.getId(), 999L, today, tomorrow);
+        when(usuarioRepository.existsById(999L)).thenReturn(false);
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> prestamoService.registrar(nuevoPrestamo));
+        assertEquals("Usuario no encontrado con ID: 999", exception.getMessage());
+        verifyNoInteractions(libroRepository);
+        verify(prestamoRepository, never()).save(any());
+    }
+
+    @Test
+    void registrar_withExistingLoanChangingReturnDate_shouldThrowAndNotSave() {
+        // Arrange
+        Prestamo cerrado = new Prestamo(1L, libro1.getId(), usuario1.getId(), yesterday, tomorrow, today, 0);
+        when(prestamoRepository.findById(1L)).thenReturn(Optional.of(prestamo1));
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> prestamoService.registrar(cerrado));
+        verifyNoInteractions(libroRepository);
+        verify(prestamoRepository, never()).save(any());
+    }
+
+    @Test
+    void registrar_withReturnedLoan_shouldNotTouchBook() {
+        // Arrange
+        Prestamo devuelto = new Prestamo(null, libro1.getId(), usuario1.getId(), yesterday, tomorrow, today, 0);
+        when(usuarioRepository.existsById(1L)).thenReturn(true);
+        when(prestamoRepository.save(devuelto)).thenReturn(devuelto);
+
+        // Act
+        prestamoService.registrar(devuelto);
+
+        // Assert
+        verifyNoInteractions(libroRepository);
+    }
+
+    @Test
+    void registrarTodos_shouldRejectLoansWhoseBookIsNotAvailable() {
+        // Arrange: the second loan asks for the book the first one takes
+        Prestamo primero = new Prestamo(null, libro1.getId(), usuario1.getId(), today, tomorrow);
+        Prestamo segundo = new Prestamo(null, libro1.getId(), usuario2.getId(), today, tomorrow);
+        Prestamo inexistente = new Prestamo(null, 99L, usuario2.getId(), today, tomorrow);
+        when(libroRepository.compareAndSetEstado(1L, "Disponible", "Prestado"))
+            .thenReturn(Optional.of(libro1), Optional.empty());
+        when(libroRepository.compareAndSetEstado(99L, "Disponible", "Prestado")).thenReturn(Optional.empty());
+        when(usuarioRepository.existsById(anyLong())).thenReturn(true);
+        when(libroRepository.existsById(1L)).thenReturn(true);
+        when(prestamoRepository.saveAll(List.of(primero))).thenReturn(List.of(BulkWriteResult.saved(primero)));
+
+        // Act
+        List<BulkWriteResult<Prestamo>> result = prestamoService.registrarTodos(List.of(primero, segundo, inexistente));
+
+        // Assert
+        assertTrue(result.get(0).isSaved());
+        assertInstanceOf(LibroNoDisponibleException.class, result.get(1).error());
+        assertInstanceOf(IllegalArgumentException.class, result.get(2).error());
+        verify(prestamoRepository).saveAll(List.of(primero));
+    }
+
+    @Test
+    void registrarTodos_whenSaveIsRejected_shouldReleaseBook() {
+        // Arrange
+        Prestamo nuevoPrestamo = new Prestamo(null, libro1.getId(), usuario1.getId(), today, tomorrow);
+        when(usuarioRepository.existsById(1L)).thenReturn(true);
+        when(libroRepository.compareAndSetEstado(1L, "Disponible", "Prestado")).thenReturn(Optional.of(libro1));
+        when(prestamoRepository.saveAll(List.of(nuevoPrestamo)))
+            .thenReturn(List.of(BulkWriteResult.rejected(nuevoPrestamo, new IllegalArgumentException("inválido"))));
+
+        // Act
+        List<BulkWriteResult<Prestamo>> result = prestamoService.registrarTodos(List.of(nuevoPrestamo));
+
+        // Assert
+        assertFalse(result.get(0).isSaved());
+        verify(libroRepository).compareAndSetEstado(1L, "Prestado", "Disponible");
+    }
+
+    @Test
+    void eliminar_withOpenLoan_shouldRemoveLoanAndReleaseBook() {
+        // Arrange
+        when(prestamoRepository.removeById(1L)).thenReturn(Optional.of(prestamo1));
+
+        // Act
+        prestamoService.eliminar(1L);
+
+        // Assert
+        verify(prestamoRepository).removeById(1L);
+        verify(libroRepository).compareAndSetEstado(1L, "Prestado", "Disponible");
+    }
+
+    @Test
+    void eliminar_withReturnedLoan_shouldNotTouchBook() {
+        // Arrange
+        prestamo1.setFechaEntrega(today);
+        when(prestamoRepository.removeById(1L)).thenReturn(Optional.of(prestamo1));
+
         // Act
         prestamoService.eliminar(1L);
-        
+
+        // Assert
+        verifyNoInteractions(libroRepository);
+    }
+
+    @Test
+    void eliminarTodos_shouldReleaseBooksOfOpenLoansOnly() {
+        // Arrange
+        prestamo2.setFechaEntrega(today);
+        when(prestamoRepository.removeAllById(List.of(1L, 2L, 99L))).thenReturn(List.of(prestamo1, prestamo2));
+
+        // Act
+        List<Long> result = prestamoService.eliminarTodos(List.of(1L, 2L, 99L));
+
         // Assert
-        verify(prestamoRepository).deleteById(1L);
+        assertEquals(List.of(1L, 2L), result);
+        verify(libroRepository).compareAndSetEstado(1L, "Prestado", "Disponible");
+        verify(libroRepository, never()).compareAndSetEstado(eq(2L), any(), any());
     }
 
     @Test
     void buscarYActualizar_withExistingId_shouldUpdateAndReturnLoan() {
         // Arrange
         LocalDate newFechaDevolucion = today.plusDays(7);
-        Prestamo prestamoActualizado = new Prestamo(null, libro1, usuario1, yesterday, newFechaDevolucion);
-        Prestamo prestamoGuardado = new Prestamo(1L, libro1, usuario1, yesterday, newFechaDevolucion);
+        Prestamo prestamoActualizado = new Prestamo(null, libro1.getId(), usuario1.getId(), yesterday, newFechaDevolucion);
+        Prestamo prestamoGuardado = new Prestamo(1L, libro1.getId(), usuario1.getId(), yesterday, newFechaDevolucion);
         
         when(prestamoRepository.findById(1L)).thenReturn(Optional.of(prestamo1));
-        when(prestamoRepository.save(any(Prestamo.class))).thenReturn(prestamoGuardado);
+        when(prestamoRepository.replaceIfVersion(prestamoActualizado, 0L)).thenReturn(Optional.of(prestamoGuardado));
         
         // Act
         Prestamo result = prestamoService.buscarYActualizar(1L, prestamoActualizado);
@@ -205,13 +417,28 @@ public class PrestamoServiceTest {
         // Assert
         assertEquals(prestamoGuardado, result);
         verify(prestamoRepository).findById(1L);
-        verify(prestamoRepository).save(any(Prestamo.class));
+        verify(prestamoRepository, never()).save(any(Prestamo.class));
+    }
+
+    @Test
+    void buscarYActualizar_whenDeletedBeforeSaving_shouldThrowNotFound() {
+        // Arrange: the loan is read, then deleted before the conditional save
+        Prestamo prestamoActualizado = new Prestamo(null, libro1.getId(), usuario1.getId(), yesterday, today.plusDays(7));
+
+        when(prestamoRepository.findById(1L)).thenReturn(Optional.of(prestamo1), Optional.empty());
+        when(prestamoRepository.replaceIfVersion(prestamoActualizado, 0L)).thenReturn(Optional.empty());
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class,
+            () -> prestamoService.buscarYActualizar(1L, prestamoActualizado));
+        assertEquals("Prestamo no encontrado con ID: 1", exception.getMessage());
+        verify(prestamoRepository, never()).save(any(Prestamo.class));
     }
 
     @Test
     void buscarYActualizar_withNonExistingId_shouldThrowException() {
         // Arrange
-        Prestamo prestamoActualizado = new Prestamo(null, libro1, usuario1, yesterday, tomorrow);
+        Prestamo prestamoActualizado = new Prestamo(null, libro1.getId(), usuario1.getId(), yesterday, tomorrow);
         
         when(prestamoRepository.findById(999L)).thenReturn(Optional.empty());
         
@@ -224,4 +451,156 @@ public class PrestamoServiceTest {
         verify(prestamoRepository).findById(999L);
         verify(prestamoRepository, never()).save(any(Prestamo.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void buscarYActualizar_changingBook_shouldThrowAndNotSave() {
+        // Arrange
+        Prestamo otroLibro = new Prestamo(null, libro2.getId(), usuario1.getId(), yesterday, tomorrow);
+        when(prestamoRepository.findById(1L)).thenReturn(Optional.of(prestamo1));
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> prestamoService.buscarYActualizar(1L, otroLibro));
+        verifyNoInteractions(libroRepository);
+        verify(prestamoRepository, never()).save(any(Prestamo.class));
+    }
+
+    @Test
+    void conDetalle_shouldResolveEachBookAndUserOnce() {
+        // Arrange
+        Prestamo prestamo3 = new Prestamo(3L, libro1.getId(), usuario2.getId(), today, tomorrow);
+        when(libroRepository.findAllById(Set.of(1L, 2L))).thenReturn(List.of(libro1, libro2));
+        when(usuarioRepository.findAllById(Set.of(1L, 2L))).thenReturn(List.of(usuario1, usuario2));
+
+        // Act
+        List<PrestamoDetalle> result = prestamoService.conDetalle(List.of(prestamo1, prestamo2, prestamo3));
+
+        // Assert
+        assertEquals(3, result.size());
+        assertEquals(libro1, result.get(0).getLibro());
+        assertEquals(usuario1, result.get(0).getUsuario());
+        assertEquals(libro2, result.get(1).getLibro());
+        assertEquals(libro1, result.get(2).getLibro());
+        assertEquals(usuario2, result.get(2).getUsuario());
+        assertEquals(tomorrow, result.get(2).getFechaDevolucion());
+        verify(libroRepository).findAllById(anyCollection());
+        verify(usuarioRepository).findAllById(anyCollection());
+        verify(libroRepository, never()).findById(any());
+    }
+
+    @Test
+    void conDetalle_withDeletedBook_shouldLeaveItNull() {
+        // Arrange
+        when(libroRepository.findById(1L)).thenReturn(Optional.empty());
+        when(usuarioRepository.findById(1L)).thenReturn(Optional.of(usuario1));
+
+        // Act
+        PrestamoDetalle result = prestamoService.conDetalle(prestamo1);
+
+        // Assert
+        assertNull(result.getLibro());
+        assertEquals(usuario1, result.getUsuario());
+        assertEquals(prestamo1.getId(), result.getId());
+    }
+
+    @Test
+    void prestar_withAvailableBook_shouldMarkItLentAndSaveLoan() {
+        // Arrange
+        Libro prestado = new Libro(1L, "1234567890", "El Quijote", "Miguel de Cervantes", "Prestado");
+        when(usuarioRepository.existsById(1L)).thenReturn(true);
+        when(libroRepository.compareAndSetEstado(1L, "Disponible", "Prestado")).thenReturn(Optional.of(prestado));
+        when(prestamoRepository.save(any(Prestamo.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        Prestamo result = prestamoService.prestar(1L, 1L, tomorrow);
+
+        // Assert
+        assertEquals(1L, result.getLibroId());
+        assertEquals(1L, result.getUsuarioId());
+        assertEquals(today, result.getFechaPrestamo());
+        assertEquals(tomorrow, result.getFechaDevolucion());
+        verify(prestamoRepository).save(result);
+    }
+
+    @Test
+    void prestar_withBookCache_shouldInvalidateLentBook() {
+        // Arrange
+        CacheEntidades<Libro> cacheLibros = new CacheEntidades<>("libros", libroRepository::findById,
+            libroRepository::findByIsbn, Libro::getIsbn, LibroRepositoryImpl::normalizeIsbn, 100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        PrestamoService conCache = new PrestamoServiceImpl(prestamoRepository, libroRepository, usuarioRepository, cacheLibros);
+        Libro prestado = new Libro(1L, "1234567890", "El Quijote", "Miguel de Cervantes", "Prestado");
+        when(libroRepository.findById(1L)).thenReturn(Optional.of(libro1), Optional.of(prestado));
+        when(usuarioRepository.existsById(1L)).thenReturn(true);
+        when(libroRepository.compareAndSetEstado(1L, "Disponible", "Prestado")).thenReturn(Optional.of(prestado));
+        when(prestamoRepository.save(any(Prestamo.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        cacheLibros.buscarPorId(1L);
+
+        // Act
+        conCache.prestar(1L, 1L, tomorrow);
+
+        // Assert
+        assertEquals("Prestado", cacheLibros.buscarPorId(1L).orElseThrow().getEstado());
+    }
+
+    @Test
+    void prestar_withUnavailableBook_shouldThrowAndNotSaveLoan() {
+        // Arrange
+        when(usuarioRepository.existsById(1L)).thenReturn(true);
+        when(libroRepository.compareAndSetEstado(1L, "Disponible", "Prestado")).thenReturn(Optional.empty());
+        when(libroRepository.existsById(1L)).thenReturn(true);
+
+        // Act & Assert
+        assertThrows(LibroNoDisponibleException.class, () -> prestamoService.prestar(1L, 1L, tomorrow));
+        verify(prestamoRepository, never()).save(any());
+    }
+
+    @Test
+    void prestar_whenSavingLoanFails_shouldReleaseBook() {
+        // Arrange
+        when(usuarioRepository.existsById(1L)).thenReturn(true);
+        when(libroRepository.compareAndSetEstado(1L, "Disponible", "Prestado")).thenReturn(Optional.of(libro1));
+        when(prestamoRepository.save(any(Prestamo.class))).thenThrow(new IllegalStateException("disco lleno"));
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> prestamoService.prestar(1L, 1L, tomorrow));
+        verify(libroRepository).compareAndSetEstado(1L, "Prestado", "Disponible");
+    }
+
+    @Test
+    void devolver_shouldRecordReturnDateAndReleaseBook() {
+        // Arrange
+        when(prestamoRepository.findById(1L)).thenReturn(Optional.of(prestamo1));
+        when(prestamoRepository.replaceIfVersion(any(Prestamo.class), eq(0L)))
+            .thenAnswer(invocation -> Optional.of(invocation.getArgument(0)));
+
+        // Act
+        Prestamo result = prestamoService.devolver(1L);
+
+        // Assert
+        assertEquals(today, result.getFechaEntrega());
+        assertEquals(prestamo1.getFechaDevolucion(), result.getFechaDevolucion());
+        verify(prestamoRepository, never()).removeById(any());
+        verify(libroRepository).compareAndSetEstado(1L, "Prestado", "Disponible");
+    }
+
+    @Test
+    void devolver_withAlreadyReturnedLoan_shouldThrowAndNotTouchBook() {
+        // Arrange
+        prestamo1.setFechaEntrega(today);
+        when(prestamoRepository.findById(1L)).thenReturn(Optional.of(prestamo1));
+
+        // Act & Assert
+        assertThrows(PrestamoDevueltoException.class, () -> prestamoService.devolver(1L));
+        verify(prestamoRepository, never()).replaceIfVersion(any(), anyLong());
+        verifyNoInteractions(libroRepository);
+    }
+
+    @Test
+    void devolver_withMissingLoan_shouldThrowAndNotTouchBook() {
+        // Arrange
+        when(prestamoRepository.findById(1L)).thenReturn(Optional.empty());
+
+        // Act & Assert
+        assertThrows(RuntimeException.class, () -> prestamoService.devolver(1L));
+        verifyNoInteractions(libroRepository);
+    }
+}
@@ -1,14 +1,19 @@
 package com.prog2.tp4prog2.service;
 
 import com.prog2.tp4prog2.model.Usuario;
+import com.prog2.tp4prog2.repository.DuplicateKeyException;
 import com.prog2.tp4prog2.repository.UsuarioRepository;
+import com.prog2.tp4prog2.repository.impl.UsuarioRepositoryImpl;
+import com.prog2.tp4prog2.service.impl.CacheEntidades;
 import com.prog2.tp4prog2.service.impl.UsuarioServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -42,7 +47,7 @@ public class UsuarioServiceTest {
         when(usuarioRepository.findByEmail("juan@example.com")).thenReturn(Optional.of(usuario1));
         
         // Act
-        Usuario result = usuarioService.buscarPorEmail("juan@example.com");
+        Usuario result = usuarioService.buscarPorEmail("juan@example.com").orElseThrow();
         
         // Assert
         assertEquals(usuario1, result);
@@ -50,16 +55,15 @@ public class UsuarioServiceTest {
     }
 
     @Test
-    void buscarPorEmail_withNonExistingEmail_shouldThrowException() {
+    void buscarPorEmail_withNonExistingEmail_shouldReturnEmpty() {
         // Arrange
         when(usuarioRepository.findByEmail("noexiste@example.com")).thenReturn(Optional.empty());
         
-        // Act & Assert
-        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
-            usuarioService.buscarPorEmail("noexiste@example.com");
-        });
+        // Act
+        Optional<Usuario> result = usuarioService.buscarPorEmail("noexiste@example.com");
         
-        assertEquals("Usuario no encontrado con email: noexiste@example.com", exception.getMessage());
+        // Assert
+        assertTrue(result.isEmpty());
         verify(usuarioRepository).findByEmail("noexiste@example.com");
     }
 
@@ -69,7 +73,7 @@ public class UsuarioServiceTest {
         when(usuarioRepository.findById(1L)).thenReturn(Optional.of(usuario1));
         
         // Act
-        Usuario result = usuarioService.buscarPorId(1L);
+        Usuario result = usuarioService.buscarPorId(1L).orElseThrow();
         
         // Assert
         assertEquals(usuario1, result);
@@ -77,19 +81,32 @@ public class UsuarioServiceTest {
     }
 
     @Test
-    void buscarPorId_withNonExistingId_shouldThrowException() {
+    void buscarPorId_withNonExistingId_shouldReturnEmpty() {
         // Arrange
         when(usuarioRepository.findById(999L)).thenReturn(Optional.empty());
         
-        // Act & Assert
-        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
-            usuarioService.buscarPorId(999L);
-        });
+        // Act
+        Optional<Usuario> result = usuarioService.buscarPorId(999L);
         
-        assertEquals("Usuario no encontrado con ID: 999", exception.getMessage());
+        // Assert
+        assertTrue(result.isEmpty());
         verify(usuarioRepository).findById(999L);
     }
 
+    @Test
+    void buscarPorNombre_shouldDelegateToRepositorySearch() {
+        // Arrange
+        when(usuarioRepository.searchByNombre("garci", 20)).thenReturn(Arrays.asList(usuario2));
+
+        // Act
+        List<Usuario> result = usuarioService.buscarPorNombre("garci", 20);
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals(usuario2, result.get(0));
+        verify(usuarioRepository).searchByNombre("garci", 20);
+    }
+
     @Test
     void obtenerTodos_shouldReturnAllUsers() {
         // Arrange
@@ -138,7 +155,7 @@ public class UsuarioServiceTest {
         Usuario usuarioGuardado = new Usuario(1L, "Nombre Actualizado", "actualizado@example.com", "Activo");
         
         when(usuarioRepository.findById(1L)).thenReturn(Optional.of(usuario1));
-        when(usuarioRepository.save(any(Usuario.class))).thenReturn(usuarioGuardado);
+        when(usuarioRepository.replaceIfVersion(any(Usuario.class), eq(0L))).thenReturn(Optional.of(usuarioGuardado));
         
         // Act
         Usuario result = usuarioService.buscarYActualizar(1L, usuarioActualizado);
@@ -146,7 +163,22 @@ public class UsuarioServiceTest {
         // Assert
         assertEquals(usuarioGuardado, result);
         verify(usuarioRepository).findById(1L);
-        verify(usuarioRepository).save(any(Usuario.class));
+        verify(usuarioRepository, never()).save(any(Usuario.class));
+    }
+
+    @Test
+    void buscarYActualizar_whenDeletedBeforeSaving_shouldThrowNotFound() {
+        // Arrange: the user is read, then deleted before the conditional save
+        Usuario usuarioActualizado = new Usuario(null, "Nombre Actualizado", null, null);
+
+        when(usuarioRepository.findById(1L)).thenReturn(Optional.of(usuario1), Optional.empty());
+        when(usuarioRepository.replaceIfVersion(any(Usuario.class), eq(0L))).thenReturn(Optional.empty());
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class,
+            () -> usuarioService.buscarYActualizar(1L, usuarioActualizado));
+        assertEquals("Usuario no encontrado con ID: 1", exception.getMessage());
+        verify(usuarioRepository, never()).save(any(Usuario.class));
     }
 
     @Test
@@ -165,4 +197,65 @@ public class UsuarioServiceTest {
         verify(usuarioRepository).findById(999L);
         verify(usuarioRepository, never()).save(any(Usuario.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void buscarYActualizar_withDuplicateEmail_shouldLeaveStoredUserUntouched() {
+        // Arrange
+        Usuario usuarioActualizado = new Usuario(null, null, "maria@example.com", null);
+
+        when(usuarioRepository.findById(1L)).thenReturn(Optional.of(usuario1));
+        when(usuarioRepository.replaceIfVersion(any(Usuario.class), eq(0L)))
+            .thenThrow(new DuplicateKeyException("Ya existe un registro con email: maria@example.com"));
+
+        // Act & Assert
+        assertThrows(DuplicateKeyException.class, () -> usuarioService.buscarYActualizar(1L, usuarioActualizado));
+        assertEquals("juan@example.com", usuario1.getEmail());
+    }
+
+    @Test
+    void buscarYActualizar_withStaleVersion_shouldThrowWithoutSaving() {
+        // Arrange
+        usuario1.setVersion(3);
+        when(usuarioRepository.findById(1L)).thenReturn(Optional.of(usuario1));
+
+        // Act & Assert
+        assertThrows(ModificacionConcurrenteException.class, () ->
+            usuarioService.buscarYActualizar(1L, new Usuario(null, "Otro", null, null), 2));
+        verify(usuarioRepository, never()).replaceIfVersion(any(Usuario.class), anyLong());
+    }
+
+    @Test
+    void buscarYActualizar_withCurrentVersion_shouldMergeAndReplaceConditionally() {
+        // Arrange
+        usuario1.setVersion(2);
+        when(usuarioRepository.findById(1L)).thenReturn(Optional.of(usuario1));
+        when(usuarioRepository.replaceIfVersion(any(Usuario.class), eq(2L)))
+            .thenAnswer(invocation -> Optional.of(invocation.getArgument(0)));
+
+        // Act
+        Usuario result = usuarioService.buscarYActualizar(1L, new Usuario(null, "Nombre Nuevo", null, null), 2);
+
+        // Assert
+        assertEquals("Nombre Nuevo", result.getNombre());
+        assertEquals(usuario1.getEmail(), result.getEmail());
+    }
+
+    @Test
+    void buscarPorEmail_withCacheAndNonCanonicalEmail_shouldHitCache() {
+        // Arrange: the repository stores emails trimmed and in lower case
+        CacheEntidades<Usuario> cache = new CacheEntidades<>("usuarios", usuarioRepository::findById,
+            usuarioRepository::findByEmail, Usuario::getEmail, UsuarioRepositoryImpl::normalizeEmail, 100,
+            Duration.ofMinutes(10), new SimpleMeterRegistry());
+        UsuarioService conCache = new UsuarioServiceImpl(usuarioRepository, cache);
+        when(usuarioRepository.findByEmail(anyString())).thenReturn(Optional.of(usuario1));
+        when(usuarioRepository.findById(1L)).thenReturn(Optional.of(usuario1));
+        conCache.buscarPorEmail("juan@example.com");
+
+        // Act
+        Optional<Usuario> result = conCache.buscarPorEmail("  Juan@Example.COM ");
+
+        // Assert
+        assertEquals(Optional.of(usuario1), result);
+        verify(usuarioRepository, times(1)).findByEmail(anyString());
+    }
+}